@@ -0,0 +1,121 @@
+package com.tigerbeetle;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of filling and reading {@link TransferBatch} and {@link AccountBatch} rows.
+ * <p>
+ * Batches are allocated once per trial, since allocating direct memory would dominate the
+ * measurement, and the rows are overwritten on every invocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+    @Param({"1", "128", "8190"})
+    public int rows;
+
+    private TransferBatch transfers;
+    private AccountBatch accounts;
+    private byte[] id;
+
+    @Setup
+    public void setup() {
+        transfers = new TransferBatch(rows);
+        accounts = new AccountBatch(rows);
+        for (int i = 0; i < rows; i++) {
+            transfers.add();
+            accounts.add();
+        }
+
+        id = UInt128.asBytes(1, 2);
+    }
+
+    @Benchmark
+    public TransferBatch fillTransferBatch() {
+        final var batch = transfers;
+        for (int i = 0; i < rows; i++) {
+            batch.setPosition(i);
+            batch.setId(i + 1, 0);
+            batch.setDebitAccountId(1, 0);
+            batch.setCreditAccountId(2, 0);
+            batch.setUserData(i, 0);
+            batch.setLedger(720);
+            batch.setCode(1);
+            batch.setFlags(TransferFlags.NONE);
+            batch.setAmount(100);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public AccountBatch fillAccountBatch() {
+        final var batch = accounts;
+        for (int i = 0; i < rows; i++) {
+            batch.setPosition(i);
+            batch.setId(i + 1, 0);
+            batch.setUserData(i, 0);
+            batch.setLedger(720);
+            batch.setCode(1);
+            batch.setFlags(AccountFlags.NONE);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public TransferBatch fillTransferBatchWithByteArrays() {
+        final var batch = transfers;
+        for (int i = 0; i < rows; i++) {
+            batch.setPosition(i);
+            batch.setId(id);
+            batch.setDebitAccountId(id);
+            batch.setCreditAccountId(id);
+            batch.setUserData(id);
+            batch.setLedger(720);
+            batch.setCode(1);
+            batch.setAmount(100);
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public void readUInt128AsByteArray(final Blackhole blackhole) {
+        final var batch = transfers;
+        batch.beforeFirst();
+        while (batch.next()) {
+            blackhole.consume(batch.getId());
+            blackhole.consume(batch.getDebitAccountId());
+            blackhole.consume(batch.getCreditAccountId());
+        }
+    }
+
+    @Benchmark
+    public void readUInt128AsLongPair(final Blackhole blackhole) {
+        final var batch = transfers;
+        batch.beforeFirst();
+        while (batch.next()) {
+            blackhole.consume(batch.getId(UInt128.LeastSignificant));
+            blackhole.consume(batch.getId(UInt128.MostSignificant));
+            blackhole.consume(batch.getDebitAccountId(UInt128.LeastSignificant));
+            blackhole.consume(batch.getDebitAccountId(UInt128.MostSignificant));
+            blackhole.consume(batch.getCreditAccountId(UInt128.LeastSignificant));
+            blackhole.consume(batch.getCreditAccountId(UInt128.MostSignificant));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of lookups submitted from many threads to a {@link ClientPool} of 1..N clients.
+ * <p>
+ * All clients talk to the same {@link InMemoryServer} on the loopback interface, so the scaling
+ * with the pool size is bound by the server's single thread, not by a TigerBeetle cluster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class ClientPoolBenchmark {
+
+    private static final int LEDGER = 720;
+
+    @Param({"1", "2", "4", "8"})
+    public int size;
+
+    @Param({"LEAST_IN_FLIGHT", "ROUND_ROBIN", "THREAD_AFFINITY"})
+    public ClientPool.Routing routing;
+
+    private InMemoryServer server;
+    private ClientPool pool;
+    private IdBatch ids;
+
+    @Setup
+    public void setup() throws IOException, RequestException {
+        server = new InMemoryServer(0);
+        pool = new ClientPool(0, new String[] {server.getAddress()}, size, 32, routing);
+
+        final var accounts = new AccountBatch(2);
+        for (long id = 1; id <= 2; id++) {
+            accounts.add();
+            accounts.setId(id, 0);
+            accounts.setLedger(LEDGER);
+            accounts.setCode(1);
+        }
+        pool.createAccounts(accounts);
+
+        ids = new IdBatch(2);
+        ids.add(1, 0);
+        ids.add(2, 0);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pool.close();
+        server.close();
+    }
+
+    @Benchmark
+    public AccountBatch lookupAccounts() throws RequestException {
+        return pool.lookupAccounts(ids);
+    }
+}
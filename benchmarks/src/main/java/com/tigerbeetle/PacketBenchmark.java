@@ -0,0 +1,76 @@
+package com.tigerbeetle;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention on the client's packet pool when leasing and returning packets from 1..N threads.
+ * <p>
+ * The client is initialized against an address where no server is expected: packets are leased
+ * and returned without ever being submitted, so no connection is required.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBenchmark {
+
+    @Param({"32", "4096"})
+    public int maxConcurrency;
+
+    private Client client;
+
+    @Setup
+    public void setup() {
+        client = new Client(0, new String[] {"127.0.0.1:3999"}, maxConcurrency);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long acquireAndReturn1Thread() {
+        return acquireAndReturn();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long acquireAndReturn4Threads() {
+        return acquireAndReturn();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long acquireAndReturn16Threads() {
+        return acquireAndReturn();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public long acquireAndReturnMaxThreads() {
+        return acquireAndReturn();
+    }
+
+    private long acquireAndReturn() {
+        final long packet = client.acquirePacket(RequestPriority.NORMAL);
+        client.returnPacket(packet);
+        return packet;
+    }
+}
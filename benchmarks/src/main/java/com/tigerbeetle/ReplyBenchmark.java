@@ -0,0 +1,73 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of handling a reply on the completion path: copying the native buffer with
+ * {@link Request#memcpy} and decoding the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplyBenchmark {
+
+    // From a single result up to a full message (message_size_max - header)
+    @Param({"8", "1024", "65536", "1048448"})
+    public int replySize;
+
+    private ByteBuffer nativeBuffer;
+    private ByteBuffer results;
+
+    @Setup
+    public void setup() {
+        nativeBuffer = ByteBuffer.allocateDirect(replySize).order(ByteOrder.LITTLE_ENDIAN);
+
+        final var count = replySize / CreateTransferResultBatch.Struct.SIZE;
+        for (int i = 0; i < count; i++) {
+            nativeBuffer.putInt(i);
+            nativeBuffer.putInt(CreateTransferResult.Exists.ordinal());
+        }
+
+        results = Request.memcpy(nativeBuffer.position(0));
+    }
+
+    @Benchmark
+    public ByteBuffer memcpy() {
+        return Request.memcpy(nativeBuffer.position(0));
+    }
+
+    @Benchmark
+    public void decodeCreateTransferResults(final Blackhole blackhole) {
+        final var batch = new CreateTransferResultBatch(results.duplicate());
+        while (batch.next()) {
+            blackhole.consume(batch.getIndex());
+            blackhole.consume(batch.getResult());
+        }
+    }
+
+    @Benchmark
+    public void memcpyAndDecode(final Blackhole blackhole) {
+        final var batch = new CreateTransferResultBatch(Request.memcpy(nativeBuffer.position(0)));
+        while (batch.next()) {
+            blackhole.consume(batch.getIndex());
+            blackhole.consume(batch.getResult());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trip of a request through the native tb_client, bound either by JNI, with upcalls or
+ * with the completion ring, or by the Foreign Function &amp; Memory API, and through the pure-Java
+ * NIO transport.
+ * <p>
+ * All transports talk to the same {@link InMemoryServer} on the loopback interface, so the
+ * difference is the client-side cost of submitting and completing a request. The {@code ffm}
+ * binding requires running on JDK 22 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final int LEDGER = 720;
+
+    @Param({"jni", "jni-ring", "ffm", "nio"})
+    public String transport;
+
+    @Param({"1", "8190"})
+    public int batchSize;
+
+    private InMemoryServer server;
+    private Client client;
+    private IdBatch ids;
+    private TransferBatch transfers;
+    private long nextTransferId;
+
+    @Setup
+    public void setup() throws IOException, RequestException {
+        server = new InMemoryServer(0);
+
+        final var addresses = new String[] {server.getAddress()};
+        if (transport.equals("nio")) {
+            client = Client.nio(0, addresses);
+        } else {
+            final var ring = transport.equals("jni-ring");
+            System.setProperty(Client.BINDING_PROPERTY, ring ? "jni" : transport);
+            System.setProperty(Client.COMPLETION_PROPERTY, ring ? "ring" : "upcall");
+            client = new Client(0, addresses);
+        }
+
+        final var accounts = new AccountBatch(2);
+        for (long id = 1; id <= 2; id++) {
+            accounts.add();
+            accounts.setId(id, 0);
+            accounts.setLedger(LEDGER);
+            accounts.setCode(1);
+        }
+        client.createAccounts(accounts);
+
+        ids = new IdBatch(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            ids.add(1 + (i % 2), 0);
+        }
+
+        transfers = new TransferBatch(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            transfers.add();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fillTransfers() {
+        transfers.beforeFirst();
+        while (transfers.next()) {
+            nextTransferId += 1;
+            transfers.setId(nextTransferId, 0);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(2, 0);
+            transfers.setLedger(LEDGER);
+            transfers.setCode(1);
+            transfers.setAmount(1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public AccountBatch lookupAccounts() throws RequestException {
+        return client.lookupAccounts(ids);
+    }
+
+    @Benchmark
+    public CreateTransferResultBatch createTransfers() throws RequestException {
+        return client.createTransfers(transfers);
+    }
+}
@@ -0,0 +1,78 @@
+package com.tigerbeetle;
+
+import java.math.BigInteger;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the {@link UInt128} conversions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UInt128Benchmark {
+
+    private long leastSignificant;
+    private long mostSignificant;
+    private byte[] bytes;
+    private UUID uuid;
+    private BigInteger bigInteger;
+
+    @Setup
+    public void setup() {
+        leastSignificant = 0x0123456789ABCDEFL;
+        mostSignificant = 0x7EDCBA9876543210L;
+        bytes = UInt128.asBytes(leastSignificant, mostSignificant);
+        uuid = UUID.randomUUID();
+        bigInteger = UInt128.asBigInteger(leastSignificant, mostSignificant);
+    }
+
+    @Benchmark
+    public byte[] asBytesFromLongs() {
+        return UInt128.asBytes(leastSignificant, mostSignificant);
+    }
+
+    @Benchmark
+    public long asLongs() {
+        return UInt128.asLong(bytes, UInt128.LeastSignificant)
+                ^ UInt128.asLong(bytes, UInt128.MostSignificant);
+    }
+
+    @Benchmark
+    public byte[] asBytesFromUUID() {
+        return UInt128.asBytes(uuid);
+    }
+
+    @Benchmark
+    public UUID asUUID() {
+        return UInt128.asUUID(bytes);
+    }
+
+    @Benchmark
+    public BigInteger asBigIntegerFromLongs() {
+        return UInt128.asBigInteger(leastSignificant, mostSignificant);
+    }
+
+    @Benchmark
+    public BigInteger asBigIntegerFromBytes() {
+        return UInt128.asBigInteger(bytes);
+    }
+
+    @Benchmark
+    public byte[] asBytesFromBigInteger() {
+        return UInt128.asBytes(bigInteger);
+    }
+}
@@ -52,5 +52,5 @@ timeout /t 2
 
 echo.
 echo Benchmarking...
-java -cp ./src/tigerbeetle-java/target/classes benchmark/Benchmark
+java -cp ./src/tigerbeetle-java/target/classes benchmark/Benchmark %*
 exit /b %errorlevel%
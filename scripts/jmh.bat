@@ -0,0 +1,20 @@
+@echo off
+setlocal enabledelayedexpansion
+
+rem Runs the JMH benchmarks, no TigerBeetle server is required.
+rem Any extra argument is passed to JMH, e.g. "scripts\jmh.bat BatchBenchmark -prof gc"
+
+echo "Installing TigerBeetle Java Client..."
+cd .\src\tigerbeetle-java
+cmd /d /c "mvn -B install -DskipTests --quiet"
+cd ..\..
+
+echo "Building JMH benchmarks..."
+cd .\benchmarks
+cmd /d /c "mvn -B package --quiet"
+cd ..
+
+echo.
+echo Benchmarking...
+java -jar ./benchmarks/target/benchmarks.jar %*
+exit /b %errorlevel%
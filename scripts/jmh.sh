@@ -0,0 +1,15 @@
+#!/usr/bin/env bash
+set -eEuo pipefail
+
+# Runs the JMH benchmarks, no TigerBeetle server is required.
+# Any extra argument is passed to JMH, e.g. "./scripts/jmh.sh BatchBenchmark -prof gc"
+
+echo "Installing TigerBeetle Java Client..."
+(cd src/tigerbeetle-java && mvn -B install -DskipTests --quiet)
+
+echo "Building JMH benchmarks..."
+(cd benchmarks && mvn -B package --quiet)
+
+echo ""
+echo "Benchmarking..."
+java -jar ./benchmarks/target/benchmarks.jar "$@"
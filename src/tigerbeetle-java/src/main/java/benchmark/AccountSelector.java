@@ -0,0 +1,100 @@
+package benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects account numbers in the range {@code [1, accounts]}.
+ */
+abstract class AccountSelector {
+
+    final long accounts;
+
+    AccountSelector(final long accounts) {
+        if (accounts < 2)
+            throw new IllegalArgumentException("At least two accounts are required");
+        this.accounts = accounts;
+    }
+
+    abstract long next(ThreadLocalRandom random);
+
+    /**
+     * Selects a pair of different accounts, the first one is the debit.
+     */
+    final long nextCredit(final ThreadLocalRandom random, final long debit) {
+        final var credit = next(random);
+        return credit == debit ? debit % accounts + 1 : credit;
+    }
+
+    static AccountSelector create(final String distribution, final long accounts,
+            final double theta) {
+        switch (distribution) {
+            case "uniform":
+                return new Uniform(accounts);
+            case "zipfian":
+                return new Zipfian(accounts, theta);
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + distribution);
+        }
+    }
+
+    static final class Uniform extends AccountSelector {
+
+        Uniform(final long accounts) {
+            super(accounts);
+        }
+
+        @Override
+        long next(final ThreadLocalRandom random) {
+            return random.nextLong(accounts) + 1;
+        }
+    }
+
+    /**
+     * Zipfian distribution where account 1 is the hottest, as described in "Quickly Generating
+     * Billion-Record Synthetic Databases" (Gray et al.), the same algorithm used by YCSB.
+     */
+    static final class Zipfian extends AccountSelector {
+
+        private final double theta;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+
+        Zipfian(final long accounts, final double theta) {
+            super(accounts);
+
+            if (!(theta > 0.0 && theta < 1.0))
+                throw new IllegalArgumentException("Zipfian theta must be within (0.0, 1.0)");
+
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetan = zeta(accounts, theta);
+
+            final var zeta2 = zeta(2, theta);
+            this.eta = (1 - Math.pow(2.0 / accounts, 1 - theta)) / (1 - zeta2 / zetan);
+        }
+
+        @Override
+        long next(final ThreadLocalRandom random) {
+            final var u = random.nextDouble();
+            final var uz = u * zetan;
+
+            if (uz < 1.0)
+                return 1;
+
+            if (uz < 1.0 + Math.pow(0.5, theta))
+                return 2;
+
+            final var value = 1 + (long) (accounts * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(value, accounts);
+        }
+
+        private static double zeta(final long n, final double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
@@ -1,107 +1,175 @@
 package benchmark;
 
-import java.util.concurrent.CompletableFuture;
-import com.tigerbeetle.*;
-
-public class Benchmark {
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import com.tigerbeetle.AccountBatch;
+import com.tigerbeetle.Client;
+import com.tigerbeetle.CreateAccountResult;
+
+/**
+ * Load generator for sizing TigerBeetle clusters.
+ * <p>
+ * Options are informed as {@code key=value} pairs:
+ *
+ * <pre>
+ *   cluster=0                    cluster id
+ *   addresses=127.0.0.1:3001     comma separated replica addresses
+ *   mode=closed|open             closed-loop, or open-loop at a fixed rate
+ *   rate=100000                  transfers per second, required by the open-loop mode
+ *   clients=1                    number of Client instances
+ *   threads=1                    number of submitting threads, spread across the clients
+ *   batch_size=8190              transfers per request
+ *   in_flight=1                  requests outstanding per thread
+ *   warmup=2                     seconds excluded from the measurements
+ *   duration=10                  seconds measured
+ *   interval_ms=1000             throughput timeline granularity
+ *   accounts=10000               number of accounts
+ *   distribution=uniform|zipfian account selection, zipfian models hot accounts
+ *   theta=0.99                   zipfian skew
+ *   output=result.json           also writes the JSON report to a file
+ * </pre>
+ *
+ * Latencies are reported corrected for coordinated omission: in the open-loop mode they are
+ * measured from the time each request was meant to be issued, and in the closed-loop mode samples
+ * are back-filled using the mean service time observed during the warmup as the expected
+ * interval. The uncorrected latencies are reported as service time.
+ */
+public final class Benchmark {
+
+    static final int LEDGER = 720;
+
+    private static final int ACCOUNTS_PER_BATCH = 8190;
+    private static final int MAX_ERRORS_REPORTED = 10;
+    private static final AtomicLong errors = new AtomicLong();
+
+    private Benchmark() {}
 
     public static void main(String[] args) {
-        try (var client = new Client(0, new String[] {"127.0.0.1:3001"})) {
-
-            var accounts = new AccountBatch(2);
-
-            accounts.add();
-            accounts.setId(100, 1000);
-            accounts.setCode(100);
-            accounts.setLedger(720);
-
-            accounts.add();
-            accounts.setId(200, 2000);
-            accounts.setCode(200);
-            accounts.setLedger(720);
-
-            // Async usage:
-            // Start the batch ...
-            CompletableFuture<CreateAccountResultBatch> future =
-                    client.createAccountsAsync(accounts);
+        try {
+            final var options = new Options(args);
+            run(options);
+        } catch (Exception e) {
+            System.err.println(e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
 
-            // Register something on the application's side while TigerBeetle is processing
-            // UPDATE MyCustomer ...
+    static void reportError(final String message) {
+        if (errors.incrementAndGet() <= MAX_ERRORS_REPORTED)
+            System.err.println(message);
+    }
 
-            var accountErrors = future.get();
-            if (accountErrors.getLength() > 0) {
+    private static void run(final Options options) throws Exception {
 
-                while (accountErrors.next()) {
-                    System.err.printf("Error creating account #%d -> %s\n",
-                            accountErrors.getIndex(), accountErrors.getResult());
-                }
+        final var selector =
+                AccountSelector.create(options.distribution, options.accounts, options.theta);
 
-                return;
+        final var clients = new Client[options.clients];
+        try {
+            for (int i = 0; i < clients.length; i++) {
+                clients[i] = new Client(options.cluster, options.addresses,
+                        options.getMaxConcurrency());
             }
 
-            final int HEADER_SIZE = 128; // @sizeOf(vsr.Header)
-            final int TRANSFER_SIZE = 128; // @sizeOf(Transfer)
-            final int MESSAGE_SIZE_MAX = 1024 * 1024; // config.message_size_max
-
-            final int BATCHES_COUNT = 5;
-            final int TRANSFERS_PER_BATCH = (MESSAGE_SIZE_MAX - HEADER_SIZE) / TRANSFER_SIZE;
-            final int MAX_TRANSFERS = BATCHES_COUNT * TRANSFERS_PER_BATCH;
-
-            var batches = new TransferBatch[BATCHES_COUNT];
-            for (int i = 0; i < BATCHES_COUNT; i++) {
-                var transfersBatch = new TransferBatch(TRANSFERS_PER_BATCH);
-                for (int j = 0; j < TRANSFERS_PER_BATCH; j++) {
-
-                    transfersBatch.add();
-                    transfersBatch.setId(i + 1, j + 1);
-                    transfersBatch.setCreditAccountId(100, 1000);
-                    transfersBatch.setDebitAccountId(200, 2000);
-                    transfersBatch.setCode((short) 1);
-                    transfersBatch.setLedger(720);
-                    transfersBatch.setAmount(100);
-                }
-
-                batches[i] = transfersBatch;
+            createAccounts(clients[0], options.accounts);
+
+            System.out.printf(Locale.ROOT,
+                    "Benchmarking %s-loop: %d clients, %d threads, batch_size=%d, in_flight=%d%n",
+                    options.mode, options.clients, options.threads, options.batchSize,
+                    options.inFlight);
+
+            final var start = System.nanoTime();
+            final var measureFrom = start + options.warmupSeconds * 1_000_000_000L;
+            final var end = measureFrom + options.durationSeconds * 1_000_000_000L;
+            final var stats =
+                    new Stats(measureFrom, end, options.intervalMillis * 1_000_000L);
+
+            final var runId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+            final var workers = new Worker[options.threads];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Worker(i, clients[i % clients.length], options, selector, stats,
+                        runId, start, end);
+                workers[i].start();
             }
 
-            long totalTime = 0;
-            long maxTransferLatency = 0;
-
-            for (var batch : batches) {
+            // Once the warmup is over, the mean service time becomes the expected interval
+            // between requests used to correct the closed-loop latencies
+            if (options.mode == Options.Mode.closed) {
+                sleepUntil(measureFrom);
+                stats.setExpectedInterval((long) stats.warmupServiceTime.getMean());
+            }
 
-                var now = System.currentTimeMillis();
+            for (final var worker : workers) {
+                worker.join();
+            }
 
-                var transfersErrors = client.createTransfers(batch);
-                if (transfersErrors.getLength() > 0) {
+            final var elapsed = Math.min(System.nanoTime(), end) - measureFrom;
+            final var json = stats.toJson(options, elapsed);
 
-                    while (accountErrors.next()) {
-                        System.err.printf("Error creating transfer #%d -> %s%n",
-                                transfersErrors.getIndex(), transfersErrors.getResult());
-                    }
+            printSummary(stats, elapsed);
+            System.out.println(json);
 
-                    return;
-                }
+            if (options.output != null) {
+                Files.write(Paths.get(options.output), json.getBytes(StandardCharsets.UTF_8));
+            }
 
-                var elapsed = System.currentTimeMillis() - now;
+        } finally {
+            for (final var client : clients) {
+                if (client != null)
+                    client.close();
+            }
+        }
+    }
 
-                totalTime += elapsed;
-                if (elapsed > maxTransferLatency)
-                    maxTransferLatency = elapsed;
+    private static void createAccounts(final Client client, final long count) throws Exception {
+        long id = 1;
+        while (id <= count) {
+            final var size = (int) Math.min(ACCOUNTS_PER_BATCH, count - id + 1);
+            final var accounts = new AccountBatch(size);
+            for (int i = 0; i < size; i++) {
+                accounts.add();
+                accounts.setId(id + i, 0);
+                accounts.setLedger(LEDGER);
+                accounts.setCode(1);
             }
 
-            System.out.println("============================================");
+            final var accountErrors = client.createAccounts(accounts);
+            while (accountErrors.next()) {
+                // Accounts created by a previous run are reused
+                if (accountErrors.getResult() != CreateAccountResult.Exists)
+                    throw new IllegalStateException(
+                            String.format("Error creating account #%d -> %s",
+                                    accountErrors.getIndex(), accountErrors.getResult()));
+            }
 
-            var result = (long) (MAX_TRANSFERS * 1000) / totalTime;
+            id += size;
+        }
+    }
 
-            System.out.printf("%d transfers per second%n", result);
-            System.out.printf("create_transfers max p100 latency per %d transfers = %dms%n",
-                    TRANSFERS_PER_BATCH, maxTransferLatency);
-            System.out.printf("total %d transfers in %dms%n", MAX_TRANSFERS, totalTime);
+    private static void printSummary(final Stats stats, final long elapsed) {
+        final var seconds = elapsed / 1_000_000_000.0;
+        System.out.println("============================================");
+        System.out.printf(Locale.ROOT, "%d transfers in %.3fs: %.0f transfers per second%n",
+                stats.transfers.sum(), seconds, stats.transfers.sum() / seconds);
+        System.out.printf(Locale.ROOT,
+                "latency p50=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms%n",
+                stats.latency.getValueAtPercentile(50) / 1_000_000.0,
+                stats.latency.getValueAtPercentile(99) / 1_000_000.0,
+                stats.latency.getValueAtPercentile(99.9) / 1_000_000.0,
+                stats.latency.getMax() / 1_000_000.0);
+        if (errors.get() > 0)
+            System.out.printf("%d errors%n", errors.get());
+    }
 
-        } catch (Exception e) {
-            System.out.println(e);
-            e.printStackTrace();
+    private static void sleepUntil(final long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            Thread.sleep(Math.max(1, remaining / 1_000_000));
         }
     }
-
 }
@@ -0,0 +1,125 @@
+package benchmark;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe log-linear histogram of latencies in nanoseconds, similar to HdrHistogram.
+ * <p>
+ * Each power of two is divided into {@code 2^SUB_BUCKET_BITS} linear sub-buckets, keeping the
+ * relative error of any recorded value below 1%.
+ */
+final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = Long.SIZE - SUB_BUCKET_BITS + 1;
+
+    private final AtomicLongArray counts;
+
+    Histogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT * SUB_BUCKET_COUNT);
+    }
+
+    void record(final long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    /**
+     * Records a value, back-filling the samples that would have been taken every
+     * {@code expectedInterval} nanoseconds while this one was stalled.
+     * <p>
+     * This is the coordinated omission correction for closed-loop measurements, where a slow
+     * request also delays the requests that would have been issued meanwhile.
+     */
+    void record(final long value, final long expectedInterval) {
+        record(value);
+
+        if (expectedInterval <= 0 || value <= expectedInterval)
+            return;
+
+        for (long missing = value - expectedInterval; missing >= expectedInterval; missing -=
+                expectedInterval) {
+            record(missing);
+        }
+    }
+
+    void add(final Histogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            final var count = other.counts.get(i);
+            if (count > 0)
+                counts.addAndGet(i, count);
+        }
+    }
+
+    long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    long getMax() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) > 0)
+                return highestValueAt(i);
+        }
+        return 0;
+    }
+
+    double getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            final var count = counts.get(i);
+            if (count > 0) {
+                total += count;
+                sum += (double) count * highestValueAt(i);
+            }
+        }
+        return total == 0 ? 0 : sum / total;
+    }
+
+    /**
+     * Gets the value at the given percentile.
+     *
+     * @param percentile from 0.0 to 100.0.
+     * @return the highest value equivalent to the percentile, or zero if empty.
+     */
+    long getValueAtPercentile(final double percentile) {
+        final var total = getTotalCount();
+        if (total == 0)
+            return 0;
+
+        final var target = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long accumulated = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            accumulated += counts.get(i);
+            if (accumulated >= target)
+                return highestValueAt(i);
+        }
+
+        return getMax();
+    }
+
+    private static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        // The bucket is the position of the highest bit above the sub-bucket resolution,
+        // and the sub-bucket is given by the following SUB_BUCKET_BITS bits
+        final int bucket = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> (bucket - 1)) & (SUB_BUCKET_COUNT - 1);
+        return bucket * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long highestValueAt(final int index) {
+        final int bucket = index / SUB_BUCKET_COUNT;
+        final long subBucket = index % SUB_BUCKET_COUNT;
+        if (bucket == 0)
+            return subBucket;
+
+        final long lowest = (SUB_BUCKET_COUNT + subBucket) << (bucket - 1);
+        return lowest + (1L << (bucket - 1)) - 1;
+    }
+}
@@ -0,0 +1,111 @@
+package benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options, informed as {@code key=value} pairs.
+ */
+final class Options {
+
+    enum Mode {
+        /**
+         * Each thread keeps {@code in_flight} requests outstanding, submitting a new one as soon
+         * as one completes.
+         */
+        closed,
+
+        /**
+         * Requests are issued at a fixed {@code rate} regardless of completions, latency is
+         * measured from the time each request was meant to be issued.
+         */
+        open
+    }
+
+    final int cluster;
+    final String[] addresses;
+    final Mode mode;
+    final int clients;
+    final int threads;
+    final int batchSize;
+    final int inFlight;
+    final long rate;
+    final int warmupSeconds;
+    final int durationSeconds;
+    final int intervalMillis;
+    final long accounts;
+    final String distribution;
+    final double theta;
+    final String output;
+
+    Options(final String[] args) {
+        final var values = parse(args);
+
+        cluster = getInt(values, "cluster", 0);
+        addresses = values.getOrDefault("addresses", "127.0.0.1:3001").split(",");
+        mode = Mode.valueOf(values.getOrDefault("mode", Mode.closed.name()));
+        clients = getInt(values, "clients", 1);
+        threads = getInt(values, "threads", 1);
+        batchSize = getInt(values, "batch_size", 8190);
+        inFlight = getInt(values, "in_flight", 1);
+        rate = getLong(values, "rate", 0);
+        warmupSeconds = getInt(values, "warmup", 2);
+        durationSeconds = getInt(values, "duration", 10);
+        intervalMillis = getInt(values, "interval_ms", 1000);
+        accounts = getLong(values, "accounts", 10_000);
+        distribution = values.getOrDefault("distribution", "uniform");
+        theta = Double.parseDouble(values.getOrDefault("theta", "0.99"));
+        output = values.get("output");
+
+        if (clients <= 0 || threads <= 0 || inFlight <= 0)
+            throw new IllegalArgumentException("clients, threads and in_flight must be positive");
+
+        if (batchSize <= 0 || batchSize > 8190)
+            throw new IllegalArgumentException("batch_size must be within [1, 8190]");
+
+        if (durationSeconds <= 0 || warmupSeconds < 0 || intervalMillis <= 0)
+            throw new IllegalArgumentException("Invalid duration, warmup or interval_ms");
+
+        if (mode == Mode.open && rate <= 0)
+            throw new IllegalArgumentException("The open-loop mode requires a rate");
+    }
+
+    /**
+     * The interval between requests issued by each thread in the open-loop mode.
+     */
+    long getIssueIntervalNanos() {
+        final var batchesPerSecond = (double) rate / batchSize;
+        return (long) (1_000_000_000L * threads / batchesPerSecond);
+    }
+
+    /**
+     * The number of packets each client needs to hold all requests in flight.
+     */
+    int getMaxConcurrency() {
+        final var total = threads * inFlight;
+        return (total + clients - 1) / clients;
+    }
+
+    private static Map<String, String> parse(final String[] args) {
+        final var values = new HashMap<String, String>();
+        for (final var arg : args) {
+            final var parts = arg.split("=", 2);
+            if (parts.length != 2)
+                throw new IllegalArgumentException("Expected key=value, found " + arg);
+            values.put(parts[0], parts[1]);
+        }
+        return values;
+    }
+
+    private static int getInt(final Map<String, String> values, final String key,
+            final int defaultValue) {
+        final var value = values.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static long getLong(final Map<String, String> values, final String key,
+            final long defaultValue) {
+        final var value = values.get(key);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+}
@@ -0,0 +1,127 @@
+package benchmark;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements shared by all workers.
+ */
+final class Stats {
+
+    private final long measureFrom;
+    private final long measureUntil;
+    private final long intervalNanos;
+
+    // Latency from the time each request was meant to be issued,
+    // corrected for coordinated omission.
+    final Histogram latency = new Histogram();
+
+    // Latency from the time each request was actually submitted.
+    final Histogram serviceTime = new Histogram();
+
+    // Service time observed during the warmup, used to estimate the expected interval
+    // between requests in the closed-loop mode.
+    final Histogram warmupServiceTime = new Histogram();
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder transfers = new LongAdder();
+    final LongAdder failedRequests = new LongAdder();
+    final LongAdder rejectedTransfers = new LongAdder();
+
+    private final AtomicLongArray timeline;
+    private volatile long expectedInterval;
+
+    Stats(final long measureFrom, final long measureUntil, final long intervalNanos) {
+        this.measureFrom = measureFrom;
+        this.measureUntil = measureUntil;
+        this.intervalNanos = intervalNanos;
+
+        final var intervals = (measureUntil - measureFrom + intervalNanos - 1) / intervalNanos;
+        this.timeline = new AtomicLongArray((int) intervals);
+    }
+
+    /**
+     * Sets the expected interval used to correct closed-loop latencies, once the warmup is over.
+     */
+    void setExpectedInterval(final long expectedInterval) {
+        this.expectedInterval = expectedInterval;
+    }
+
+    void record(final long intended, final long submitted, final long completed,
+            final int batchSize, final int rejected, final boolean failed) {
+
+        if (intended < measureFrom) {
+            warmupServiceTime.record(completed - submitted);
+            return;
+        }
+
+        latency.record(completed - intended, expectedInterval);
+        serviceTime.record(completed - submitted);
+
+        requests.increment();
+        if (failed) {
+            failedRequests.increment();
+            return;
+        }
+
+        transfers.add(batchSize);
+        rejectedTransfers.add(rejected);
+
+        if (completed < measureUntil) {
+            final var interval = (int) ((completed - measureFrom) / intervalNanos);
+            timeline.addAndGet(interval, batchSize);
+        }
+    }
+
+    String toJson(final Options options, final long elapsedNanos) {
+        final var json = new StringBuilder();
+        final var seconds = elapsedNanos / 1_000_000_000.0;
+
+        json.append("{\n");
+        json.append("  \"config\": {");
+        json.append(String.format(Locale.ROOT,
+                "\"mode\": \"%s\", \"clients\": %d, \"threads\": %d, \"batch_size\": %d, \"in_flight\": %d, \"rate\": %d, \"warmup_s\": %d, \"duration_s\": %d, \"accounts\": %d, \"distribution\": \"%s\", \"theta\": %s",
+                options.mode, options.clients, options.threads, options.batchSize,
+                options.inFlight, options.rate, options.warmupSeconds, options.durationSeconds,
+                options.accounts, options.distribution, options.theta));
+        json.append("},\n");
+
+        json.append(String.format(Locale.ROOT, "  \"elapsed_s\": %.3f,\n", seconds));
+        json.append(String.format(Locale.ROOT, "  \"requests\": %d,\n", requests.sum()));
+        json.append(String.format(Locale.ROOT, "  \"transfers\": %d,\n", transfers.sum()));
+        json.append(
+                String.format(Locale.ROOT, "  \"failed_requests\": %d,\n", failedRequests.sum()));
+        json.append(String.format(Locale.ROOT, "  \"rejected_transfers\": %d,\n",
+                rejectedTransfers.sum()));
+        json.append(String.format(Locale.ROOT, "  \"throughput_tps\": %.1f,\n",
+                transfers.sum() / seconds));
+        json.append("  \"latency_us\": ").append(percentiles(latency)).append(",\n");
+        json.append("  \"service_time_us\": ").append(percentiles(serviceTime)).append(",\n");
+
+        json.append(String.format(Locale.ROOT, "  \"timeline_interval_ms\": %d,\n",
+                intervalNanos / 1_000_000));
+        json.append("  \"timeline_tps\": [");
+        final var intervalSeconds = intervalNanos / 1_000_000_000.0;
+        for (int i = 0; i < timeline.length(); i++) {
+            if (i > 0)
+                json.append(", ");
+            json.append(String.format(Locale.ROOT, "%.1f", timeline.get(i) / intervalSeconds));
+        }
+        json.append("]\n");
+
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static String percentiles(final Histogram histogram) {
+        return String.format(Locale.ROOT,
+                "{\"count\": %d, \"mean\": %.1f, \"p50\": %.1f, \"p90\": %.1f, \"p99\": %.1f, \"p99.9\": %.1f, \"p99.99\": %.1f, \"max\": %.1f}",
+                histogram.getTotalCount(), histogram.getMean() / 1000.0,
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getValueAtPercentile(99.99) / 1000.0, histogram.getMax() / 1000.0);
+    }
+}
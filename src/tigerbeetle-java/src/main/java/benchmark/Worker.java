@@ -0,0 +1,158 @@
+package benchmark;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import com.tigerbeetle.Client;
+import com.tigerbeetle.CreateTransferResult;
+import com.tigerbeetle.CreateTransferResultBatch;
+import com.tigerbeetle.TransferBatch;
+
+/**
+ * Submits transfers from a single thread, keeping up to {@code in_flight} requests outstanding.
+ */
+final class Worker extends Thread {
+
+    private static final class Slot {
+        final TransferBatch batch;
+        long intended;
+        long submitted;
+
+        Slot(final int batchSize) {
+            batch = new TransferBatch(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                batch.add();
+            }
+        }
+    }
+
+    private final int id;
+    private final Client client;
+    private final Options options;
+    private final AccountSelector selector;
+    private final Stats stats;
+    private final long runId;
+    private final long start;
+    private final long end;
+
+    private final ArrayBlockingQueue<Slot> freeSlots;
+    private long sequence;
+
+    Worker(final int id, final Client client, final Options options,
+            final AccountSelector selector, final Stats stats, final long runId, final long start,
+            final long end) {
+        super("benchmark-worker-" + id);
+
+        this.id = id;
+        this.client = client;
+        this.options = options;
+        this.selector = selector;
+        this.stats = stats;
+        this.runId = runId;
+        this.start = start;
+        this.end = end;
+
+        this.freeSlots = new ArrayBlockingQueue<>(options.inFlight);
+        for (int i = 0; i < options.inFlight; i++) {
+            freeSlots.add(new Slot(options.batchSize));
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            final var open = options.mode == Options.Mode.open;
+            final var issueInterval = open ? options.getIssueIntervalNanos() : 0;
+
+            // Spreading the threads' schedule evenly along the issue interval
+            long next = start + issueInterval * id / options.threads;
+
+            while (true) {
+
+                long intended = 0;
+                if (open) {
+                    intended = next;
+                    next += issueInterval;
+                    if (intended >= end)
+                        break;
+                    sleepUntil(intended);
+                }
+
+                // Blocks while all slots are in flight, in the open-loop mode this waiting
+                // counts towards the latency since it is measured from the intended time
+                final var slot = freeSlots.take();
+
+                if (!open) {
+                    intended = System.nanoTime();
+                    if (intended >= end) {
+                        freeSlots.add(slot);
+                        break;
+                    }
+                }
+
+                slot.intended = intended;
+                fill(slot.batch);
+
+                slot.submitted = System.nanoTime();
+                client.createTransfersAsync(slot.batch)
+                        .whenComplete((result, error) -> complete(slot, result, error));
+            }
+
+            // Waits for all requests in flight
+            for (int i = 0; i < options.inFlight; i++) {
+                freeSlots.take();
+            }
+
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void fill(final TransferBatch batch) {
+        final var random = ThreadLocalRandom.current();
+        for (int i = 0; i < options.batchSize; i++) {
+            batch.setPosition(i);
+
+            // Unique ids across runs and threads
+            sequence += 1;
+            batch.setId(((long) id << 40) | sequence, runId);
+
+            final var debit = selector.next(random);
+            final var credit = selector.nextCredit(random, debit);
+            batch.setDebitAccountId(debit, 0);
+            batch.setCreditAccountId(credit, 0);
+            batch.setLedger(Benchmark.LEDGER);
+            batch.setCode(1);
+            batch.setAmount(1);
+        }
+    }
+
+    private void complete(final Slot slot, final CreateTransferResultBatch result,
+            final Throwable error) {
+        final var completed = System.nanoTime();
+
+        int rejected = 0;
+        if (error != null) {
+            Benchmark.reportError("Request failed: " + error);
+        } else {
+            while (result.next()) {
+                rejected += 1;
+                final var reason = result.getResult();
+                if (reason != CreateTransferResult.Ok)
+                    Benchmark.reportError(String.format("Error creating transfer #%d -> %s",
+                            result.getIndex(), reason));
+            }
+        }
+
+        stats.record(slot.intended, slot.submitted, completed, options.batchSize, rejected,
+                error != null);
+        freeSlots.add(slot);
+    }
+
+    private static void sleepUntil(final long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+}
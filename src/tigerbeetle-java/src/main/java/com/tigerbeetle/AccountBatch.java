@@ -40,11 +40,11 @@ public final class AccountBatch extends Batch {
      * @throws IllegalArgumentException if capacity is negative.
      */
     public AccountBatch(final int capacity) {
-        super(capacity, Struct.SIZE);
+        super(capacity, Struct.SIZE, Struct.Flags);
     }
 
     AccountBatch(final ByteBuffer buffer) {
-        super(buffer, Struct.SIZE);
+        super(buffer, Struct.SIZE, Struct.Flags);
     }
 
     /**
@@ -61,6 +61,57 @@ public final class AccountBatch extends Batch {
         super.add();
     }
 
+    /**
+     * Opens a linked chain: each account added until {@link #endChain} is flagged
+     * {@link AccountFlags#LINKED} once the next one is added, so the chain is closed by its last
+     * account without clearing any flag by hand.
+     * <p>
+     * A chain cannot exceed the number of accounts of a single request.
+     *
+     * @throws IllegalStateException if this batch is read-only or a chain is already open.
+     */
+    @Override
+    public void beginChain() {
+        super.beginChain();
+    }
+
+    /**
+     * Closes the linked chain opened by {@link #beginChain}, clearing the
+     * {@link AccountFlags#LINKED} flag of its last account.
+     *
+     * @throws IllegalStateException if no chain is open or the chain is empty.
+     */
+    @Override
+    public void endChain() {
+        super.endChain();
+    }
+
+    /**
+     * Tells whether a linked chain opened by {@link #beginChain} is not yet closed.
+     */
+    @Override
+    public boolean isChainOpen() {
+        return super.isChainOpen();
+    }
+
+    /**
+     * Gets the closest position, at or before {@code position}, where this batch can be split
+     * without splitting a linked chain.
+     * <p>
+     * The chain boundaries are indexed as they are queried, in amortized constant time, so the
+     * flags of the accounts before the last one must not be changed afterwards.
+     *
+     * @param position a zero-based index, up to the batch's {@link #getLength length}.
+     * @return the first account of the chain containing {@code position}, or {@code position}
+     *         itself if no chain crosses it.
+     * @throws IndexOutOfBoundsException if {@code position} is negative or greater than the
+     *         batch's {@link #getLength length}.
+     */
+    @Override
+    public int getChainBoundary(final int position) {
+        return super.getChainBoundary(position);
+    }
+
     /**
      * Gets the <a href="https://docs.tigerbeetle.com/reference/accounts#id">id</a>.
      *
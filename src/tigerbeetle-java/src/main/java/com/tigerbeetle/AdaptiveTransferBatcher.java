@@ -0,0 +1,455 @@
+package com.tigerbeetle;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Creates transfers submitted one at a time, batching them with a linger time and a target batch
+ * size adjusted to meet a latency objective.
+ * <p>
+ * A batch is submitted once it reaches the target size, or once its first transfer has waited
+ * for the linger time. Both are adjusted periodically from the observed round trips of the
+ * {@code createTransfers} requests and the arrival rate of the transfers: the linger time is
+ * what is left of the objective once the 99th percentile of the round trips is accounted for,
+ * and the target size is the number of transfers expected to arrive meanwhile. So batches are
+ * small and submitted right away when the traffic is light, and grow with the traffic.
+ * <p>
+ * The linger time never drops below the round trip divided by the number of requests that can
+ * be in flight, so that a round trip's worth of transfers still shares the requests once the
+ * round trips alone exceed the objective.
+ * <p>
+ * When requests wait for a free packet of the client, the linger time is raised towards its
+ * maximum, trading latency for fewer and fuller requests, and lowered again once packets are
+ * available.
+ * <p>
+ * The client is not owned by the batcher and must be closed by the caller. This class is
+ * thread-safe.
+ */
+public final class AdaptiveTransferBatcher implements AutoCloseable {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Transfers are copied into the current batch under the lock, with the future of each one.
+     * The batch is allocated with the target size as its capacity, so a full batch is simply
+     * one without room left, and is submitted right away by the thread that filled it, outside
+     * of the lock.
+     *
+     * The batcher's thread sleeps until the deadline of the current batch or the next
+     * adjustment, whichever comes first. It submits the current batch once its deadline passed,
+     * and adjusts the controller every ADJUST_NANOS:
+     *
+     *   rate      exponential moving average of the transfers per nanosecond
+     *   p99       99th percentile of the last WINDOW round trips
+     *   scale     doubled whenever requests waited for a packet since the last adjustment,
+     *             lowered by SCALE_STEP otherwise, within [SCALE_MIN, 1]
+     *   floor     p99 / limit, with the limit of requests in flight of the client's pool
+     *   linger    min(maxLinger, max(max(0, slo - p99) * scale, floor))
+     *   target    rate * max(linger, floor), within [1, BATCH_SIZE_MAX]
+     *
+     * When the round trips alone exceed the objective, lingering cannot meet it anymore, but
+     * batching is then what matters most to bring the round trips back down. The floor spreads
+     * the transfers arriving during a round trip over the requests that can be in flight, the
+     * linger only waits as long as it takes to fill such a batch, and never longer than
+     * maxLinger, in which case the batch is submitted partial.
+     *
+     */
+    // @formatter:on
+
+    /**
+     * A snapshot of the decisions of the batcher, and of the observations they are based on.
+     *
+     * @see AdaptiveTransferBatcher#getStats()
+     */
+    public static final class Stats {
+
+        private final long lingerNanos;
+        private final int targetBatchSize;
+        private final long roundTripP99Nanos;
+        private final double arrivalRate;
+        private final long batches;
+        private final long transfers;
+        private final long pressureCount;
+
+        Stats(final long lingerNanos, final int targetBatchSize, final long roundTripP99Nanos,
+                final double arrivalRate, final long batches, final long transfers,
+                final long pressureCount) {
+            this.lingerNanos = lingerNanos;
+            this.targetBatchSize = targetBatchSize;
+            this.roundTripP99Nanos = roundTripP99Nanos;
+            this.arrivalRate = arrivalRate;
+            this.batches = batches;
+            this.transfers = transfers;
+            this.pressureCount = pressureCount;
+        }
+
+        /**
+         * Gets how long the first transfer of a batch currently waits for others.
+         */
+        public long getLingerNanos() {
+            return lingerNanos;
+        }
+
+        /**
+         * Gets the number of transfers after which a batch is currently submitted.
+         */
+        public int getTargetBatchSize() {
+            return targetBatchSize;
+        }
+
+        /**
+         * Gets the 99th percentile of the recent round trips of the requests.
+         */
+        public long getRoundTripP99Nanos() {
+            return roundTripP99Nanos;
+        }
+
+        /**
+         * Gets the recent arrival rate, in transfers per second.
+         */
+        public double getArrivalRate() {
+            return arrivalRate;
+        }
+
+        /**
+         * Gets the number of batches submitted.
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * Gets the number of transfers submitted.
+         */
+        public long getTransfers() {
+            return transfers;
+        }
+
+        /**
+         * Gets how many adjustments found requests waiting for a packet, and raised the linger
+         * time.
+         */
+        public long getPressureCount() {
+            return pressureCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{lingerNanos=" + lingerNanos + ", targetBatchSize=" + targetBatchSize
+                    + ", roundTripP99Nanos=" + roundTripP99Nanos + ", arrivalRate="
+                    + arrivalRate + ", batches=" + batches + ", transfers=" + transfers
+                    + ", pressureCount=" + pressureCount + "}";
+        }
+    }
+
+    static final long ADJUST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    static final int WINDOW = 256;
+    static final double SCALE_MIN = 1.0 / 16;
+    static final double SCALE_STEP = 1.0 / 64;
+
+    // Weight of the last adjustment interval in the arrival rate
+    private static final double RATE_ALPHA = 0.5;
+
+    private final Client client;
+    private final long sloNanos;
+    private final long maxLingerNanos;
+    private final Thread thread;
+
+    // Guarded by this
+    private TransferBatch batch;
+    private CompletableFuture<CreateTransferResult>[] futures;
+    private long deadline;
+    private final long[] roundTrips = new long[WINDOW];
+    private long roundTripCount;
+    private long arrivals;
+    private long lastAcquireWaitCount;
+    private long lingerNanos;
+    private int targetBatchSize;
+    private long roundTripP99Nanos;
+    private double rate;
+    private double scale;
+    private long batches;
+    private long transfers;
+    private long pressureCount;
+    private int inFlight;
+    private boolean closed;
+
+    /**
+     * Initializes a batcher and starts its thread.
+     *
+     * @param client the client to submit the transfers to.
+     * @param sloNanos the objective for the 99th percentile of the time from the submission of
+     *        a transfer to its result.
+     * @param maxLingerNanos the longest a transfer waits for others to share its request.
+     *
+     * @throws NullPointerException if {@code client} is null.
+     * @throws IllegalArgumentException if {@code sloNanos} is not positive or
+     *         {@code maxLingerNanos} is negative.
+     */
+    public AdaptiveTransferBatcher(final Client client, final long sloNanos,
+            final long maxLingerNanos) {
+        Objects.requireNonNull(client, "Client cannot be null");
+        if (sloNanos <= 0)
+            throw new IllegalArgumentException("Objective must be positive");
+        if (maxLingerNanos < 0)
+            throw new IllegalArgumentException("Linger cannot be negative");
+
+        this.client = client;
+        this.sloNanos = sloNanos;
+        this.maxLingerNanos = maxLingerNanos;
+        this.scale = 1.0;
+        this.lastAcquireWaitCount = client.getPacketPoolStats().getAcquireWaitCount();
+        synchronized (this) {
+            adjust(0);
+            reset();
+        }
+
+        this.thread = new Thread(this::run, "tigerbeetle-adaptive-batcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Submits a copy of the transfer at the current position of {@code transfers}.
+     * <p>
+     * The batch can be reused as soon as this method returns.
+     *
+     * @param transfers a batch positioned at the transfer to be created.
+     * @return a {@link java.util.concurrent.CompletableFuture} completed with the transfer's
+     *         result, or exceptionally if its request failed.
+     *
+     * @throws NullPointerException if {@code transfers} is null.
+     * @throws IllegalStateException if the batch is not at a valid position, or the batcher is
+     *         closed.
+     */
+    public CompletableFuture<CreateTransferResult> submit(final TransferBatch transfers) {
+        Objects.requireNonNull(transfers, "Batch cannot be null");
+
+        final var source = transfers.getBuffer().duplicate();
+        final var offset = transfers.at(0);
+        source.limit(offset + TransferBatch.Struct.SIZE).position(offset);
+
+        final var future = new CompletableFuture<CreateTransferResult>();
+        final TransferBatch full;
+        final CompletableFuture<CreateTransferResult>[] fullFutures;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("Batcher is closed");
+
+            final var position = batch.getLength();
+            batch.add();
+            batch.getBuffer().duplicate().position(position * TransferBatch.Struct.SIZE)
+                    .put(source);
+            futures[position] = future;
+            arrivals++;
+
+            if (position == 0 && batch.getCapacity() > 1) {
+                deadline = System.nanoTime() + lingerNanos;
+                LockSupport.unpark(thread);
+            }
+
+            if (batch.getLength() < batch.getCapacity())
+                return future;
+
+            fullFutures = futures;
+            full = take();
+        }
+
+        submit(full, fullFutures);
+        return future;
+    }
+
+    /**
+     * Gets a snapshot of the current decisions of the batcher.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(lingerNanos, targetBatchSize, roundTripP99Nanos,
+                rate * TimeUnit.SECONDS.toNanos(1), batches, transfers, pressureCount);
+    }
+
+    /**
+     * Stops the batcher, submits the transfers batched so far and waits for their results.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+            synchronized (this) {
+                while (inFlight > 0) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on closing the adaptive batcher.");
+        }
+    }
+
+    private TransferBatch take() {
+        final var full = batch;
+        reset();
+        batches++;
+        transfers += full.getLength();
+        inFlight++;
+        return full;
+    }
+
+    private void reset() {
+        batch = new TransferBatch(targetBatchSize);
+        futures = newFutures(targetBatchSize);
+    }
+
+    // Generic arrays cannot be created directly
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T>[] newFutures(final int length) {
+        return (CompletableFuture<T>[]) new CompletableFuture<?>[length];
+    }
+
+    private void run() {
+        var nextAdjust = System.nanoTime() + ADJUST_NANOS;
+        while (true) {
+            TransferBatch ready = null;
+            CompletableFuture<CreateTransferResult>[] readyFutures = null;
+            final boolean stopping;
+            final long wakeUp;
+            synchronized (this) {
+                stopping = closed;
+                final var now = System.nanoTime();
+                if (now - nextAdjust >= 0) {
+                    adjust(now - nextAdjust + ADJUST_NANOS);
+                    nextAdjust = now + ADJUST_NANOS;
+                }
+
+                final var pending = batch.getLength() > 0;
+                if (pending && (stopping || now - deadline >= 0)) {
+                    readyFutures = futures;
+                    ready = take();
+                }
+                wakeUp = pending && ready == null && deadline - nextAdjust < 0
+                        ? deadline
+                        : nextAdjust;
+            }
+
+            if (ready != null)
+                submit(ready, readyFutures);
+            if (stopping)
+                return;
+
+            LockSupport.parkNanos(wakeUp - System.nanoTime());
+        }
+    }
+
+    /**
+     * Adjusts the linger time and the target batch size from what was observed during the last
+     * {@code elapsedNanos}.
+     */
+    private void adjust(final long elapsedNanos) {
+        assertTrue(Thread.holdsLock(this), "Must hold the batcher's lock");
+
+        if (elapsedNanos > 0) {
+            final var observed = (double) arrivals / elapsedNanos;
+            rate = RATE_ALPHA * observed + (1 - RATE_ALPHA) * rate;
+            arrivals = 0;
+        }
+
+        if (roundTripCount > 0) {
+            final var count = (int) Math.min(roundTripCount, WINDOW);
+            final var sorted = Arrays.copyOf(roundTrips, count);
+            Arrays.sort(sorted);
+            roundTripP99Nanos = sorted[(int) Math.ceil(0.99 * count) - 1];
+        }
+
+        final var stats = client.getPacketPoolStats();
+        final var acquireWaitCount = stats.getAcquireWaitCount();
+        if (acquireWaitCount > lastAcquireWaitCount) {
+            scale = Math.min(1.0, scale * 2);
+            pressureCount++;
+        } else {
+            scale = Math.max(SCALE_MIN, scale - SCALE_STEP);
+        }
+        lastAcquireWaitCount = acquireWaitCount;
+
+        final var floor = roundTripP99Nanos / Math.max(1, stats.getLimit());
+        final var budget = (long) (Math.max(0, sloNanos - roundTripP99Nanos) * scale);
+        lingerNanos = Math.min(maxLingerNanos, Math.max(budget, floor));
+
+        final var expected = Math.ceil(rate * Math.max(lingerNanos, floor));
+        final var target = (int) Math.max(1, Math.min(TransferProcessor.BATCH_SIZE_MAX, expected));
+        if (target != targetBatchSize) {
+            targetBatchSize = target;
+
+            // A partial batch keeps its size until submitted
+            if (batch != null && batch.getLength() == 0)
+                reset();
+        }
+    }
+
+    private synchronized void onRoundTrip(final long nanos) {
+        roundTrips[(int) (roundTripCount % WINDOW)] = nanos;
+        roundTripCount++;
+    }
+
+    private void submit(final TransferBatch batch,
+            final CompletableFuture<CreateTransferResult>[] futures) {
+        final var submitted = System.nanoTime();
+        try {
+            client.createTransfersAsync(batch).whenComplete((results, exception) -> {
+                onRoundTrip(System.nanoTime() - submitted);
+                try {
+                    if (exception == null) {
+                        complete(batch, futures, results);
+                    } else {
+                        fail(batch, futures, exception);
+                    }
+                } finally {
+                    retire();
+                }
+            });
+        } catch (RuntimeException exception) {
+            fail(batch, futures, exception);
+            retire();
+        }
+    }
+
+    private static void complete(final TransferBatch batch,
+            final CompletableFuture<CreateTransferResult>[] futures,
+            final CreateTransferResultBatch results) {
+        final var length = batch.getLength();
+        var next = 0;
+        while (results.next()) {
+            final var index = results.getIndex();
+            while (next < index) {
+                futures[next++].complete(CreateTransferResult.Ok);
+            }
+            futures[next++].complete(results.getResult());
+        }
+        while (next < length) {
+            futures[next++].complete(CreateTransferResult.Ok);
+        }
+    }
+
+    private static void fail(final TransferBatch batch,
+            final CompletableFuture<CreateTransferResult>[] futures, final Throwable exception) {
+        for (int i = 0; i < batch.getLength(); i++) {
+            futures[i].completeExceptionally(exception);
+        }
+    }
+
+    private synchronized void retire() {
+        inFlight--;
+        if (inFlight == 0)
+            notifyAll();
+    }
+}
@@ -1,6 +1,9 @@
 package com.tigerbeetle;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 final class AsyncRequest<TResponse extends Batch> extends Request<TResponse> {
 
@@ -13,10 +16,29 @@ final class AsyncRequest<TResponse extends Batch> extends Request<TResponse> {
      *
      * See BlockingRequest.java for the sync implementation.
      *
+     * A request with a deadline schedules the future's expiry on a single daemon thread shared by
+     * all clients, cancelled once the request completes. A reply arriving after the expiry, or
+     * after the caller cancelled the future, completes nothing and is simply discarded.
+     *
      */
     // @formatter:on
 
+    private static final class Deadlines {
+
+        static final ScheduledThreadPoolExecutor EXECUTOR;
+
+        static {
+            EXECUTOR = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final var thread = new Thread(runnable, "tigerbeetle-deadlines");
+                thread.setDaemon(true);
+                return thread;
+            });
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+
     private final CompletableFuture<TResponse> future;
+    private volatile ScheduledFuture<?> expiry;
 
     AsyncRequest(final Client client, final byte operation, final Batch batch) {
         super(client, operation, batch);
@@ -50,16 +72,43 @@ final class AsyncRequest<TResponse extends Batch> extends Request<TResponse> {
         return future;
     }
 
+    @Override
+    void setDeadline(final long deadline) {
+        super.setDeadline(deadline);
+        expiry = Deadlines.EXECUTOR.schedule(
+                () -> future.completeExceptionally(
+                        new RequestException(RequestException.Status.DEADLINE_EXCEEDED)),
+                deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
     @Override
     protected void setResult(final TResponse result) {
+        cancelExpiry();
 
         // To prevent the completion to run in the callback thread
         // we must call "completeAsync" instead of "complete".
-        future.completeAsync(() -> result);
+        future.completeAsync(() -> {
+            endDispatch();
+            return result;
+        });
     }
 
     @Override
     protected void setException(final Throwable exception) {
+        cancelExpiry();
+        endDispatch();
         future.completeExceptionally(exception);
     }
+
+    @Override
+    protected void abandon(final Throwable exception) {
+        cancelExpiry();
+        future.completeExceptionally(exception);
+    }
+
+    private void cancelExpiry() {
+        final var expiry = this.expiry;
+        if (expiry != null)
+            expiry.cancel(false);
+    }
 }
@@ -44,22 +44,39 @@ public abstract class Batch {
         assertTrue(BYTE_ORDER == ByteOrder.LITTLE_ENDIAN, "Native byte order LITTLE ENDIAN expected");
     }
 
+    // The flags offset of the batches whose elements cannot be linked
+    static final int NOT_LINKABLE = -1;
+
+    // Linked chains, only for the batches whose elements have a LINKED flag
+    private static final short LINKED = 1 << 0;
+    private static final int NO_CHAIN = -1;
+
     private int position;
     private CursorStatus cursorStatus;
     private int length;
 
+    // The first element of the chain opened by beginChain, or NO_CHAIN
+    private int chainStart = NO_CHAIN;
+
+    // The first element of the chain of each element, indexed lazily up to chainIndexed
+    private int[] chainStarts;
+    private int chainIndexed;
+
     private final int capacity;
     private final ByteBuffer buffer;
 
     private final int ELEMENT_SIZE;
+    private final int FLAGS_OFFSET;
 
-    Batch(final int capacity, final int ELEMENT_SIZE) {
+    Batch(final int capacity, final int ELEMENT_SIZE, final int FLAGS_OFFSET) {
 
         assertTrue(ELEMENT_SIZE > 0, "Element size cannot be zero or negative");
+        assertTrue(FLAGS_OFFSET < ELEMENT_SIZE, "Flags offset out of the element");
 
         if (capacity < 0) throw new IllegalArgumentException("Buffer capacity cannot be negative");
 
         this.ELEMENT_SIZE = ELEMENT_SIZE;
+        this.FLAGS_OFFSET = FLAGS_OFFSET;
 
         this.length = 0;
         this.capacity = capacity;
@@ -71,12 +88,14 @@ public abstract class Batch {
         this.buffer = ByteBuffer.allocateDirect(bufferCapacity).order(BYTE_ORDER);
     }
 
-    Batch(final ByteBuffer buffer, final int ELEMENT_SIZE) {
+    Batch(final ByteBuffer buffer, final int ELEMENT_SIZE, final int FLAGS_OFFSET) {
 
         assertTrue(ELEMENT_SIZE > 0, "Element size cannot be zero or negative");
+        assertTrue(FLAGS_OFFSET < ELEMENT_SIZE, "Flags offset out of the element");
         Objects.requireNonNull(buffer, "Buffer cannot be null");
 
         this.ELEMENT_SIZE = ELEMENT_SIZE;
+        this.FLAGS_OFFSET = FLAGS_OFFSET;
         final var bufferLen = buffer.capacity();
 
         // Make sure the completion handler is giving us valid data
@@ -112,10 +131,74 @@ public abstract class Batch {
                     "Cannot add an element because the batch's capacity of %d was exceeded",
                     capacity));
 
+        if (chainStart != NO_CHAIN && currentLen > chainStart) {
+            if (currentLen - chainStart >= MessageHeader.MESSAGE_BODY_SIZE_MAX / ELEMENT_SIZE)
+                throw new IllegalStateException(
+                        "Cannot add an element because the linked chain would exceed a message");
+
+            // Links the previous element of the chain to the new one
+            final var flags = (currentLen - 1) * ELEMENT_SIZE + FLAGS_OFFSET;
+            buffer.putShort(flags, (short) (buffer.getShort(flags) | LINKED));
+        }
+
         this.length = currentLen + 1;
         setPosition(currentLen);
     }
 
+    // Only exposed by the batches whose elements can be linked
+    void beginChain() {
+        assertTrue(FLAGS_OFFSET != NOT_LINKABLE, "Elements of this batch cannot be linked");
+
+        if (isReadOnly())
+            throw new IllegalStateException("Cannot begin a chain in a read-only batch");
+        if (chainStart != NO_CHAIN)
+            throw new IllegalStateException("A linked chain is already open");
+
+        chainStart = length;
+    }
+
+    void endChain() {
+        assertTrue(FLAGS_OFFSET != NOT_LINKABLE, "Elements of this batch cannot be linked");
+
+        if (chainStart == NO_CHAIN)
+            throw new IllegalStateException("No linked chain is open");
+        if (chainStart == length)
+            throw new IllegalStateException("Cannot end an empty linked chain");
+
+        // Closes the chain, even if the last element was flagged by hand
+        final var flags = (length - 1) * ELEMENT_SIZE + FLAGS_OFFSET;
+        buffer.putShort(flags, (short) (buffer.getShort(flags) & ~LINKED));
+        chainStart = NO_CHAIN;
+    }
+
+    boolean isChainOpen() {
+        return chainStart != NO_CHAIN;
+    }
+
+    int getChainBoundary(final int position) {
+        assertTrue(FLAGS_OFFSET != NOT_LINKABLE, "Elements of this batch cannot be linked");
+        if (position < 0 || position > length)
+            throw new IndexOutOfBoundsException();
+
+        if (chainStarts == null)
+            chainStarts = new int[capacity];
+        for (int index = chainIndexed; index < length; index++) {
+            final var linked = index > 0
+                    && (buffer.getShort((index - 1) * ELEMENT_SIZE + FLAGS_OFFSET) & LINKED) != 0;
+            chainStarts[index] = linked ? chainStarts[index - 1] : index;
+        }
+        chainIndexed = length;
+
+        if (position < length)
+            return chainStarts[position];
+
+        // The last element is not linked yet while its chain is open
+        if (length > 0 && (chainStart != NO_CHAIN && chainStart < length
+                || (buffer.getShort((length - 1) * ELEMENT_SIZE + FLAGS_OFFSET) & LINKED) != 0))
+            return chainStarts[length - 1];
+        return length;
+    }
+
     /**
      * Tries to move the current {@link #setPosition position} to the next element in this batch.
      *
@@ -0,0 +1,233 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Reads and writes batches as files holding their rows as is, for archiving.
+ * <p>
+ * A batch file is a 128-byte header, with the element type, the number of rows and a checksum
+ * of the rows, followed by the rows of the batch in their in-memory layout, little-endian.
+ * Batches are written straight from their buffer and opened as read-only views over the mapped
+ * file, without decoding any row.
+ */
+public final class BatchFile {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Header layout, little-endian:
+     *
+     *   magic: u64 @0           "TBBATCH" followed by a zero byte
+     *   version: u16 @8
+     *   type: u16 @10           one of Type
+     *   element_size: u32 @12
+     *   count: u64 @16
+     *   reserved @24
+     *   checksum: u128 @32      BLAKE3 of the rows, truncated to 128 bits as in message headers
+     *   reserved @48
+     *
+     * The header is padded to the size of an account or transfer, so that rows mapped right
+     * after it keep their natural alignment.
+     *
+     */
+    // @formatter:on
+
+    interface Struct {
+        int Magic = 0;
+        int Version = 8;
+        int Type = 10;
+        int ElementSize = 12;
+        int Count = 16;
+        int Checksum = 32;
+
+        int SIZE = 128;
+    }
+
+    interface Type {
+        short ACCOUNT = 1;
+        short TRANSFER = 2;
+        short ID = 3;
+        short CREATE_ACCOUNT_RESULT = 4;
+        short CREATE_TRANSFER_RESULT = 5;
+    }
+
+    static final long MAGIC = 0x0048435441424254L;
+    static final short VERSION = 1;
+
+    private BatchFile() {}
+
+    /**
+     * Writes {@code batch} to {@code path}, replacing any existing file.
+     * <p>
+     * The batch's cursor is left untouched.
+     *
+     * @param path the file to write.
+     * @param batch an {@link AccountBatch}, {@link TransferBatch}, {@link IdBatch},
+     *        {@link CreateAccountResultBatch} or {@link CreateTransferResultBatch}.
+     *
+     * @throws IOException if the file cannot be written.
+     * @throws NullPointerException if {@code path} or {@code batch} is null.
+     */
+    public static void write(final Path path, final Batch batch) throws IOException {
+        Objects.requireNonNull(path, "Path cannot be null");
+        Objects.requireNonNull(batch, "Batch cannot be null");
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, batch);
+        }
+    }
+
+    /**
+     * Writes {@code batch} to {@code channel} at its current position.
+     *
+     * @see #write(Path, Batch)
+     * @return the number of bytes written.
+     */
+    public static long write(final FileChannel channel, final Batch batch) throws IOException {
+        Objects.requireNonNull(channel, "Channel cannot be null");
+        Objects.requireNonNull(batch, "Batch cannot be null");
+
+        final var type = typeOf(batch);
+        final var length = batch.getBufferLen();
+        final var rows = batch.getBuffer().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        rows.limit(length).position(0);
+
+        final var checksum = new long[2];
+        new Blake3().hash128(rows, 0, length, checksum);
+
+        final var header = ByteBuffer.allocate(Struct.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putLong(Struct.Magic, MAGIC);
+        header.putShort(Struct.Version, VERSION);
+        header.putShort(Struct.Type, type);
+        header.putInt(Struct.ElementSize, elementSizeOf(type));
+        header.putLong(Struct.Count, batch.getLength());
+        header.putLong(Struct.Checksum, checksum[0]);
+        header.putLong(Struct.Checksum + 8, checksum[1]);
+
+        final var buffers = new ByteBuffer[] {header, rows};
+        var written = 0L;
+        while (header.hasRemaining() || rows.hasRemaining()) {
+            written += channel.write(buffers);
+        }
+        return written;
+    }
+
+    /**
+     * Opens a file of accounts as a read-only batch mapped in memory.
+     *
+     * @param path the file written from an {@link AccountBatch}.
+     * @return a read-only {@link AccountBatch} backed by the file.
+     *
+     * @throws IOException if the file cannot be read, is not a batch file of accounts, or its
+     *         checksum does not match its rows.
+     * @throws NullPointerException if {@code path} is null.
+     */
+    public static AccountBatch openAccounts(final Path path) throws IOException {
+        return new AccountBatch(map(path, Type.ACCOUNT));
+    }
+
+    /**
+     * Opens a file of transfers as a read-only batch mapped in memory.
+     *
+     * @param path the file written from a {@link TransferBatch}.
+     * @return a read-only {@link TransferBatch} backed by the file.
+     *
+     * @throws IOException if the file cannot be read, is not a batch file of transfers, or its
+     *         checksum does not match its rows.
+     * @throws NullPointerException if {@code path} is null.
+     */
+    public static TransferBatch openTransfers(final Path path) throws IOException {
+        return new TransferBatch(map(path, Type.TRANSFER));
+    }
+
+    /**
+     * Opens a file of ids as a read-only batch mapped in memory.
+     *
+     * @see #openAccounts(Path)
+     */
+    public static IdBatch openIds(final Path path) throws IOException {
+        return new IdBatch(map(path, Type.ID));
+    }
+
+    private static ByteBuffer map(final Path path, final short type) throws IOException {
+        Objects.requireNonNull(path, "Path cannot be null");
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final var size = channel.size();
+            if (size < Struct.SIZE)
+                throw new IOException("Not a batch file: " + path);
+
+            final var header = ByteBuffer.allocate(Struct.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException("Not a batch file: " + path);
+            }
+
+            if (header.getLong(Struct.Magic) != MAGIC)
+                throw new IOException("Not a batch file: " + path);
+            if (header.getShort(Struct.Version) != VERSION)
+                throw new IOException("Unsupported batch file version "
+                        + header.getShort(Struct.Version) + ": " + path);
+            if (header.getShort(Struct.Type) != type
+                    || header.getInt(Struct.ElementSize) != elementSizeOf(type))
+                throw new IOException("Unexpected batch file type "
+                        + header.getShort(Struct.Type) + ": " + path);
+
+            final var count = header.getLong(Struct.Count);
+            final var length = count * elementSizeOf(type);
+            if (count < 0 || length > Integer.MAX_VALUE || size != Struct.SIZE + length)
+                throw new IOException("Invalid batch file size: " + path);
+
+            final var rows = channel.map(FileChannel.MapMode.READ_ONLY, Struct.SIZE, length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            final var checksum = new long[2];
+            new Blake3().hash128(rows, 0, (int) length, checksum);
+            if (checksum[0] != header.getLong(Struct.Checksum)
+                    || checksum[1] != header.getLong(Struct.Checksum + 8))
+                throw new IOException("Invalid batch file checksum: " + path);
+
+            return rows;
+        }
+    }
+
+    private static short typeOf(final Batch batch) {
+        if (batch instanceof AccountBatch)
+            return Type.ACCOUNT;
+        if (batch instanceof TransferBatch)
+            return Type.TRANSFER;
+        if (batch instanceof IdBatch)
+            return Type.ID;
+        if (batch instanceof CreateAccountResultBatch)
+            return Type.CREATE_ACCOUNT_RESULT;
+        if (batch instanceof CreateTransferResultBatch)
+            return Type.CREATE_TRANSFER_RESULT;
+
+        throw new AssertionError("Unexpected batch %s", batch.getClass());
+    }
+
+    private static int elementSizeOf(final short type) {
+        switch (type) {
+            case Type.ACCOUNT:
+                return AccountBatch.Struct.SIZE;
+            case Type.TRANSFER:
+                return TransferBatch.Struct.SIZE;
+            case Type.ID:
+                return IdBatch.Struct.SIZE;
+            case Type.CREATE_ACCOUNT_RESULT:
+                return CreateAccountResultBatch.Struct.SIZE;
+            case Type.CREATE_TRANSFER_RESULT:
+                return CreateTransferResultBatch.Struct.SIZE;
+            default:
+                throw new AssertionError("Unexpected type %d", type);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * BLAKE3 hash, as used by the cluster to checksum message headers and bodies.
+ * <p>
+ * Only the unkeyed 256-bit hash is implemented. Instances hold scratch state and are not
+ * thread-safe.
+ */
+final class Blake3 {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Straightforward port of the BLAKE3 reference implementation, without SIMD. The compression
+     * function keeps its state in locals and permutes the message words in locals.
+     * Input is split in chunks of 1024 bytes, each chunk compressed as blocks of 64 bytes,
+     * and chunk chaining values are merged in a binary tree using a stack.
+     *
+     * The final node (the last chunk or the topmost parent) is kept uncompressed
+     * until the end, since it must be compressed with the ROOT flag.
+     *
+     */
+    // @formatter:on
+
+    private static final int[] IV = {0x6A09E667, 0xBB67AE85, 0x3C6EF372, 0xA54FF53A,
+            0x510E527F, 0x9B05688C, 0x1F83D9AB, 0x5BE0CD19};
+
+    private static final int CHUNK_START = 1 << 0;
+    private static final int CHUNK_END = 1 << 1;
+    private static final int PARENT = 1 << 2;
+    private static final int ROOT = 1 << 3;
+
+    private static final int BLOCK_LEN = 64;
+    private static final int CHUNK_LEN = 1024;
+
+    // Enough for 2^54 chunks
+    private static final int MAX_DEPTH = 54;
+
+    private final int[] state = new int[16];
+    private final int[] block = new int[16];
+    private final int[] cv = new int[8];
+    private final int[] stack = new int[MAX_DEPTH * 8];
+
+    // The pending output node
+    private final int[] outputCv = new int[8];
+    private final int[] outputBlock = new int[16];
+    private long outputCounter;
+    private int outputBlockLen;
+    private int outputFlags;
+
+    /**
+     * Hashes {@code length} bytes starting at {@code offset}, ignoring the buffer's position and
+     * limit.
+     *
+     * @param output receives the first 16 bytes of the hash as two little-endian longs, the least
+     *        significant first.
+     */
+    void hash128(final ByteBuffer input, final int offset, final int length, final long[] output) {
+        final var buffer = input.order() == ByteOrder.LITTLE_ENDIAN ? input
+                : input.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        final var chunks = length == 0 ? 1 : (length + CHUNK_LEN - 1) / CHUNK_LEN;
+        var stackLen = 0;
+
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final var chunkOffset = offset + chunk * CHUNK_LEN;
+            final var chunkLen = Math.min(CHUNK_LEN, length - chunk * CHUNK_LEN);
+            chunkOutput(buffer, chunkOffset, chunkLen, chunk);
+
+            if (chunk == chunks - 1)
+                break;
+
+            // Merges complete subtrees, as many as trailing zeros in the chunk count
+            outputChainingValue(cv);
+            long total = chunk + 1;
+            while ((total & 1) == 0) {
+                stackLen -= 1;
+                parentOutput(stack, stackLen * 8, cv);
+                outputChainingValue(cv);
+                total >>= 1;
+            }
+
+            System.arraycopy(cv, 0, stack, stackLen * 8, 8);
+            stackLen += 1;
+        }
+
+        while (stackLen > 0) {
+            stackLen -= 1;
+            outputChainingValue(cv);
+            parentOutput(stack, stackLen * 8, cv);
+        }
+
+        compress(outputCv, outputBlock, 0, outputBlockLen, outputFlags | ROOT, state);
+        output[0] = (state[0] & 0xFFFFFFFFL) | ((long) state[1] << 32);
+        output[1] = (state[2] & 0xFFFFFFFFL) | ((long) state[3] << 32);
+    }
+
+    /**
+     * Compresses all blocks of a chunk but the last one, which is kept as the pending output.
+     */
+    private void chunkOutput(final ByteBuffer buffer, final int offset, final int length,
+            final long counter) {
+        final var blocks = length == 0 ? 1 : (length + BLOCK_LEN - 1) / BLOCK_LEN;
+        System.arraycopy(IV, 0, outputCv, 0, 8);
+
+        for (int i = 0; i < blocks; i++) {
+            final var blockLen = Math.min(BLOCK_LEN, length - i * BLOCK_LEN);
+            loadBlock(buffer, offset + i * BLOCK_LEN, blockLen, block);
+
+            var flags = i == 0 ? CHUNK_START : 0;
+            if (i == blocks - 1) {
+                flags |= CHUNK_END;
+                System.arraycopy(block, 0, outputBlock, 0, 16);
+                outputCounter = counter;
+                outputBlockLen = blockLen;
+                outputFlags = flags;
+            } else {
+                compress(outputCv, block, counter, blockLen, flags, state);
+                System.arraycopy(state, 0, outputCv, 0, 8);
+            }
+        }
+    }
+
+    private void parentOutput(final int[] left, final int leftOffset, final int[] right) {
+        System.arraycopy(IV, 0, outputCv, 0, 8);
+        System.arraycopy(left, leftOffset, outputBlock, 0, 8);
+        System.arraycopy(right, 0, outputBlock, 8, 8);
+        outputCounter = 0;
+        outputBlockLen = BLOCK_LEN;
+        outputFlags = PARENT;
+    }
+
+    private void outputChainingValue(final int[] target) {
+        compress(outputCv, outputBlock, outputCounter, outputBlockLen, outputFlags, state);
+        System.arraycopy(state, 0, target, 0, 8);
+    }
+
+    private static void loadBlock(final ByteBuffer buffer, final int offset, final int length,
+            final int[] words) {
+        if (length == BLOCK_LEN) {
+            for (int i = 0; i < 16; i++) {
+                words[i] = buffer.getInt(offset + i * 4);
+            }
+        } else {
+            for (int i = 0; i < 16; i++) {
+                int word = 0;
+                for (int j = 0; j < 4; j++) {
+                    final var index = i * 4 + j;
+                    if (index < length)
+                        word |= (buffer.get(offset + index) & 0xFF) << (j * 8);
+                }
+                words[i] = word;
+            }
+        }
+    }
+
+    private static void compress(final int[] chainingValue, final int[] m, final long counter,
+            final int blockLen, final int flags, final int[] out) {
+        int v0 = chainingValue[0], v1 = chainingValue[1], v2 = chainingValue[2];
+        int v3 = chainingValue[3], v4 = chainingValue[4], v5 = chainingValue[5];
+        int v6 = chainingValue[6], v7 = chainingValue[7];
+        int v8 = IV[0], v9 = IV[1], v10 = IV[2], v11 = IV[3];
+        int v12 = (int) counter, v13 = (int) (counter >>> 32), v14 = blockLen, v15 = flags;
+
+        int m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3], m4 = m[4], m5 = m[5], m6 = m[6];
+        int m7 = m[7], m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11], m12 = m[12];
+        int m13 = m[13], m14 = m[14], m15 = m[15];
+
+        for (int round = 0; round < 7; round++) {
+            // Mixes the columns
+            v0 += v4 + m0;
+            v12 = Integer.rotateRight(v12 ^ v0, 16);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 12);
+            v0 += v4 + m1;
+            v12 = Integer.rotateRight(v12 ^ v0, 8);
+            v8 += v12;
+            v4 = Integer.rotateRight(v4 ^ v8, 7);
+            v1 += v5 + m2;
+            v13 = Integer.rotateRight(v13 ^ v1, 16);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 12);
+            v1 += v5 + m3;
+            v13 = Integer.rotateRight(v13 ^ v1, 8);
+            v9 += v13;
+            v5 = Integer.rotateRight(v5 ^ v9, 7);
+            v2 += v6 + m4;
+            v14 = Integer.rotateRight(v14 ^ v2, 16);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 12);
+            v2 += v6 + m5;
+            v14 = Integer.rotateRight(v14 ^ v2, 8);
+            v10 += v14;
+            v6 = Integer.rotateRight(v6 ^ v10, 7);
+            v3 += v7 + m6;
+            v15 = Integer.rotateRight(v15 ^ v3, 16);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 12);
+            v3 += v7 + m7;
+            v15 = Integer.rotateRight(v15 ^ v3, 8);
+            v11 += v15;
+            v7 = Integer.rotateRight(v7 ^ v11, 7);
+
+            // Mixes the diagonals
+            v0 += v5 + m8;
+            v15 = Integer.rotateRight(v15 ^ v0, 16);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 12);
+            v0 += v5 + m9;
+            v15 = Integer.rotateRight(v15 ^ v0, 8);
+            v10 += v15;
+            v5 = Integer.rotateRight(v5 ^ v10, 7);
+            v1 += v6 + m10;
+            v12 = Integer.rotateRight(v12 ^ v1, 16);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 12);
+            v1 += v6 + m11;
+            v12 = Integer.rotateRight(v12 ^ v1, 8);
+            v11 += v12;
+            v6 = Integer.rotateRight(v6 ^ v11, 7);
+            v2 += v7 + m12;
+            v13 = Integer.rotateRight(v13 ^ v2, 16);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 12);
+            v2 += v7 + m13;
+            v13 = Integer.rotateRight(v13 ^ v2, 8);
+            v8 += v13;
+            v7 = Integer.rotateRight(v7 ^ v8, 7);
+            v3 += v4 + m14;
+            v14 = Integer.rotateRight(v14 ^ v3, 16);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 12);
+            v3 += v4 + m15;
+            v14 = Integer.rotateRight(v14 ^ v3, 8);
+            v9 += v14;
+            v4 = Integer.rotateRight(v4 ^ v9, 7);
+
+            // Permutes the message words for the next round: {2, 6, 3, 10, 7, 0, 4, 13, 1, 11, 12,
+            // 5, 9, 14, 15, 8}
+            final int t0 = m0, t1 = m1, t2 = m2, t3 = m3, t4 = m4, t5 = m5, t6 = m6, t7 = m7;
+            final int t8 = m8, t9 = m9, t10 = m10, t11 = m11, t12 = m12, t13 = m13;
+            final int t14 = m14, t15 = m15;
+            m0 = t2;
+            m1 = t6;
+            m2 = t3;
+            m3 = t10;
+            m4 = t7;
+            m5 = t0;
+            m6 = t4;
+            m7 = t13;
+            m8 = t1;
+            m9 = t11;
+            m10 = t12;
+            m11 = t5;
+            m12 = t9;
+            m13 = t14;
+            m14 = t15;
+            m15 = t8;
+        }
+
+        out[0] = v0 ^ v8;
+        out[1] = v1 ^ v9;
+        out[2] = v2 ^ v10;
+        out[3] = v3 ^ v11;
+        out[4] = v4 ^ v12;
+        out[5] = v5 ^ v13;
+        out[6] = v6 ^ v14;
+        out[7] = v7 ^ v15;
+        out[8] = v8 ^ chainingValue[0];
+        out[9] = v9 ^ chainingValue[1];
+        out[10] = v10 ^ chainingValue[2];
+        out[11] = v11 ^ chainingValue[3];
+        out[12] = v12 ^ chainingValue[4];
+        out[13] = v13 ^ chainingValue[5];
+        out[14] = v14 ^ chainingValue[6];
+        out[15] = v15 ^ chainingValue[7];
+    }
+}
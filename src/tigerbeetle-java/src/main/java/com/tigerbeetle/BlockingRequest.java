@@ -1,5 +1,6 @@
 package com.tigerbeetle;
 
+import java.util.concurrent.TimeUnit;
 import static com.tigerbeetle.AssertionError.assertTrue;
 
 final class BlockingRequest<TResponse extends Batch> extends Request<TResponse> {
@@ -31,6 +32,9 @@ final class BlockingRequest<TResponse extends Batch> extends Request<TResponse>
     private TResponse result;
     private Throwable exception;
 
+    // Set once the caller gave up waiting or the request was aborted, the late reply is discarded
+    private boolean abandoned;
+
     BlockingRequest(final Client client, final byte operation, final Batch batch) {
         super(client, operation, batch);
 
@@ -68,6 +72,22 @@ final class BlockingRequest<TResponse extends Batch> extends Request<TResponse>
     public TResponse waitForResult() throws RequestException {
 
         waitForCompletionUninterruptibly();
+        endDispatch();
+        return getResult();
+    }
+
+    /**
+     * Waits for the result until {@code deadline}, a {@link System#nanoTime()}.
+     *
+     * @throws RequestException with {@link RequestException.Status#DEADLINE_EXCEEDED} if the
+     *         deadline passed first.
+     */
+    public TResponse waitForResult(final long deadline) throws RequestException {
+
+        if (!waitForCompletionUninterruptibly(deadline))
+            throw new RequestException(RequestException.Status.DEADLINE_EXCEEDED);
+
+        endDispatch();
         return getResult();
     }
 
@@ -76,7 +96,11 @@ final class BlockingRequest<TResponse extends Batch> extends Request<TResponse>
 
         synchronized (this) {
 
-            if (isDone()) {
+            if (abandoned) {
+
+                endDispatch();
+
+            } else if (isDone()) {
 
                 this.result = null;
                 this.exception = new AssertionError(this.exception,
@@ -97,6 +121,11 @@ final class BlockingRequest<TResponse extends Batch> extends Request<TResponse>
     protected void setException(final Throwable exception) {
 
         synchronized (this) {
+            if (abandoned) {
+                endDispatch();
+                return;
+            }
+
             this.result = null;
             this.exception = exception;
             notify();
@@ -123,6 +152,43 @@ final class BlockingRequest<TResponse extends Batch> extends Request<TResponse>
         }
     }
 
+    @Override
+    protected void abandon(final Throwable exception) {
+
+        synchronized (this) {
+            if (isDone())
+                return;
+
+            this.exception = exception;
+            this.abandoned = true;
+            notify();
+        }
+    }
+
+    /**
+     * @return false if the deadline passed first, abandoning the request.
+     */
+    private boolean waitForCompletionUninterruptibly(final long deadline) {
+        try {
+
+            synchronized (this) {
+                while (!isDone()) {
+                    final var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        abandoned = true;
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            return true;
+
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on waitForCompletion.");
+        }
+    }
+
     TResponse getResult() throws RequestException {
 
         assertTrue(result != null || exception != null, "Unexpected request result: result=null");
@@ -1,28 +1,130 @@
 package com.tigerbeetle;
 
+import java.time.Duration;
 import java.util.Objects;
+import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import static com.tigerbeetle.AssertionError.assertTrue;
 
 public final class Client implements AutoCloseable {
-    static {
-        JNILoader.loadFromJar();
-    }
 
     private static final int DEFAULT_MAX_CONCURRENCY = 32;
 
+    // Longer timeouts are shortened, so that deadlines never overflow
+    private static final Duration MAX_TIMEOUT = Duration.ofDays(36500);
+
+    /**
+     * The default number of accounts or transfers from which a request is
+     * {@link RequestPriority#BULK}.
+     */
+    public static final int DEFAULT_BULK_THRESHOLD = 1024;
+
+    /**
+     * System property selecting how the client binds to the native tb_client library, either
+     * {@code "jni"} or {@code "ffm"}. The default is {@code "jni"}.
+     * <p>
+     * The Foreign Function &amp; Memory binding requires JDK 22 or later, and the JVM option
+     * {@code --enable-native-access} for the module of the client, or the unnamed module, to
+     * avoid a warning on restricted methods. It completes requests through upcalls, so
+     * {@link #COMPLETION_PROPERTY} does not apply to it.
+     */
+    public static final String BINDING_PROPERTY = "com.tigerbeetle.binding";
+
+    static final String BINDING_JNI = "jni";
+    static final String BINDING_FFM = "ffm";
+
+    /**
+     * System property selecting how the JNI binding delivers completions, either
+     * {@code "upcall"}, calling back into Java for each reply, or {@code "ring"}, writing them
+     * to an off-heap ring buffer drained by a Java poller thread. The default is
+     * {@code "upcall"}. Only for the {@code "jni"} {@link #BINDING_PROPERTY binding}.
+     * <p>
+     * The ring avoids any JNI work per reply, at the cost of one poller thread and a 4 MiB
+     * direct buffer per client.
+     */
+    public static final String COMPLETION_PROPERTY = "com.tigerbeetle.completion";
+
+    static final String COMPLETION_UPCALL = "upcall";
+    static final String COMPLETION_RING = "ring";
+
+    /**
+     * System property selecting whether packets are cached per thread, either {@code "none"} or
+     * {@code "thread"}. The default is {@code "none"}.
+     * <p>
+     * With {@code "thread"}, each thread keeps a small cache of packets in front of the client's
+     * shared pool, so leasing and returning packets rarely touches state shared between cores.
+     * Cached packets still count towards the client's concurrency limit, and are reclaimed when
+     * other threads wait for a packet or when left unused.
+     */
+    public static final String PACKET_CACHE_PROPERTY = "com.tigerbeetle.packetCache";
+
+    static final String PACKET_CACHE_NONE = "none";
+    static final String PACKET_CACHE_THREAD = "thread";
+
+    /**
+     * System property selecting how the number of requests in flight is limited, either
+     * {@code "none"} or {@code "vegas"}. The default is {@code "none"}.
+     * <p>
+     * With {@code "none"}, as many requests as packets are in flight. With {@code "vegas"}, an
+     * adaptive limit below {@code maxConcurrency} is lowered when the round trips of the
+     * requests grow past the shortest one observed, a sign of requests queued in the cluster,
+     * and raised back when they don't. The limit is reported by
+     * {@link PacketPoolStats#getLimit()}.
+     */
+    public static final String LIMITER_PROPERTY = "com.tigerbeetle.limiter";
+
+    static final String LIMITER_NONE = "none";
+    static final String LIMITER_VEGAS = "vegas";
+
+    // tb_client_init allocates its own packets, which are not used
+    private static final int NATIVE_PACKETS_MAX = 4096;
+
     private final int clusterID;
+    private final int minConcurrency;
     private final int maxConcurrency;
-    private final Semaphore maxConcurrencySemaphore;
+    private final boolean usePacketCache;
+    private final boolean useLimiter;
+
+    // Null when closed, read under the read lock of transportLock when submitting
+    private volatile Transport transport;
+
+    // Held for reading while submitting, and for writing while closing the transport, so that a
+    // submission never sees the transport closed under it
+    private final ReentrantReadWriteLock transportLock = new ReentrantReadWriteLock();
+
+    // Null only for tests running without a transport
+    private volatile PacketPool packetPool;
+
+    // Null when not enabled with LIMITER_PROPERTY
+    private volatile ConcurrencyLimiter limiter;
+
+    private volatile Consumer<RequestTiming> timingListener;
+    private volatile double timingSamplingRate;
+
+    private volatile TrafficCapture capture;
 
-    private final ReentrantLock packetsLock;
-    private volatile long clientHandle;
-    private volatile long packetsHead;
-    private volatile long packetsTail;
+    private volatile int bulkThreshold = DEFAULT_BULK_THRESHOLD;
+
+    // Guarded by this, indexed by priority
+    private final int[] reservedPackets = new int[RequestPriority.values().length];
+
+    // Requests submitted and not completed yet, whether waiting for a packet or in flight,
+    // notified on when it becomes empty while closing
+    private final Set<Request<?>> pending = ConcurrentHashMap.newKeySet();
+
+    // Set once closing, rejecting new requests while the pending ones drain
+    private volatile boolean closing;
+    private final AtomicInteger drained = new AtomicInteger();
+
+    // Guarded by this, null until closing
+    private CompletableFuture<CloseResult> closeFuture;
 
     /**
      * Initializes an instance of TigerBeetle client. This class is thread-safe and for optimal
@@ -30,6 +132,9 @@ public final class Client implements AutoCloseable {
      * <p>
      * Multiple clients can be instantiated in case of connecting to more than one TigerBeetle
      * cluster.
+     * <p>
+     * The binding to the native library can be selected with the {@link #BINDING_PROPERTY}
+     * system property, and how it delivers completions with {@link #COMPLETION_PROPERTY}.
      *
      * @param clusterID
      * @param replicaAddresses
@@ -44,28 +149,75 @@ public final class Client implements AutoCloseable {
      * @throws NullPointerException if {@code replicaAddresses} is null or any element in the array
      *         is null.
      * @throws IllegalArgumentException if {@code maxConcurrency} is zero or negative.
+     * @throws IllegalArgumentException if {@link #BINDING_PROPERTY} is not a known binding.
+     * @throws IllegalArgumentException if {@link #COMPLETION_PROPERTY} is not a known mode, or
+     *         is set with the {@code "ffm"} binding.
+     * @throws IllegalArgumentException if {@link #PACKET_CACHE_PROPERTY} is not a known mode.
+     * @throws IllegalArgumentException if {@link #LIMITER_PROPERTY} is not a known limiter.
+     * @throws UnsupportedOperationException if the {@code "ffm"} binding is selected on a JDK
+     *         earlier than 22.
      */
     public Client(final int clusterID, final String[] replicaAddresses, final int maxConcurrency) {
-        this(clusterID, maxConcurrency);
-
-        Objects.requireNonNull(replicaAddresses, "Replica addresses cannot be null");
+        this(clusterID, replicaAddresses, maxConcurrency, maxConcurrency);
+    }
 
-        if (replicaAddresses.length == 0)
-            throw new IllegalArgumentException("Empty replica addresses");
+    /**
+     * Initializes an instance of TigerBeetle client whose number of requests in flight adapts to
+     * the load.
+     * <p>
+     * Each request in flight holds a packet from a pool allocated off-heap. The pool starts with
+     * {@code minConcurrency} packets, grows when requests wait for a free packet, up to
+     * {@code maxConcurrency}, and shrinks back once they are mostly idle. See
+     * {@link #getPacketPoolStats()}.
+     *
+     * @see Client#Client(int, String[], int)
+     * @param clusterID
+     * @param replicaAddresses
+     * @param minConcurrency
+     * @param maxConcurrency
+     *
+     * @throws InitializationException if an error occurred initializing this client. See
+     *         {@link InitializationException.Status} for more details.
+     *
+     * @throws IllegalArgumentException if {@code clusterID} is negative.
+     * @throws IllegalArgumentException if {@code replicaAddresses} is empty or presented in
+     *         incorrect format.
+     * @throws NullPointerException if {@code replicaAddresses} is null or any element in the array
+     *         is null.
+     * @throws IllegalArgumentException if {@code minConcurrency} is zero or negative, or greater
+     *         than {@code maxConcurrency}.
+     * @throws IllegalArgumentException if {@link #BINDING_PROPERTY} is not a known binding.
+     * @throws IllegalArgumentException if {@link #COMPLETION_PROPERTY} is not a known mode, or
+     *         is set with the {@code "ffm"} binding.
+     * @throws IllegalArgumentException if {@link #PACKET_CACHE_PROPERTY} is not a known mode.
+     * @throws IllegalArgumentException if {@link #LIMITER_PROPERTY} is not a known limiter.
+     * @throws UnsupportedOperationException if the {@code "ffm"} binding is selected on a JDK
+     *         earlier than 22.
+     */
+    public Client(final int clusterID, final String[] replicaAddresses, final int minConcurrency,
+            final int maxConcurrency) {
+        this(clusterID, minConcurrency, maxConcurrency);
 
-        var joiner = new StringJoiner(",");
-        for (var address : replicaAddresses) {
-            Objects.requireNonNull(address, "Replica address cannot be null");
-            joiner.add(address);
-        }
+        final var addresses = joinAddresses(replicaAddresses);
+        final var nativePackets = Math.min(maxConcurrency, NATIVE_PACKETS_MAX);
 
-        int status = clientInit(clusterID, joiner.toString(), maxConcurrency);
+        final var binding = System.getProperty(BINDING_PROPERTY, BINDING_JNI);
+        if (binding.equals(BINDING_FFM)) {
+            if (System.getProperty(COMPLETION_PROPERTY) != null)
+                throw new IllegalArgumentException("The completion mode requires the jni binding");
 
-        if (status == InitializationException.Status.INVALID_ADDRESS)
-            throw new IllegalArgumentException("Replica addresses format is invalid.");
+            attach(FfmBinding.open(clusterID, addresses, nativePackets));
+        } else if (binding.equals(BINDING_JNI)) {
+            final var completion = System.getProperty(COMPLETION_PROPERTY, COMPLETION_UPCALL);
+            if (!completion.equals(COMPLETION_UPCALL) && !completion.equals(COMPLETION_RING))
+                throw new IllegalArgumentException("Unknown completion mode " + completion);
 
-        if (status != 0)
-            throw new InitializationException(status);
+            final var transport = new NativeTransport(completion.equals(COMPLETION_RING));
+            NativeTransport.checkInitStatus(transport.init(clusterID, addresses, nativePackets));
+            attach(transport);
+        } else {
+            throw new IllegalArgumentException("Unknown binding " + binding);
+        }
     }
 
 
@@ -93,22 +245,140 @@ public final class Client implements AutoCloseable {
     }
 
     Client(final int clusterID, final int maxConcurrency) {
+        this(clusterID, maxConcurrency, maxConcurrency);
+    }
+
+    Client(final int clusterID, final int minConcurrency, final int maxConcurrency) {
         if (clusterID < 0)
             throw new IllegalArgumentException("ClusterID must be positive");
 
-        // Cap the maximum amount of packets
         if (maxConcurrency <= 0)
             throw new IllegalArgumentException("Invalid maxConcurrency");
 
-        if (maxConcurrency > 4096) {
-            this.maxConcurrency = 4096;
-        } else {
-            this.maxConcurrency = maxConcurrency;
-        }
+        if (minConcurrency <= 0 || minConcurrency > maxConcurrency)
+            throw new IllegalArgumentException("Invalid minConcurrency");
+
+        final var packetCache = System.getProperty(PACKET_CACHE_PROPERTY, PACKET_CACHE_NONE);
+        if (!packetCache.equals(PACKET_CACHE_NONE) && !packetCache.equals(PACKET_CACHE_THREAD))
+            throw new IllegalArgumentException("Unknown packet cache " + packetCache);
+
+        final var limiter = System.getProperty(LIMITER_PROPERTY, LIMITER_NONE);
+        if (!limiter.equals(LIMITER_NONE) && !limiter.equals(LIMITER_VEGAS))
+            throw new IllegalArgumentException("Unknown limiter " + limiter);
 
         this.clusterID = clusterID;
-        this.maxConcurrencySemaphore = new Semaphore(maxConcurrency, false);
-        this.packetsLock = new ReentrantLock(false);
+        this.minConcurrency = minConcurrency;
+        this.maxConcurrency = maxConcurrency;
+        this.usePacketCache = packetCache.equals(PACKET_CACHE_THREAD);
+        this.useLimiter = limiter.equals(LIMITER_VEGAS);
+    }
+
+    /**
+     * Submits to {@code transport} from now on, called once right after the constructor, by
+     * tests too.
+     */
+    void attach(final Transport transport) {
+        final var packetPool = new PacketPool(transport, minConcurrency, maxConcurrency,
+                usePacketCache);
+        if (useLimiter)
+            this.limiter = new ConcurrencyLimiter(packetPool, 1, maxConcurrency);
+        this.packetPool = packetPool;
+        this.transport = transport;
+    }
+
+    /**
+     * Initializes an instance of TigerBeetle client backed by an in-process ledger instead of a
+     * TigerBeetle cluster.
+     * <p>
+     * The in-memory ledger implements the same semantics as the TigerBeetle state machine,
+     * including linked events, two-phase transfers and balance limits, but nothing is persisted
+     * nor replicated. It is intended for tests, and for measuring the application's overhead
+     * without a TigerBeetle cluster.
+     *
+     * @param clusterID
+     * @param maxConcurrency
+     *
+     * @throws IllegalArgumentException if {@code clusterID} is negative.
+     * @throws IllegalArgumentException if {@code maxConcurrency} is zero or negative.
+     */
+    public static Client inMemory(final int clusterID, final int maxConcurrency) {
+        final var client = new Client(clusterID, maxConcurrency);
+        client.attach(new InMemoryTransport());
+        return client;
+    }
+
+    /**
+     * Initializes an instance of TigerBeetle client backed by an in-process ledger instead of a
+     * TigerBeetle cluster.
+     *
+     * @see Client#inMemory(int, int)
+     * @param clusterID
+     *
+     * @throws IllegalArgumentException if {@code clusterID} is negative.
+     */
+    public static Client inMemory(final int clusterID) {
+        return inMemory(clusterID, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    /**
+     * Initializes an instance of TigerBeetle client that speaks the cluster's wire protocol
+     * directly from Java, instead of going through the native tb_client library.
+     * <p>
+     * It is interchangeable with a client created by the constructor and is intended for
+     * platforms where the native library is not available.
+     *
+     * @param clusterID
+     * @param replicaAddresses
+     * @param maxConcurrency
+     *
+     * @throws InitializationException if an error occurred initializing this client. See
+     *         {@link InitializationException.Status} for more details.
+     *
+     * @throws IllegalArgumentException if {@code clusterID} is negative.
+     * @throws IllegalArgumentException if {@code replicaAddresses} is empty or presented in
+     *         incorrect format.
+     * @throws NullPointerException if {@code replicaAddresses} is null or any element in the array
+     *         is null.
+     * @throws IllegalArgumentException if {@code maxConcurrency} is zero or negative.
+     */
+    public static Client nio(final int clusterID, final String[] replicaAddresses,
+            final int maxConcurrency) {
+        final var client = new Client(clusterID, maxConcurrency);
+        client.attach(new NioTransport(clusterID, joinAddresses(replicaAddresses)));
+        return client;
+    }
+
+    /**
+     * Initializes an instance of TigerBeetle client that speaks the cluster's wire protocol
+     * directly from Java.
+     *
+     * @see Client#nio(int, String[], int)
+     * @param clusterID
+     * @param replicaAddresses
+     *
+     * @throws IllegalArgumentException if {@code clusterID} is negative.
+     * @throws IllegalArgumentException if {@code replicaAddresses} is empty or presented in
+     *         incorrect format.
+     * @throws NullPointerException if {@code replicaAddresses} is null or any element in the array
+     *         is null.
+     */
+    public static Client nio(final int clusterID, final String[] replicaAddresses) {
+        return nio(clusterID, replicaAddresses, DEFAULT_MAX_CONCURRENCY);
+    }
+
+    private static String joinAddresses(final String[] replicaAddresses) {
+        Objects.requireNonNull(replicaAddresses, "Replica addresses cannot be null");
+
+        if (replicaAddresses.length == 0)
+            throw new IllegalArgumentException("Empty replica addresses");
+
+        var joiner = new StringJoiner(",");
+        for (var address : replicaAddresses) {
+            Objects.requireNonNull(address, "Replica address cannot be null");
+            joiner.add(address);
+        }
+
+        return joiner.toString();
     }
 
     /**
@@ -149,6 +419,61 @@ public final class Client implements AutoCloseable {
         return request.getFuture();
     }
 
+    /**
+     * Same as {@link #createAccounts(AccountBatch)}, giving up after {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out may still be applied by the cluster, its reply is discarded, and its batch
+     * is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.AccountBatch batch} containing all accounts to be
+     *        created.
+     * @param timeout how long to wait for the reply.
+     * @throws RequestException with {@link RequestException.Status#DEADLINE_EXCEEDED} if the
+     *         timeout elapsed, refer to {@link com.tigerbeetle.RequestException.Status} for the
+     *         other statuses.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public CreateAccountResultBatch createAccounts(final AccountBatch batch, final Duration timeout)
+            throws RequestException {
+        final var deadline = deadlineOf(timeout);
+        final var request = BlockingRequest.createAccounts(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.waitForResult(deadline);
+    }
+
+    /**
+     * Same as {@link #createAccountsAsync(AccountBatch)}, completing exceptionally after
+     * {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out, or whose future was cancelled, may still be applied by the cluster, its
+     * reply is discarded, and its batch is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.AccountBatch batch} containing all accounts to be
+     *        created.
+     * @param timeout how long to wait for the reply.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed, exceptionally
+     *         with a {@link RequestException} with
+     *         {@link RequestException.Status#DEADLINE_EXCEEDED} if the timeout elapsed.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public CompletableFuture<CreateAccountResultBatch> createAccountsAsync(final AccountBatch batch,
+            final Duration timeout) {
+        final var deadline = deadlineOf(timeout);
+        final var request = AsyncRequest.createAccounts(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.getFuture();
+    }
+
     /**
      * Looks up a batch of accounts.
      *
@@ -182,6 +507,59 @@ public final class Client implements AutoCloseable {
         return request.getFuture();
     }
 
+    /**
+     * Same as {@link #lookupAccounts(IdBatch)}, giving up after {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out may still be applied by the cluster, its reply is discarded, and its batch
+     * is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.IdBatch batch} containing all account ids.
+     * @param timeout how long to wait for the reply.
+     * @throws RequestException with {@link RequestException.Status#DEADLINE_EXCEEDED} if the
+     *         timeout elapsed, refer to {@link com.tigerbeetle.RequestException.Status} for the
+     *         other statuses.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public AccountBatch lookupAccounts(final IdBatch batch, final Duration timeout)
+            throws RequestException {
+        final var deadline = deadlineOf(timeout);
+        final var request = BlockingRequest.lookupAccounts(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.waitForResult(deadline);
+    }
+
+    /**
+     * Same as {@link #lookupAccountsAsync(IdBatch)}, completing exceptionally after
+     * {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out, or whose future was cancelled, may still be applied by the cluster, its
+     * reply is discarded, and its batch is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.IdBatch batch} containing all account ids.
+     * @param timeout how long to wait for the reply.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed, exceptionally
+     *         with a {@link RequestException} with
+     *         {@link RequestException.Status#DEADLINE_EXCEEDED} if the timeout elapsed.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public CompletableFuture<AccountBatch> lookupAccountsAsync(final IdBatch batch,
+            final Duration timeout) {
+        final var deadline = deadlineOf(timeout);
+        final var request = AsyncRequest.lookupAccounts(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.getFuture();
+    }
+
     /**
      * Submits a batch of new transfers to be created.
      *
@@ -219,6 +597,61 @@ public final class Client implements AutoCloseable {
         return request.getFuture();
     }
 
+    /**
+     * Same as {@link #createTransfers(TransferBatch)}, giving up after {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out may still be applied by the cluster, its reply is discarded, and its batch
+     * is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.TransferBatch batch} containing all transfers to be
+     *        created.
+     * @param timeout how long to wait for the reply.
+     * @throws RequestException with {@link RequestException.Status#DEADLINE_EXCEEDED} if the
+     *         timeout elapsed, refer to {@link com.tigerbeetle.RequestException.Status} for the
+     *         other statuses.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public CreateTransferResultBatch createTransfers(final TransferBatch batch,
+            final Duration timeout) throws RequestException {
+        final var deadline = deadlineOf(timeout);
+        final var request = BlockingRequest.createTransfers(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.waitForResult(deadline);
+    }
+
+    /**
+     * Same as {@link #createTransfersAsync(TransferBatch)}, completing exceptionally after
+     * {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out, or whose future was cancelled, may still be applied by the cluster, its
+     * reply is discarded, and its batch is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.TransferBatch batch} containing all transfers to be
+     *        created.
+     * @param timeout how long to wait for the reply.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed, exceptionally
+     *         with a {@link RequestException} with
+     *         {@link RequestException.Status#DEADLINE_EXCEEDED} if the timeout elapsed.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public CompletableFuture<CreateTransferResultBatch> createTransfersAsync(
+            final TransferBatch batch, final Duration timeout) {
+        final var deadline = deadlineOf(timeout);
+        final var request = AsyncRequest.createTransfers(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.getFuture();
+    }
+
 
     /**
      * Looks up a batch of transfers.
@@ -254,106 +687,577 @@ public final class Client implements AutoCloseable {
         return request.getFuture();
     }
 
-    void submit(final Request<?> request) {
-        final long packet = acquirePacket();
-        submit(clientHandle, request, packet);
+    /**
+     * Same as {@link #lookupTransfers(IdBatch)}, giving up after {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out may still be applied by the cluster, its reply is discarded, and its batch
+     * is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.IdBatch batch} containing all transfer ids.
+     * @param timeout how long to wait for the reply.
+     * @throws RequestException with {@link RequestException.Status#DEADLINE_EXCEEDED} if the
+     *         timeout elapsed, refer to {@link com.tigerbeetle.RequestException.Status} for the
+     *         other statuses.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public TransferBatch lookupTransfers(final IdBatch batch, final Duration timeout)
+            throws RequestException {
+        final var deadline = deadlineOf(timeout);
+        final var request = BlockingRequest.lookupTransfers(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.waitForResult(deadline);
+    }
+
+    /**
+     * Same as {@link #lookupTransfersAsync(IdBatch)}, completing exceptionally after
+     * {@code timeout}.
+     * <p>
+     * The timeout covers both the wait for a free packet and the wait for the reply. A request
+     * that timed out, or whose future was cancelled, may still be applied by the cluster, its
+     * reply is discarded, and its batch is still read until then, so it must not be modified.
+     *
+     * @param batch a {@link com.tigerbeetle.IdBatch batch} containing all transfer ids.
+     * @param timeout how long to wait for the reply.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed, exceptionally
+     *         with a {@link RequestException} with
+     *         {@link RequestException.Status#DEADLINE_EXCEEDED} if the timeout elapsed.
+     * @throws IllegalArgumentException if {@code batch} is empty or {@code timeout} is
+     *         negative.
+     * @throws NullPointerException if {@code batch} or {@code timeout} is null.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public CompletableFuture<TransferBatch> lookupTransfersAsync(final IdBatch batch,
+            final Duration timeout) {
+        final var deadline = deadlineOf(timeout);
+        final var request = AsyncRequest.lookupTransfers(this, batch);
+        request.setDeadline(deadline);
+        request.beginRequest();
+        return request.getFuture();
     }
 
-    private long acquirePacket() {
+    /**
+     * Starts a {@link Submission} of several requests, possibly of different operations, to be
+     * submitted to this client at once.
+     *
+     * @return an empty submission.
+     */
+    public Submission newSubmission() {
+        return new Submission(this);
+    }
 
-        // Assure that only the max number of concurrent requests can acquire a packet
-        // It forces other threads to wait until a packet became available
-        // We also assure that the clientHandle will be zeroed only after all permits
-        // have been released
-        final int TIMEOUT = 5;
-        boolean acquired = false;
-        do {
+    /**
+     * Sets a listener to be notified with the {@link RequestTiming timing breakdown} of a sample of
+     * the requests submitted by this client.
+     * <p>
+     * The listener is called from the thread that completes the request, either the caller's
+     * thread or the thread completing the {@link java.util.concurrent.CompletableFuture}, so it
+     * must be cheap and must not throw.
+     *
+     * @param listener the listener, or {@code null} to stop collecting timings.
+     * @param samplingRate the fraction of requests to be sampled, from {@code 0.0} (exclusive) to
+     *        {@code 1.0} (every request).
+     * @throws IllegalArgumentException if {@code samplingRate} is not within {@code (0.0, 1.0]}.
+     */
+    public void setRequestTimingListener(final Consumer<RequestTiming> listener,
+            final double samplingRate) {
+        if (!(samplingRate > 0.0 && samplingRate <= 1.0))
+            throw new IllegalArgumentException("Sampling rate must be within (0.0, 1.0]");
 
-            if (clientHandle == 0)
-                throw new IllegalStateException("Client is closed");
+        this.timingSamplingRate = samplingRate;
+        this.timingListener = listener;
+    }
 
-            try {
-                acquired = maxConcurrencySemaphore.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS);
-            } catch (InterruptedException interruptedException) {
+    /**
+     * Sets a {@link TrafficCapture} recording every request submitted by this client, with its
+     * reply, to be replayed later by a {@link TrafficReplay}.
+     * <p>
+     * Requests already in flight are not captured. The capture is not owned by the client and
+     * must be closed by the caller, after removing it from the client.
+     *
+     * @param capture the capture, or {@code null} to stop capturing.
+     */
+    public void setTrafficCapture(final TrafficCapture capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * Reserves packets for the requests of {@code priority} and the higher priorities, so that
+     * they don't wait behind the requests of the lower priorities when those hold most of the
+     * packets.
+     * <p>
+     * The lower priorities leave the reserved packets free, whether or not they are used, and
+     * share the remaining ones. Released packets go to the waiting requests of the highest
+     * priority first, regardless of the reservations. No packet is reserved by default.
+     *
+     * @param priority either {@link RequestPriority#INTERACTIVE} or
+     *        {@link RequestPriority#NORMAL}.
+     * @param packets the number of packets reserved, zero to cancel the reservation.
+     * @throws NullPointerException if {@code priority} is null.
+     * @throws IllegalArgumentException if {@code priority} is {@link RequestPriority#BULK},
+     *         {@code packets} is negative, or the packets reserved for all priorities would
+     *         leave none to {@link RequestPriority#BULK} requests.
+     * @throws IllegalStateException if this client is closed.
+     */
+    public void setReservedPackets(final RequestPriority priority, final int packets) {
+        Objects.requireNonNull(priority, "Priority cannot be null");
+        if (priority == RequestPriority.BULK)
+            throw new IllegalArgumentException("Cannot reserve packets for BULK requests");
+        if (packets < 0 || packets >= maxConcurrency)
+            throw new IllegalArgumentException("Invalid number of packets");
 
-                // This exception should never exposed by the API to be handled by the user
-                throw new AssertionError(interruptedException,
-                        "Unexpected thread interruption on acquiring a packet.");
+        final var packetPool = getPacketPool();
+        synchronized (this) {
+            var total = packets;
+            for (final var other : RequestPriority.values()) {
+                if (other != priority)
+                    total += reservedPackets[other.ordinal()];
             }
+            if (total >= maxConcurrency)
+                throw new IllegalArgumentException("Too many packets reserved");
+
+            reservedPackets[priority.ordinal()] = packets;
+            packetPool.setReserved(priority, packets);
+        }
+    }
+
+    /**
+     * Gets the number of packets reserved for {@code priority}.
+     *
+     * @see #setReservedPackets(RequestPriority, int)
+     * @throws NullPointerException if {@code priority} is null.
+     */
+    public synchronized int getReservedPackets(final RequestPriority priority) {
+        Objects.requireNonNull(priority, "Priority cannot be null");
+        return reservedPackets[priority.ordinal()];
+    }
+
+    /**
+     * Sets the number of accounts or transfers from which a request creating them is
+     * {@link RequestPriority#BULK}, {@link #DEFAULT_BULK_THRESHOLD} by default.
+     *
+     * @throws IllegalArgumentException if {@code bulkThreshold} is not positive.
+     */
+    public void setBulkThreshold(final int bulkThreshold) {
+        if (bulkThreshold <= 0)
+            throw new IllegalArgumentException("Bulk threshold must be positive");
+
+        this.bulkThreshold = bulkThreshold;
+    }
+
+    /**
+     * Gets a snapshot of the counters of the pool of packets held by requests in flight.
+     *
+     * @return the current {@link PacketPoolStats}.
+     */
+    public PacketPoolStats getPacketPoolStats() {
+        return packetPool.getStats();
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Gets the number of packets that can be leased right away, or zero if closed.
+     */
+    int getAvailablePackets() {
+        final var packetPool = this.packetPool;
+        return packetPool == null || transport == null ? 0 : packetPool.getAvailable();
+    }
+
+    void onRequestTiming(final RequestTiming timing) {
+        final var listener = timingListener;
+        if (listener != null)
+            listener.accept(timing);
+    }
 
-        } while (!acquired);
+    void submit(final Request<?> request) {
+        track(request);
+        final var timing = sampleTiming(request);
 
-        packetsLock.lock();
+        final var acquireEvent = RequestEvents.beginPacketAcquire();
+        final long packet;
         try {
-            return popPacket(packetsHead, packetsTail);
+            packet = request.hasDeadline()
+                    ? getPacketPool().acquire(priorityOf(request), true, request.getDeadline())
+                    : acquirePacket(priorityOf(request));
+        } catch (IllegalStateException closed) {
+            rejected(timing);
+
+            // Already failed if aborted while waiting for a packet
+            if (reject(request))
+                throw closed;
+            return;
+        }
+        if (packet == 0) {
+            if (acquireEvent != null)
+                acquireEvent.commit(request, RequestException.Status.DEADLINE_EXCEEDED);
+            if (complete(request))
+                request.expire();
+            return;
+        }
+        if (acquireEvent != null)
+            acquireEvent.commit(request, RequestException.Status.OK);
+
+        if (timing != null)
+            timing.packetAcquired();
+
+        capture(request);
+        limit(request);
+
+        final var submitEvent = RequestEvents.beginSubmit();
+        final var submitLock = transportLock.readLock();
+        submitLock.lock();
+        try {
+            final var transport = this.transport;
+            if (transport == null) {
+
+                // Already failed if aborted after the close timeout
+                returnPacket(packet);
+                rejected(timing);
+                if (reject(request))
+                    throw new IllegalStateException("Client is closed");
+                return;
+            }
+
+            request.setPacket(packet);
+            request.beginReply();
+            transport.submit(request, packet);
         } finally {
-            packetsLock.unlock();
+            submitLock.unlock();
         }
+        if (submitEvent != null)
+            submitEvent.commit(request, RequestException.Status.OK);
+
+        if (timing != null)
+            timing.submitted();
     }
 
-    void returnPacket(final long packet) {
+    /**
+     * Submits the first {@code count} requests at once, {@code count} must not exceed
+     * {@link #getMaxConcurrency()} since all the permits are acquired together.
+     */
+    void submit(final Request<?>[] requests, final int count) {
+        assertTrue(count > 0 && count <= maxConcurrency, "Invalid count: count=%d", count);
 
-        // It is not expected to return a packet with a disconnected client,
-        // since we wait for all pending requests before zeroing the handle.
-        // This condition allows running tests without initializing the client
+        for (int i = 0; i < count; i++) {
+            try {
+                track(requests[i]);
+            } catch (IllegalStateException closed) {
+                for (int j = 0; j < i; j++) {
+                    reject(requests[j]);
+                }
+                throw closed;
+            }
+        }
 
-        if (clientHandle != 0) {
+        final var timings = new RequestTiming[count];
+        for (int i = 0; i < count; i++) {
+            timings[i] = sampleTiming(requests[i]);
+        }
 
-            assertTrue(packet != 0L, "Packet cannot be null.");
+        final var acquireEvent = RequestEvents.beginPacketAcquire();
+        // All the packets are leased together, with the lowest priority of the requests
+        var priority = RequestPriority.INTERACTIVE;
+        for (int i = 0; i < count; i++) {
+            final var requestPriority = priorityOf(requests[i]);
+            if (requestPriority.compareTo(priority) > 0)
+                priority = requestPriority;
+        }
 
-            packetsLock.lock();
-            try {
-                pushPacket(packetsHead, packetsTail, packet);
-            } finally {
-                packetsLock.unlock();
+        final var packets = new long[count];
+        try {
+            acquirePackets(packets, count, priority);
+        } catch (IllegalStateException closed) {
+            var rejected = false;
+            for (int i = 0; i < count; i++) {
+                rejected(timings[i]);
+                rejected |= reject(requests[i]);
             }
+            if (rejected)
+                throw closed;
+            return;
+        }
+        if (acquireEvent != null)
+            acquireEvent.commit(requests, count, RequestException.Status.OK);
+
+        for (final var timing : timings) {
+            if (timing != null)
+                timing.packetAcquired();
+        }
+
+        for (int i = 0; i < count; i++) {
+            capture(requests[i]);
+            limit(requests[i]);
         }
 
-        // Releasing the packet to be used by another thread
-        maxConcurrencySemaphore.release();
+        final var submitEvent = RequestEvents.beginSubmit();
+        final var submitLock = transportLock.readLock();
+        submitLock.lock();
+        try {
+            final var transport = this.transport;
+            if (transport == null) {
+
+                // Already failed if aborted after the close timeout
+                var rejected = false;
+                for (int i = 0; i < count; i++) {
+                    returnPacket(packets[i]);
+                    rejected(timings[i]);
+                    rejected |= reject(requests[i]);
+                }
+                if (rejected)
+                    throw new IllegalStateException("Client is closed");
+                return;
+            }
+
+            for (int i = 0; i < count; i++) {
+                requests[i].setPacket(packets[i]);
+                requests[i].beginReply();
+            }
+            transport.submit(requests, packets, count);
+        } finally {
+            submitLock.unlock();
+        }
+        if (submitEvent != null)
+            submitEvent.commit(requests, count, RequestException.Status.OK);
+
+        for (final var timing : timings) {
+            if (timing != null)
+                timing.submitted();
+        }
+    }
+
+    private void track(final Request<?> request) {
+        pending.add(request);
+
+        // Checked after adding, so that closeAsync either sees the request or rejects it
+        if (closing) {
+            reject(request);
+            throw new IllegalStateException("Client is closed");
+        }
     }
 
     /**
-     * Closes the client, freeing all resources.
-     * <p>
-     * This method causes the current thread to wait for all ongoing requests to finish.
+     * Stops tracking a request that was not submitted.
      *
-     * @see java.lang.AutoCloseable#close()
+     * @return false if the request was already aborted.
      */
-    @Override
-    public void close() throws Exception {
+    private boolean reject(final Request<?> request) {
+        final var removed = pending.remove(request);
+        if (closing)
+            signalDrained();
+        return removed;
+    }
 
-        if (clientHandle != 0) {
+    /**
+     * Stops tracking a completed request.
+     *
+     * @return false if the request was already aborted, its result must then be discarded.
+     */
+    boolean complete(final Request<?> request) {
+
+        // Only aborted while closing, requests are otherwise untracked in tests without a
+        // transport
+        if (!pending.remove(request))
+            return !closing;
 
-            // Acquire all permits, forcing to wait for any processing thread to release
-            // Note that "acquireUninterruptibly(maxConcurrency)" atomically acquires the permits
-            // all at once, causing this operation to take longer.
-            for (int i = 0; i < maxConcurrency; i++) {
-                this.maxConcurrencySemaphore.acquireUninterruptibly();
+        if (closing) {
+            drained.incrementAndGet();
+            signalDrained();
+        }
+        return true;
+    }
+
+    private void signalDrained() {
+        if (pending.isEmpty()) {
+            synchronized (pending) {
+                pending.notifyAll();
             }
+        }
+    }
 
-            // Deinit and signalize that this client is closed by setting the handles to 0
-            packetsLock.lock();
-            try {
+    /**
+     * Reports the timing of a request failing because the client is closed, the caller observes
+     * the failure right away.
+     */
+    private static void rejected(final RequestTiming timing) {
+        if (timing != null) {
+            timing.failed(RequestException.Status.CLIENT_CLOSED);
+            timing.delivered();
+        }
+    }
 
-                clientDeinit(clientHandle);
+    private void capture(final Request<?> request) {
+        final var capture = this.capture;
+        if (capture != null)
+            request.setCapture(capture, capture.onRequest(request));
+    }
 
-                clientHandle = 0;
-                packetsHead = 0;
-                packetsTail = 0;
-            } finally {
-                packetsLock.unlock();
+    private void limit(final Request<?> request) {
+        final var limiter = this.limiter;
+        if (limiter != null) {
+            limiter.onSubmit();
+            request.setLimiter(limiter, System.nanoTime());
+        }
+    }
+
+    private RequestTiming sampleTiming(final Request<?> request) {
+        if (timingListener == null)
+            return null;
+
+        final var samplingRate = timingSamplingRate;
+        if (samplingRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= samplingRate)
+            return null;
+
+        final var timing = new RequestTiming(this, request.getOperation(),
+                request.getRequestLen(), System.nanoTime());
+        request.setTiming(timing);
+        return timing;
+    }
+
+    private static long deadlineOf(final Duration timeout) {
+        Objects.requireNonNull(timeout, "Timeout cannot be null");
+        if (timeout.isNegative())
+            throw new IllegalArgumentException("Timeout cannot be negative");
+
+        final var nanos = timeout.compareTo(MAX_TIMEOUT) > 0 ? MAX_TIMEOUT.toNanos()
+                : timeout.toNanos();
+        return System.nanoTime() + nanos;
+    }
+
+    private RequestPriority priorityOf(final Request<?> request) {
+        return RequestPriority.of(request.getOperation(), request.getRequestLen(),
+                bulkThreshold);
+    }
+
+    long acquirePacket(final RequestPriority priority) {
+        return getPacketPool().acquire(priority);
+    }
+
+    private void acquirePackets(final long[] packets, final int count,
+            final RequestPriority priority) {
+        getPacketPool().acquire(packets, count, priority);
+    }
+
+    private PacketPool getPacketPool() {
+        final var packetPool = this.packetPool;
+        if (packetPool == null)
+            throw new IllegalStateException("Client is closed");
+
+        return packetPool;
+    }
+
+    void returnPacket(final long packet) {
+
+        // It is not expected to return a packet with a closed client,
+        // since we wait for all pending requests before closing the transport.
+        // This condition allows running tests without initializing the client
+
+        final var packetPool = this.packetPool;
+        if (packetPool != null) {
+
+            assertTrue(packet != 0L, "Packet cannot be null.");
+            packetPool.release(packet);
+        }
+    }
+
+    /**
+     * Closes the client without blocking, freeing all resources.
+     * <p>
+     * New requests are rejected with an {@link IllegalStateException} right away, while the
+     * pending ones, either waiting for a packet or in flight, keep going until {@code timeout}.
+     * Those still pending then fail with {@link RequestException.Status#CLIENT_CLOSED}, even if
+     * the cluster applies them later.
+     * <p>
+     * Calling this method again, or {@link #close()}, returns or waits for the same future.
+     *
+     * @param timeout how long to wait for the pending requests.
+     * @return a {@link java.util.concurrent.CompletableFuture} completed once all resources are
+     *         freed, with the number of requests drained and aborted.
+     * @throws IllegalArgumentException if {@code timeout} is negative.
+     * @throws NullPointerException if {@code timeout} is null.
+     */
+    public CompletableFuture<CloseResult> closeAsync(final Duration timeout) {
+        final var deadline = deadlineOf(timeout);
+
+        synchronized (this) {
+            if (closeFuture == null) {
+                final var future = new CompletableFuture<CloseResult>();
+                closeFuture = future;
+                closing = true;
+
+                final var thread = new Thread(() -> {
+                    try {
+                        future.complete(drain(deadline));
+                    } catch (Throwable any) {
+                        future.completeExceptionally(any);
+                    }
+                }, "tigerbeetle-close");
+                thread.setDaemon(true);
+                thread.start();
             }
+            return closeFuture;
         }
     }
 
-    private native void submit(long clientHandle, Request<?> request, long packet);
+    private CloseResult drain(final long deadline) throws InterruptedException {
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                final var remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+            }
+        }
+
+        // Claimed one by one, racing with their completions
+        var aborted = 0;
+        for (final var request : pending) {
+            if (pending.remove(request)) {
+                request.abort();
+                aborted += 1;
+            }
+        }
 
-    private native int clientInit(int clusterID, String addresses, int maxConcurrency);
+        final var transport = this.transport;
+        if (transport != null) {
+            if (aborted == 0) {
+                packetPool.close();
+            } else {
+                // The aborted requests may never release their packets
+                packetPool.abandon();
+            }
 
-    private native void clientDeinit(long clientHandle);
+            // Signalize that this client is closed before releasing the transport, once the
+            // submissions in progress are done, the later ones then see it closed
+            final var closeLock = transportLock.writeLock();
+            closeLock.lock();
+            try {
+                this.transport = null;
+            } finally {
+                closeLock.unlock();
+            }
+            transport.close();
+        }
 
-    private native long popPacket(long packetHead, long packetTail);
+        return new CloseResult(drained.get(), aborted);
+    }
 
-    private native void pushPacket(long packetHead, long packetTail, long packet);
+    /**
+     * Closes the client, freeing all resources.
+     * <p>
+     * This method causes the current thread to wait for all ongoing requests to finish.
+     *
+     * @see java.lang.AutoCloseable#close()
+     * @see #closeAsync(Duration)
+     */
+    @Override
+    public void close() throws Exception {
+        closeAsync(MAX_TIMEOUT).join();
+    }
 }
@@ -0,0 +1,384 @@
+package com.tigerbeetle;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * A fixed set of {@link Client clients} connected to the same cluster, sharing the load of the
+ * requests submitted to the pool.
+ * <p>
+ * Each client completes its requests on a single IO thread, so an application submitting from
+ * many threads may be bound by that thread before the cluster is. Spreading the requests over
+ * several clients spreads that work over as many threads.
+ * <p>
+ * This class is thread-safe. Requests submitted to different clients are not ordered between
+ * them, so requests that depend on each other must be submitted one after the other, or to the
+ * same client with {@link Routing#THREAD_AFFINITY}.
+ */
+public final class ClientPool implements AutoCloseable {
+
+    /**
+     * How requests are assigned to the clients of a pool.
+     */
+    public enum Routing {
+
+        /**
+         * To the client with the fewest requests in flight from this pool.
+         */
+        LEAST_IN_FLIGHT,
+
+        /**
+         * To each client in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * To the same client for all requests submitted by the same thread.
+         */
+        THREAD_AFFINITY,
+    }
+
+    private final Client[] clients;
+    private final Routing routing;
+    private final AtomicIntegerArray inFlight;
+    private final AtomicInteger next;
+
+    /**
+     * Initializes a pool of {@code size} clients connected to the same cluster.
+     *
+     * @see Client#Client(int, String[], int)
+     * @param clusterID
+     * @param replicaAddresses
+     * @param size the number of clients.
+     * @param maxConcurrency the maximum number of requests in flight of each client.
+     * @param routing how requests are assigned to the clients.
+     *
+     * @throws InitializationException if an error occurred initializing a client. See
+     *         {@link InitializationException.Status} for more details.
+     *
+     * @throws IllegalArgumentException if {@code clusterID} is negative.
+     * @throws IllegalArgumentException if {@code replicaAddresses} is empty or presented in
+     *         incorrect format.
+     * @throws NullPointerException if {@code replicaAddresses} is null or any element in the array
+     *         is null.
+     * @throws IllegalArgumentException if {@code size} or {@code maxConcurrency} is zero or
+     *         negative.
+     * @throws NullPointerException if {@code routing} is null.
+     */
+    public ClientPool(final int clusterID, final String[] replicaAddresses, final int size,
+            final int maxConcurrency, final Routing routing) {
+        this(openClients(clusterID, replicaAddresses, size, maxConcurrency), routing);
+    }
+
+    ClientPool(final Client[] clients, final Routing routing) {
+        Objects.requireNonNull(routing, "Routing cannot be null");
+        if (clients.length == 0)
+            throw new IllegalArgumentException("Invalid size");
+
+        this.clients = clients;
+        this.routing = routing;
+        this.inFlight = new AtomicIntegerArray(clients.length);
+        this.next = new AtomicInteger();
+    }
+
+    private static Client[] openClients(final int clusterID, final String[] replicaAddresses,
+            final int size, final int maxConcurrency) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid size");
+
+        final var clients = new Client[size];
+        try {
+            for (int i = 0; i < size; i++) {
+                clients[i] = new Client(clusterID, replicaAddresses, maxConcurrency);
+            }
+        } catch (RuntimeException exception) {
+            for (final var client : clients) {
+                if (client == null)
+                    break;
+
+                try {
+                    client.close();
+                } catch (Exception closeException) {
+                    exception.addSuppressed(closeException);
+                }
+            }
+            throw exception;
+        }
+
+        return clients;
+    }
+
+    /**
+     * Gets the number of clients in this pool.
+     */
+    public int getSize() {
+        return clients.length;
+    }
+
+    /**
+     * Submits a batch of new accounts to be created.
+     *
+     * @see Client#createAccounts(AccountBatch)
+     */
+    public CreateAccountResultBatch createAccounts(final AccountBatch batch)
+            throws RequestException {
+        final var index = select();
+        try {
+            return clients[index].createAccounts(batch);
+        } finally {
+            inFlight.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Submits a batch of new accounts to be created asynchronously.
+     *
+     * @see Client#createAccountsAsync(AccountBatch)
+     */
+    public CompletableFuture<CreateAccountResultBatch> createAccountsAsync(
+            final AccountBatch batch) {
+        final var index = select();
+        try {
+            return track(index, clients[index].createAccountsAsync(batch));
+        } catch (RuntimeException exception) {
+            inFlight.decrementAndGet(index);
+            throw exception;
+        }
+    }
+
+    /**
+     * Looks up a batch of accounts.
+     *
+     * @see Client#lookupAccounts(IdBatch)
+     */
+    public AccountBatch lookupAccounts(final IdBatch batch) throws RequestException {
+        final var index = select();
+        try {
+            return clients[index].lookupAccounts(batch);
+        } finally {
+            inFlight.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Looks up a batch of accounts asynchronously.
+     *
+     * @see Client#lookupAccountsAsync(IdBatch)
+     */
+    public CompletableFuture<AccountBatch> lookupAccountsAsync(final IdBatch batch) {
+        final var index = select();
+        try {
+            return track(index, clients[index].lookupAccountsAsync(batch));
+        } catch (RuntimeException exception) {
+            inFlight.decrementAndGet(index);
+            throw exception;
+        }
+    }
+
+    /**
+     * Submits a batch of new transfers to be created.
+     *
+     * @see Client#createTransfers(TransferBatch)
+     */
+    public CreateTransferResultBatch createTransfers(final TransferBatch batch)
+            throws RequestException {
+        final var index = select();
+        try {
+            return clients[index].createTransfers(batch);
+        } finally {
+            inFlight.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Submits a batch of new transfers to be created asynchronously.
+     *
+     * @see Client#createTransfersAsync(TransferBatch)
+     */
+    public CompletableFuture<CreateTransferResultBatch> createTransfersAsync(
+            final TransferBatch batch) {
+        final var index = select();
+        try {
+            return track(index, clients[index].createTransfersAsync(batch));
+        } catch (RuntimeException exception) {
+            inFlight.decrementAndGet(index);
+            throw exception;
+        }
+    }
+
+    /**
+     * Looks up a batch of transfers.
+     *
+     * @see Client#lookupTransfers(IdBatch)
+     */
+    public TransferBatch lookupTransfers(final IdBatch batch) throws RequestException {
+        final var index = select();
+        try {
+            return clients[index].lookupTransfers(batch);
+        } finally {
+            inFlight.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Looks up a batch of transfers asynchronously.
+     *
+     * @see Client#lookupTransfersAsync(IdBatch)
+     */
+    public CompletableFuture<TransferBatch> lookupTransfersAsync(final IdBatch batch) {
+        final var index = select();
+        try {
+            return track(index, clients[index].lookupTransfersAsync(batch));
+        } catch (RuntimeException exception) {
+            inFlight.decrementAndGet(index);
+            throw exception;
+        }
+    }
+
+    /**
+     * Sets a listener on every client of this pool.
+     *
+     * @see Client#setRequestTimingListener(Consumer, double)
+     */
+    public void setRequestTimingListener(final Consumer<RequestTiming> listener,
+            final double samplingRate) {
+        for (final var client : clients) {
+            client.setRequestTimingListener(listener, samplingRate);
+        }
+    }
+
+    /**
+     * Gets the sum of the packet pool counters of every client of this pool.
+     *
+     * @return the aggregated {@link PacketPoolStats}.
+     */
+    public PacketPoolStats getPacketPoolStats() {
+        int size = 0;
+        int inUse = 0;
+        int cached = 0;
+        int minSize = 0;
+        int maxSize = 0;
+        int limit = 0;
+        long growCount = 0;
+        long shrinkCount = 0;
+        long acquireWaitCount = 0;
+        long acquireWaitNanos = 0;
+
+        for (final var client : clients) {
+            final var stats = client.getPacketPoolStats();
+            size += stats.getSize();
+            inUse += stats.getInUse();
+            cached += stats.getCached();
+            minSize += stats.getMinSize();
+            maxSize += stats.getMaxSize();
+            limit += stats.getLimit();
+            growCount += stats.getGrowCount();
+            shrinkCount += stats.getShrinkCount();
+            acquireWaitCount += stats.getAcquireWaitCount();
+            acquireWaitNanos += stats.getAcquireWaitNanos();
+        }
+
+        return new PacketPoolStats(size, inUse, cached, minSize, maxSize, limit, growCount,
+                shrinkCount, acquireWaitCount, acquireWaitNanos);
+    }
+
+    /**
+     * Gets the number of requests in flight submitted through this pool to each client.
+     *
+     * @return an array indexed by client.
+     */
+    public int[] getInFlight() {
+        final var counts = new int[clients.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = inFlight.get(i);
+        }
+        return counts;
+    }
+
+    /**
+     * Closes every client of this pool, waiting for all ongoing requests to finish.
+     * <p>
+     * All clients are closed even if some of them fail to, the first failure is thrown with the
+     * others suppressed.
+     *
+     * @see Client#close()
+     */
+    @Override
+    public void close() {
+        RuntimeException failure = null;
+        for (final var client : clients) {
+            try {
+                client.close();
+            } catch (RuntimeException exception) {
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            } catch (Exception exception) {
+                // Declared by Client.close(), which only throws unchecked exceptions
+                throw new AssertionError(exception, "Unexpected exception on closing a client.");
+            }
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Picks the client for the next request and counts it as in flight, the caller must
+     * decrement it once the request completes.
+     */
+    int select() {
+        final int index;
+        switch (routing) {
+            case LEAST_IN_FLIGHT:
+                index = leastInFlight();
+                break;
+            case ROUND_ROBIN:
+                index = Math.floorMod(next.getAndIncrement(), clients.length);
+                break;
+            case THREAD_AFFINITY:
+                index = threadAffinity();
+                break;
+            default:
+                throw new AssertionError("Unexpected routing: %s", routing);
+        }
+
+        inFlight.incrementAndGet(index);
+        return index;
+    }
+
+    private int leastInFlight() {
+
+        // Starts from a rotating client, so that idle clients share the load on ties
+        final var start = Math.floorMod(next.getAndIncrement(), clients.length);
+
+        var index = start;
+        var min = inFlight.get(start);
+        for (int i = 1; i < clients.length && min > 0; i++) {
+            final var candidate = (start + i) % clients.length;
+            final var count = inFlight.get(candidate);
+            if (count < min) {
+                index = candidate;
+                min = count;
+            }
+        }
+        return index;
+    }
+
+    private int threadAffinity() {
+
+        // Thread ids are sequential, mixes them so that pools of any size are evenly used
+        final var hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) (hash >>> 32), clients.length);
+    }
+
+    private <T> CompletableFuture<T> track(final int index, final CompletableFuture<T> future) {
+        future.whenComplete((result, throwable) -> inFlight.decrementAndGet(index));
+        return future;
+    }
+}
@@ -0,0 +1,38 @@
+package com.tigerbeetle;
+
+/**
+ * The outcome of closing a {@link Client} with {@link Client#closeAsync(java.time.Duration)}.
+ * <p>
+ * Requests still pending when the client started closing are either drained, completing as
+ * usual, or aborted once the timeout elapsed, failing with
+ * {@link RequestException.Status#CLIENT_CLOSED}.
+ */
+public final class CloseResult {
+
+    private final int drained;
+    private final int aborted;
+
+    CloseResult(final int drained, final int aborted) {
+        this.drained = drained;
+        this.aborted = aborted;
+    }
+
+    /**
+     * Gets the number of requests completed while closing, successfully or not.
+     */
+    public int getDrained() {
+        return drained;
+    }
+
+    /**
+     * Gets the number of requests failed because they were still pending after the timeout.
+     */
+    public int getAborted() {
+        return aborted;
+    }
+
+    @Override
+    public String toString() {
+        return "CloseResult{drained=" + drained + ", aborted=" + aborted + "}";
+    }
+}
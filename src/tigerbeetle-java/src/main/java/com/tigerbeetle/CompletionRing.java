@@ -0,0 +1,206 @@
+package com.tigerbeetle;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Off-heap ring buffer where the native side writes completions, drained by a Java poller thread.
+ */
+abstract class CompletionRing {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Replaces the per-reply JNI upcall (attaching the thread, allocating a direct ByteBuffer,
+     * calling Request.endRequest and deleting a global reference) with a single-producer,
+     * single-consumer ring shared with the native side, see CompletionRing in client.zig.
+     *
+     * Layout, in native byte order:
+     *
+     *   head: u64 @0            bytes published by the tb_client thread
+     *   tail: u64 @64           bytes consumed by the poller thread
+     *   waiting: u32 @128       set by the poller while sleeping
+     *   signal: u32 @132        futex word, incremented to wake the poller
+     *   capacity: u64 @136      size of the data area, a power of two
+     *   data @192
+     *
+     * Each record is a 16-byte header followed by the result, aligned to 16 bytes:
+     *
+     *   length: u32 @0, flags: u8 @4, operation: u8 @5, status: u8 @6, packet: u64 @8
+     *
+     * A record never wraps around, the native side skips the end of the data area with a
+     * padding record instead.
+     *
+     * The result is only valid during the native callback, so it is copied into the ring, and
+     * copied again by Request.endRequest. The capacity holds at least two of the largest replies.
+     *
+     * The poller spins for a while when the ring is empty, then sleeps until woken up by the
+     * native side, so an idle client does not burn a core.
+     *
+     */
+    // @formatter:on
+
+    interface Struct {
+        int Head = 0;
+        int Tail = 64;
+        int Waiting = 128;
+        int Signal = 132;
+        int Capacity = 136;
+        int Data = 192;
+    }
+
+    interface Record {
+        int Length = 0;
+        int Flags = 4;
+        int Operation = 5;
+        int Status = 6;
+        int Packet = 8;
+
+        int HEADER_SIZE = 16;
+        int ALIGNMENT = 16;
+
+        byte FLAG_RESULT = 1 << 0;
+        byte FLAG_PADDING = 1 << 1;
+    }
+
+    static final int CAPACITY = 4 * 1024 * 1024;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int SPIN_LIMIT = 1_000;
+    private static final long WAIT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ByteBuffer buffer;
+    private final long mask;
+    private final ConcurrentHashMap<Long, Request<?>> requests;
+    private final Thread poller;
+    private volatile boolean closed;
+
+    CompletionRing(final int capacity) {
+        assertTrue(Integer.bitCount(capacity) == 1, "Capacity must be a power of two");
+
+        // Aligned to a cache line, so head and tail do not share one
+        this.buffer = ByteBuffer.allocateDirect(Struct.Data + capacity + 64).alignedSlice(64)
+                .order(ByteOrder.nativeOrder());
+        this.buffer.putLong(Struct.Capacity, capacity);
+        this.mask = capacity - 1;
+        this.requests = new ConcurrentHashMap<>();
+
+        this.poller = new Thread(this::poll, "tigerbeetle-completion");
+        this.poller.setDaemon(true);
+    }
+
+    /**
+     * The shared memory, passed to the native side.
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Blocks until the native side publishes a completion, or the timeout elapses.
+     */
+    abstract void await(long timeoutNanos);
+
+    /**
+     * Wakes the poller if it is blocked in {@link #await}.
+     */
+    abstract void wake();
+
+    void start() {
+        poller.start();
+    }
+
+    /**
+     * Keeps the request reachable until its completion is polled, must be called before
+     * submitting it.
+     */
+    void register(final long packet, final Request<?> request) {
+        final var previous = requests.put(packet, request);
+        assertTrue(previous == null, "Packet already in use: packet=%d", packet);
+    }
+
+    /**
+     * Stops the poller once all published completions are drained, must be called after the
+     * native client is closed.
+     */
+    void close() {
+        closed = true;
+        wake();
+
+        try {
+            poller.join();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on closing the completion ring.");
+        }
+    }
+
+    private void poll() {
+        long tail = 0;
+        int spins = 0;
+
+        while (true) {
+            final var head = (long) LONGS.getAcquire(buffer, Struct.Head);
+
+            if (head == tail) {
+                if (closed)
+                    break;
+
+                if (spins < SPIN_LIMIT) {
+                    spins += 1;
+                    Thread.onSpinWait();
+                } else {
+                    await(WAIT_TIMEOUT);
+                    spins = 0;
+                }
+                continue;
+            }
+
+            spins = 0;
+            while (tail != head) {
+                final var offset = Struct.Data + (int) (tail & mask);
+                final var length = buffer.getInt(offset + Record.Length);
+                final var flags = buffer.get(offset + Record.Flags);
+
+                if ((flags & Record.FLAG_PADDING) == 0) {
+                    complete(offset, length, flags);
+                }
+
+                // Releases the space as soon as possible, the producer may be waiting for it
+                tail += align(Record.HEADER_SIZE + length);
+                LONGS.setRelease(buffer, Struct.Tail, tail);
+            }
+        }
+    }
+
+    private void complete(final int offset, final int length, final byte flags) {
+        final var packet = buffer.getLong(offset + Record.Packet);
+        final var operation = buffer.get(offset + Record.Operation);
+        final var status = buffer.get(offset + Record.Status);
+
+        final var request = requests.remove(packet);
+        assertTrue(request != null, "Unexpected packet completed: packet=%d", packet);
+
+        ByteBuffer result = null;
+        if ((flags & Record.FLAG_RESULT) != 0) {
+            final var start = offset + Record.HEADER_SIZE;
+            result = buffer.duplicate();
+            result.limit(start + length).position(start);
+            result = result.slice();
+        }
+
+        request.endRequest(operation, result, packet, status);
+    }
+
+    private static long align(final long size) {
+        return (size + Record.ALIGNMENT - 1) & -Record.ALIGNMENT;
+    }
+}
@@ -0,0 +1,136 @@
+package com.tigerbeetle;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the number of requests a {@link PacketPool} lets in flight from their round trips,
+ * in the manner of TCP Vegas.
+ * <p>
+ * This class is thread-safe.
+ */
+final class ConcurrencyLimiter {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * The baseline is the shortest round trip observed, the one of a request that did not
+     * queue anywhere. Round trips depend on the operation and on the number of events, so a
+     * baseline is kept per operation and per size class, the events rounded down to a power of
+     * two, and a round trip is only compared to the baseline of its own class. With the limit
+     * L and a round trip R, the number of requests queued beyond what the cluster processes at
+     * once is estimated as
+     *
+     *   queue = L * (1 - baseline / R)
+     *
+     * The limit grows by one while the queue is below alpha, and shrinks by one once it is
+     * above beta, both growing with log10(L) as larger limits tolerate more jitter. It is not
+     * raised while less than half of it is in use, since the round trips say nothing about a
+     * larger limit then.
+     *
+     * A baseline is forgotten after PROBE_SAMPLES samples of its class or PROBE_NANOS since it
+     * was set, whichever comes first, and starts again from the next round trip. So that it
+     * follows the cluster within a second when it gets permanently slower, for instance with a
+     * larger ledger, even for a class sampled rarely.
+     *
+     * The pool is updated under the limiter's lock, the pool never calls the limiter.
+     *
+     * Only successful requests are sampled. The other statuses are rejected by the client
+     * before anything is queued, and say nothing about the load.
+     *
+     */
+    // @formatter:on
+
+    static final int PROBE_SAMPLES = 100;
+    static final long PROBE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final class Baseline {
+        long nanos;
+        long sinceNanos;
+        int samples;
+    }
+
+    private final PacketPool pool;
+    private final int minLimit;
+    private final int maxLimit;
+
+    // Guarded by this
+    private int limit;
+    private int inFlight;
+    private final HashMap<Integer, Baseline> baselines = new HashMap<>();
+
+    ConcurrencyLimiter(final PacketPool pool, final int minLimit, final int maxLimit) {
+        this.pool = pool;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized long getBaselineNanos(final byte operation, final int events) {
+        final var baseline = baselines.get(classOf(operation, events));
+        return baseline == null ? 0 : baseline.nanos;
+    }
+
+    private static int classOf(final byte operation, final int events) {
+        final var size = 32 - Integer.numberOfLeadingZeros(Math.max(1, events));
+        return (operation & 0xFF) << 8 | size;
+    }
+
+    /**
+     * Records a request submitted.
+     */
+    synchronized void onSubmit() {
+        inFlight += 1;
+    }
+
+    /**
+     * Records the round trip of a request, and adjusts the limit.
+     *
+     * @param operation the operation of the request.
+     * @param events the number of events in the request.
+     * @param submitNanos the {@link System#nanoTime()} the request was submitted at.
+     * @param replyNanos the {@link System#nanoTime()} the reply was received at.
+     * @param status the status of the reply.
+     */
+    synchronized void onReply(final byte operation, final int events, final long submitNanos,
+            final long replyNanos, final byte status) {
+        inFlight -= 1;
+        final var roundTripNanos = replyNanos - submitNanos;
+        if (status != RequestException.Status.OK || roundTripNanos <= 0)
+            return;
+
+        final var baseline = baselines.computeIfAbsent(classOf(operation, events),
+                key -> new Baseline());
+        if (baseline.samples == 0 || baseline.samples >= PROBE_SAMPLES
+                || replyNanos - baseline.sinceNanos >= PROBE_NANOS) {
+            baseline.nanos = roundTripNanos;
+            baseline.sinceNanos = replyNanos;
+            baseline.samples = 0;
+        }
+        baseline.samples += 1;
+        baseline.nanos = Math.min(baseline.nanos, roundTripNanos);
+
+        final var queue = limit * (1.0 - (double) baseline.nanos / roundTripNanos);
+        final var log = Math.log10(limit);
+        final var alpha = Math.max(1.0, 3 * log);
+        final var beta = Math.max(2.0, 6 * log);
+
+        var updated = limit;
+        if (queue < alpha && inFlight * 2 >= limit) {
+            updated = Math.min(maxLimit, limit + 1);
+        } else if (queue > beta) {
+            updated = Math.max(minLimit, limit - 1);
+        }
+
+        // Under this lock, so that the pool sees the updates in order
+        if (updated != limit) {
+            limit = updated;
+            pool.setLimit(updated);
+        }
+    }
+}
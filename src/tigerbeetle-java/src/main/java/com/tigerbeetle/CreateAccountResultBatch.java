@@ -22,11 +22,11 @@ public final class CreateAccountResultBatch extends Batch {
     static final CreateAccountResultBatch EMPTY = new CreateAccountResultBatch(0);
 
     CreateAccountResultBatch(final int capacity) {
-        super(capacity, Struct.SIZE);
+        super(capacity, Struct.SIZE, NOT_LINKABLE);
     }
 
     CreateAccountResultBatch(ByteBuffer buffer) {
-        super(buffer, Struct.SIZE);
+        super(buffer, Struct.SIZE, NOT_LINKABLE);
     }
 
     /**
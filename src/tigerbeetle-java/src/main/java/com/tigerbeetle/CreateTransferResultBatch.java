@@ -22,11 +22,11 @@ public final class CreateTransferResultBatch extends Batch {
     static final CreateTransferResultBatch EMPTY = new CreateTransferResultBatch(0);
 
     CreateTransferResultBatch(final int capacity) {
-        super(capacity, Struct.SIZE);
+        super(capacity, Struct.SIZE, NOT_LINKABLE);
     }
 
     CreateTransferResultBatch(ByteBuffer buffer) {
-        super(buffer, Struct.SIZE);
+        super(buffer, Struct.SIZE, NOT_LINKABLE);
     }
 
     /**
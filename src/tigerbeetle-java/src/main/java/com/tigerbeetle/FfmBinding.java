@@ -0,0 +1,21 @@
+package com.tigerbeetle;
+
+/**
+ * Binding to the native tb_client library through the Foreign Function &amp; Memory API.
+ * <p>
+ * This is the fallback for JDKs earlier than 22, where the API is not available. The multi-release
+ * jar replaces this class on JDK 22 or later, see {@code src/main/java22}.
+ */
+final class FfmBinding {
+
+    private FfmBinding() {}
+
+    /**
+     * Initializes the native client.
+     *
+     * @throws UnsupportedOperationException always, on this JDK.
+     */
+    static Transport open(final int clusterID, final String addresses, final int maxConcurrency) {
+        throw new UnsupportedOperationException("The FFM binding requires JDK 22 or later.");
+    }
+}
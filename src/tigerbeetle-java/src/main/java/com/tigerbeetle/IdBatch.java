@@ -25,11 +25,11 @@ public final class IdBatch extends Batch {
      * @throws IllegalArgumentException if capacity is negative.
      */
     public IdBatch(final int capacity) {
-        super(capacity, Struct.SIZE);
+        super(capacity, Struct.SIZE, NOT_LINKABLE);
     }
 
     IdBatch(final ByteBuffer buffer) {
-        super(buffer, Struct.SIZE);
+        super(buffer, Struct.SIZE, NOT_LINKABLE);
     }
 
     /**
@@ -0,0 +1,840 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * A single-threaded, in-process implementation of the TigerBeetle state machine.
+ */
+final class InMemoryLedger {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Executes create_accounts, create_transfers, lookup_accounts and lookup_transfers with the
+     * same semantics and validation order as the TigerBeetle state machine, over the same 128-byte
+     * layouts used by AccountBatch and TransferBatch.
+     *
+     * Storage:
+     *
+     * - Accounts and transfers are stored as rows of 16 longs in the wire layout, so events are
+     *   inserted and looked up with plain copies, and balances are updated in place.
+     * - Rows are indexed by an open-addressing hash table of primitive 128-bit keys, with linear
+     *   probing and no per-entry allocation.
+     * - The post/void state of pending transfers is kept aside, indexed by the transfer's row.
+     *
+     * Linked chains:
+     *
+     * Every mutation made while a chain is open is recorded in an undo log, and reverted in LIFO
+     * order if the chain fails. Removing the most recently inserted keys in LIFO order is safe
+     * with linear probing, as long as the index is not rehashed in between, so the index reserves
+     * capacity for the whole batch before executing it.
+     *
+     */
+    // @formatter:on
+
+    private interface Account {
+        int Id = AccountBatch.Struct.Id / Long.BYTES;
+        int UserData = AccountBatch.Struct.UserData / Long.BYTES;
+        int Reserved = AccountBatch.Struct.Reserved / Long.BYTES;
+        int ReservedEnd = AccountBatch.Struct.Ledger / Long.BYTES;
+
+        // Ledger (u32), Code (u16) and Flags (u16) share the same long
+        int LedgerCodeFlags = AccountBatch.Struct.Ledger / Long.BYTES;
+
+        int DebitsPending = AccountBatch.Struct.DebitsPending / Long.BYTES;
+        int DebitsPosted = AccountBatch.Struct.DebitsPosted / Long.BYTES;
+        int CreditsPending = AccountBatch.Struct.CreditsPending / Long.BYTES;
+        int CreditsPosted = AccountBatch.Struct.CreditsPosted / Long.BYTES;
+        int Timestamp = AccountBatch.Struct.Timestamp / Long.BYTES;
+
+        int FLAGS_MASK = AccountFlags.LINKED | AccountFlags.DEBITS_MUST_NOT_EXCEED_CREDITS
+                | AccountFlags.CREDITS_MUST_NOT_EXCEED_DEBITS;
+    }
+
+    private interface Transfer {
+        int Id = TransferBatch.Struct.Id / Long.BYTES;
+        int DebitAccountId = TransferBatch.Struct.DebitAccountId / Long.BYTES;
+        int CreditAccountId = TransferBatch.Struct.CreditAccountId / Long.BYTES;
+        int UserData = TransferBatch.Struct.UserData / Long.BYTES;
+        int Reserved = TransferBatch.Struct.Reserved / Long.BYTES;
+        int PendingId = TransferBatch.Struct.PendingId / Long.BYTES;
+        int Timeout = TransferBatch.Struct.Timeout / Long.BYTES;
+
+        // Ledger (u32), Code (u16) and Flags (u16) share the same long
+        int LedgerCodeFlags = TransferBatch.Struct.Ledger / Long.BYTES;
+
+        int Amount = TransferBatch.Struct.Amount / Long.BYTES;
+        int Timestamp = TransferBatch.Struct.Timestamp / Long.BYTES;
+
+        int FLAGS_MASK = TransferFlags.LINKED | TransferFlags.PENDING
+                | TransferFlags.POST_PENDING_TRANSFER | TransferFlags.VOID_PENDING_TRANSFER;
+
+        byte STATE_NONE = 0;
+        byte STATE_POSTED = 1;
+        byte STATE_VOIDED = 2;
+    }
+
+    private interface Undo {
+        int INSERT_ACCOUNT = 0;
+        int INSERT_TRANSFER = 1;
+        int SET_ACCOUNT_FIELD = 2;
+        int SET_TRANSFER_STATE = 3;
+
+        // kind, row, field, old value
+        int SIZE = 4;
+    }
+
+    // Same values for CreateAccountResult and CreateTransferResult
+    private static final int OK = 0;
+    private static final int LINKED_EVENT_FAILED = 1;
+    private static final int LINKED_EVENT_CHAIN_OPEN = 2;
+
+    private static final int ROW_LONGS = 16;
+    private static final int NO_CHAIN = -1;
+
+    private final Table accounts = new Table();
+    private final Table transfers = new Table();
+    private byte[] transferStates = new byte[Table.PAGE_ROWS];
+
+    private final long[] event = new long[ROW_LONGS];
+    private final long[] row = new long[ROW_LONGS];
+
+    private long[] undoLog = new long[Undo.SIZE * 64];
+    private int undoLen = 0;
+    private boolean undoEnabled = false;
+
+    private long prepareTimestamp = 0;
+
+    static {
+        assertTrue(AccountBatch.Struct.SIZE == ROW_LONGS * Long.BYTES, "Unexpected account size");
+        assertTrue(TransferBatch.Struct.SIZE == ROW_LONGS * Long.BYTES,
+                "Unexpected transfer size");
+        assertTrue(CreateAccountResult.LinkedEventChainOpen.ordinal() == LINKED_EVENT_CHAIN_OPEN
+                && CreateTransferResult.LinkedEventChainOpen.ordinal() == LINKED_EVENT_CHAIN_OPEN,
+                "Unexpected result values");
+    }
+
+    /**
+     * Executes an operation.
+     *
+     * @param body the request body, in little-endian order.
+     * @param reply the buffer to write the reply to, in little-endian order.
+     * @return the reply length, or -1 if the operation is invalid.
+     */
+    int execute(final byte operation, final ByteBuffer body, final int bodyLen,
+            final ByteBuffer reply) {
+        switch (operation) {
+            case Request.Operations.CREATE_ACCOUNTS:
+                return create(false, body, bodyLen / AccountBatch.Struct.SIZE, reply);
+
+            case Request.Operations.CREATE_TRANSFERS:
+                return create(true, body, bodyLen / TransferBatch.Struct.SIZE, reply);
+
+            case Request.Operations.LOOKUP_ACCOUNTS:
+                return lookup(accounts, body, bodyLen / IdBatch.Struct.SIZE, reply);
+
+            case Request.Operations.LOOKUP_TRANSFERS:
+                return lookup(transfers, body, bodyLen / IdBatch.Struct.SIZE, reply);
+
+            default:
+                return -1;
+        }
+    }
+
+    private int create(final boolean isTransfer, final ByteBuffer body, final int count,
+            final ByteBuffer reply) {
+
+        // Reserves capacity upfront, the index must not be rehashed while a chain is open
+        if (isTransfer) {
+            transfers.reserve(count);
+        } else {
+            accounts.reserve(count);
+        }
+
+        final var timestamp = prepare(count);
+
+        int resultsLen = 0;
+        int chain = NO_CHAIN;
+        boolean chainBroken = false;
+
+        for (int index = 0; index < count; index++) {
+            readRow(body, index * ROW_LONGS * Long.BYTES, event);
+
+            final var linked = (flags(isTransfer ? event[Transfer.LedgerCodeFlags]
+                    : event[Account.LedgerCodeFlags]) & TransferFlags.LINKED) != 0;
+
+            int result;
+            if (linked && chain == NO_CHAIN) {
+                chain = index;
+                assertTrue(!chainBroken, "Chain cannot be broken before being opened");
+                beginUndo();
+            }
+
+            if (linked && index == count - 1) {
+                result = LINKED_EVENT_CHAIN_OPEN;
+            } else if (chainBroken) {
+                result = LINKED_EVENT_FAILED;
+            } else {
+                // Timestamps are assigned in the same order as the events
+                if (isTransfer) {
+                    event[Transfer.Timestamp] = timestamp - count + index + 1;
+                    result = createTransfer(event);
+                } else {
+                    event[Account.Timestamp] = timestamp - count + index + 1;
+                    result = createAccount(event);
+                }
+            }
+
+            if (result != OK) {
+                if (chain != NO_CHAIN && !chainBroken) {
+                    chainBroken = true;
+
+                    // Rolls back the events in LIFO order, excluding this event
+                    rollback();
+
+                    // Reports the rolled back events in FIFO order
+                    for (int chainIndex = chain; chainIndex < index; chainIndex++) {
+                        resultsLen = putResult(reply, resultsLen, chainIndex, LINKED_EVENT_FAILED);
+                    }
+                }
+
+                resultsLen = putResult(reply, resultsLen, index, result);
+            }
+
+            if (chain != NO_CHAIN && (!linked || result == LINKED_EVENT_CHAIN_OPEN)) {
+                endUndo();
+                chain = NO_CHAIN;
+                chainBroken = false;
+            }
+        }
+
+        assertTrue(chain == NO_CHAIN, "Chain must be closed at the end of the batch");
+        return resultsLen * CreateTransferResultBatch.Struct.SIZE;
+    }
+
+    private int lookup(final Table table, final ByteBuffer body, final int count,
+            final ByteBuffer reply) {
+        int replyLen = 0;
+        for (int index = 0; index < count; index++) {
+            final var offset = index * IdBatch.Struct.SIZE;
+            final var found = table.find(body.getLong(offset), body.getLong(offset + Long.BYTES));
+            if (found != Table.NOT_FOUND) {
+                table.read(found, row);
+                writeRow(reply, replyLen, row);
+                replyLen += ROW_LONGS * Long.BYTES;
+            }
+        }
+        return replyLen;
+    }
+
+    /**
+     * Reserves one timestamp per event, returning the timestamp of the last one.
+     */
+    private long prepare(final int count) {
+        final var realtime = System.currentTimeMillis() * 1_000_000L;
+        prepareTimestamp = Math.max(prepareTimestamp, realtime) + count;
+        return prepareTimestamp;
+    }
+
+    private int createAccount(final long[] a) {
+        final var flags = flags(a[Account.LedgerCodeFlags]);
+
+        if ((flags & ~Account.FLAGS_MASK) != 0)
+            return CreateAccountResult.ReservedFlag.ordinal();
+
+        for (int i = Account.Reserved; i < Account.ReservedEnd; i++) {
+            if (a[i] != 0)
+                return CreateAccountResult.ReservedField.ordinal();
+        }
+
+        if (isZero(a, Account.Id))
+            return CreateAccountResult.IdMustNotBeZero.ordinal();
+        if (isIntMax(a, Account.Id))
+            return CreateAccountResult.IdMustNotBeIntMax.ordinal();
+
+        if (AccountFlags.hasDebitsMustNotExceedCredits(flags)
+                && AccountFlags.hasCreditsMustNotExceedDebits(flags))
+            return CreateAccountResult.MutuallyExclusiveFlags.ordinal();
+
+        if (ledger(a[Account.LedgerCodeFlags]) == 0)
+            return CreateAccountResult.LedgerMustNotBeZero.ordinal();
+        if (code(a[Account.LedgerCodeFlags]) == 0)
+            return CreateAccountResult.CodeMustNotBeZero.ordinal();
+
+        if (a[Account.DebitsPending] != 0)
+            return CreateAccountResult.DebitsPendingMustBeZero.ordinal();
+        if (a[Account.DebitsPosted] != 0)
+            return CreateAccountResult.DebitsPostedMustBeZero.ordinal();
+        if (a[Account.CreditsPending] != 0)
+            return CreateAccountResult.CreditsPendingMustBeZero.ordinal();
+        if (a[Account.CreditsPosted] != 0)
+            return CreateAccountResult.CreditsPostedMustBeZero.ordinal();
+
+        final var existing = accounts.find(a[Account.Id], a[Account.Id + 1]);
+        if (existing != Table.NOT_FOUND)
+            return createAccountExists(a, existing);
+
+        final var inserted = accounts.insert(a);
+        logUndo(Undo.INSERT_ACCOUNT, inserted, 0, 0);
+        return OK;
+    }
+
+    private int createAccountExists(final long[] a, final int e) {
+        final var ledgerCodeFlags = accounts.get(e, Account.LedgerCodeFlags);
+
+        if (flags(a[Account.LedgerCodeFlags]) != flags(ledgerCodeFlags))
+            return CreateAccountResult.ExistsWithDifferentFlags.ordinal();
+        if (!equals(a, Account.UserData, accounts, e))
+            return CreateAccountResult.ExistsWithDifferentUserData.ordinal();
+        if (ledger(a[Account.LedgerCodeFlags]) != ledger(ledgerCodeFlags))
+            return CreateAccountResult.ExistsWithDifferentLedger.ordinal();
+        if (code(a[Account.LedgerCodeFlags]) != code(ledgerCodeFlags))
+            return CreateAccountResult.ExistsWithDifferentCode.ordinal();
+
+        return CreateAccountResult.Exists.ordinal();
+    }
+
+    private int createTransfer(final long[] t) {
+        final var flags = flags(t[Transfer.LedgerCodeFlags]);
+
+        if ((flags & ~Transfer.FLAGS_MASK) != 0)
+            return CreateTransferResult.ReservedFlag.ordinal();
+        if (!isZero(t, Transfer.Reserved))
+            return CreateTransferResult.ReservedField.ordinal();
+
+        if (isZero(t, Transfer.Id))
+            return CreateTransferResult.IdMustNotBeZero.ordinal();
+        if (isIntMax(t, Transfer.Id))
+            return CreateTransferResult.IdMustNotBeIntMax.ordinal();
+
+        if ((flags & (TransferFlags.POST_PENDING_TRANSFER
+                | TransferFlags.VOID_PENDING_TRANSFER)) != 0)
+            return postOrVoidPendingTransfer(t, flags);
+
+        if (isZero(t, Transfer.DebitAccountId))
+            return CreateTransferResult.DebitAccountIdMustNotBeZero.ordinal();
+        if (isIntMax(t, Transfer.DebitAccountId))
+            return CreateTransferResult.DebitAccountIdMustNotBeIntMax.ordinal();
+        if (isZero(t, Transfer.CreditAccountId))
+            return CreateTransferResult.CreditAccountIdMustNotBeZero.ordinal();
+        if (isIntMax(t, Transfer.CreditAccountId))
+            return CreateTransferResult.CreditAccountIdMustNotBeIntMax.ordinal();
+        if (t[Transfer.CreditAccountId] == t[Transfer.DebitAccountId]
+                && t[Transfer.CreditAccountId + 1] == t[Transfer.DebitAccountId + 1])
+            return CreateTransferResult.AccountsMustBeDifferent.ordinal();
+
+        if (!isZero(t, Transfer.PendingId))
+            return CreateTransferResult.PendingIdMustBeZero.ordinal();
+
+        final var pending = (flags & TransferFlags.PENDING) != 0;
+        if (pending) {
+            // Otherwise reserved amounts may never be released
+            if (t[Transfer.Timeout] == 0)
+                return CreateTransferResult.PendingTransferMustTimeout.ordinal();
+        } else if (t[Transfer.Timeout] != 0) {
+            return CreateTransferResult.TimeoutReservedForPendingTransfer.ordinal();
+        }
+
+        final var ledger = ledger(t[Transfer.LedgerCodeFlags]);
+        if (ledger == 0)
+            return CreateTransferResult.LedgerMustNotBeZero.ordinal();
+        if (code(t[Transfer.LedgerCodeFlags]) == 0)
+            return CreateTransferResult.CodeMustNotBeZero.ordinal();
+
+        final var amount = t[Transfer.Amount];
+        if (amount == 0)
+            return CreateTransferResult.AmountMustNotBeZero.ordinal();
+
+        final var dr = accounts.find(t[Transfer.DebitAccountId], t[Transfer.DebitAccountId + 1]);
+        if (dr == Table.NOT_FOUND)
+            return CreateTransferResult.DebitAccountNotFound.ordinal();
+        final var cr =
+                accounts.find(t[Transfer.CreditAccountId], t[Transfer.CreditAccountId + 1]);
+        if (cr == Table.NOT_FOUND)
+            return CreateTransferResult.CreditAccountNotFound.ordinal();
+
+        final var drLedger = ledger(accounts.get(dr, Account.LedgerCodeFlags));
+        if (drLedger != ledger(accounts.get(cr, Account.LedgerCodeFlags)))
+            return CreateTransferResult.AccountsMustHaveTheSameLedger.ordinal();
+        if (ledger != drLedger)
+            return CreateTransferResult.TransferMustHaveTheSameLedgerAsAccounts.ordinal();
+
+        // If the transfer already exists, then it must not influence the overflow or limit checks
+        final var existing = transfers.find(t[Transfer.Id], t[Transfer.Id + 1]);
+        if (existing != Table.NOT_FOUND)
+            return createTransferExists(t, existing);
+
+        final var drDebitsPending = accounts.get(dr, Account.DebitsPending);
+        final var drDebitsPosted = accounts.get(dr, Account.DebitsPosted);
+        final var crCreditsPending = accounts.get(cr, Account.CreditsPending);
+        final var crCreditsPosted = accounts.get(cr, Account.CreditsPosted);
+
+        if (pending) {
+            if (sumOverflows(amount, drDebitsPending))
+                return CreateTransferResult.OverflowsDebitsPending.ordinal();
+            if (sumOverflows(amount, crCreditsPending))
+                return CreateTransferResult.OverflowsCreditsPending.ordinal();
+        }
+        if (sumOverflows(amount, drDebitsPosted))
+            return CreateTransferResult.OverflowsDebitsPosted.ordinal();
+        if (sumOverflows(amount, crCreditsPosted))
+            return CreateTransferResult.OverflowsCreditsPosted.ordinal();
+
+        // The sum of the pending and posted balances never overflows
+        if (sumOverflows(amount, drDebitsPending + drDebitsPosted))
+            return CreateTransferResult.OverflowsDebits.ordinal();
+        if (sumOverflows(amount, crCreditsPending + crCreditsPosted))
+            return CreateTransferResult.OverflowsCredits.ordinal();
+
+        if (AccountFlags.hasDebitsMustNotExceedCredits(
+                flags(accounts.get(dr, Account.LedgerCodeFlags)))
+                && Long.compareUnsigned(drDebitsPending + drDebitsPosted + amount,
+                        accounts.get(dr, Account.CreditsPosted)) > 0)
+            return CreateTransferResult.ExceedsCredits.ordinal();
+
+        if (AccountFlags.hasCreditsMustNotExceedDebits(
+                flags(accounts.get(cr, Account.LedgerCodeFlags)))
+                && Long.compareUnsigned(crCreditsPending + crCreditsPosted + amount,
+                        accounts.get(cr, Account.DebitsPosted)) > 0)
+            return CreateTransferResult.ExceedsDebits.ordinal();
+
+        final var inserted = transfers.insert(t);
+        logUndo(Undo.INSERT_TRANSFER, inserted, 0, 0);
+
+        if (pending) {
+            setAccountField(dr, Account.DebitsPending, drDebitsPending + amount);
+            setAccountField(cr, Account.CreditsPending, crCreditsPending + amount);
+        } else {
+            setAccountField(dr, Account.DebitsPosted, drDebitsPosted + amount);
+            setAccountField(cr, Account.CreditsPosted, crCreditsPosted + amount);
+        }
+
+        return OK;
+    }
+
+    private int createTransferExists(final long[] t, final int e) {
+        final var ledgerCodeFlags = transfers.get(e, Transfer.LedgerCodeFlags);
+
+        // The flags change the behavior of the remaining comparisons, so compare the flags first
+        if (flags(t[Transfer.LedgerCodeFlags]) != flags(ledgerCodeFlags))
+            return CreateTransferResult.ExistsWithDifferentFlags.ordinal();
+        if (!equals(t, Transfer.DebitAccountId, transfers, e))
+            return CreateTransferResult.ExistsWithDifferentDebitAccountId.ordinal();
+        if (!equals(t, Transfer.CreditAccountId, transfers, e))
+            return CreateTransferResult.ExistsWithDifferentCreditAccountId.ordinal();
+        if (!equals(t, Transfer.UserData, transfers, e))
+            return CreateTransferResult.ExistsWithDifferentUserData.ordinal();
+        if (t[Transfer.Timeout] != transfers.get(e, Transfer.Timeout))
+            return CreateTransferResult.ExistsWithDifferentTimeout.ordinal();
+        if (code(t[Transfer.LedgerCodeFlags]) != code(ledgerCodeFlags))
+            return CreateTransferResult.ExistsWithDifferentCode.ordinal();
+        if (t[Transfer.Amount] != transfers.get(e, Transfer.Amount))
+            return CreateTransferResult.ExistsWithDifferentAmount.ordinal();
+
+        return CreateTransferResult.Exists.ordinal();
+    }
+
+    private int postOrVoidPendingTransfer(final long[] t, final int flags) {
+        final var post = (flags & TransferFlags.POST_PENDING_TRANSFER) != 0;
+        final var voided = (flags & TransferFlags.VOID_PENDING_TRANSFER) != 0;
+
+        if (post && voided)
+            return CreateTransferResult.CannotPostAndVoidPendingTransfer.ordinal();
+        if ((flags & TransferFlags.PENDING) != 0)
+            return CreateTransferResult.PendingTransferCannotPostOrVoidAnother.ordinal();
+        if (t[Transfer.Timeout] != 0)
+            return CreateTransferResult.TimeoutReservedForPendingTransfer.ordinal();
+
+        if (isZero(t, Transfer.PendingId))
+            return CreateTransferResult.PendingIdMustNotBeZero.ordinal();
+        if (isIntMax(t, Transfer.PendingId))
+            return CreateTransferResult.PendingIdMustNotBeIntMax.ordinal();
+        if (t[Transfer.PendingId] == t[Transfer.Id]
+                && t[Transfer.PendingId + 1] == t[Transfer.Id + 1])
+            return CreateTransferResult.PendingIdMustBeDifferent.ordinal();
+
+        final var p = transfers.find(t[Transfer.PendingId], t[Transfer.PendingId + 1]);
+        if (p == Table.NOT_FOUND)
+            return CreateTransferResult.PendingTransferNotFound.ordinal();
+
+        final var pLedgerCodeFlags = transfers.get(p, Transfer.LedgerCodeFlags);
+        if ((flags(pLedgerCodeFlags) & TransferFlags.PENDING) == 0)
+            return CreateTransferResult.PendingTransferNotPending.ordinal();
+
+        if (!isZero(t, Transfer.DebitAccountId) && !equals(t, Transfer.DebitAccountId, transfers, p))
+            return CreateTransferResult.PendingTransferHasDifferentDebitAccountId.ordinal();
+        if (!isZero(t, Transfer.CreditAccountId)
+                && !equals(t, Transfer.CreditAccountId, transfers, p))
+            return CreateTransferResult.PendingTransferHasDifferentCreditAccountId.ordinal();
+
+        // The user_data field is allowed to differ across pending and posting/voiding transfers
+        final var ledger = ledger(t[Transfer.LedgerCodeFlags]);
+        if (ledger != 0 && ledger != ledger(pLedgerCodeFlags))
+            return CreateTransferResult.PendingTransferHasDifferentLedger.ordinal();
+        final var code = code(t[Transfer.LedgerCodeFlags]);
+        if (code != 0 && code != code(pLedgerCodeFlags))
+            return CreateTransferResult.PendingTransferHasDifferentCode.ordinal();
+
+        final var pAmount = transfers.get(p, Transfer.Amount);
+        final var amount = t[Transfer.Amount] != 0 ? t[Transfer.Amount] : pAmount;
+        if (Long.compareUnsigned(amount, pAmount) > 0)
+            return CreateTransferResult.ExceedsPendingTransferAmount.ordinal();
+
+        if (voided && Long.compareUnsigned(amount, pAmount) < 0)
+            return CreateTransferResult.PendingTransferHasDifferentAmount.ordinal();
+
+        final var existing = transfers.find(t[Transfer.Id], t[Transfer.Id + 1]);
+        if (existing != Table.NOT_FOUND)
+            return postOrVoidPendingTransferExists(t, existing, p);
+
+        final var state = p < transferStates.length ? transferStates[p] : Transfer.STATE_NONE;
+        if (state == Transfer.STATE_POSTED)
+            return CreateTransferResult.PendingTransferAlreadyPosted.ordinal();
+        if (state == Transfer.STATE_VOIDED)
+            return CreateTransferResult.PendingTransferAlreadyVoided.ordinal();
+
+        final var pTimestamp = transfers.get(p, Transfer.Timestamp);
+        final var expiresAt = pTimestamp + transfers.get(p, Transfer.Timeout);
+        if (Long.compareUnsigned(expiresAt, pTimestamp) > 0
+                && Long.compareUnsigned(expiresAt, t[Transfer.Timestamp]) <= 0)
+            return CreateTransferResult.PendingTransferExpired.ordinal();
+
+        transfers.read(p, row);
+        row[Transfer.Id] = t[Transfer.Id];
+        row[Transfer.Id + 1] = t[Transfer.Id + 1];
+        if (!isZero(t, Transfer.UserData)) {
+            row[Transfer.UserData] = t[Transfer.UserData];
+            row[Transfer.UserData + 1] = t[Transfer.UserData + 1];
+        }
+        row[Transfer.PendingId] = t[Transfer.PendingId];
+        row[Transfer.PendingId + 1] = t[Transfer.PendingId + 1];
+        row[Transfer.Timeout] = 0;
+        row[Transfer.LedgerCodeFlags] = (pLedgerCodeFlags & 0x0000_FFFF_FFFF_FFFFL)
+                | ((long) (flags & 0xFFFF) << 48);
+        row[Transfer.Amount] = amount;
+        row[Transfer.Timestamp] = t[Transfer.Timestamp];
+
+        final var inserted = transfers.insert(row);
+        logUndo(Undo.INSERT_TRANSFER, inserted, 0, 0);
+        setTransferState(p, post ? Transfer.STATE_POSTED : Transfer.STATE_VOIDED);
+
+        final var dr = accounts.find(row[Transfer.DebitAccountId], row[Transfer.DebitAccountId + 1]);
+        final var cr =
+                accounts.find(row[Transfer.CreditAccountId], row[Transfer.CreditAccountId + 1]);
+        assertTrue(dr != Table.NOT_FOUND && cr != Table.NOT_FOUND,
+                "Pending transfer accounts not found");
+
+        setAccountField(dr, Account.DebitsPending,
+                accounts.get(dr, Account.DebitsPending) - pAmount);
+        setAccountField(cr, Account.CreditsPending,
+                accounts.get(cr, Account.CreditsPending) - pAmount);
+
+        if (post) {
+            setAccountField(dr, Account.DebitsPosted,
+                    accounts.get(dr, Account.DebitsPosted) + amount);
+            setAccountField(cr, Account.CreditsPosted,
+                    accounts.get(cr, Account.CreditsPosted) + amount);
+        }
+
+        return OK;
+    }
+
+    private int postOrVoidPendingTransferExists(final long[] t, final int e, final int p) {
+
+        // Do not assume that the existing transfer is necessarily a posting or voiding transfer
+        if (flags(t[Transfer.LedgerCodeFlags]) != flags(transfers.get(e, Transfer.LedgerCodeFlags)))
+            return CreateTransferResult.ExistsWithDifferentFlags.ordinal();
+
+        // If it posted or voided a different pending transfer, then the accounts will differ
+        if (!equals(t, Transfer.PendingId, transfers, e))
+            return CreateTransferResult.ExistsWithDifferentPendingId.ordinal();
+
+        if (isZero(t, Transfer.UserData)) {
+            if (transfers.get(e, Transfer.UserData) != transfers.get(p, Transfer.UserData)
+                    || transfers.get(e, Transfer.UserData + 1) != transfers.get(p,
+                            Transfer.UserData + 1))
+                return CreateTransferResult.ExistsWithDifferentUserData.ordinal();
+        } else if (!equals(t, Transfer.UserData, transfers, e)) {
+            return CreateTransferResult.ExistsWithDifferentUserData.ordinal();
+        }
+
+        final var amount = t[Transfer.Amount] != 0 ? t[Transfer.Amount]
+                : transfers.get(p, Transfer.Amount);
+        if (amount != transfers.get(e, Transfer.Amount))
+            return CreateTransferResult.ExistsWithDifferentAmount.ordinal();
+
+        return CreateTransferResult.Exists.ordinal();
+    }
+
+    private void setAccountField(final int account, final int field, final long value) {
+        logUndo(Undo.SET_ACCOUNT_FIELD, account, field, accounts.get(account, field));
+        accounts.set(account, field, value);
+    }
+
+    private void setTransferState(final int transfer, final byte state) {
+        if (transfer >= transferStates.length) {
+            transferStates = Arrays.copyOf(transferStates,
+                    Math.max(transferStates.length * 2, transfer + 1));
+        }
+
+        logUndo(Undo.SET_TRANSFER_STATE, transfer, 0, transferStates[transfer]);
+        transferStates[transfer] = state;
+    }
+
+    private void beginUndo() {
+        assertTrue(!undoEnabled && undoLen == 0, "Undo log already open");
+        undoEnabled = true;
+    }
+
+    private void endUndo() {
+        undoEnabled = false;
+        undoLen = 0;
+    }
+
+    private void logUndo(final int kind, final int row, final int field, final long value) {
+        if (!undoEnabled)
+            return;
+
+        if (undoLen + Undo.SIZE > undoLog.length) {
+            undoLog = Arrays.copyOf(undoLog, undoLog.length * 2);
+        }
+
+        undoLog[undoLen] = kind;
+        undoLog[undoLen + 1] = row;
+        undoLog[undoLen + 2] = field;
+        undoLog[undoLen + 3] = value;
+        undoLen += Undo.SIZE;
+    }
+
+    private void rollback() {
+        assertTrue(undoEnabled, "Undo log is not open");
+
+        while (undoLen > 0) {
+            undoLen -= Undo.SIZE;
+
+            final var kind = (int) undoLog[undoLen];
+            final var row = (int) undoLog[undoLen + 1];
+            final var field = (int) undoLog[undoLen + 2];
+            final var value = undoLog[undoLen + 3];
+
+            switch (kind) {
+                case Undo.INSERT_ACCOUNT:
+                    accounts.removeLast(row);
+                    break;
+                case Undo.INSERT_TRANSFER:
+                    transfers.removeLast(row);
+                    break;
+                case Undo.SET_ACCOUNT_FIELD:
+                    accounts.set(row, field, value);
+                    break;
+                case Undo.SET_TRANSFER_STATE:
+                    transferStates[row] = (byte) value;
+                    break;
+                default:
+                    throw new AssertionError("Unknown undo entry %d", kind);
+            }
+        }
+    }
+
+    private static int putResult(final ByteBuffer reply, final int resultsLen, final int index,
+            final int result) {
+        final var offset = resultsLen * CreateTransferResultBatch.Struct.SIZE;
+        reply.putInt(offset + CreateTransferResultBatch.Struct.Index, index);
+        reply.putInt(offset + CreateTransferResultBatch.Struct.Result, result);
+        return resultsLen + 1;
+    }
+
+    private static void readRow(final ByteBuffer buffer, final int offset, final long[] row) {
+        for (int i = 0; i < ROW_LONGS; i++) {
+            row[i] = buffer.getLong(offset + i * Long.BYTES);
+        }
+    }
+
+    private static void writeRow(final ByteBuffer buffer, final int offset, final long[] row) {
+        for (int i = 0; i < ROW_LONGS; i++) {
+            buffer.putLong(offset + i * Long.BYTES, row[i]);
+        }
+    }
+
+    private static int ledger(final long ledgerCodeFlags) {
+        return (int) ledgerCodeFlags;
+    }
+
+    private static int code(final long ledgerCodeFlags) {
+        return (int) (ledgerCodeFlags >>> 32) & 0xFFFF;
+    }
+
+    private static int flags(final long ledgerCodeFlags) {
+        return (int) (ledgerCodeFlags >>> 48);
+    }
+
+    private static boolean isZero(final long[] row, final int field) {
+        return row[field] == 0 && row[field + 1] == 0;
+    }
+
+    private static boolean isIntMax(final long[] row, final int field) {
+        return row[field] == -1L && row[field + 1] == -1L;
+    }
+
+    private static boolean equals(final long[] row, final int field, final Table table,
+            final int other) {
+        return row[field] == table.get(other, field)
+                && row[field + 1] == table.get(other, field + 1);
+    }
+
+    private static boolean sumOverflows(final long a, final long b) {
+        return Long.compareUnsigned(a + b, a) < 0;
+    }
+
+    /**
+     * Rows of 16 longs indexed by a 128-bit id stored in the first two longs.
+     */
+    static final class Table {
+
+        static final int NOT_FOUND = -1;
+
+        static final int PAGE_BITS = 12;
+        static final int PAGE_ROWS = 1 << PAGE_BITS;
+        private static final int PAGE_MASK = PAGE_ROWS - 1;
+
+        private long[][] pages = new long[1][];
+        private int size = 0;
+
+        // Open-addressing index, keys are interleaved as (least, most) significant pairs
+        // and rows are stored plus one, so zero means an empty slot
+        private long[] keys;
+        private int[] rows;
+        private int mask;
+
+        Table() {
+            resizeIndex(PAGE_ROWS);
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(final int row, final int field) {
+            return pages[row >>> PAGE_BITS][(row & PAGE_MASK) * ROW_LONGS + field];
+        }
+
+        void set(final int row, final int field, final long value) {
+            pages[row >>> PAGE_BITS][(row & PAGE_MASK) * ROW_LONGS + field] = value;
+        }
+
+        void read(final int row, final long[] values) {
+            System.arraycopy(pages[row >>> PAGE_BITS], (row & PAGE_MASK) * ROW_LONGS, values, 0,
+                    ROW_LONGS);
+        }
+
+        int find(final long leastSignificant, final long mostSignificant) {
+            var slot = hash(leastSignificant, mostSignificant) & mask;
+            while (true) {
+                final var entry = rows[slot];
+                if (entry == 0)
+                    return NOT_FOUND;
+
+                if (keys[slot * 2] == leastSignificant && keys[slot * 2 + 1] == mostSignificant)
+                    return entry - 1;
+
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        /**
+         * Inserts a row, its id must not be present. Capacity must be {@link #reserve reserved}.
+         */
+        int insert(final long[] values) {
+            final var row = size;
+            assertTrue(row < rows.length / 2, "Index capacity must be reserved");
+
+            final var page = row >>> PAGE_BITS;
+            if (page == pages.length) {
+                pages = Arrays.copyOf(pages, pages.length * 2);
+            }
+            if (pages[page] == null) {
+                pages[page] = new long[PAGE_ROWS * ROW_LONGS];
+            }
+
+            System.arraycopy(values, 0, pages[page], (row & PAGE_MASK) * ROW_LONGS, ROW_LONGS);
+            size = row + 1;
+
+            putIndex(values[0], values[1], row);
+            return row;
+        }
+
+        /**
+         * Removes the most recently inserted row.
+         */
+        void removeLast(final int row) {
+            assertTrue(row == size - 1, "Only the last row can be removed: row=%d, size=%d", row,
+                    size);
+
+            final var leastSignificant = get(row, 0);
+            final var mostSignificant = get(row, 1);
+
+            // No other key can be probing through this slot, since all keys inserted after
+            // it were already removed
+            var slot = hash(leastSignificant, mostSignificant) & mask;
+            while (rows[slot] != row + 1) {
+                assertTrue(rows[slot] != 0, "Row not found in the index");
+                slot = (slot + 1) & mask;
+            }
+
+            rows[slot] = 0;
+            keys[slot * 2] = 0;
+            keys[slot * 2 + 1] = 0;
+            size = row;
+        }
+
+        /**
+         * Keeps the load factor at most 50% for the next {@code count} insertions.
+         */
+        void reserve(final int count) {
+            final var required = ((long) size + count) * 2;
+            if (required <= rows.length)
+                return;
+
+            var capacity = rows.length;
+            while (capacity < required) {
+                capacity *= 2;
+            }
+
+            assertTrue(capacity <= (1 << 30), "Index capacity exceeded");
+            resizeIndex(capacity);
+        }
+
+        private void resizeIndex(final int capacity) {
+            keys = new long[capacity * 2];
+            rows = new int[capacity];
+            mask = capacity - 1;
+
+            for (int row = 0; row < size; row++) {
+                putIndex(get(row, 0), get(row, 1), row);
+            }
+        }
+
+        private void putIndex(final long leastSignificant, final long mostSignificant,
+                final int row) {
+            var slot = hash(leastSignificant, mostSignificant) & mask;
+            while (rows[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot * 2] = leastSignificant;
+            keys[slot * 2 + 1] = mostSignificant;
+            rows[slot] = row + 1;
+        }
+
+        private static int hash(final long leastSignificant, final long mostSignificant) {
+            var hash = leastSignificant * 0x9E3779B97F4A7C15L
+                    ^ mostSignificant * 0xC2B2AE3D27D4EB4FL;
+            hash ^= hash >>> 32;
+            hash ^= hash >>> 16;
+            return (int) hash;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * A single-replica stand-in for a TigerBeetle cluster, serving the wire protocol on the loopback
+ * interface from an {@link InMemoryLedger in-process ledger}.
+ */
+final class InMemoryServer implements AutoCloseable {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Implements just enough of the replica side of the client protocol to measure and test
+     * the client transports without a TigerBeetle cluster:
+     *
+     * - Registration assigns a session number, the commit number of the register request.
+     * - Requests are executed in order and each session caches its last reply, which is resent
+     *   when the same request is received again (e.g. resent after a timeout).
+     * - Pings are answered with a pong.
+     *
+     * There is no replication nor persistence, and evicted sessions are never expired.
+     *
+     */
+    // @formatter:on
+
+    private static final class Session {
+        final long number;
+        int request;
+        ByteBuffer reply;
+
+        Session(final long number) {
+            this.number = number;
+        }
+    }
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer readBuffer;
+        final ArrayDeque<ByteBuffer> writeQueue;
+
+        Connection(final SocketChannel channel) {
+            this.channel = channel;
+            this.readBuffer = ByteBuffer.allocate(MessageHeader.MESSAGE_SIZE_MAX)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            this.writeQueue = new ArrayDeque<>();
+        }
+    }
+
+    private final int clusterID;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    // State owned by the selector thread
+
+    private final InMemoryLedger ledger;
+    private final HashMap<UUID, Session> sessions;
+    private final Blake3 blake3;
+    private final long[] checksum;
+    private final ByteBuffer reply;
+    private long op;
+
+    InMemoryServer(final int clusterID) throws IOException {
+        this.clusterID = clusterID;
+        this.ledger = new InMemoryLedger();
+        this.sessions = new HashMap<>();
+        this.blake3 = new Blake3();
+        this.checksum = new long[2];
+        this.reply = ByteBuffer.allocateDirect(MessageHeader.MESSAGE_BODY_SIZE_MAX)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.server.configureBlocking(false);
+        this.server.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.thread = new Thread(this::run, "tigerbeetle-in-memory-server");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * The address in the format expected by the client, for example {@code 127.0.0.1:3001}.
+     */
+    String getAddress() {
+        return server.socket().getInetAddress().getHostAddress() + ":" + getPort();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+
+        try {
+            thread.join();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on closing the in-memory server.");
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+
+                final var keys = selector.selectedKeys();
+                for (final var key : keys) {
+                    if (!key.isValid())
+                        continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+
+                    final var connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid()) {
+                            flush(connection, key);
+                        }
+                    } catch (IOException exception) {
+                        disconnect(key);
+                    }
+                }
+                keys.clear();
+            }
+
+        } catch (IOException exception) {
+            throw new AssertionError(exception, "Unexpected I/O error on the selector.");
+        } finally {
+            for (final var key : selector.keys()) {
+                disconnect(key);
+            }
+            try {
+                selector.close();
+                server.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final var channel = server.accept();
+        if (channel == null)
+            return;
+
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private static void disconnect(final SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void read(final Connection connection) throws IOException {
+        final var buffer = connection.readBuffer;
+        if (connection.channel.read(buffer) < 0)
+            throw new IOException("Connection closed by the peer");
+
+        while (buffer.position() >= MessageHeader.Struct.SIZE) {
+            if (!MessageHeader.isValidChecksum(blake3, buffer, 0, checksum))
+                throw new IOException("Invalid header checksum");
+
+            final var size = buffer.getInt(MessageHeader.Struct.Size);
+            if (size < MessageHeader.Struct.SIZE || size > MessageHeader.MESSAGE_SIZE_MAX)
+                throw new IOException("Invalid message size");
+
+            if (buffer.position() < size)
+                return;
+
+            if (!MessageHeader.isValidChecksumBody(blake3, buffer, 0, checksum))
+                throw new IOException("Invalid body checksum");
+
+            onMessage(connection, buffer, size);
+
+            buffer.limit(buffer.position()).position(size);
+            buffer.compact();
+        }
+    }
+
+    private void onMessage(final Connection connection, final ByteBuffer message, final int size)
+            throws IOException {
+        if (message.getInt(MessageHeader.Struct.Cluster) != clusterID)
+            throw new IOException("Wrong cluster");
+
+        final var command = message.get(MessageHeader.Struct.Command);
+
+        if (command == MessageHeader.Command.PING) {
+            final var pong = header(message, MessageHeader.Command.PONG, 0);
+            seal(pong);
+            connection.writeQueue.add(pong);
+            return;
+        }
+
+        if (command != MessageHeader.Command.REQUEST)
+            return;
+
+        final var clientId = new UUID(message.getLong(MessageHeader.Struct.Client + 8),
+                message.getLong(MessageHeader.Struct.Client));
+        final var operation = message.get(MessageHeader.Struct.Operation);
+        final var requestNumber = message.getInt(MessageHeader.Struct.Request);
+
+        if (operation == MessageHeader.Operation.REGISTER) {
+            op += 1;
+            final var session = new Session(op);
+            final var registered = header(message, MessageHeader.Command.REPLY, 0);
+            registered.putLong(MessageHeader.Struct.Op, op);
+            registered.putLong(MessageHeader.Struct.Commit, op);
+            seal(registered);
+
+            session.request = requestNumber;
+            session.reply = registered;
+            sessions.put(clientId, session);
+            connection.writeQueue.add(registered.duplicate());
+            return;
+        }
+
+        final var session = sessions.get(clientId);
+        if (session == null || message.getLong(MessageHeader.Struct.Context) != session.number)
+            throw new IOException("Unknown session");
+
+        if (requestNumber == session.request) {
+            connection.writeQueue.add(session.reply.duplicate());
+            return;
+        }
+
+        if (requestNumber < session.request)
+            return;
+
+        final var bodyLen = size - MessageHeader.Struct.SIZE;
+        final var body = message.duplicate();
+        body.limit(size).position(MessageHeader.Struct.SIZE);
+
+        reply.clear();
+        final var replyLen = ledger.execute(operation,
+                body.slice().order(ByteOrder.LITTLE_ENDIAN), bodyLen, reply);
+        if (replyLen < 0)
+            throw new IOException("Invalid operation");
+
+        op += 1;
+        final var replied = header(message, MessageHeader.Command.REPLY, replyLen);
+        replied.putLong(MessageHeader.Struct.Op, op);
+        replied.putLong(MessageHeader.Struct.Commit, op);
+        replied.putLong(MessageHeader.Struct.Timestamp, System.currentTimeMillis() * 1_000_000L);
+        reply.clear().limit(replyLen);
+        replied.position(MessageHeader.Struct.SIZE);
+        replied.put(reply);
+        replied.clear();
+        seal(replied);
+
+        session.request = requestNumber;
+        session.reply = replied;
+        connection.writeQueue.add(replied.duplicate());
+    }
+
+    /**
+     * Allocates a message replying to {@code request}, with room for the body.
+     */
+    private ByteBuffer header(final ByteBuffer request, final byte command, final int bodyLen) {
+        final var message = ByteBuffer.allocate(MessageHeader.Struct.SIZE + bodyLen)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        // The reply's context is the checksum of the request
+        message.putLong(MessageHeader.Struct.Context, request.getLong(MessageHeader.Struct.Checksum));
+        message.putLong(MessageHeader.Struct.Context + 8,
+                request.getLong(MessageHeader.Struct.Checksum + 8));
+        message.putLong(MessageHeader.Struct.Client, request.getLong(MessageHeader.Struct.Client));
+        message.putLong(MessageHeader.Struct.Client + 8,
+                request.getLong(MessageHeader.Struct.Client + 8));
+        message.putInt(MessageHeader.Struct.Request, request.getInt(MessageHeader.Struct.Request));
+        message.putInt(MessageHeader.Struct.Cluster, clusterID);
+        message.putInt(MessageHeader.Struct.Size, MessageHeader.Struct.SIZE + bodyLen);
+        message.put(MessageHeader.Struct.Command, command);
+        message.put(MessageHeader.Struct.Operation, request.get(MessageHeader.Struct.Operation));
+        message.put(MessageHeader.Struct.Version, MessageHeader.VERSION);
+        return message;
+    }
+
+    private void seal(final ByteBuffer message) {
+        final var body = message.duplicate().position(MessageHeader.Struct.SIZE);
+        MessageHeader.setChecksums(blake3, message, body.slice(), checksum);
+    }
+
+    private static void flush(final Connection connection, final SelectionKey key)
+            throws IOException {
+        final var queue = connection.writeQueue;
+        while (!queue.isEmpty()) {
+            final var message = queue.peek();
+            connection.channel.write(message);
+            if (message.hasRemaining())
+                break;
+            queue.poll();
+        }
+
+        key.interestOps(queue.isEmpty() ? SelectionKey.OP_READ
+                : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+}
@@ -0,0 +1,83 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes requests against an {@link InMemoryLedger in-process ledger}.
+ */
+final class InMemoryTransport extends Transport {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Mimics the tb_client threading model: requests are executed one at a time by a single
+     * thread, which also completes them, so the ledger needs no synchronization and the
+     * completion runs on a different thread than the caller's, just like the native client.
+     *
+     * There are no native packets, the number of requests in flight is already bounded by the
+     * client's packet pool, and packets are only passed back to Request.endRequest.
+     *
+     * The reply is written to a direct buffer that is reused across requests, it is safe
+     * because Request.endRequest copies the result before returning.
+     *
+     */
+    // @formatter:on
+
+    private final InMemoryLedger ledger;
+    private final ExecutorService executor;
+    private final ByteBuffer reply;
+
+    InMemoryTransport() {
+        this.ledger = new InMemoryLedger();
+        this.reply = ByteBuffer.allocateDirect(MessageHeader.MESSAGE_BODY_SIZE_MAX)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final var thread = new Thread(runnable, "tigerbeetle-in-memory");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    void submit(final Request<?> request, final long packet) {
+        executor.execute(() -> execute(request, packet));
+    }
+
+    private void execute(final Request<?> request, final long packet) {
+        final var operation = request.getOperation();
+        final var bodyLen = request.getBufferLen();
+
+        if (bodyLen > MessageHeader.MESSAGE_BODY_SIZE_MAX) {
+            request.endRequest(operation, null, packet, RequestException.Status.TOO_MUCH_DATA);
+            return;
+        }
+
+        final var body = request.getBuffer().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        reply.clear();
+        final var replyLen = ledger.execute(operation, body, (int) bodyLen, reply);
+        if (replyLen < 0) {
+            request.endRequest(operation, null, packet,
+                    RequestException.Status.INVALID_OPERATION);
+            return;
+        }
+
+        reply.clear().limit(replyLen);
+        request.endRequest(operation, reply.slice(), packet, RequestException.Status.OK);
+    }
+
+    @Override
+    void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on closing the in-memory transport.");
+        }
+    }
+}
@@ -51,7 +51,14 @@ final class JNILoader {
 
     public static final String libName = "tb_jniclient";
 
-    public static void loadFromJar() {
+    // Both the JNI and the FFM bindings load the same library
+    private static boolean loaded = false;
+
+    public static synchronized void loadFromJar() {
+
+        if (loaded)
+            return;
+        loaded = true;
 
         OS os = OS.getOS();
         Arch arch = Arch.getArch();
@@ -0,0 +1,626 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Records batches of accounts and transfers in a write-ahead log before submitting them, so that
+ * the batches whose results were never received can be submitted again after a crash.
+ * <p>
+ * Each batch is appended to the journal before being submitted to the client, and its completion
+ * is appended once its results are received. When opened, the journal recovers the batches
+ * without a completion, to be submitted again with {@link #replay}. Since the cluster reports the
+ * accounts and transfers that were already created with an {@code Exists} result instead of
+ * creating them twice, replaying a batch that was applied before the crash is safe.
+ * <p>
+ * The client is not owned by the journal and must be closed by the caller. Batches aborted by
+ * {@link Client#closeAsync} are kept to be replayed, since the cluster may still apply them.
+ * This class is thread-safe.
+ */
+public final class Journal implements AutoCloseable {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * The journal is a directory of segment files, each mapped in memory as a whole and filled
+     * with records, little-endian:
+     *
+     *   checksum: u128 @0       BLAKE3 of the rest of the record, truncated to 128 bits
+     *   sequence: u64 @16       the batch's sequence number
+     *   size: u32 @24           the size of the body
+     *   kind: u8 @28            a batch of accounts, of transfers, or the completion of a batch
+     *   body @32                the batch's rows, as in its buffer
+     *
+     * Records are padded to 8 bytes, so that the rows keep their natural alignment.
+     * A segment ends at its first record of kind zero, or whose checksum does not match,
+     * which also discards a record torn by a crash.
+     *
+     * Appending copies the record into the current segment under the lock, and rolls over to a
+     * new segment when it does not fit. Writes to a mapped file survive the crash of the process
+     * without being forced; with Sync.ALWAYS they are also forced to the storage before being
+     * submitted. Forcing is a group commit: the first thread to force covers every record
+     * appended so far, and the threads that appended before it only wait for it to finish.
+     *
+     * Each segment counts its batches without a completion. Segments are deleted in order,
+     * once they and every older segment have none, so the completion of a batch is never
+     * lost while the batch itself is still in the journal.
+     *
+     * Opening the journal scans all segments, then always starts a new one.
+     *
+     */
+    // @formatter:on
+
+    /**
+     * When records are forced to the storage.
+     */
+    public enum Sync {
+
+        /**
+         * Never forced by the journal, records survive the crash of the process but not of the
+         * operating system.
+         */
+        NONE,
+
+        /**
+         * Forced to the storage before the batch is submitted, records survive the crash of the
+         * operating system or a power loss.
+         */
+        ALWAYS,
+    }
+
+    /**
+     * Receives the batches submitted again by {@link #replay}, with their results.
+     */
+    public interface ReplayListener {
+
+        void onAccounts(AccountBatch batch, CreateAccountResultBatch results);
+
+        void onTransfers(TransferBatch batch, CreateTransferResultBatch results);
+    }
+
+    interface Struct {
+        int Checksum = 0;
+        int Sequence = 16;
+        int Size = 24;
+        int Kind = 28;
+
+        int SIZE = 32;
+    }
+
+    interface Kind {
+        byte COMPLETED = 1;
+        byte CREATE_ACCOUNTS = Request.Operations.CREATE_ACCOUNTS;
+        byte CREATE_TRANSFERS = Request.Operations.CREATE_TRANSFERS;
+    }
+
+    /**
+     * The default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final int SEGMENT_SIZE_MIN = align(Struct.SIZE + MessageHeader.MESSAGE_BODY_SIZE_MAX);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final class Segment {
+
+        final long number;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int pending;
+
+        Segment(final long number, final Path path, final MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Entry {
+
+        final long sequence;
+        final Segment segment;
+        final byte kind;
+        final ByteBuffer body;
+
+        Entry(final long sequence, final Segment segment, final byte kind,
+                final ByteBuffer body) {
+            this.sequence = sequence;
+            this.segment = segment;
+            this.kind = kind;
+            this.body = body;
+        }
+    }
+
+    private final Client client;
+    private final Path directory;
+    private final Sync sync;
+    private final int segmentSize;
+
+    // Guarded by this
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayList<Entry> recovered = new ArrayList<>();
+    private final Blake3 blake3 = new Blake3();
+    private Segment current;
+    private int position;
+    private long sequence;
+    private long appended;
+    private int pending;
+    private boolean closed;
+
+    // Guarded by syncLock
+    private final Object syncLock = new Object();
+    private long synced;
+
+    /**
+     * Opens the journal in {@code directory} with segments of {@link #DEFAULT_SEGMENT_SIZE}.
+     *
+     * @see #Journal(Client, Path, Sync, int)
+     */
+    public Journal(final Client client, final Path directory, final Sync sync)
+            throws IOException {
+        this(client, directory, sync, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed, and recovers the batches
+     * without a completion.
+     *
+     * @param client the client to submit the batches to.
+     * @param directory the directory of the segment files, used by a single journal at a time.
+     * @param sync when records are forced to the storage.
+     * @param segmentSize the size of each segment file, large enough for the largest batch.
+     *
+     * @throws IOException if the journal cannot be read or a new segment cannot be created.
+     * @throws NullPointerException if {@code client}, {@code directory} or {@code sync} is null.
+     * @throws IllegalArgumentException if {@code segmentSize} is smaller than a record of the
+     *         largest batch.
+     */
+    public Journal(final Client client, final Path directory, final Sync sync,
+            final int segmentSize) throws IOException {
+        Objects.requireNonNull(client, "Client cannot be null");
+        Objects.requireNonNull(directory, "Directory cannot be null");
+        Objects.requireNonNull(sync, "Sync cannot be null");
+        if (segmentSize < SEGMENT_SIZE_MIN)
+            throw new IllegalArgumentException("Segment size must be at least " + SEGMENT_SIZE_MIN);
+
+        this.client = client;
+        this.directory = directory;
+        this.sync = sync;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        recover();
+
+        final var last = segments.peekLast();
+        roll(last == null ? 0 : last.number + 1);
+        retire();
+    }
+
+    /**
+     * Journals then submits a batch of new accounts to be created.
+     *
+     * @see Client#createAccounts(AccountBatch)
+     * @throws UncheckedIOException if the batch cannot be appended to the journal.
+     * @throws IllegalStateException if this journal or the client is closed.
+     */
+    public CreateAccountResultBatch createAccounts(final AccountBatch batch)
+            throws RequestException {
+        return join(createAccountsAsync(batch));
+    }
+
+    /**
+     * Journals then submits a batch of new accounts to be created asynchronously.
+     *
+     * @see Client#createAccountsAsync(AccountBatch)
+     * @throws UncheckedIOException if the batch cannot be appended to the journal.
+     * @throws IllegalStateException if this journal or the client is closed.
+     */
+    public CompletableFuture<CreateAccountResultBatch> createAccountsAsync(
+            final AccountBatch batch) {
+        return submit(Kind.CREATE_ACCOUNTS, batch, client::createAccountsAsync);
+    }
+
+    /**
+     * Journals then submits a batch of new transfers to be created.
+     *
+     * @see Client#createTransfers(TransferBatch)
+     * @throws UncheckedIOException if the batch cannot be appended to the journal.
+     * @throws IllegalStateException if this journal or the client is closed.
+     */
+    public CreateTransferResultBatch createTransfers(final TransferBatch batch)
+            throws RequestException {
+        return join(createTransfersAsync(batch));
+    }
+
+    /**
+     * Journals then submits a batch of new transfers to be created asynchronously.
+     *
+     * @see Client#createTransfersAsync(TransferBatch)
+     * @throws UncheckedIOException if the batch cannot be appended to the journal.
+     * @throws IllegalStateException if this journal or the client is closed.
+     */
+    public CompletableFuture<CreateTransferResultBatch> createTransfersAsync(
+            final TransferBatch batch) {
+        return submit(Kind.CREATE_TRANSFERS, batch, client::createTransfersAsync);
+    }
+
+    /**
+     * Submits again, one at a time and in the order they were journaled, the batches recovered
+     * when this journal was opened.
+     * <p>
+     * A batch is completed once replayed, or once rejected by the cluster before being applied,
+     * with {@link RequestException.Status#TOO_MUCH_DATA},
+     * {@link RequestException.Status#INVALID_OPERATION} or
+     * {@link RequestException.Status#INVALID_DATA_SIZE}. A batch that fails otherwise may have
+     * been applied, it is kept and replayed again by the next call, or the next time the journal
+     * is opened.
+     *
+     * @param listener receives each batch with its results, and must not keep the batch once it
+     *        returns.
+     * @return the number of batches replayed.
+     * @throws RequestException if a batch failed, the remaining batches are replayed by the
+     *         next call.
+     * @throws NullPointerException if {@code listener} is null.
+     * @throws IllegalStateException if this journal or the client is closed.
+     */
+    public int replay(final ReplayListener listener) throws RequestException {
+        Objects.requireNonNull(listener, "Listener cannot be null");
+
+        var count = 0;
+        while (true) {
+            final Entry entry;
+            synchronized (this) {
+                if (closed)
+                    throw new IllegalStateException("Journal is closed");
+                if (recovered.isEmpty())
+                    return count;
+                entry = recovered.get(0);
+            }
+
+            try {
+                if (entry.kind == Kind.CREATE_ACCOUNTS) {
+                    final var batch = new AccountBatch(entry.body.duplicate());
+                    final var results = client.createAccounts(batch);
+                    batch.beforeFirst();
+                    listener.onAccounts(batch, results);
+                } else {
+                    final var batch = new TransferBatch(entry.body.duplicate());
+                    final var results = client.createTransfers(batch);
+                    batch.beforeFirst();
+                    listener.onTransfers(batch, results);
+                }
+            } catch (RequestException exception) {
+                if (isRejected(exception)) {
+                    synchronized (this) {
+                        recovered.remove(0);
+                    }
+                    complete(entry);
+                }
+                throw exception;
+            }
+
+            synchronized (this) {
+                recovered.remove(0);
+            }
+            complete(entry);
+            count++;
+        }
+    }
+
+    /**
+     * Gets the number of batches in this journal without a completion, either in flight or
+     * recovered.
+     */
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * Closes the journal, forcing its records to the storage with {@link Sync#ALWAYS}.
+     * <p>
+     * Batches still in flight are kept to be replayed the next time the journal is opened.
+     */
+    @Override
+    public void close() {
+        final Segment segment;
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            segment = current;
+        }
+
+        if (sync == Sync.ALWAYS)
+            segment.buffer.force();
+    }
+
+    private <B extends Batch, T extends Batch> CompletableFuture<T> submit(final byte kind,
+            final B batch, final Function<B, CompletableFuture<T>> request) {
+        Objects.requireNonNull(batch, "Batch cannot be null");
+        if (batch.getLength() == 0)
+            throw new IllegalArgumentException("Empty batch");
+
+        final var entry = append(kind, batch);
+        if (sync == Sync.ALWAYS)
+            force();
+
+        // A batch whose submission fails keeps no completion, it might have reached the cluster
+        // and is replayed the next time the journal is opened. Unless the cluster rejected the
+        // whole batch before applying it, replaying it would be rejected again
+        return request.apply(batch).whenComplete((results, exception) -> {
+            if (exception == null || isRejected(unwrap(exception)))
+                complete(entry);
+        });
+    }
+
+    /**
+     * Whether the cluster rejected a whole batch before applying any of it. Any other failure,
+     * such as {@link RequestException.Status#TRANSPORT_FAILED}, or
+     * {@link RequestException.Status#CLIENT_CLOSED} for a batch aborted while closing the client,
+     * may happen before or after the batch is applied.
+     */
+    private static boolean isRejected(final Throwable exception) {
+        if (!(exception instanceof RequestException))
+            return false;
+
+        switch (((RequestException) exception).getStatus()) {
+            case RequestException.Status.TOO_MUCH_DATA:
+            case RequestException.Status.INVALID_OPERATION:
+            case RequestException.Status.INVALID_DATA_SIZE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Entry append(final byte kind, final Batch batch) {
+        final var size = batch.getBufferLen();
+        final var recordSize = align(Struct.SIZE + size);
+        if (recordSize > segmentSize)
+            throw new IllegalArgumentException("Batch larger than a segment");
+
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("Journal is closed");
+
+            final var entry = new Entry(sequence++, reserve(recordSize), kind, null);
+            write(entry.sequence, kind, batch.getBuffer(), size);
+            entry.segment.pending++;
+            pending++;
+            return entry;
+        }
+    }
+
+    private void complete(final Entry entry) {
+        synchronized (this) {
+            entry.segment.pending--;
+            pending--;
+
+            // Completions are not forced, a lost completion only replays an applied batch
+            if (!closed) {
+                reserve(Struct.SIZE);
+                write(entry.sequence, Kind.COMPLETED, null, 0);
+            }
+            retire();
+        }
+    }
+
+    /**
+     * Makes room for a record in the current segment, rolling over to a new segment if needed.
+     */
+    private Segment reserve(final int recordSize) {
+        assertTrue(Thread.holdsLock(this), "Must hold the journal's lock");
+
+        if (position + recordSize > segmentSize) {
+            // The records of the previous segment are not covered by forcing the new one
+            if (sync == Sync.ALWAYS)
+                current.buffer.force();
+
+            try {
+                roll(current.number + 1);
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        return current;
+    }
+
+    private void write(final long sequence, final byte kind, final ByteBuffer body,
+            final int size) {
+        final var buffer = current.buffer;
+        final var start = position;
+
+        buffer.putLong(start + Struct.Sequence, sequence);
+        buffer.putInt(start + Struct.Size, size);
+        buffer.put(start + Struct.Kind, kind);
+        if (size > 0) {
+            final var source = body.duplicate();
+            source.limit(size).position(0);
+            buffer.duplicate().position(start + Struct.SIZE).put(source);
+        }
+
+        final var checksum = new long[2];
+        blake3.hash128(buffer, start + Struct.Sequence, Struct.SIZE - Struct.Sequence + size,
+                checksum);
+        buffer.putLong(start + Struct.Checksum, checksum[0]);
+        buffer.putLong(start + Struct.Checksum + 8, checksum[1]);
+
+        final var recordSize = align(Struct.SIZE + size);
+        position += recordSize;
+        appended += recordSize;
+    }
+
+    private void force() {
+        final long target;
+        synchronized (this) {
+            target = appended;
+        }
+
+        synchronized (syncLock) {
+            // Already covered by a force that started after this record was appended
+            if (synced >= target)
+                return;
+
+            final long end;
+            final Segment segment;
+            synchronized (this) {
+                end = appended;
+                segment = current;
+            }
+            segment.buffer.force();
+            synced = end;
+        }
+    }
+
+    private void roll(final long number) throws IOException {
+        final var path = directory.resolve(segmentName(number));
+        try (var channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final var buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.order(Batch.BYTE_ORDER);
+
+            final var segment = new Segment(number, path, buffer);
+            segments.addLast(segment);
+            current = segment;
+            position = 0;
+        }
+    }
+
+    /**
+     * Deletes the oldest segments without pending batches.
+     */
+    private void retire() {
+        while (segments.size() > 1 && segments.peekFirst().pending == 0) {
+            try {
+                Files.deleteIfExists(segments.peekFirst().path);
+            } catch (IOException exception) {
+                // Kept until the next completion, its batches are all completed anyway
+                return;
+            }
+            segments.removeFirst();
+        }
+    }
+
+    private void recover() throws IOException {
+        final var numbers = new ArrayList<Long>();
+        try (var files = Files.list(directory)) {
+            files.forEach(path -> {
+                final var number = segmentNumber(path.getFileName().toString());
+                if (number >= 0)
+                    numbers.add(number);
+            });
+        }
+        numbers.sort(null);
+
+        final var entries = new TreeMap<Long, Entry>();
+        for (final var number : numbers) {
+            final var path = directory.resolve(segmentName(number));
+            final MappedByteBuffer buffer;
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(Batch.BYTE_ORDER);
+            }
+
+            final var segment = new Segment(number, path, buffer);
+            segments.addLast(segment);
+
+            final var checksum = new long[2];
+            var start = 0;
+            while (start + Struct.SIZE <= buffer.capacity()) {
+                final var kind = buffer.get(start + Struct.Kind);
+                final var size = buffer.getInt(start + Struct.Size);
+                if (kind == 0 || size < 0 || size > buffer.capacity() - start - Struct.SIZE)
+                    break;
+
+                blake3.hash128(buffer, start + Struct.Sequence,
+                        Struct.SIZE - Struct.Sequence + size, checksum);
+                if (checksum[0] != buffer.getLong(start + Struct.Checksum)
+                        || checksum[1] != buffer.getLong(start + Struct.Checksum + 8))
+                    break;
+
+                final var sequence = buffer.getLong(start + Struct.Sequence);
+                this.sequence = Math.max(this.sequence, sequence + 1);
+
+                if (kind == Kind.COMPLETED) {
+                    final var entry = entries.remove(sequence);
+                    if (entry != null)
+                        entry.segment.pending--;
+                } else if (kind == Kind.CREATE_ACCOUNTS || kind == Kind.CREATE_TRANSFERS) {
+                    final var body = buffer.duplicate().position(start + Struct.SIZE)
+                            .limit(start + Struct.SIZE + size);
+                    entries.put(sequence, new Entry(sequence, segment, kind,
+                            body.slice().order(Batch.BYTE_ORDER)));
+                    segment.pending++;
+                }
+
+                start += align(Struct.SIZE + size);
+            }
+        }
+
+        recovered.addAll(entries.values());
+        pending = recovered.size();
+    }
+
+    static String segmentName(final long number) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(final String name) {
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX))
+            return -1;
+
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    private static int align(final int size) {
+        return (size + 7) & ~7;
+    }
+
+    private static Throwable unwrap(final Throwable exception) {
+        return exception instanceof CompletionException && exception.getCause() != null
+                ? exception.getCause()
+                : exception;
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) throws RequestException {
+        try {
+            return future.get();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on waiting for the journaled request.");
+        } catch (ExecutionException executionException) {
+            final var cause = executionException.getCause();
+            if (cause instanceof RequestException)
+                throw (RequestException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new AssertionError(cause, "Unexpected exception on a journaled request.");
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Routes accounts and transfers to one of several clusters by their ledger.
+ * <p>
+ * Each batch is split in one sub-batch per cluster, submitted to all clusters in parallel, and the
+ * results are merged back so that their {@code getIndex()} refers to the position in the submitted
+ * batch, as if it was submitted to a single cluster.
+ * <p>
+ * A batch split across several clusters is not atomic: if it fails on some clusters, the others
+ * may still have created their rows, and a {@link RoutedException} carries their results.
+ * <p>
+ * The clients are not owned by the router and must be closed by the caller. This class is
+ * thread-safe.
+ */
+public final class LedgerRouter {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Partitioning reads the ledger of each row straight from the batch's buffer, without moving
+     * its cursor, and remembers the cluster of each row. Rows are then copied to the sub-batches
+     * in runs of consecutive rows of the same cluster. A batch whose rows all belong to the same
+     * cluster is submitted as is, without copying.
+     *
+     * Linked events are only atomic within a cluster, so a chain (a run of rows flagged LINKED,
+     * up to and including the first row that is not) whose rows span several clusters is
+     * rejected before anything is submitted.
+     *
+     * Every sub-batch submitted is awaited, even once another one failed, so that the results
+     * of the clusters that succeeded are never lost. A client closed before anything is submitted
+     * fails right away, as with a single cluster, but one closed after another cluster's
+     * sub-batch was submitted fails the routed batch instead, and the remaining clusters are not
+     * submitted to.
+     *
+     * Results are encoded as (index << 32 | result) to be merged with a single sort, each
+     * cluster's results are already sorted by index and so are the positions of its rows.
+     *
+     */
+    // @formatter:on
+
+    private static final short LINKED = 1 << 0;
+
+    private final HashMap<Integer, Integer> clusterByLedger;
+    private final Client[] clients;
+
+    /**
+     * Initializes a router from the client connected to the cluster of each ledger.
+     * <p>
+     * Several ledgers may be mapped to the same client, rows of those ledgers are then submitted
+     * together.
+     *
+     * @param clientsByLedger the client of each ledger.
+     *
+     * @throws NullPointerException if {@code clientsByLedger} is null or any ledger or client in
+     *         it is null.
+     * @throws IllegalArgumentException if {@code clientsByLedger} is empty.
+     */
+    public LedgerRouter(final Map<Integer, Client> clientsByLedger) {
+        Objects.requireNonNull(clientsByLedger, "Clients cannot be null");
+        if (clientsByLedger.isEmpty())
+            throw new IllegalArgumentException("Empty clients");
+
+        final var indexes = new IdentityHashMap<Client, Integer>();
+        final var clients = new ArrayList<Client>();
+        this.clusterByLedger = new HashMap<>();
+
+        for (final var entry : clientsByLedger.entrySet()) {
+            final var ledger = Objects.requireNonNull(entry.getKey(), "Ledger cannot be null");
+            final var client = Objects.requireNonNull(entry.getValue(), "Client cannot be null");
+
+            var index = indexes.get(client);
+            if (index == null) {
+                index = clients.size();
+                indexes.put(client, index);
+                clients.add(client);
+            }
+            clusterByLedger.put(ledger, index);
+        }
+
+        this.clients = clients.toArray(new Client[0]);
+    }
+
+    /**
+     * Submits a batch of new accounts to be created, each on the cluster of its ledger.
+     *
+     * @param batch a {@link com.tigerbeetle.AccountBatch batch} containing all accounts to be
+     *        created.
+     * @return a read-only {@link com.tigerbeetle.CreateAccountResultBatch batch} describing the
+     *         result, indexed by position in {@code batch}.
+     * @throws RequestException refer to {@link com.tigerbeetle.RequestException.Status} for more
+     *         details.
+     * @throws RoutedException if the batch was split across several clusters and failed on some
+     *         of them, the others may have created their rows.
+     * @throws IllegalArgumentException if {@code batch} is empty, contains a ledger without a
+     *         cluster, or a linked chain spanning several clusters.
+     * @throws NullPointerException if {@code batch} is null.
+     * @throws IllegalStateException if a client is closed.
+     */
+    public CreateAccountResultBatch createAccounts(final AccountBatch batch)
+            throws RequestException {
+        return join(createAccountsAsync(batch));
+    }
+
+    /**
+     * Submits a batch of new accounts to be created asynchronously, each on the cluster of its
+     * ledger.
+     *
+     * @see #createAccounts(AccountBatch)
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed, exceptionally
+     *         with a {@link RoutedException} if a split batch failed on some clusters.
+     * @throws IllegalArgumentException if {@code batch} is empty, contains a ledger without a
+     *         cluster, or a linked chain spanning several clusters.
+     * @throws NullPointerException if {@code batch} is null.
+     * @throws IllegalStateException if a client is closed.
+     */
+    public CompletableFuture<CreateAccountResultBatch> createAccountsAsync(
+            final AccountBatch batch) {
+        final var partition = partition(batch, AccountBatch.Struct.SIZE,
+                AccountBatch.Struct.Ledger, AccountBatch.Struct.Flags);
+
+        if (partition.single >= 0)
+            return clients[partition.single].createAccountsAsync(batch);
+
+        return route(partition, cluster -> clients[cluster]
+                .createAccountsAsync(new AccountBatch(partition.buffers[cluster])),
+                CreateAccountResultBatch::new, CreateAccountResultBatch.EMPTY);
+    }
+
+    /**
+     * Submits a batch of new transfers to be created, each on the cluster of its ledger.
+     *
+     * @param batch a {@link com.tigerbeetle.TransferBatch batch} containing all transfers to be
+     *        created.
+     * @return a read-only {@link com.tigerbeetle.CreateTransferResultBatch batch} describing the
+     *         result, indexed by position in {@code batch}.
+     * @throws RequestException refer to {@link com.tigerbeetle.RequestException.Status} for more
+     *         details.
+     * @throws RoutedException if the batch was split across several clusters and failed on some
+     *         of them, the others may have created their rows.
+     * @throws IllegalArgumentException if {@code batch} is empty, contains a ledger without a
+     *         cluster, or a linked chain spanning several clusters.
+     * @throws NullPointerException if {@code batch} is null.
+     * @throws IllegalStateException if a client is closed.
+     */
+    public CreateTransferResultBatch createTransfers(final TransferBatch batch)
+            throws RequestException {
+        return join(createTransfersAsync(batch));
+    }
+
+    /**
+     * Submits a batch of new transfers to be created asynchronously, each on the cluster of its
+     * ledger.
+     *
+     * @see #createTransfers(TransferBatch)
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed, exceptionally
+     *         with a {@link RoutedException} if a split batch failed on some clusters.
+     * @throws IllegalArgumentException if {@code batch} is empty, contains a ledger without a
+     *         cluster, or a linked chain spanning several clusters.
+     * @throws NullPointerException if {@code batch} is null.
+     * @throws IllegalStateException if a client is closed.
+     */
+    public CompletableFuture<CreateTransferResultBatch> createTransfersAsync(
+            final TransferBatch batch) {
+        final var partition = partition(batch, TransferBatch.Struct.SIZE,
+                TransferBatch.Struct.Ledger, TransferBatch.Struct.Flags);
+
+        if (partition.single >= 0)
+            return clients[partition.single].createTransfersAsync(batch);
+
+        return route(partition, cluster -> clients[cluster]
+                .createTransfersAsync(new TransferBatch(partition.buffers[cluster])),
+                CreateTransferResultBatch::new, CreateTransferResultBatch.EMPTY);
+    }
+
+    private static final class Partition {
+
+        // The cluster of all rows, or -1 if they are split
+        final int single;
+
+        // The positions in the submitted batch of each cluster's rows, null if it has none
+        final int[][] rows;
+        final ByteBuffer[] buffers;
+
+        Partition(final int single, final int clusters) {
+            this.single = single;
+            this.rows = new int[clusters][];
+            this.buffers = new ByteBuffer[clusters];
+        }
+    }
+
+    /**
+     * Splits the rows of {@code batch} by cluster.
+     *
+     * @return the partition, without any sub-batch if all rows belong to the same cluster.
+     */
+    private Partition partition(final Batch batch, final int elementSize, final int ledgerOffset,
+            final int flagsOffset) {
+        Objects.requireNonNull(batch, "Batch cannot be null");
+
+        final var length = batch.getLength();
+        if (length == 0)
+            throw new IllegalArgumentException("Empty batch");
+
+        final var buffer = batch.getBuffer().duplicate().order(Batch.BYTE_ORDER);
+        final var clusters = new int[length];
+        final var counts = new int[clients.length];
+
+        var lastLedger = 0;
+        var lastCluster = -1;
+        var chainStart = -1;
+        var used = 0;
+
+        for (int row = 0; row < length; row++) {
+            final var offset = row * elementSize;
+            final var ledger = buffer.getInt(offset + ledgerOffset);
+
+            if (lastCluster < 0 || ledger != lastLedger) {
+                final var cluster = clusterByLedger.get(ledger);
+                if (cluster == null)
+                    throw new IllegalArgumentException(
+                            String.format("No cluster for ledger %d at index %d",
+                                    Integer.toUnsignedLong(ledger), row));
+
+                lastLedger = ledger;
+                lastCluster = cluster;
+            }
+
+            if (chainStart >= 0 && clusters[chainStart] != lastCluster)
+                throw new IllegalArgumentException(
+                        String.format("Linked chain at index %d spans several clusters",
+                                chainStart));
+
+            final var linked = (buffer.getShort(offset + flagsOffset) & LINKED) != 0;
+            if (linked && chainStart < 0) {
+                chainStart = row;
+            } else if (!linked) {
+                chainStart = -1;
+            }
+
+            clusters[row] = lastCluster;
+            if (counts[lastCluster] == 0)
+                used += 1;
+            counts[lastCluster] += 1;
+        }
+
+        if (used == 1)
+            return new Partition(clusters[0], 0);
+
+        final var partition = new Partition(-1, clients.length);
+        final var positions = new int[clients.length];
+        for (int cluster = 0; cluster < clients.length; cluster++) {
+            if (counts[cluster] > 0) {
+                partition.rows[cluster] = new int[counts[cluster]];
+                partition.buffers[cluster] = ByteBuffer
+                        .allocateDirect(counts[cluster] * elementSize).order(Batch.BYTE_ORDER);
+            }
+        }
+
+        // Copies runs of consecutive rows of the same cluster at once
+        var runStart = 0;
+        for (int row = 0; row < length; row++) {
+            final var cluster = clusters[row];
+            partition.rows[cluster][positions[cluster]] = row;
+            positions[cluster] += 1;
+
+            if (row == length - 1 || clusters[row + 1] != cluster) {
+                buffer.limit((row + 1) * elementSize).position(runStart * elementSize);
+                partition.buffers[cluster].put(buffer);
+                buffer.limit(buffer.capacity());
+                runStart = row + 1;
+            }
+        }
+
+        for (final var target : partition.buffers) {
+            if (target != null)
+                target.flip();
+        }
+        return partition;
+    }
+
+    /**
+     * Submits the sub-batch of each cluster and merges their results, or fails with a
+     * {@link RoutedException} carrying the results of the clusters that succeeded.
+     *
+     * @throws IllegalStateException if the first client submitted to is closed.
+     */
+    private <T extends Batch> CompletableFuture<T> route(final Partition partition,
+            final IntFunction<CompletableFuture<T>> submit,
+            final Function<ByteBuffer, T> newResults, final T empty) {
+        final CompletableFuture<T>[] futures = newFutures(clients.length);
+        var submitted = false;
+
+        for (int cluster = 0; cluster < clients.length; cluster++) {
+            if (partition.rows[cluster] == null)
+                continue;
+
+            try {
+                futures[cluster] = submit.apply(cluster);
+                submitted = true;
+            } catch (IllegalStateException exception) {
+                if (!submitted)
+                    throw exception;
+
+                // Fails this cluster and the remaining ones, never submitted
+                for (int rest = cluster; rest < clients.length; rest++) {
+                    if (partition.rows[rest] != null)
+                        futures[rest] = CompletableFuture.failedFuture(exception);
+                }
+                break;
+            }
+        }
+
+        return CompletableFuture.allOf(submitted(futures)).handle((ignored, exception) -> {
+            final var merged = merge(partition, futures);
+            final var results = merged == null ? empty : newResults.apply(merged);
+            if (exception == null)
+                return results;
+
+            throw failure(partition, futures, results);
+        });
+    }
+
+    // Generic arrays cannot be created directly
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T>[] newFutures(final int length) {
+        return (CompletableFuture<T>[]) new CompletableFuture<?>[length];
+    }
+
+    private static CompletableFuture<?>[] submitted(final CompletableFuture<?>[] futures) {
+        return Arrays.stream(futures).filter(Objects::nonNull).toArray(CompletableFuture[]::new);
+    }
+
+    private static boolean isSucceeded(final CompletableFuture<?> future) {
+        return future != null && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * Merges the results of each cluster that succeeded, indexed by position in the submitted
+     * batch.
+     *
+     * @return a read-only buffer of results, or null if there is none.
+     */
+    private static ByteBuffer merge(final Partition partition,
+            final CompletableFuture<? extends Batch>[] futures) {
+        var count = 0;
+        for (final var future : futures) {
+            if (isSucceeded(future))
+                count += future.join().getLength();
+        }
+
+        if (count == 0)
+            return null;
+
+        // Index and result, same layout for accounts and transfers
+        final var encoded = new long[count];
+        var next = 0;
+        for (int cluster = 0; cluster < futures.length; cluster++) {
+            if (!isSucceeded(futures[cluster]))
+                continue;
+
+            final var rows = partition.rows[cluster];
+            final var results = futures[cluster].join().getBuffer();
+            final var length = futures[cluster].join().getLength();
+            for (int i = 0; i < length; i++) {
+                final var offset = i * CreateTransferResultBatch.Struct.SIZE;
+                final var index = results.getInt(offset + CreateTransferResultBatch.Struct.Index);
+                final var result = results.getInt(offset + CreateTransferResultBatch.Struct.Result);
+                encoded[next] = ((long) rows[index] << 32) | Integer.toUnsignedLong(result);
+                next += 1;
+            }
+        }
+        Arrays.sort(encoded);
+
+        final var merged = ByteBuffer.allocate(count * CreateTransferResultBatch.Struct.SIZE)
+                .order(Batch.BYTE_ORDER);
+        for (final var value : encoded) {
+            merged.putInt((int) (value >>> 32));
+            merged.putInt((int) value);
+        }
+        return merged.position(0).asReadOnlyBuffer();
+    }
+
+    /**
+     * Collects the positions of the rows of the clusters that failed, with the first failure.
+     */
+    private static RoutedException failure(final Partition partition,
+            final CompletableFuture<? extends Batch>[] futures, final Batch results) {
+        Throwable cause = null;
+        var count = 0;
+        for (int cluster = 0; cluster < futures.length; cluster++) {
+            if (futures[cluster] == null || isSucceeded(futures[cluster]))
+                continue;
+
+            if (cause == null)
+                cause = futures[cluster].handle((ignored, exception) -> exception).join();
+            count += partition.rows[cluster].length;
+        }
+
+        final var failedIndexes = new int[count];
+        var next = 0;
+        for (int cluster = 0; cluster < futures.length; cluster++) {
+            if (futures[cluster] == null || isSucceeded(futures[cluster]))
+                continue;
+
+            final var rows = partition.rows[cluster];
+            System.arraycopy(rows, 0, failedIndexes, next, rows.length);
+            next += rows.length;
+        }
+        Arrays.sort(failedIndexes);
+
+        if (cause instanceof CompletionException)
+            cause = cause.getCause();
+        return new RoutedException(cause, results, failedIndexes);
+    }
+
+    private static <T> T join(final CompletableFuture<T> future) throws RequestException {
+        try {
+            return future.get();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on waiting for the routed requests.");
+        } catch (ExecutionException executionException) {
+            final var cause = executionException.getCause();
+            if (cause instanceof RequestException)
+                throw (RequestException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new AssertionError(cause, "Unexpected exception on a routed request.");
+        }
+    }
+}
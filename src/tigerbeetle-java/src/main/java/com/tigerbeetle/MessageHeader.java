@@ -0,0 +1,128 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout and checksums of the 128-byte header that frames every message exchanged with the
+ * cluster.
+ */
+final class MessageHeader {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Mirrors vsr.Header from the TigerBeetle version this client is built against,
+     * all integers are little-endian:
+     *
+     *   checksum: u128          checksum of the header, from checksum_body to the end
+     *   checksum_body: u128     checksum of the body
+     *   parent: u128            the checksum of the previous reply, chaining a client's requests
+     *   client: u128            the client id
+     *   context: u128           the session number, assigned on registration
+     *   request: u32            the request number, zero for the registration
+     *   cluster: u32
+     *   epoch: u32
+     *   view: u32
+     *   op: u64
+     *   commit: u64
+     *   timestamp: u64
+     *   size: u32               header plus body
+     *   replica: u8
+     *   command: u8
+     *   operation: u8
+     *   version: u8
+     *
+     * Checksums are the first 128 bits of BLAKE3.
+     *
+     */
+    // @formatter:on
+
+    interface Struct {
+        int Checksum = 0;
+        int ChecksumBody = 16;
+        int Parent = 32;
+        int Client = 48;
+        int Context = 64;
+        int Request = 80;
+        int Cluster = 84;
+        int Epoch = 88;
+        int View = 92;
+        int Op = 96;
+        int Commit = 104;
+        int Timestamp = 112;
+        int Size = 120;
+        int Replica = 124;
+        int Command = 125;
+        int Operation = 126;
+        int Version = 127;
+
+        int SIZE = 128;
+    }
+
+    interface Command {
+        byte PING = 1;
+        byte PONG = 2;
+        byte REQUEST = 3;
+        byte REPLY = 6;
+        byte EVICTION = 18;
+    }
+
+    interface Operation {
+        byte REGISTER = 2;
+    }
+
+    static final byte VERSION = 0;
+
+    static final int MESSAGE_SIZE_MAX = 1024 * 1024;
+    static final int MESSAGE_BODY_SIZE_MAX = MESSAGE_SIZE_MAX - Struct.SIZE;
+
+    private MessageHeader() {}
+
+    /**
+     * Computes both checksums, the body must be {@code size - 128} bytes long from position zero.
+     */
+    static void setChecksums(final Blake3 blake3, final ByteBuffer header, final ByteBuffer body,
+            final long[] scratch) {
+        final var bodyLen = header.getInt(Struct.Size) - Struct.SIZE;
+        blake3.hash128(body, 0, bodyLen, scratch);
+        header.putLong(Struct.ChecksumBody, scratch[0]);
+        header.putLong(Struct.ChecksumBody + 8, scratch[1]);
+
+        blake3.hash128(header, Struct.ChecksumBody, Struct.SIZE - Struct.ChecksumBody, scratch);
+        header.putLong(Struct.Checksum, scratch[0]);
+        header.putLong(Struct.Checksum + 8, scratch[1]);
+    }
+
+    /**
+     * Validates the header checksum of a message starting at {@code offset}.
+     */
+    static boolean isValidChecksum(final Blake3 blake3, final ByteBuffer message, final int offset,
+            final long[] scratch) {
+        blake3.hash128(message, offset + Struct.ChecksumBody, Struct.SIZE - Struct.ChecksumBody,
+                scratch);
+        return scratch[0] == message.getLong(offset + Struct.Checksum)
+                && scratch[1] == message.getLong(offset + Struct.Checksum + 8);
+    }
+
+    /**
+     * Validates the body checksum of a message starting at {@code offset}, the header must be
+     * valid.
+     */
+    static boolean isValidChecksumBody(final Blake3 blake3, final ByteBuffer message,
+            final int offset, final long[] scratch) {
+        final var bodyLen = message.getInt(offset + Struct.Size) - Struct.SIZE;
+        blake3.hash128(message, offset + Struct.SIZE, bodyLen, scratch);
+        return scratch[0] == message.getLong(offset + Struct.ChecksumBody)
+                && scratch[1] == message.getLong(offset + Struct.ChecksumBody + 8);
+    }
+
+    /**
+     * Fills the header with zeros.
+     */
+    static void clear(final ByteBuffer header) {
+        for (int i = 0; i < Struct.SIZE; i += Long.BYTES) {
+            header.putLong(i, 0L);
+        }
+    }
+}
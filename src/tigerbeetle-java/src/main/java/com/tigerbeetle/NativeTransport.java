@@ -0,0 +1,137 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Submits requests to a TigerBeetle cluster through the native tb_client library.
+ */
+final class NativeTransport extends Transport {
+    static {
+        JNILoader.loadFromJar();
+    }
+
+    // Null when completions are delivered through upcalls
+    private final CompletionRing completionRing;
+
+    // Packet addresses of a batch, read by the JNI side
+    private final ThreadLocal<ByteBuffer> batchPackets;
+
+    // Set by the JNI side
+    private volatile long clientHandle;
+
+    /**
+     * @param useCompletionRing whether the native side writes completions to a
+     *        {@link CompletionRing} instead of calling back into Java for each reply.
+     */
+    NativeTransport(final boolean useCompletionRing) {
+        this.batchPackets = new ThreadLocal<>();
+        this.completionRing = useCompletionRing ? new CompletionRing(CompletionRing.CAPACITY) {
+            @Override
+            void await(final long timeoutNanos) {
+                ringWait(getBuffer(), timeoutNanos);
+            }
+
+            @Override
+            void wake() {
+                ringWake(getBuffer());
+            }
+        } : null;
+    }
+
+    /**
+     * Initializes the native client.
+     *
+     * @return zero, or an {@link InitializationException.Status} describing the error.
+     */
+    int init(final int clusterID, final String addresses, final int maxConcurrency) {
+        final var status = clientInit(clusterID, addresses, maxConcurrency,
+                completionRing == null ? null : completionRing.getBuffer());
+
+        if (status == InitializationException.Status.SUCCESS && completionRing != null) {
+            completionRing.start();
+        }
+
+        return status;
+    }
+
+    /**
+     * Translates a tb_client initialization status into the exceptions thrown by the client.
+     */
+    static void checkInitStatus(final int status) {
+        if (status == InitializationException.Status.INVALID_ADDRESS)
+            throw new IllegalArgumentException("Replica addresses format is invalid.");
+
+        if (status != InitializationException.Status.SUCCESS)
+            throw new InitializationException(status);
+    }
+
+    // Packets are allocated by the client's PacketPool, tb_client accepts any packet submitted to
+    // it, so the ones allocated by tb_client_init are never used
+    @Override
+    long addressOf(final ByteBuffer packets) {
+        return bufferAddress(packets);
+    }
+
+    @Override
+    void submit(final Request<?> request, final long packet) {
+        if (completionRing == null) {
+            submit(clientHandle, request, packet);
+        } else {
+            completionRing.register(packet, request);
+            submitRing(clientHandle, packet, request.getOperation(), request.getBuffer(),
+                    (int) request.getBufferLen());
+        }
+    }
+
+    @Override
+    void submit(final Request<?>[] requests, final long[] packets, final int count) {
+        var buffer = batchPackets.get();
+        if (buffer == null || buffer.capacity() < count * Long.BYTES) {
+            buffer = ByteBuffer.allocateDirect(count * Long.BYTES).order(ByteOrder.nativeOrder());
+            batchPackets.set(buffer);
+        }
+
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(i * Long.BYTES, packets[i]);
+            if (completionRing != null) {
+                completionRing.register(packets[i], requests[i]);
+            }
+        }
+
+        submitBatch(clientHandle, requests, buffer, count, completionRing == null);
+    }
+
+    @Override
+    synchronized void close() {
+        if (clientHandle == 0)
+            return;
+
+        clientDeinit(clientHandle);
+        clientHandle = 0;
+
+        // No more completions can be published once the native client is closed
+        if (completionRing != null) {
+            completionRing.close();
+        }
+    }
+
+    private native void submit(long clientHandle, Request<?> request, long packet);
+
+    private native void submitBatch(long clientHandle, Request<?>[] requests, ByteBuffer packets,
+            int count, boolean holdReference);
+
+    private native void submitRing(long clientHandle, long packet, byte operation,
+            ByteBuffer buffer, int bufferLen);
+
+    private native void ringWait(ByteBuffer ring, long timeoutNanos);
+
+    private native void ringWake(ByteBuffer ring);
+
+    private native int clientInit(int clusterID, String addresses, int maxConcurrency,
+            ByteBuffer ring);
+
+    private native void clientDeinit(long clientHandle);
+
+    private native long bufferAddress(ByteBuffer buffer);
+}
@@ -0,0 +1,542 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Submits requests to a TigerBeetle cluster speaking the wire protocol directly over NIO.
+ */
+final class NioTransport extends Transport {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * A pure-Java alternative to the native tb_client, with a single selector thread doing
+     * all the I/O and completing all requests, just like the tb_client thread does.
+     *
+     * Protocol:
+     *
+     * - The client registers first, the reply's commit number becomes the session number.
+     * - A session has only one request in flight, others are queued in submission order.
+     * - Each request carries the checksum of the previous reply as its parent.
+     * - Requests are sent to the primary of the latest known view, and resent to the next
+     *   replica on timeout, with exponential backoff.
+     *
+     * Memory:
+     *
+     * - Requests are framed by writing the header and the Batch's direct buffer
+     *   with a single gathering write, the request body is never copied.
+     * - Replies are read into a single direct buffer reused for all replies,
+     *   Request.endRequest copies the result before returning.
+     *
+     * There are no native packets, the number of requests in flight is already bounded by the
+     * client's packet pool, and packets are only passed back to Request.endRequest.
+     *
+     * Failures:
+     *
+     * - Network errors only disconnect, the request is resent on timeout.
+     * - Any other error, from the selector or an unexpected reply, stops the selector thread,
+     *   and so does an eviction of this client by the cluster.
+     *   The request in flight and all queued ones then fail with TRANSPORT_FAILED, and so do
+     *   the later submissions, right away on the caller's thread.
+     *
+     */
+    // @formatter:on
+
+    private static final long REQUEST_TIMEOUT_MIN = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long REQUEST_TIMEOUT_MAX = TimeUnit.SECONDS.toNanos(16);
+
+    private final int clusterID;
+    private final InetSocketAddress[] replicas;
+    private final long clientIdLeast;
+    private final long clientIdMost;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Request<?>> submissions;
+    private volatile boolean closed;
+
+    // Set once the selector thread stopped on an unexpected error
+    private volatile boolean failed;
+
+    // State owned by the selector thread
+
+    private final ArrayDeque<Request<?>> queue;
+    private final Blake3 blake3;
+    private final long[] checksum;
+
+    private final ByteBuffer header;
+    private final ByteBuffer[] writeBuffers;
+    private final ByteBuffer readBuffer;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private int replica;
+
+    // The request in flight, null when registering or idle
+    private Request<?> inflight;
+    private boolean inflightPending;
+    private byte inflightOperation;
+    private int inflightRequestNumber;
+    private long inflightDeadline;
+    private long requestTimeout;
+
+    private int requestNumber;
+    private long parentLeast;
+    private long parentMost;
+    private long session;
+    private int view;
+
+    NioTransport(final int clusterID, final String addresses) {
+        this.clusterID = clusterID;
+        this.replicas = parseAddresses(addresses);
+
+        final var random = new SecureRandom();
+        long least;
+        long most;
+        do {
+            least = random.nextLong();
+            most = random.nextLong();
+        } while (least == 0 && most == 0);
+        this.clientIdLeast = least;
+        this.clientIdMost = most;
+
+        this.submissions = new ConcurrentLinkedQueue<>();
+        this.queue = new ArrayDeque<>();
+        this.blake3 = new Blake3();
+        this.checksum = new long[2];
+
+        this.header = ByteBuffer.allocateDirect(MessageHeader.Struct.SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.writeBuffers = new ByteBuffer[2];
+        this.readBuffer = ByteBuffer.allocateDirect(MessageHeader.MESSAGE_SIZE_MAX)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        this.requestTimeout = REQUEST_TIMEOUT_MIN;
+
+        try {
+            this.selector = Selector.open();
+        } catch (IOException exception) {
+            throw new InitializationException(InitializationException.Status.UNEXPECTED);
+        }
+
+        this.thread = new Thread(this::run, "tigerbeetle-nio");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Parses addresses in the same format accepted by the native client, either
+     * {@code host:port} or just {@code port} for the loopback address.
+     *
+     * @throws IllegalArgumentException if the format is invalid.
+     */
+    static InetSocketAddress[] parseAddresses(final String addresses) {
+        final var parts = addresses.split(",");
+        final var result = new InetSocketAddress[parts.length];
+
+        for (int i = 0; i < parts.length; i++) {
+            final var address = parts[i].trim();
+            final var separator = address.lastIndexOf(':');
+            final var host = separator < 0 ? "127.0.0.1" : address.substring(0, separator);
+            final var port = separator < 0 ? address : address.substring(separator + 1);
+
+            try {
+                final var portNumber = Integer.parseInt(port);
+                if (host.isEmpty() || portNumber <= 0 || portNumber > 65535)
+                    throw new IllegalArgumentException("Replica addresses format is invalid.");
+
+                result[i] = new InetSocketAddress(host, portNumber);
+            } catch (NumberFormatException exception) {
+                throw new IllegalArgumentException("Replica addresses format is invalid.");
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    void submit(final Request<?> request, final long packet) {
+        submissions.add(request);
+
+        // Checked after adding, the selector thread may have failed before polling it
+        if (failed) {
+            failSubmissions();
+            return;
+        }
+
+        selector.wakeup();
+    }
+
+    @Override
+    void submit(final Request<?>[] requests, final long[] packets, final int count) {
+        for (int i = 0; i < count; i++) {
+            submissions.add(requests[i]);
+        }
+
+        if (failed) {
+            failSubmissions();
+            return;
+        }
+
+        // Wakes the selector thread once for the whole batch
+        selector.wakeup();
+    }
+
+    @Override
+    void close() {
+        closed = true;
+        selector.wakeup();
+
+        try {
+            thread.join();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on closing the NIO transport.");
+        }
+    }
+
+    private void run() {
+        try {
+            register();
+
+            while (!closed) {
+                final var now = System.nanoTime();
+                final var timeout = inflightPending
+                        ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(inflightDeadline - now))
+                        : 0;
+                selector.select(timeout);
+
+                Request<?> submitted;
+                while ((submitted = submissions.poll()) != null) {
+                    queue.add(submitted);
+                }
+
+                final var keys = selector.selectedKeys();
+                for (final var selected : keys) {
+                    if (selected.isValid()) {
+                        handle(selected);
+                    }
+                }
+                keys.clear();
+
+                if (!inflightPending) {
+                    sendNext();
+                } else if (System.nanoTime() - inflightDeadline >= 0) {
+                    retry();
+                }
+            }
+
+        } catch (Throwable fatal) {
+
+            // Nothing can be sent anymore, fails the pending requests instead of leaving them
+            // waiting forever
+            failed = true;
+            failPending();
+
+        } finally {
+            disconnect();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void handle(final SelectionKey selected) {
+        try {
+            if (selected.isConnectable()) {
+                channel.finishConnect();
+                selected.interestOps(SelectionKey.OP_READ);
+                if (inflightPending) {
+                    resend();
+                }
+            }
+
+            if (selected.isValid() && selected.isWritable()) {
+                flush();
+            }
+
+            if (selected.isValid() && selected.isReadable()) {
+                read();
+            }
+
+        } catch (IOException exception) {
+            // The request is resent to the next replica on timeout
+            disconnect();
+        }
+    }
+
+    private void register() {
+        assertTrue(requestNumber == 0, "Already registered");
+
+        inflight = null;
+        inflightOperation = MessageHeader.Operation.REGISTER;
+        send(null, 0);
+    }
+
+    private void sendNext() {
+        Request<?> request;
+        while ((request = queue.poll()) != null) {
+            final var bodyLen = request.getBufferLen();
+            if (bodyLen > MessageHeader.MESSAGE_BODY_SIZE_MAX) {
+                request.endRequest(request.getOperation(), null, request.getPacket(),
+                        RequestException.Status.TOO_MUCH_DATA);
+                continue;
+            }
+
+            inflight = request;
+            inflightOperation = request.getOperation();
+            send(request.getBuffer(), (int) bodyLen);
+            return;
+        }
+    }
+
+    private void send(final ByteBuffer body, final int bodyLen) {
+        inflightRequestNumber = requestNumber;
+        requestNumber += 1;
+
+        MessageHeader.clear(header);
+        header.putLong(MessageHeader.Struct.Parent, parentLeast);
+        header.putLong(MessageHeader.Struct.Parent + 8, parentMost);
+        header.putLong(MessageHeader.Struct.Client, clientIdLeast);
+        header.putLong(MessageHeader.Struct.Client + 8, clientIdMost);
+        header.putLong(MessageHeader.Struct.Context, session);
+        header.putInt(MessageHeader.Struct.Request, inflightRequestNumber);
+        header.putInt(MessageHeader.Struct.Cluster, clusterID);
+        header.putInt(MessageHeader.Struct.View, view);
+        header.putInt(MessageHeader.Struct.Size, MessageHeader.Struct.SIZE + bodyLen);
+        header.put(MessageHeader.Struct.Command, MessageHeader.Command.REQUEST);
+        header.put(MessageHeader.Struct.Operation, inflightOperation);
+        header.put(MessageHeader.Struct.Version, MessageHeader.VERSION);
+
+        final var bodyBuffer = body == null ? ByteBuffer.allocate(0)
+                : body.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader.setChecksums(blake3, header, bodyBuffer, checksum);
+
+        writeBuffers[0] = header;
+        writeBuffers[1] = bodyBuffer;
+        inflightPending = true;
+
+        // Sends to the primary of the latest known view
+        final var primary = Integer.remainderUnsigned(view, replicas.length);
+        if (primary != replica) {
+            disconnect();
+            replica = primary;
+        }
+        requestTimeout = REQUEST_TIMEOUT_MIN;
+        resend();
+    }
+
+    private void resend() {
+        inflightDeadline = System.nanoTime() + requestTimeout;
+
+        header.clear();
+        writeBuffers[1].clear().limit(header.getInt(MessageHeader.Struct.Size)
+                - MessageHeader.Struct.SIZE);
+
+        if (channel == null) {
+            connect();
+            return;
+        }
+
+        if (channel.isConnected()) {
+            try {
+                flush();
+            } catch (IOException exception) {
+                disconnect();
+            }
+        }
+    }
+
+    private void retry() {
+        // Tries the next replica, with exponential backoff
+        disconnect();
+        replica = (replica + 1) % replicas.length;
+        requestTimeout = Math.min(requestTimeout * 2, REQUEST_TIMEOUT_MAX);
+        resend();
+    }
+
+    private void connect() {
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            readBuffer.clear();
+
+            if (channel.connect(replicas[replica])) {
+                key = channel.register(selector, SelectionKey.OP_READ);
+                flush();
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException exception) {
+            disconnect();
+        }
+    }
+
+    private void disconnect() {
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+        }
+    }
+
+    private void flush() throws IOException {
+        if (writeBuffers[1] == null)
+            return;
+
+        channel.write(writeBuffers);
+        if (writeBuffers[1].hasRemaining() || writeBuffers[0].hasRemaining()) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void read() throws IOException {
+        if (channel.read(readBuffer) < 0) {
+            disconnect();
+            return;
+        }
+
+        while (readBuffer.position() >= MessageHeader.Struct.SIZE) {
+            if (!MessageHeader.isValidChecksum(blake3, readBuffer, 0, checksum)) {
+                disconnect();
+                return;
+            }
+
+            final var size = readBuffer.getInt(MessageHeader.Struct.Size);
+            if (size < MessageHeader.Struct.SIZE || size > MessageHeader.MESSAGE_SIZE_MAX) {
+                disconnect();
+                return;
+            }
+
+            if (readBuffer.position() < size)
+                return;
+
+            if (!MessageHeader.isValidChecksumBody(blake3, readBuffer, 0, checksum)) {
+                disconnect();
+                return;
+            }
+
+            onMessage(size);
+
+            // Moves any remaining bytes to the start of the buffer
+            readBuffer.limit(readBuffer.position()).position(size);
+            readBuffer.compact();
+        }
+    }
+
+    private void onMessage(final int size) {
+        final var command = readBuffer.get(MessageHeader.Struct.Command);
+
+        if (command == MessageHeader.Command.PONG) {
+            updateView(readBuffer.getInt(MessageHeader.Struct.View));
+            return;
+        }
+
+        if (command == MessageHeader.Command.EVICTION) {
+
+            // The session is gone and nothing sent from now on would be accepted, stops the
+            // selector thread, failing all pending requests
+            if (isOwnMessage())
+                throw new IllegalStateException("Client evicted");
+            return;
+        }
+
+        if (command != MessageHeader.Command.REPLY || !isOwnMessage())
+            return;
+
+        // Ignores duplicated replies from requests already completed
+        if (!inflightPending
+                || readBuffer.getInt(MessageHeader.Struct.Request) != inflightRequestNumber)
+            return;
+
+        assertTrue(readBuffer.get(MessageHeader.Struct.Operation) == inflightOperation,
+                "Unexpected reply operation");
+
+        // The checksum of this reply becomes the parent of the next request
+        parentLeast = readBuffer.getLong(MessageHeader.Struct.Checksum);
+        parentMost = readBuffer.getLong(MessageHeader.Struct.Checksum + 8);
+        updateView(readBuffer.getInt(MessageHeader.Struct.View));
+
+        final var request = inflight;
+        inflight = null;
+        inflightPending = false;
+        writeBuffers[1] = null;
+
+        if (request == null) {
+
+            // The commit number of the registration becomes the session number
+            session = readBuffer.getLong(MessageHeader.Struct.Commit);
+            assertTrue(session != 0, "Invalid session number");
+
+        } else {
+
+            final var reply = readBuffer.duplicate();
+            reply.limit(size).position(MessageHeader.Struct.SIZE);
+            request.endRequest(inflightOperation, reply.slice(), request.getPacket(),
+                    RequestException.Status.OK);
+        }
+    }
+
+    private boolean isOwnMessage() {
+        return readBuffer.getLong(MessageHeader.Struct.Client) == clientIdLeast
+                && readBuffer.getLong(MessageHeader.Struct.Client + 8) == clientIdMost;
+    }
+
+    private void failPending() {
+        final var request = inflight;
+        inflight = null;
+        inflightPending = false;
+        if (request != null) {
+            fail(request);
+        }
+
+        Request<?> queued;
+        while ((queued = queue.poll()) != null) {
+            fail(queued);
+        }
+
+        failSubmissions();
+    }
+
+    private void failSubmissions() {
+        Request<?> submitted;
+        while ((submitted = submissions.poll()) != null) {
+            fail(submitted);
+        }
+    }
+
+    private static void fail(final Request<?> request) {
+        request.endRequest(request.getOperation(), null, request.getPacket(),
+                RequestException.Status.TRANSPORT_FAILED);
+    }
+
+    private void updateView(final int newView) {
+        if (Integer.compareUnsigned(newView, view) > 0) {
+            view = newView;
+        }
+    }
+}
@@ -0,0 +1,741 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Off-heap packets owned by Java, leased to requests and resized at runtime between a minimum
+ * and a maximum size.
+ */
+final class PacketPool {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Replaces both the packets allocated by tb_client_init and the client's semaphore:
+     * the number of packets is the number of requests that can be in flight.
+     *
+     * Memory:
+     *
+     * - Packets are allocated in slabs, each slab a direct ByteBuffer holding PACKET_SIZE bytes
+     *   per packet, the size of tb_packet_t. The transport translates a slab into its address,
+     *   and a packet is the address of its first byte.
+     * - The first slab holds the minimum size and is kept for the pool's lifetime.
+     * - Slabs are referenced by the pool until released, so their memory is never collected
+     *   while a packet is in use.
+     *
+     * Resizing:
+     *
+     * - Grows when an acquire waits longer than GROW_WAIT_NANOS for a free packet, adding as
+     *   many packets as already allocated (doubling the size), up to the maximum.
+     * - Shrinks when no more than a quarter of the packets were in use for SHRINK_IDLE_NANOS,
+     *   releasing the newest slab once all its packets are free. It is checked on release,
+     *   so a pool left idle only shrinks once requests resume.
+     * - The free packets of the newest slab are kept at the bottom of the free list, so they
+     *   are leased only once the older slabs are exhausted. The newest slab then drains as
+     *   soon as the load fits in the older ones, instead of being kept busy by the most
+     *   recently released packets.
+     *
+     * Acquire and release take a single lock, the critical section is a few array accesses.
+     *
+     * Limit:
+     *
+     * A ConcurrencyLimiter may lower the number of packets in use at once below the size. An
+     * acquire then also waits until the packets in use, including the cached ones, leave room
+     * for its own, without growing the pool. A single acquire is never held back by the limit
+     * when nothing is in use, so a batch larger than the limit still proceeds.
+     *
+     * Priorities:
+     *
+     * Each request acquires with a RequestPriority. Packets reserved for a priority are left
+     * free by the lower ones, so an acquire leaves free the packets reserved for all the
+     * priorities above its own. Waiters wait on one condition per priority, a released packet
+     * signals the highest priority waiting, and an acquire never overtakes a waiter of a higher
+     * priority. Once the last waiter of a priority leaves, the lower ones are signaled.
+     *
+     * Magazines:
+     *
+     * Optionally, each thread keeps a magazine of up to MAGAZINE_SIZE packets in front of the
+     * shared free list, so leasing and returning a packet only touches memory owned by the
+     * current thread in the common case:
+     *
+     * - An empty magazine is refilled from the free list with the leased packet plus up to
+     *   half of the magazine, never more than half of the free packets.
+     * - A full magazine returns half of its packets to the free list.
+     * - Packets in magazines count as in use for the pool, so the concurrency limit is still
+     *   the pool's size. An acquire that has to wait first reclaims the packets of every
+     *   magazine, and magazines left unused for MAGAZINE_IDLE_NANOS are drained and
+     *   unregistered, including those of terminated threads.
+     * - Packets are usually returned by the thread completing requests, whose magazine returns
+     *   them to the free list in batches, while the submitting threads refill in batches, so
+     *   the lock is taken once every few requests instead of twice per request.
+     * - Lock order is the pool's lock, then the magazine's monitor. The owner thread takes
+     *   only the monitor, which is never contended in the common case.
+     *
+     */
+    // @formatter:on
+
+    // The size of tb_packet_t, asserted at compile time by client.zig
+    static final int PACKET_SIZE = 32;
+
+    static final long GROW_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    static final long SHRINK_IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    static final int MAGAZINE_SIZE = 16;
+    static final long MAGAZINE_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Waiters re-check the state at least this often
+    private static final long WAIT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private static final RequestPriority[] PRIORITIES = RequestPriority.values();
+
+    private static final class Slab {
+        // Keeps the memory reachable while the slab is in the pool
+        final ByteBuffer memory;
+        final long address;
+        final int count;
+        int free;
+
+        Slab(final ByteBuffer memory, final long address, final int count) {
+            this.memory = memory;
+            this.address = address;
+            this.count = count;
+            this.free = count;
+        }
+
+        boolean contains(final long packet) {
+            return packet >= address && packet < address + (long) count * PACKET_SIZE;
+        }
+    }
+
+    private static final class Magazine {
+        final long[] packets = new long[MAGAZINE_SIZE];
+        int count;
+
+        // Set by the sweep, cleared on every use by the owner
+        boolean idle;
+
+        // Only packets pushed to a registered magazine can be reclaimed
+        boolean registered;
+    }
+
+    private final Transport transport;
+    private final int minSize;
+    private final int maxSize;
+
+    private final ReentrantLock lock;
+
+    // One per priority
+    private final Condition[] available;
+    private final Condition drained;
+
+    // Null when magazines are disabled
+    private final ThreadLocal<Magazine> magazines;
+    private final ArrayList<Magazine> registeredMagazines;
+    private long lastSweep;
+
+    private final ArrayList<Slab> slabs;
+    private long[] free;
+    private int freeCount;
+    private int size;
+    private int batchWaiters;
+    private int limit;
+    private final int[] waiters = new int[PRIORITIES.length];
+    private final int[] reserved = new int[PRIORITIES.length];
+    private long lastBusy;
+    private volatile boolean closed;
+
+    private long growCount;
+    private long shrinkCount;
+    private long acquireWaitCount;
+    private long acquireWaitNanos;
+
+    /**
+     * @param useMagazines whether each thread keeps a magazine of packets in front of the
+     *        shared free list.
+     */
+    PacketPool(final Transport transport, final int minSize, final int maxSize,
+            final boolean useMagazines) {
+        assertTrue(minSize > 0 && minSize <= maxSize, "Invalid pool size: min=%d, max=%d",
+                minSize, maxSize);
+
+        this.transport = transport;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+
+        this.lock = new ReentrantLock(false);
+        this.available = new Condition[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            this.available[i] = lock.newCondition();
+        }
+        this.drained = lock.newCondition();
+
+        this.magazines = useMagazines ? ThreadLocal.withInitial(Magazine::new) : null;
+        this.registeredMagazines = new ArrayList<>();
+
+        this.slabs = new ArrayList<>();
+        this.free = new long[minSize];
+        this.limit = maxSize;
+        this.lastBusy = System.nanoTime();
+        this.lastSweep = lastBusy;
+
+        grow(minSize);
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Leases a packet with {@link RequestPriority#NORMAL} priority.
+     *
+     * @throws IllegalStateException if the pool is closed.
+     */
+    long acquire() {
+        return acquire(RequestPriority.NORMAL);
+    }
+
+    /**
+     * Leases a packet, waiting until one is free.
+     *
+     * @throws IllegalStateException if the pool is closed.
+     */
+    long acquire(final RequestPriority priority) {
+        return acquire(priority, false, 0);
+    }
+
+    /**
+     * Leases a packet, waiting until one is free or until {@code deadline} if {@code timed}.
+     *
+     * @param deadline a {@link System#nanoTime()} after which no packet is leased.
+     * @return the packet, or zero if the deadline passed.
+     * @throws IllegalStateException if the pool is closed.
+     */
+    long acquire(final RequestPriority priority, final boolean timed, final long deadline) {
+        if (timed && System.nanoTime() - deadline >= 0)
+            return 0;
+
+        final var magazine = magazines == null ? null : magazines.get();
+        if (magazine != null && !closed) {
+            synchronized (magazine) {
+                if (magazine.count > 0) {
+                    magazine.idle = false;
+                    magazine.count -= 1;
+                    return magazine.packets[magazine.count];
+                }
+            }
+        }
+
+        lock.lock();
+        try {
+            if (!awaitFree(1, priority, timed, deadline))
+                return 0;
+
+            final var packet = take();
+            if (magazine != null) {
+                refill(magazine, priority);
+            }
+            return packet;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Leases {@code count} packets at once with {@link RequestPriority#NORMAL} priority.
+     *
+     * @throws IllegalStateException if the pool is closed.
+     */
+    void acquire(final long[] packets, final int count) {
+        acquire(packets, count, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Leases {@code count} packets at once, waiting until all of them are free.
+     *
+     * @throws IllegalStateException if the pool is closed.
+     */
+    void acquire(final long[] packets, final int count, final RequestPriority priority) {
+        assertTrue(count > 0 && count <= maxSize, "Invalid count: count=%d", count);
+
+        lock.lock();
+        try {
+            batchWaiters += 1;
+            try {
+                awaitFree(count, priority, false, 0);
+            } finally {
+                batchWaiters -= 1;
+            }
+
+            for (int i = 0; i < count; i++) {
+                packets[i] = take();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(final long packet) {
+        final var magazine = magazines == null ? null : magazines.get();
+        if (magazine != null && !closed) {
+            synchronized (magazine) {
+                if (magazine.registered && magazine.count < MAGAZINE_SIZE) {
+                    magazine.idle = false;
+                    magazine.packets[magazine.count] = packet;
+                    magazine.count += 1;
+                    return;
+                }
+            }
+        }
+
+        lock.lock();
+        try {
+            put(packet);
+            if (magazine != null && !closed) {
+                overflow(magazine);
+            }
+
+            if (closed) {
+                if (freeCount == size)
+                    drained.signalAll();
+                return;
+            }
+
+            signalAvailable();
+
+            shrinkIfIdle(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects any further acquire without waiting for the packets in use, which are not
+     * released once the transport is closed.
+     */
+    void abandon() {
+        lock.lock();
+        try {
+            closed = true;
+            signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rejects any further acquire, and waits until all packets are released.
+     */
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            signalAll();
+
+            while (true) {
+                // A thread may still push to its magazine right after the pool is closed
+                reclaimMagazines(false);
+                if (freeCount == size)
+                    break;
+
+                try {
+                    drained.awaitNanos(WAIT_TIMEOUT_NANOS);
+                } catch (InterruptedException interruptedException) {
+                    throw new AssertionError(interruptedException,
+                            "Unexpected thread interruption on closing the packet pool.");
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the number of packets left free by the priorities lower than {@code priority}.
+     */
+    void setReserved(final RequestPriority priority, final int packets) {
+        lock.lock();
+        try {
+            var total = packets;
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                if (i != priority.ordinal())
+                    total += reserved[i];
+            }
+            assertTrue(packets >= 0 && total < maxSize, "Invalid reserved: reserved=%d", packets);
+
+            reserved[priority.ordinal()] = packets;
+            signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the number of packets that can be in use at once, up to the maximum size.
+     */
+    void setLimit(final int limit) {
+        assertTrue(limit > 0 && limit <= maxSize, "Invalid limit: limit=%d", limit);
+
+        lock.lock();
+        try {
+            this.limit = limit;
+            signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of packets that can be leased without waiting, growing the pool if
+     * needed, within the limit.
+     */
+    int getAvailable() {
+        lock.lock();
+        try {
+            return Math.max(0, limit - (size - freeCount));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    PacketPoolStats getStats() {
+        lock.lock();
+        try {
+            var cached = 0;
+            for (final var magazine : registeredMagazines) {
+                synchronized (magazine) {
+                    cached += magazine.count;
+                }
+            }
+
+            return new PacketPoolStats(size, size - freeCount, cached, minSize, maxSize, limit,
+                    growCount, shrinkCount, acquireWaitCount, acquireWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if {@code timed} and the deadline passed first.
+     */
+    private boolean awaitFree(final int count, final RequestPriority priority,
+            final boolean timed, final long deadline) {
+        if (closed)
+            throw new IllegalStateException("Client is closed");
+
+        if (canTake(count, priority))
+            return true;
+
+        final var start = System.nanoTime();
+        var growAt = start + GROW_WAIT_NANOS;
+
+        final var index = priority.ordinal();
+        waiters[index] += 1;
+        try {
+            while (!canTake(count, priority)) {
+                // Packets sitting in other threads' magazines are used before waiting
+                if (reclaimMagazines(false) > 0)
+                    continue;
+
+                final var now = System.nanoTime();
+                if (timed && now - deadline >= 0)
+                    return false;
+
+                final var starved = freeCount - count < headroom(count, priority);
+                if (starved && size < maxSize && now - growAt >= 0) {
+                    grow(Math.min(maxSize - size, Math.max(size, count - freeCount)));
+                    growAt = now + GROW_WAIT_NANOS;
+                    continue;
+                }
+
+                var timeout = size < maxSize ? Math.min(growAt - now, WAIT_TIMEOUT_NANOS)
+                        : WAIT_TIMEOUT_NANOS;
+                if (timed)
+                    timeout = Math.min(timeout, deadline - now);
+                available[index].awaitNanos(timeout);
+
+                if (closed)
+                    throw new IllegalStateException("Client is closed");
+            }
+            return true;
+        } catch (InterruptedException interruptedException) {
+
+            // This exception should never exposed by the API to be handled by the user
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on acquiring a packet.");
+        } finally {
+            waiters[index] -= 1;
+            acquireWaitCount += 1;
+            acquireWaitNanos += System.nanoTime() - start;
+
+            // The lower priorities no longer wait behind this one
+            if (waiters[index] == 0 && freeCount > count)
+                signalAvailable();
+        }
+    }
+
+    private boolean canTake(final int count, final RequestPriority priority) {
+        if (freeCount - count < headroom(count, priority) || !withinLimit(count))
+            return false;
+
+        for (int i = 0; i < priority.ordinal(); i++) {
+            if (waiters[i] > 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of packets an acquire of {@code count} packets must leave free for the
+     * higher priorities, never so many that it could not proceed with a full pool.
+     */
+    private int headroom(final int count, final RequestPriority priority) {
+        var headroom = 0;
+        for (int i = 0; i < priority.ordinal(); i++) {
+            headroom += reserved[i];
+        }
+        return Math.min(headroom, maxSize - count);
+    }
+
+    /**
+     * Signals the waiters of the highest priority waiting, all of them if any acquires several
+     * packets, since a single one may not be able to proceed then.
+     */
+    private void signalAvailable() {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            if (waiters[i] > 0) {
+                if (batchWaiters > 0) {
+                    available[i].signalAll();
+                } else {
+                    available[i].signal();
+                }
+                return;
+            }
+        }
+    }
+
+    private void signalAll() {
+        for (final var condition : available) {
+            condition.signalAll();
+        }
+    }
+
+    private boolean withinLimit(final int count) {
+        final var inUse = size - freeCount;
+        return inUse == 0 || inUse + count <= limit;
+    }
+
+    private void put(final long packet) {
+        final var slab = slabOf(packet);
+        assertTrue(slab.free < slab.count, "Packet already released: packet=%d", packet);
+
+        if (slab == newestReleasable()) {
+            // Inserted at the top of the newest slab's packets, at the bottom of the list
+            free[freeCount] = free[slab.free];
+            free[slab.free] = packet;
+        } else {
+            free[freeCount] = packet;
+        }
+
+        slab.free += 1;
+        freeCount += 1;
+    }
+
+    /**
+     * Gets the slab released first when shrinking, null if only the first slab is left. Its
+     * free packets are the first {@code free} entries of the free list.
+     */
+    private Slab newestReleasable() {
+        return slabs.size() > 1 ? slabs.get(slabs.size() - 1) : null;
+    }
+
+    /**
+     * Moves the free packets of the newest slab to the bottom of the free list.
+     */
+    private void partition() {
+        final var newest = newestReleasable();
+        if (newest == null)
+            return;
+
+        var bottom = 0;
+        for (int i = 0; i < freeCount; i++) {
+            final var packet = free[i];
+            if (newest.contains(packet)) {
+                free[i] = free[bottom];
+                free[bottom] = packet;
+                bottom += 1;
+            }
+        }
+    }
+
+    /**
+     * Fills the current thread's empty magazine, called while holding the lock.
+     */
+    private void refill(final Magazine magazine, final RequestPriority priority) {
+        sweepMagazines();
+
+        synchronized (magazine) {
+            register(magazine);
+            magazine.idle = false;
+
+            final var count = Math.min(Math.min(MAGAZINE_SIZE / 2, freeCount / 2),
+                    Math.min(limit - (size - freeCount), freeCount - headroom(0, priority)));
+            for (int i = 0; i < count && magazine.count < MAGAZINE_SIZE; i++) {
+                magazine.packets[magazine.count] = take();
+                magazine.count += 1;
+            }
+        }
+    }
+
+    /**
+     * Returns half of the current thread's full magazine, called while holding the lock.
+     */
+    private void overflow(final Magazine magazine) {
+        sweepMagazines();
+
+        synchronized (magazine) {
+            register(magazine);
+            magazine.idle = false;
+
+            final var keep = magazine.count / 2;
+            while (magazine.count > keep) {
+                magazine.count -= 1;
+                put(magazine.packets[magazine.count]);
+            }
+        }
+    }
+
+    private void register(final Magazine magazine) {
+        if (!magazine.registered) {
+            magazine.registered = true;
+            registeredMagazines.add(magazine);
+        }
+    }
+
+    /**
+     * Drains and unregisters the magazines unused since the previous sweep, at most once every
+     * MAGAZINE_IDLE_NANOS.
+     */
+    private void sweepMagazines() {
+        final var now = System.nanoTime();
+        if (now - lastSweep < MAGAZINE_IDLE_NANOS)
+            return;
+
+        lastSweep = now;
+        reclaimMagazines(true);
+    }
+
+    /**
+     * Moves the packets of registered magazines back to the free list, called while holding
+     * the lock.
+     *
+     * @param onlyIdle whether to reclaim only the magazines unused since the previous sweep,
+     *        unregistering them, or all of them.
+     * @return the number of packets reclaimed.
+     */
+    private int reclaimMagazines(final boolean onlyIdle) {
+        var reclaimed = 0;
+        final var iterator = registeredMagazines.iterator();
+        while (iterator.hasNext()) {
+            final var magazine = iterator.next();
+            synchronized (magazine) {
+                if (onlyIdle && !magazine.idle) {
+                    magazine.idle = true;
+                    continue;
+                }
+
+                while (magazine.count > 0) {
+                    magazine.count -= 1;
+                    put(magazine.packets[magazine.count]);
+                    reclaimed += 1;
+                }
+
+                if (onlyIdle) {
+                    magazine.registered = false;
+                    iterator.remove();
+                }
+            }
+        }
+
+        if (reclaimed > 0) {
+            signalAll();
+        }
+
+        return reclaimed;
+    }
+
+    // The top of the free list is from the newest slab only when no other packet is free
+    private long take() {
+        freeCount -= 1;
+        final var packet = free[freeCount];
+        slabOf(packet).free -= 1;
+
+        if ((size - freeCount) * 4 > size) {
+            lastBusy = System.nanoTime();
+        }
+
+        return packet;
+    }
+
+    private void grow(final int count) {
+        final var memory = ByteBuffer.allocateDirect(count * PACKET_SIZE + Long.BYTES)
+                .alignedSlice(Long.BYTES);
+        final var address = transport.addressOf(memory);
+        assertTrue(address != 0L, "Packet memory cannot be null.");
+
+        slabs.add(new Slab(memory, address, count));
+        size += count;
+        if (free.length < size) {
+            free = Arrays.copyOf(free, size);
+        }
+
+        // The lowest addresses are leased first
+        for (int i = count - 1; i >= 0; i--) {
+            free[freeCount] = address + (long) i * PACKET_SIZE;
+            freeCount += 1;
+        }
+        partition();
+
+        if (slabs.size() > 1) {
+            growCount += 1;
+        }
+    }
+
+    private void shrinkIfIdle(final long now) {
+        if (size == minSize || now - lastBusy < SHRINK_IDLE_NANOS)
+            return;
+
+        final var slab = slabs.get(slabs.size() - 1);
+        if (slab.free < slab.count)
+            return;
+
+        // All its packets are at the bottom of the free list
+        System.arraycopy(free, slab.count, free, 0, freeCount - slab.count);
+
+        slabs.remove(slabs.size() - 1);
+        freeCount -= slab.count;
+        size -= slab.count;
+        shrinkCount += 1;
+        partition();
+
+        // Gives the next slab a full period before being released
+        lastBusy = now;
+    }
+
+    private Slab slabOf(final long packet) {
+        // The few slabs double in size, the newest are the largest
+        for (int i = slabs.size() - 1; i >= 0; i--) {
+            final var slab = slabs.get(i);
+            if (slab.contains(packet))
+                return slab;
+        }
+
+        throw new AssertionError("Unexpected packet: packet=%d", packet);
+    }
+}
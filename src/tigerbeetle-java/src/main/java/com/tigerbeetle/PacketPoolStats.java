@@ -0,0 +1,120 @@
+package com.tigerbeetle;
+
+/**
+ * A snapshot of the counters of the pool of packets leased by a {@link Client}'s requests.
+ * <p>
+ * Each request in flight holds a packet, the pool grows when requests wait too long for a free
+ * one and shrinks back when they are mostly idle, between the client's {@code minConcurrency}
+ * and {@code maxConcurrency}.
+ *
+ * @see Client#getPacketPoolStats()
+ */
+public final class PacketPoolStats {
+
+    private final int size;
+    private final int inUse;
+    private final int cached;
+    private final int minSize;
+    private final int maxSize;
+    private final int limit;
+    private final long growCount;
+    private final long shrinkCount;
+    private final long acquireWaitCount;
+    private final long acquireWaitNanos;
+
+    PacketPoolStats(final int size, final int inUse, final int cached, final int minSize,
+            final int maxSize, final int limit, final long growCount, final long shrinkCount,
+            final long acquireWaitCount, final long acquireWaitNanos) {
+        this.size = size;
+        this.inUse = inUse;
+        this.cached = cached;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.limit = limit;
+        this.growCount = growCount;
+        this.shrinkCount = shrinkCount;
+        this.acquireWaitCount = acquireWaitCount;
+        this.acquireWaitNanos = acquireWaitNanos;
+    }
+
+    /**
+     * Gets the number of packets currently allocated.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the number of packets held by requests in flight, or cached by threads.
+     */
+    public int getInUse() {
+        return inUse;
+    }
+
+    /**
+     * Gets the number of packets cached by threads, when enabled with
+     * {@link Client#PACKET_CACHE_PROPERTY}. They are included in {@link #getInUse()}.
+     */
+    public int getCached() {
+        return cached;
+    }
+
+    /**
+     * Gets the number of packets the pool never shrinks below.
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Gets the number of packets the pool never grows above.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the number of packets that can be in use at once, lowered below the size by the
+     * adaptive limiter when enabled with {@link Client#LIMITER_PROPERTY}, and equal to
+     * {@link #getMaxSize()} otherwise.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets how many times the pool has grown.
+     */
+    public long getGrowCount() {
+        return growCount;
+    }
+
+    /**
+     * Gets how many times the pool has shrunk.
+     */
+    public long getShrinkCount() {
+        return shrinkCount;
+    }
+
+    /**
+     * Gets how many acquires had to wait for a free packet.
+     */
+    public long getAcquireWaitCount() {
+        return acquireWaitCount;
+    }
+
+    /**
+     * Gets the total time spent by acquires waiting for a free packet, in nanoseconds.
+     */
+    public long getAcquireWaitNanos() {
+        return acquireWaitNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "PacketPoolStats{size=" + size + ", inUse=" + inUse + ", cached=" + cached
+                + ", minSize=" + minSize + ", maxSize=" + maxSize + ", limit=" + limit
+                + ", growCount=" + growCount + ", shrinkCount=" + shrinkCount
+                + ", acquireWaitCount=" + acquireWaitCount + ", acquireWaitNanos=" + acquireWaitNanos + "}";
+    }
+}
@@ -0,0 +1,363 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Posts or voids pending transfers in full batches, as decisions arrive or before the pending
+ * transfers expire.
+ * <p>
+ * Each pending transfer is {@link #track tracked} with its timeout and a default decision,
+ * applied when its deadline nears without a decision from the application. Decisions are
+ * collected into a {@link TransferBatch} submitted once full, or at the end of each tick of the
+ * scheduler, so many decisions share a request.
+ * <p>
+ * The transfer posting or voiding a pending transfer gets an id derived from the pending id, so
+ * that submitting the same decision again is reported as {@code Exists} instead of applied
+ * twice. Results are reported to a {@link Listener} and never retried: a pending transfer that
+ * was already posted, voided or expired is final.
+ * <p>
+ * The client is not owned by the scheduler and must be closed by the caller. This class is
+ * thread-safe.
+ */
+public final class PendingTransferScheduler implements AutoCloseable {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Pending ids and their deadlines are kept in a TimerWheel, off-heap, with one tick per
+     * tickNanos measured with System.nanoTime(). The scheduler thread advances the wheel every
+     * tick, appending the default decision of each expired id to the current batch, then
+     * submits the current batch if not empty.
+     *
+     * A decision from the application removes its id from the wheel and appends to the current
+     * batch; an id no longer tracked was already decided, and the decision is ignored. So each
+     * tracked pending transfer gets exactly one decision, and the scheduler never submits
+     * anything twice.
+     *
+     * Batches are built under the lock, and submitted outside of it, by the thread that filled
+     * the batch or by the scheduler thread at the end of a tick.
+     *
+     */
+    // @formatter:on
+
+    /**
+     * Receives the result of each decision submitted by the scheduler.
+     * <p>
+     * Listeners are called from the thread completing the request and must be cheap.
+     */
+    public interface Listener {
+
+        /**
+         * Called with the result of a decision.
+         *
+         * @param pendingIdLsb the least significant bits of the pending transfer's id.
+         * @param pendingIdMsb the most significant bits of the pending transfer's id.
+         * @param flags either {@link TransferFlags#POST_PENDING_TRANSFER} or
+         *        {@link TransferFlags#VOID_PENDING_TRANSFER}.
+         * @param result {@link CreateTransferResult#Ok} if applied, or {@code Exists} if
+         *        already applied by a previous submission.
+         */
+        void onResult(long pendingIdLsb, long pendingIdMsb, int flags,
+                CreateTransferResult result);
+
+        /**
+         * Called for each decision of a request that failed.
+         */
+        void onFailure(long pendingIdLsb, long pendingIdMsb, int flags, Throwable exception);
+    }
+
+    /**
+     * The default duration of a tick.
+     */
+    public static final long DEFAULT_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Client client;
+    private final Listener listener;
+    private final int batchSize;
+    private final long marginNanos;
+    private final long tickNanos;
+    private final long start;
+    private final Thread thread;
+
+    // Guarded by this
+    private final TimerWheel wheel;
+    private final Blake3 blake3 = new Blake3();
+    private final ByteBuffer pendingId = ByteBuffer.allocate(16).order(Batch.BYTE_ORDER);
+    private final long[] derivedId = new long[2];
+    private TransferBatch batch;
+    private int inFlight;
+    private boolean closed;
+
+    /**
+     * Initializes a scheduler and starts its thread.
+     *
+     * @param client the client to submit the decisions to.
+     * @param listener receives the result of each decision.
+     * @param capacity the maximum number of pending transfers tracked at once.
+     * @param batchSize the maximum number of decisions per request.
+     * @param marginNanos how long before its expiry the default decision of a pending transfer
+     *        is submitted, covering the latency of the request and the drift of the clocks.
+     * @param tickNanos the resolution of the deadlines, and the longest a decision waits for
+     *        others to share its request.
+     *
+     * @throws NullPointerException if {@code client} or {@code listener} is null.
+     * @throws IllegalArgumentException if {@code capacity} or {@code tickNanos} is not positive,
+     *         {@code marginNanos} is negative, or {@code batchSize} is not within
+     *         {@code [1, TransferProcessor.BATCH_SIZE_MAX]}.
+     */
+    public PendingTransferScheduler(final Client client, final Listener listener,
+            final int capacity, final int batchSize, final long marginNanos,
+            final long tickNanos) {
+        Objects.requireNonNull(client, "Client cannot be null");
+        Objects.requireNonNull(listener, "Listener cannot be null");
+        if (batchSize <= 0 || batchSize > TransferProcessor.BATCH_SIZE_MAX)
+            throw new IllegalArgumentException("Invalid batchSize");
+        if (marginNanos < 0)
+            throw new IllegalArgumentException("Margin cannot be negative");
+        if (tickNanos <= 0)
+            throw new IllegalArgumentException("Tick must be positive");
+
+        this.client = client;
+        this.listener = listener;
+        this.batchSize = batchSize;
+        this.marginNanos = marginNanos;
+        this.tickNanos = tickNanos;
+        this.start = System.nanoTime();
+        this.wheel = new TimerWheel(capacity, 0);
+        this.batch = new TransferBatch(batchSize);
+
+        this.thread = new Thread(this::run, "tigerbeetle-pending-scheduler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Initializes a scheduler with batches of {@link TransferProcessor#BATCH_SIZE_MAX} and a
+     * tick of {@link #DEFAULT_TICK_NANOS}.
+     *
+     * @see #PendingTransferScheduler(Client, Listener, int, int, long, long)
+     */
+    public PendingTransferScheduler(final Client client, final Listener listener,
+            final int capacity, final long marginNanos) {
+        this(client, listener, capacity, TransferProcessor.BATCH_SIZE_MAX, marginNanos,
+                DEFAULT_TICK_NANOS);
+    }
+
+    /**
+     * Tracks a pending transfer, to be decided before it expires.
+     * <p>
+     * Its deadline is measured from now, so it should be tracked once its creation succeeded.
+     *
+     * @param pendingIdLsb the least significant bits of the pending transfer's id.
+     * @param pendingIdMsb the most significant bits of the pending transfer's id.
+     * @param timeoutNanos the pending transfer's timeout.
+     * @param defaultFlags the decision submitted if none arrives until {@code marginNanos}
+     *        before the timeout, either {@link TransferFlags#POST_PENDING_TRANSFER} or
+     *        {@link TransferFlags#VOID_PENDING_TRANSFER}.
+     * @return false if the pending transfer is already tracked.
+     *
+     * @throws IllegalArgumentException if {@code defaultFlags} is not a single decision.
+     * @throws IllegalStateException if the scheduler is closed or already tracks
+     *         {@code capacity} pending transfers.
+     */
+    public boolean track(final long pendingIdLsb, final long pendingIdMsb,
+            final long timeoutNanos, final int defaultFlags) {
+        checkDecision(defaultFlags);
+
+        final var deadline = System.nanoTime() - start + timeoutNanos - marginNanos;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("Scheduler is closed");
+
+            return wheel.add(pendingIdLsb, pendingIdMsb, Math.floorDiv(deadline, tickNanos),
+                    (short) defaultFlags);
+        }
+    }
+
+    /**
+     * Posts a tracked pending transfer.
+     *
+     * @return false if the pending transfer is not tracked, because it was already decided.
+     * @throws IllegalStateException if the scheduler is closed.
+     */
+    public boolean post(final long pendingIdLsb, final long pendingIdMsb) {
+        return decide(pendingIdLsb, pendingIdMsb, TransferFlags.POST_PENDING_TRANSFER);
+    }
+
+    /**
+     * Voids a tracked pending transfer.
+     *
+     * @return false if the pending transfer is not tracked, because it was already decided.
+     * @throws IllegalStateException if the scheduler is closed.
+     */
+    public boolean voidPending(final long pendingIdLsb, final long pendingIdMsb) {
+        return decide(pendingIdLsb, pendingIdMsb, TransferFlags.VOID_PENDING_TRANSFER);
+    }
+
+    /**
+     * Gets the number of pending transfers tracked and not yet decided.
+     */
+    public synchronized int getTracked() {
+        return wheel.size();
+    }
+
+    /**
+     * Stops the scheduler, submits the decisions collected so far and waits for their results.
+     * <p>
+     * The pending transfers still tracked are left undecided.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+        }
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+            synchronized (this) {
+                while (inFlight > 0) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on closing the pending transfer scheduler.");
+        }
+    }
+
+    private boolean decide(final long pendingIdLsb, final long pendingIdMsb, final int flags) {
+        final TransferBatch full;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("Scheduler is closed");
+            if (wheel.remove(pendingIdLsb, pendingIdMsb) < 0)
+                return false;
+
+            full = append(pendingIdLsb, pendingIdMsb, flags);
+        }
+
+        if (full != null)
+            submit(full);
+        return true;
+    }
+
+    /**
+     * Appends a decision to the current batch.
+     *
+     * @return the batch to be submitted if it got full, null otherwise.
+     */
+    private TransferBatch append(final long pendingIdLsb, final long pendingIdMsb,
+            final int flags) {
+        pendingId.putLong(0, pendingIdLsb);
+        pendingId.putLong(8, pendingIdMsb);
+        blake3.hash128(pendingId, 0, 16, derivedId);
+
+        batch.add();
+        batch.setId(derivedId[0], derivedId[1]);
+        batch.setPendingId(pendingIdLsb, pendingIdMsb);
+        batch.setFlags(flags);
+
+        if (batch.getLength() < batchSize)
+            return null;
+
+        return take();
+    }
+
+    private TransferBatch take() {
+        final var full = batch;
+        batch = new TransferBatch(batchSize);
+        inFlight++;
+        return full;
+    }
+
+    private void run() {
+        final var ready = new ArrayList<TransferBatch>();
+        while (true) {
+            final boolean stopping;
+            synchronized (this) {
+                stopping = closed;
+                final var tick = Math.floorDiv(System.nanoTime() - start, tickNanos);
+                wheel.advance(tick, (idLsb, idMsb, flags) -> {
+                    final var full = append(idLsb, idMsb, flags);
+                    if (full != null)
+                        ready.add(full);
+                });
+                if (batch.getLength() > 0)
+                    ready.add(take());
+            }
+
+            for (final var full : ready) {
+                submit(full);
+            }
+            ready.clear();
+
+            if (stopping)
+                return;
+
+            final var elapsed = System.nanoTime() - start;
+            LockSupport.parkNanos(tickNanos - Math.floorMod(elapsed, tickNanos));
+        }
+    }
+
+    private void submit(final TransferBatch batch) {
+        try {
+            client.createTransfersAsync(batch).whenComplete((results, exception) -> {
+                try {
+                    if (exception == null) {
+                        complete(batch, results);
+                    } else {
+                        fail(batch, exception);
+                    }
+                } finally {
+                    retire();
+                }
+            });
+        } catch (RuntimeException exception) {
+            fail(batch, exception);
+            retire();
+        }
+    }
+
+    private void complete(final TransferBatch batch, final CreateTransferResultBatch results) {
+        batch.beforeFirst();
+        var failed = results.next() ? results.getIndex() : -1;
+        while (batch.next()) {
+            var result = CreateTransferResult.Ok;
+            if (batch.getPosition() == failed) {
+                result = results.getResult();
+                failed = results.next() ? results.getIndex() : -1;
+            }
+            listener.onResult(batch.getPendingId(UInt128.LeastSignificant),
+                    batch.getPendingId(UInt128.MostSignificant), batch.getFlags(), result);
+        }
+    }
+
+    private void fail(final TransferBatch batch, final Throwable exception) {
+        batch.beforeFirst();
+        while (batch.next()) {
+            listener.onFailure(batch.getPendingId(UInt128.LeastSignificant),
+                    batch.getPendingId(UInt128.MostSignificant), batch.getFlags(), exception);
+        }
+    }
+
+    private synchronized void retire() {
+        inFlight--;
+        if (inFlight == 0)
+            notifyAll();
+    }
+
+    private static void checkDecision(final int flags) {
+        if (flags != TransferFlags.POST_PENDING_TRANSFER
+                && flags != TransferFlags.VOID_PENDING_TRANSFER)
+            throw new IllegalArgumentException("Flags must be either POST_PENDING_TRANSFER or"
+                    + " VOID_PENDING_TRANSFER");
+    }
+}
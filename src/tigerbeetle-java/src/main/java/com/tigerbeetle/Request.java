@@ -34,7 +34,7 @@ abstract class Request<TResponse extends Batch> {
         byte LOOKUP_TRANSFERS = 6;
     }
 
-    // Used ony by the JNI side
+    // Used by the Transport, read through reflection by the JNI side
     @Native
     private final ByteBuffer buffer;
 
@@ -45,6 +45,28 @@ abstract class Request<TResponse extends Batch> {
     private final byte operation;
     private final int requestLen;
 
+    // JFR events spanning across threads, null when not recording
+    private RequestEvents.Reply replyEvent;
+    private RequestEvents.Dispatch dispatchEvent;
+
+    // Sampled timing breakdown, null when not sampled
+    private RequestTiming timing;
+
+    // The capture recording this request and its id in it, null when not captured
+    private TrafficCapture capture;
+    private long captureId;
+
+    // The limiter sampling this request and its submission time, null when not limited
+    private ConcurrencyLimiter limiter;
+    private long submitNanos;
+
+    // The System.nanoTime() by which the caller gives up, only if hasDeadline
+    private boolean hasDeadline;
+    private long deadline;
+
+    // Leased by the Client before submitting, for transports that keep no packet state
+    private long packet;
+
     protected Request(final Client client, final byte operation, final Batch batch) {
         Objects.requireNonNull(client, "Id cannot be null");
         Objects.requireNonNull(batch, "Batch cannot be null");
@@ -63,6 +85,81 @@ abstract class Request<TResponse extends Batch> {
         client.submit(this);
     }
 
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    long getBufferLen() {
+        return bufferLen;
+    }
+
+    byte getOperation() {
+        return operation;
+    }
+
+    int getRequestLen() {
+        return requestLen;
+    }
+
+    long getPacket() {
+        return packet;
+    }
+
+    void setPacket(final long packet) {
+        this.packet = packet;
+    }
+
+    void setTiming(final RequestTiming timing) {
+        this.timing = timing;
+    }
+
+    void setCapture(final TrafficCapture capture, final long captureId) {
+        this.capture = capture;
+        this.captureId = captureId;
+    }
+
+    void setDeadline(final long deadline) {
+        this.hasDeadline = true;
+        this.deadline = deadline;
+    }
+
+    boolean hasDeadline() {
+        return hasDeadline;
+    }
+
+    long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Fails a request that could not be submitted before its deadline.
+     */
+    void expire() {
+        if (timing != null)
+            timing.failed(RequestException.Status.DEADLINE_EXCEEDED);
+        setException(new RequestException(RequestException.Status.DEADLINE_EXCEEDED));
+    }
+
+    /**
+     * Fails a request still pending after the client's close timeout.
+     */
+    void abort() {
+        abandon(new RequestException(RequestException.Status.CLIENT_CLOSED));
+    }
+
+    void setLimiter(final ConcurrencyLimiter limiter, final long submitNanos) {
+        this.limiter = limiter;
+        this.submitNanos = submitNanos;
+    }
+
+    /**
+     * Called right before submitting to the native client, must not be called afterwards since the
+     * completion may run concurrently.
+     */
+    void beginReply() {
+        replyEvent = RequestEvents.startReply();
+    }
+
     // Unchecked: Since we just support a limited set of operations, it is safe to cast the
     // result to T[]
     @SuppressWarnings("unchecked")
@@ -73,6 +170,20 @@ abstract class Request<TResponse extends Batch> {
         // We CAN'T throw any exception here, any event must be stored and
         // handled from the user's thread on the completion.
 
+        if (replyEvent != null) {
+            replyEvent.commit(this, status);
+            replyEvent = null;
+        }
+
+        if (timing != null)
+            timing.completed(status);
+
+        if (capture != null)
+            capture.onReply(captureId, status);
+
+        if (limiter != null)
+            limiter.onReply(operation, requestLen, submitNanos, System.nanoTime(), status);
+
         Batch result = null;
         Throwable exception = null;
 
@@ -95,6 +206,8 @@ abstract class Request<TResponse extends Batch> {
 
         } else {
 
+            final var memcpyEvent = RequestEvents.beginMemcpy();
+
             try {
                 switch (operation) {
                     case Operations.CREATE_ACCOUNTS: {
@@ -130,10 +243,28 @@ abstract class Request<TResponse extends Batch> {
 
                 exception = any;
             }
+
+            if (memcpyEvent != null) {
+                memcpyEvent.end();
+                if (memcpyEvent.shouldCommit()) {
+                    memcpyEvent.set(this, status);
+                    memcpyEvent.size = buffer.capacity();
+                    memcpyEvent.commit();
+                }
+            }
         }
 
+        if (timing != null)
+            timing.resultReady();
+
         client.returnPacket(packet);
 
+        // Already failed if aborted while closing the client, the reply is then discarded
+        if (!client.complete(this))
+            return;
+
+        dispatchEvent = RequestEvents.startDispatch(this, status);
+
         if (exception != null) {
             setException(exception);
         } else {
@@ -167,7 +298,30 @@ abstract class Request<TResponse extends Batch> {
         return copy.position(0).asReadOnlyBuffer();
     }
 
+    /**
+     * Must be called by the implementation once the result or exception is delivered to the
+     * caller.
+     */
+    protected final void endDispatch() {
+        final var event = dispatchEvent;
+        if (event != null) {
+            dispatchEvent = null;
+            event.end();
+            if (event.shouldCommit())
+                event.commit();
+        }
+
+        if (timing != null)
+            timing.delivered();
+    }
+
     protected abstract void setResult(final TResponse result);
 
     protected abstract void setException(final Throwable exception);
+
+    /**
+     * Completes the request with {@code exception} before its reply, which may still arrive
+     * concurrently and must be discarded.
+     */
+    protected abstract void abandon(final Throwable exception);
 }
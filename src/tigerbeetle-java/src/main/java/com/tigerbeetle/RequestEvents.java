@@ -0,0 +1,187 @@
+package com.tigerbeetle;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+final class RequestEvents {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * JDK Flight Recorder events describing each phase of a request's lifecycle:
+     *
+     *   PacketAcquire -> Submit -> Reply -> Memcpy -> Dispatch
+     *
+     * PacketAcquire, Submit and Memcpy begin and end on the same thread, they are allocated on the stack
+     * and when disabled the JIT removes them entirely.
+     *
+     * A Submission acquires the packets and submits all of its requests at once, so it records
+     * a single PacketAcquire and Submit, with the operation of the first request and the total
+     * number of events.
+     *
+     * Reply and Dispatch span across threads (the caller's thread, the tb_client thread and the thread
+     * observing the completion), so they need to be stored in the Request until committed.
+     * To avoid allocating them for every request when no recording is running, we ask a shared
+     * instance whether the event type is enabled before creating a new one.
+     *
+     * The jdk.jfr module is optional, it may be left out of a linked runtime. The event classes
+     * extend jdk.jfr.Event and must not be loaded without it, so they are only created through
+     * the factories below, returning null when the module is absent.
+     *
+     */
+    // @formatter:on
+
+    static final boolean AVAILABLE = isAvailable();
+
+    private RequestEvents() {}
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, RequestEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError unavailable) {
+            return false;
+        }
+    }
+
+    static PacketAcquire beginPacketAcquire() {
+        if (!AVAILABLE)
+            return null;
+
+        final var event = new PacketAcquire();
+        event.begin();
+        return event;
+    }
+
+    static Submit beginSubmit() {
+        if (!AVAILABLE)
+            return null;
+
+        final var event = new Submit();
+        event.begin();
+        return event;
+    }
+
+    static Memcpy beginMemcpy() {
+        if (!AVAILABLE)
+            return null;
+
+        final var event = new Memcpy();
+        event.begin();
+        return event;
+    }
+
+    static Reply startReply() {
+        return AVAILABLE ? Reply.start() : null;
+    }
+
+    static Dispatch startDispatch(final Request<?> request, final byte status) {
+        return AVAILABLE ? Dispatch.start(request, status) : null;
+    }
+
+    @Category({"TigerBeetle", "Client"})
+    @StackTrace(false)
+    abstract static class RequestEvent extends Event {
+
+        @Label("Operation")
+        @Description("Operation code, see Request.Operations")
+        byte operation;
+
+        @Label("Event Count")
+        @Description("Number of events (accounts, transfers or ids) submitted")
+        int eventCount;
+
+        @Label("Status")
+        @Description("Request status, see RequestException.Status")
+        byte status;
+
+        final void set(final Request<?> request, final byte status) {
+            this.operation = request.getOperation();
+            this.eventCount = request.getRequestLen();
+            this.status = status;
+        }
+
+        final void commit(final Request<?> request, final byte status) {
+            end();
+            if (shouldCommit()) {
+                set(request, status);
+                commit();
+            }
+        }
+
+        final void commit(final Request<?>[] requests, final int count, final byte status) {
+            end();
+            if (shouldCommit()) {
+                set(requests[0], status);
+                for (int i = 1; i < count; i++) {
+                    this.eventCount += requests[i].getRequestLen();
+                }
+                commit();
+            }
+        }
+    }
+
+    @Name("com.tigerbeetle.PacketAcquire")
+    @Label("Packet Acquire")
+    @Description("Time waiting for a free packet, limited by the client's maxConcurrency")
+    static final class PacketAcquire extends RequestEvent {
+    }
+
+    @Name("com.tigerbeetle.Submit")
+    @Label("Request Submit")
+    @Description("Time spent submitting the request to the native client")
+    static final class Submit extends RequestEvent {
+    }
+
+    @Name("com.tigerbeetle.Reply")
+    @Label("Request Reply")
+    @Description("Time from the submission until the native completion callback")
+    static final class Reply extends RequestEvent {
+
+        private static final Reply PROBE = new Reply();
+
+        static Reply start() {
+            if (!PROBE.isEnabled())
+                return null;
+
+            final var event = new Reply();
+            event.begin();
+            return event;
+        }
+    }
+
+    @Name("com.tigerbeetle.Memcpy")
+    @Label("Result Memcpy")
+    @Description("Time copying the reply from the native buffer into managed memory")
+    static final class Memcpy extends RequestEvent {
+
+        @Label("Size")
+        @Description("Reply size in bytes")
+        @DataAmount
+        int size;
+    }
+
+    @Name("com.tigerbeetle.Dispatch")
+    @Label("Completion Dispatch")
+    @Description("Time from the completion until the result is observed by the caller")
+    static final class Dispatch extends RequestEvent {
+
+        private static final Dispatch PROBE = new Dispatch();
+
+        static Dispatch start(final Request<?> request, final byte status) {
+            if (!PROBE.isEnabled())
+                return null;
+
+            final var event = new Dispatch();
+            event.set(request, status);
+            event.begin();
+            return event;
+        }
+    }
+}
@@ -7,6 +7,22 @@ public final class RequestException extends Exception {
         byte TOO_MUCH_DATA = 1;
         byte INVALID_OPERATION = 2;
         byte INVALID_DATA_SIZE = 3;
+
+        /**
+         * The request's deadline passed before its reply, raised by the Java client only.
+         */
+        byte DEADLINE_EXCEEDED = (byte) 0x80;
+
+        /**
+         * The client was closed before the reply, raised by the Java client only.
+         */
+        byte CLIENT_CLOSED = (byte) 0x81;
+
+        /**
+         * The client's connection to the cluster failed and cannot recover, raised by the Java
+         * client only.
+         */
+        byte TRANSPORT_FAILED = (byte) 0x82;
     }
 
     private final byte status;
@@ -37,6 +53,15 @@ public final class RequestException extends Exception {
             case Status.INVALID_DATA_SIZE:
                 return "Invalid data size. Check if this client is compatible with the server's version.";
 
+            case Status.DEADLINE_EXCEEDED:
+                return "The request's deadline was exceeded.";
+
+            case Status.CLIENT_CLOSED:
+                return "The client was closed before the request completed.";
+
+            case Status.TRANSPORT_FAILED:
+                return "The client's transport failed. The client must be closed and recreated.";
+
             default:
                 return "Unknown error status " + status;
         }
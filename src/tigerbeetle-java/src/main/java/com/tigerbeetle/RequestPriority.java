@@ -0,0 +1,42 @@
+package com.tigerbeetle;
+
+/**
+ * The priority of a request when waiting for one of the client's packets, from the highest to
+ * the lowest.
+ * <p>
+ * Lookups are {@link #INTERACTIVE}, requests creating at least the client's bulk threshold of
+ * accounts or transfers are {@link #BULK}, and the others are {@link #NORMAL}. A released packet
+ * goes to a waiting request of the highest priority first, and packets can be reserved for the
+ * higher priorities.
+ *
+ * @see Client#setReservedPackets(RequestPriority, int)
+ * @see Client#setBulkThreshold(int)
+ */
+public enum RequestPriority {
+
+    /**
+     * Lookups, usually on the critical path of a user's request.
+     */
+    INTERACTIVE,
+
+    /**
+     * Requests creating fewer accounts or transfers than the bulk threshold.
+     */
+    NORMAL,
+
+    /**
+     * Requests creating at least as many accounts or transfers as the bulk threshold, such as
+     * imports and batch jobs.
+     */
+    BULK;
+
+    static RequestPriority of(final byte operation, final int length, final int bulkThreshold) {
+        switch (operation) {
+            case Request.Operations.LOOKUP_ACCOUNTS:
+            case Request.Operations.LOOKUP_TRANSFERS:
+                return INTERACTIVE;
+            default:
+                return length >= bulkThreshold ? BULK : NORMAL;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.tigerbeetle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-request timing breakdown, collected for a sample of the requests submitted by a
+ * {@link Client}.
+ * <p>
+ * All durations are measured in nanoseconds using {@link System#nanoTime()}.
+ * <p>
+ * Requests failing before their submission, on their deadline or because the client is closed,
+ * are reported too, with their terminal status and no time spent in the phases not reached.
+ *
+ * @see Client#setRequestTimingListener
+ */
+public final class RequestTiming {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Stamps are taken by different threads:
+     *
+     *   created, acquired, submitted: the caller's thread in Client.submit
+     *   completed, resultReady:       the tb_client thread in Request.endRequest
+     *   delivered:                    the thread observing the result (the caller's thread for
+     *                                 blocking requests, or the ForkJoinPool for async requests)
+     *
+     * Since the completion may be delivered before the caller's thread returns from the native
+     * submit, both sides signal when they are done and the last one notifies the listener.
+     *
+     * A request failing before its submission stamps all the phases it did not reach at once,
+     * on the caller's thread, and signals in place of the submission.
+     *
+     */
+    // @formatter:on
+
+    /**
+     * The operation performed by the request.
+     */
+    public enum Operation {
+        CREATE_ACCOUNTS,
+        CREATE_TRANSFERS,
+        LOOKUP_ACCOUNTS,
+        LOOKUP_TRANSFERS,
+        UNKNOWN;
+
+        static Operation fromValue(final byte value) {
+            switch (value) {
+                case Request.Operations.CREATE_ACCOUNTS:
+                    return CREATE_ACCOUNTS;
+                case Request.Operations.CREATE_TRANSFERS:
+                    return CREATE_TRANSFERS;
+                case Request.Operations.LOOKUP_ACCOUNTS:
+                    return LOOKUP_ACCOUNTS;
+                case Request.Operations.LOOKUP_TRANSFERS:
+                    return LOOKUP_TRANSFERS;
+                default:
+                    return UNKNOWN;
+            }
+        }
+    }
+
+    private final Operation operation;
+    private final int length;
+    private final Client client;
+    private final AtomicInteger pending;
+
+    private byte status;
+    private long created;
+    private long acquired;
+    private long submitted;
+    private long completed;
+    private long resultReady;
+    private long delivered;
+    private boolean hasPacket;
+
+    RequestTiming(final Client client, final byte operation, final int length,
+            final long created) {
+        this.client = client;
+        this.operation = Operation.fromValue(operation);
+        this.length = length;
+        this.created = created;
+        this.pending = new AtomicInteger(2);
+    }
+
+    void packetAcquired() {
+        acquired = System.nanoTime();
+        hasPacket = true;
+    }
+
+    /**
+     * Ends the phases of a request failing before its submission, up to its result.
+     */
+    void failed(final byte status) {
+        final var now = System.nanoTime();
+        this.status = status;
+        if (!hasPacket)
+            acquired = now;
+        submitted = now;
+        completed = now;
+        resultReady = now;
+        signal();
+    }
+
+    void submitted() {
+        submitted = System.nanoTime();
+        signal();
+    }
+
+    void completed(final byte status) {
+        this.status = status;
+        this.completed = System.nanoTime();
+    }
+
+    void resultReady() {
+        resultReady = System.nanoTime();
+    }
+
+    void delivered() {
+        delivered = System.nanoTime();
+        signal();
+    }
+
+    private void signal() {
+        if (pending.decrementAndGet() == 0)
+            client.onRequestTiming(this);
+    }
+
+    /**
+     * Gets the operation.
+     *
+     * @return the {@link Operation} performed by the request.
+     */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Gets the number of events submitted.
+     *
+     * @return the length of the batch submitted.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the request status.
+     *
+     * @return see {@link RequestException.Status}.
+     */
+    public byte getStatus() {
+        return status;
+    }
+
+    /**
+     * Gets the time spent waiting for a free packet, limited by the client's
+     * {@code maxConcurrency}.
+     */
+    public long getPacketWaitNanos() {
+        return acquired - created;
+    }
+
+    /**
+     * Gets the time spent submitting the request to the native client.
+     */
+    public long getSubmitNanos() {
+        return submitted - acquired;
+    }
+
+    /**
+     * Gets the time from the submission until the native completion, including the time queued in
+     * the native client and the round trip to the cluster.
+     * <p>
+     * Measured from the beginning of the submission, since the completion may arrive before the
+     * submitting thread returns.
+     */
+    public long getReplyNanos() {
+        return completed - acquired;
+    }
+
+    /**
+     * Gets the time spent copying the reply into managed memory.
+     */
+    public long getMemcpyNanos() {
+        return resultReady - completed;
+    }
+
+    /**
+     * Gets the time from the completion until the result was observed by the caller, such as the
+     * time waiting to be scheduled by the {@link java.util.concurrent.ForkJoinPool} for async
+     * requests.
+     */
+    public long getDispatchNanos() {
+        return delivered - resultReady;
+    }
+
+    /**
+     * Gets the total time from the request's submission until the result was observed by the
+     * caller.
+     */
+    public long getTotalNanos() {
+        return delivered - created;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "RequestTiming{operation=%s, length=%d, status=%d, packetWait=%dns, submit=%dns, reply=%dns, memcpy=%dns, dispatch=%dns, total=%dns}",
+                operation, length, status, getPacketWaitNanos(), getSubmitNanos(),
+                getReplyNanos(), getMemcpyNanos(), getDispatchNanos(), getTotalNanos());
+    }
+}
@@ -0,0 +1,43 @@
+package com.tigerbeetle;
+
+/**
+ * Raised by {@link LedgerRouter} when a batch split across several clusters failed on some of
+ * them, while the other clusters may have created their rows.
+ * <p>
+ * The cause is the failure of the first cluster that failed, either a {@link RequestException}
+ * or an {@link IllegalStateException} if its client is closed.
+ */
+public final class RoutedException extends RuntimeException {
+
+    private final Batch results;
+    private final int[] failedIndexes;
+
+    RoutedException(final Throwable cause, final Batch results, final int[] failedIndexes) {
+        super(cause);
+        this.results = results;
+        this.failedIndexes = failedIndexes;
+    }
+
+    /**
+     * Gets the results of the clusters that succeeded, indexed by position in the submitted
+     * batch, as if the batch was submitted to a single cluster.
+     * <p>
+     * A {@link CreateAccountResultBatch} or a {@link CreateTransferResultBatch}, depending on the
+     * batch submitted. The rows neither failed nor listed there were created.
+     *
+     * @return a read-only batch of results.
+     */
+    public Batch getResults() {
+        return results;
+    }
+
+    /**
+     * Gets the positions in the submitted batch of the rows of the clusters that failed, in
+     * ascending order. Whether those rows were created is unknown.
+     *
+     * @return a copy of the failed positions.
+     */
+    public int[] getFailedIndexes() {
+        return failedIndexes.clone();
+    }
+}
@@ -0,0 +1,142 @@
+package com.tigerbeetle;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Several requests, possibly of different operations, submitted to a {@link Client} at once.
+ * <p>
+ * Packets are leased for all the requests together and they are handed to the native client in
+ * a single call, instead of one call per request. It pays off for producers that already have
+ * many batches ready, such as import jobs.
+ * <p>
+ * Each request completes independently, exactly as if submitted with the corresponding
+ * {@code Async} method of the {@link Client}. This class is not thread-safe, and an instance can
+ * be reused after being submitted.
+ *
+ * @see Client#newSubmission()
+ */
+public final class Submission {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Client client;
+    private AsyncRequest<?>[] requests;
+    private int count;
+
+    Submission(final Client client) {
+        this.client = client;
+        this.requests = new AsyncRequest<?>[INITIAL_CAPACITY];
+        this.count = 0;
+    }
+
+    /**
+     * Adds a batch of new accounts to be created.
+     *
+     * @see Client#createAccountsAsync(AccountBatch)
+     * @param batch a {@link com.tigerbeetle.AccountBatch batch} containing all accounts to be
+     *        created.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed once submitted.
+     * @throws IllegalArgumentException if {@code batch} is empty.
+     * @throws NullPointerException if {@code batch} is null.
+     */
+    public CompletableFuture<CreateAccountResultBatch> createAccounts(final AccountBatch batch) {
+        return add(AsyncRequest.createAccounts(client, batch));
+    }
+
+    /**
+     * Adds a batch of accounts to be looked up.
+     *
+     * @see Client#lookupAccountsAsync(IdBatch)
+     * @param batch a {@link com.tigerbeetle.IdBatch batch} containing all account ids.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed once submitted.
+     * @throws IllegalArgumentException if {@code batch} is empty.
+     * @throws NullPointerException if {@code batch} is null.
+     */
+    public CompletableFuture<AccountBatch> lookupAccounts(final IdBatch batch) {
+        return add(AsyncRequest.lookupAccounts(client, batch));
+    }
+
+    /**
+     * Adds a batch of new transfers to be created.
+     *
+     * @see Client#createTransfersAsync(TransferBatch)
+     * @param batch a {@link com.tigerbeetle.TransferBatch batch} containing all transfers to be
+     *        created.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed once submitted.
+     * @throws IllegalArgumentException if {@code batch} is empty.
+     * @throws NullPointerException if {@code batch} is null.
+     */
+    public CompletableFuture<CreateTransferResultBatch> createTransfers(
+            final TransferBatch batch) {
+        return add(AsyncRequest.createTransfers(client, batch));
+    }
+
+    /**
+     * Adds a batch of transfers to be looked up.
+     *
+     * @see Client#lookupTransfersAsync(IdBatch)
+     * @param batch a {@link com.tigerbeetle.IdBatch batch} containing all transfer ids.
+     * @return a {@link java.util.concurrent.CompletableFuture} to be completed once submitted.
+     * @throws IllegalArgumentException if {@code batch} is empty.
+     * @throws NullPointerException if {@code batch} is null.
+     */
+    public CompletableFuture<TransferBatch> lookupTransfers(final IdBatch batch) {
+        return add(AsyncRequest.lookupTransfers(client, batch));
+    }
+
+    /**
+     * The number of requests added since the last submission.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Submits all the requests added since the last submission, leasing their packets at once.
+     * <p>
+     * Like the {@code Async} methods of the {@link Client}, this method blocks while there are no
+     * packets available. A submission larger than the client's {@code maxConcurrency} is split
+     * into chunks of at most {@code maxConcurrency} requests.
+     *
+     * @throws IllegalStateException if the client is closed. The futures of the requests that
+     *         could not be submitted are completed with the same exception.
+     */
+    public void submit() {
+        if (count == 0)
+            return;
+
+        final var submitted = count;
+        final var chunkSize = client.getMaxConcurrency();
+        count = 0;
+
+        var start = 0;
+        try {
+            while (start < submitted) {
+                final var end = Math.min(submitted, start + chunkSize);
+                client.submit(start == 0 ? requests : Arrays.copyOfRange(requests, start, end),
+                        end - start);
+                start = end;
+            }
+        } catch (IllegalStateException exception) {
+            for (int i = start; i < submitted; i++) {
+                requests[i].getFuture().completeExceptionally(exception);
+            }
+            throw exception;
+        } finally {
+            // Drops the references, so completed requests can be collected
+            Arrays.fill(requests, 0, submitted, null);
+        }
+    }
+
+    private <TResponse extends Batch> CompletableFuture<TResponse> add(
+            final AsyncRequest<TResponse> request) {
+        if (count == requests.length) {
+            requests = Arrays.copyOf(requests, requests.length * 2);
+        }
+
+        requests[count] = request;
+        count += 1;
+        return request.getFuture();
+    }
+}
@@ -0,0 +1,364 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Hierarchical timer wheel of 128-bit ids, keeping its entries and its index off-heap.
+ * <p>
+ * This class is not thread-safe.
+ */
+final class TimerWheel {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Four levels of 256 buckets, each bucket of level n spanning 256^n ticks, so deadlines up
+     * to 2^32 ticks ahead are placed directly; farther ones go to the last bucket of the last
+     * level and are placed again when cascaded.
+     *
+     * An entry is placed in the lowest level whose span covers its distance to the current
+     * tick. When the first level wraps around, the bucket of the next level that starts at the
+     * current tick is cascaded, its entries placed again into lower levels, and so on upwards,
+     * as in the classic Linux timer wheel. Expiring the current bucket of the first level then
+     * only visits due entries. Ticks that would only visit empty buckets are skipped, using the
+     * number of entries in each level.
+     *
+     * Entries live in a slab of fixed-size slots, in a direct buffer:
+     *
+     *   id: u128 @0, deadline: u64 @16, next: u32 @24, prev: u32 @28, flags: u16 @32,
+     *   bucket: u16 @34
+     *
+     * Each bucket is a doubly linked list of slots for O(1) removal, and free slots are chained
+     * through next. Ids are indexed by an open addressing table of slot numbers, with linear
+     * probing and backward shift deletion, also in a direct buffer.
+     *
+     */
+    // @formatter:on
+
+    interface Slot {
+        int Id = 0;
+        int Deadline = 16;
+        int Next = 24;
+        int Prev = 28;
+        int Flags = 32;
+        int Bucket = 34;
+
+        int SIZE = 40;
+    }
+
+    interface Expired {
+        void onExpired(long idLsb, long idMsb, short flags);
+    }
+
+    static final int LEVELS = 4;
+    static final int BUCKET_BITS = 8;
+    static final int BUCKETS = 1 << BUCKET_BITS;
+
+    private static final int BUCKET_MASK = BUCKETS - 1;
+    private static final int NONE = -1;
+    private static final int EMPTY = 0;
+
+    private final int capacity;
+    private final ByteBuffer slots;
+    private final ByteBuffer index;
+    private final int indexMask;
+    private final int[] buckets = new int[LEVELS * BUCKETS];
+    private final int[] levelSizes = new int[LEVELS];
+
+    private long now;
+    private int free;
+    private int size;
+
+    TimerWheel(final int capacity, final long now) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+
+        this.capacity = capacity;
+        this.slots = ByteBuffer.allocateDirect(capacity * Slot.SIZE).order(ByteOrder.nativeOrder());
+
+        // At most half full, so that probing stays short
+        final var indexSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 2;
+        this.index = ByteBuffer.allocateDirect(indexSize * Integer.BYTES)
+                .order(ByteOrder.nativeOrder());
+        this.indexMask = indexSize - 1;
+
+        Arrays.fill(buckets, NONE);
+        for (int slot = 0; slot < capacity; slot++) {
+            setNext(slot, slot + 1 < capacity ? slot + 1 : NONE);
+        }
+        this.free = 0;
+        this.now = now;
+    }
+
+    long getNow() {
+        return now;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds an id expiring at {@code deadline}, or on the next tick if already due.
+     *
+     * @return false if the id is already present.
+     * @throws IllegalStateException if the wheel is full.
+     */
+    boolean add(final long idLsb, final long idMsb, final long deadline, final short flags) {
+        if (find(idLsb, idMsb) != NONE)
+            return false;
+        if (free == NONE)
+            throw new IllegalStateException("Too many pending transfers");
+
+        final var slot = free;
+        free = getNext(slot);
+
+        final var offset = slot * Slot.SIZE;
+        slots.putLong(offset + Slot.Id, idLsb);
+        slots.putLong(offset + Slot.Id + 8, idMsb);
+        slots.putLong(offset + Slot.Deadline, Math.max(deadline, now + 1));
+        slots.putShort(offset + Slot.Flags, flags);
+
+        place(slot);
+        indexInsert(slot);
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes an id.
+     *
+     * @return its flags, or -1 if not present.
+     */
+    int remove(final long idLsb, final long idMsb) {
+        final var slot = find(idLsb, idMsb);
+        if (slot == NONE)
+            return -1;
+
+        final var flags = slots.getShort(slot * Slot.SIZE + Slot.Flags) & 0xFFFF;
+        unlink(slot);
+        indexRemove(slot);
+        release(slot);
+        return flags;
+    }
+
+    /**
+     * Advances to {@code tick}, removing the ids expired on the way in deadline order, tick by
+     * tick.
+     */
+    void advance(final long tick, final Expired expired) {
+        while (now < tick) {
+            skip(tick);
+            if (now == tick)
+                return;
+
+            now++;
+
+            if ((now & BUCKET_MASK) == 0)
+                cascade(1);
+
+            final var bucket = (int) (now & BUCKET_MASK);
+            var slot = buckets[bucket];
+            buckets[bucket] = NONE;
+            while (slot != NONE) {
+                levelSizes[0]--;
+                final var next = getNext(slot);
+                final var offset = slot * Slot.SIZE;
+                final var idLsb = slots.getLong(offset + Slot.Id);
+                final var idMsb = slots.getLong(offset + Slot.Id + 8);
+                final var flags = slots.getShort(offset + Slot.Flags);
+                assertTrue(slots.getLong(offset + Slot.Deadline) == now,
+                        "Unexpected deadline: deadline=%d, now=%d",
+                        slots.getLong(offset + Slot.Deadline), now);
+
+                indexRemove(slot);
+                release(slot);
+                expired.onExpired(idLsb, idMsb, flags);
+                slot = next;
+            }
+        }
+    }
+
+    /**
+     * Moves right before the next tick cascading or expiring anything, without going past
+     * {@code tick}, since the ticks in between would only visit empty buckets.
+     */
+    private void skip(final long tick) {
+        var level = 0;
+        while (level < LEVELS && levelSizes[level] == 0) {
+            level++;
+        }
+        if (level == 0)
+            return;
+        if (level == LEVELS) {
+            now = tick;
+            return;
+        }
+
+        final var shift = level * BUCKET_BITS;
+        final var next = ((now >>> shift) + 1) << shift;
+        now = Math.max(now, Math.min(tick, next - 1));
+    }
+
+    /**
+     * Places again the entries of the bucket of {@code level} starting at the current tick,
+     * cascading the upper level first when this one wraps around too.
+     */
+    private void cascade(final int level) {
+        final var shift = level * BUCKET_BITS;
+        final var index = (int) ((now >>> shift) & BUCKET_MASK);
+        if (index == 0 && level + 1 < LEVELS)
+            cascade(level + 1);
+
+        final var bucket = level * BUCKETS + index;
+        var slot = buckets[bucket];
+        buckets[bucket] = NONE;
+        while (slot != NONE) {
+            final var next = getNext(slot);
+            levelSizes[level]--;
+            place(slot);
+            slot = next;
+        }
+    }
+
+    private void place(final int slot) {
+        final var deadline = slots.getLong(slot * Slot.SIZE + Slot.Deadline);
+        final var delta = deadline - now;
+        assertTrue(delta >= 0, "Deadline in the past: deadline=%d, now=%d", deadline, now);
+
+        int bucket = NONE;
+        for (int level = 0; level < LEVELS; level++) {
+            final var shift = level * BUCKET_BITS;
+            if (delta < (1L << (shift + BUCKET_BITS))) {
+                bucket = level * BUCKETS + (int) ((deadline >>> shift) & BUCKET_MASK);
+                break;
+            }
+        }
+
+        if (bucket == NONE) {
+            // Beyond the wheel, the farthest bucket is cascaded before the deadline
+            final var shift = (LEVELS - 1) * BUCKET_BITS;
+            bucket = (LEVELS - 1) * BUCKETS + (int) (((now >>> shift) - 1) & BUCKET_MASK);
+        }
+
+        levelSizes[bucket / BUCKETS]++;
+        final var head = buckets[bucket];
+        setNext(slot, head);
+        setPrev(slot, NONE);
+        slots.putShort(slot * Slot.SIZE + Slot.Bucket, (short) bucket);
+        if (head != NONE)
+            setPrev(head, slot);
+        buckets[bucket] = slot;
+    }
+
+    private void unlink(final int slot) {
+        final var bucket = slots.getShort(slot * Slot.SIZE + Slot.Bucket) & 0xFFFF;
+        levelSizes[bucket / BUCKETS]--;
+
+        final var next = getNext(slot);
+        final var prev = getPrev(slot);
+        if (prev == NONE) {
+            assertTrue(buckets[bucket] == slot, "Slot %d is not the head of its bucket", slot);
+            buckets[bucket] = next;
+        } else {
+            setNext(prev, next);
+        }
+        if (next != NONE)
+            setPrev(next, prev);
+    }
+
+    private void release(final int slot) {
+        setNext(slot, free);
+        free = slot;
+        size--;
+    }
+
+    private int find(final long idLsb, final long idMsb) {
+        var position = hash(idLsb, idMsb) & indexMask;
+        while (true) {
+            final var entry = index.getInt(position * Integer.BYTES);
+            if (entry == EMPTY)
+                return NONE;
+
+            final var slot = entry - 1;
+            final var offset = slot * Slot.SIZE;
+            if (slots.getLong(offset + Slot.Id) == idLsb
+                    && slots.getLong(offset + Slot.Id + 8) == idMsb)
+                return slot;
+
+            position = (position + 1) & indexMask;
+        }
+    }
+
+    private void indexInsert(final int slot) {
+        final var offset = slot * Slot.SIZE;
+        var position = hash(slots.getLong(offset + Slot.Id), slots.getLong(offset + Slot.Id + 8))
+                & indexMask;
+        while (index.getInt(position * Integer.BYTES) != EMPTY) {
+            position = (position + 1) & indexMask;
+        }
+        index.putInt(position * Integer.BYTES, slot + 1);
+    }
+
+    private void indexRemove(final int slot) {
+        var position = slotPosition(slot);
+        index.putInt(position * Integer.BYTES, EMPTY);
+
+        // Shifts back the following entries that would no longer be reachable
+        var next = (position + 1) & indexMask;
+        while (true) {
+            final var entry = index.getInt(next * Integer.BYTES);
+            if (entry == EMPTY)
+                return;
+
+            final var offset = (entry - 1) * Slot.SIZE;
+            final var home = hash(slots.getLong(offset + Slot.Id),
+                    slots.getLong(offset + Slot.Id + 8)) & indexMask;
+            if (((next - home) & indexMask) >= ((next - position) & indexMask)) {
+                index.putInt(position * Integer.BYTES, entry);
+                index.putInt(next * Integer.BYTES, EMPTY);
+                position = next;
+            }
+            next = (next + 1) & indexMask;
+        }
+    }
+
+    private int slotPosition(final int slot) {
+        final var offset = slot * Slot.SIZE;
+        var position = hash(slots.getLong(offset + Slot.Id), slots.getLong(offset + Slot.Id + 8))
+                & indexMask;
+        while (index.getInt(position * Integer.BYTES) != slot + 1) {
+            position = (position + 1) & indexMask;
+        }
+        return position;
+    }
+
+    private static int hash(final long idLsb, final long idMsb) {
+        final var mixed = (idLsb ^ Long.rotateLeft(idMsb, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed >>> 32);
+    }
+
+    private int getNext(final int slot) {
+        return slots.getInt(slot * Slot.SIZE + Slot.Next);
+    }
+
+    private void setNext(final int slot, final int next) {
+        slots.putInt(slot * Slot.SIZE + Slot.Next, next);
+    }
+
+    private int getPrev(final int slot) {
+        return slots.getInt(slot * Slot.SIZE + Slot.Prev);
+    }
+
+    private void setPrev(final int slot, final int prev) {
+        slots.putInt(slot * Slot.SIZE + Slot.Prev, prev);
+    }
+}
@@ -0,0 +1,320 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import static com.tigerbeetle.AssertionError.assertTrue;
+
+/**
+ * Captures the requests submitted by a {@link Client}, with their raw batches and timestamps, to
+ * a file to be replayed by {@link TrafficReplay}.
+ * <p>
+ * Requests are copied into an in-memory ring buffer and written to the file by a background
+ * thread, so capturing never blocks the client. A request that does not fit in the ring is
+ * dropped and counted by {@link #getDropped()}.
+ *
+ * @see Client#setTrafficCapture(TrafficCapture)
+ */
+public final class TrafficCapture implements AutoCloseable {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * File layout, little-endian:
+     *
+     *   magic: u64 @0           "TBCAPT" followed by two zero bytes
+     *   version: u32 @8
+     *   reserved @12
+     *   records @16
+     *
+     * Each record is a 24-byte header, followed by the request's batch for a request record:
+     *
+     *   size: u32 @0            the size of the batch, zero for a reply
+     *   kind: u8 @4             a request or a reply
+     *   value: u8 @5            the operation of a request, or the status of a reply
+     *   id: u64 @8              the request's sequence number, starting from 1
+     *   timestamp: u64 @16      nanoseconds since the capture started
+     *
+     * Requests are recorded by the caller's thread in Client.submit and replies by the thread
+     * completing the request in Request.endRequest. Both append to the ring under its lock, the
+     * writer thread then writes the bytes between the tail and the head without holding it,
+     * since producers never write over unwritten bytes. Records wrap around the end of the ring
+     * and are simply written in two parts.
+     *
+     * A reply whose request was dropped is dropped as well, its id being zero.
+     *
+     */
+    // @formatter:on
+
+    interface Struct {
+        int Magic = 0;
+        int Version = 8;
+
+        int SIZE = 16;
+    }
+
+    interface Record {
+        int Size = 0;
+        int Kind = 4;
+        int Value = 5;
+        int Id = 8;
+        int Timestamp = 16;
+
+        int SIZE = 24;
+
+        byte KIND_REQUEST = 1;
+        byte KIND_REPLY = 2;
+    }
+
+    static final long MAGIC = 0x0000545041434254L;
+    static final int VERSION = 1;
+
+    /**
+     * The default size of the ring buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer ring;
+    private final long start;
+    private final Thread writer;
+
+    // Guarded by this
+    private final ByteBuffer header = ByteBuffer.allocate(Record.SIZE).order(Batch.BYTE_ORDER);
+    private long head;
+    private long tail;
+    private long sequence;
+    private long dropped;
+    private boolean waiting;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Creates a capture file with a ring buffer of {@link #DEFAULT_BUFFER_SIZE}.
+     *
+     * @see #TrafficCapture(Path, int)
+     */
+    public TrafficCapture(final Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a capture file, replacing any existing file, and starts its writer thread.
+     *
+     * @param file the capture file.
+     * @param bufferSize the size of the ring buffer, the largest batch captured is slightly
+     *        smaller.
+     *
+     * @throws IOException if the file cannot be created.
+     * @throws NullPointerException if {@code file} is null.
+     * @throws IllegalArgumentException if {@code bufferSize} is not larger than a record header.
+     */
+    public TrafficCapture(final Path file, final int bufferSize) throws IOException {
+        Objects.requireNonNull(file, "File cannot be null");
+        if (bufferSize <= Record.SIZE)
+            throw new IllegalArgumentException("Buffer size must be larger than " + Record.SIZE);
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        try {
+            final var fileHeader = ByteBuffer.allocate(Struct.SIZE).order(Batch.BYTE_ORDER);
+            fileHeader.putLong(Struct.Magic, MAGIC);
+            fileHeader.putInt(Struct.Version, VERSION);
+            while (fileHeader.hasRemaining()) {
+                channel.write(fileHeader);
+            }
+        } catch (IOException exception) {
+            channel.close();
+            throw exception;
+        }
+
+        this.ring = ByteBuffer.allocateDirect(bufferSize).order(Batch.BYTE_ORDER);
+        this.start = System.nanoTime();
+        this.writer = new Thread(this::write, "tigerbeetle-capture");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Gets the number of requests and replies dropped because the ring buffer was full.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Records a request about to be submitted.
+     *
+     * @return the request's id, or zero if dropped.
+     */
+    long onRequest(final Request<?> request) {
+        final var timestamp = System.nanoTime() - start;
+        final var size = (int) request.getBufferLen();
+
+        synchronized (this) {
+            if (closed || !reserve(Record.SIZE + size))
+                return 0;
+
+            final var id = ++sequence;
+            append(Record.KIND_REQUEST, request.getOperation(), id, timestamp, size);
+
+            final var body = request.getBuffer().duplicate();
+            body.limit(size).position(0);
+            put(body);
+
+            signal();
+            return id;
+        }
+    }
+
+    /**
+     * Records the reply of a request recorded with {@code id}.
+     */
+    void onReply(final long id, final byte status) {
+        if (id == 0)
+            return;
+
+        final var timestamp = System.nanoTime() - start;
+        synchronized (this) {
+            if (closed || !reserve(Record.SIZE))
+                return;
+
+            append(Record.KIND_REPLY, status, id, timestamp, 0);
+            signal();
+        }
+    }
+
+    /**
+     * Stops capturing, waits for the writer thread to write the records captured so far, and
+     * closes the file.
+     *
+     * @throws IOException if the records could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            writer.join();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on waiting for the capture writer.");
+        } finally {
+            channel.close();
+        }
+
+        synchronized (this) {
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    private boolean reserve(final int size) {
+        if (failure != null || size > ring.capacity() - (head - tail)) {
+            dropped++;
+            return false;
+        }
+        return true;
+    }
+
+    private void append(final byte kind, final byte value, final long id, final long timestamp,
+            final int size) {
+        header.clear();
+        header.putInt(Record.Size, size);
+        header.put(Record.Kind, kind);
+        header.put(Record.Value, value);
+        header.putLong(Record.Id, id);
+        header.putLong(Record.Timestamp, timestamp);
+        put(header);
+    }
+
+    private void put(final ByteBuffer source) {
+        assertTrue(Thread.holdsLock(this), "Must hold the capture's lock");
+
+        final var capacity = ring.capacity();
+        final var length = source.remaining();
+        final var offset = (int) (head % capacity);
+        final var first = Math.min(length, capacity - offset);
+
+        final var target = ring.duplicate();
+        target.position(offset);
+        final var limit = source.limit();
+        source.limit(source.position() + first);
+        target.put(source);
+        source.limit(limit);
+
+        if (first < length) {
+            target.position(0);
+            target.put(source);
+        }
+
+        head += length;
+    }
+
+    private void signal() {
+        if (waiting) {
+            waiting = false;
+            notify();
+        }
+    }
+
+    private void write() {
+        final var capacity = ring.capacity();
+        while (true) {
+            final long from;
+            final long to;
+            synchronized (this) {
+                while (head == tail && !closed) {
+                    waiting = true;
+                    try {
+                        wait();
+                    } catch (InterruptedException interruptedException) {
+                        // Only stopped by closing
+                    }
+                }
+                if (head == tail)
+                    return;
+
+                from = tail;
+                to = head;
+            }
+
+            try {
+                final var offset = (int) (from % capacity);
+                final var length = (int) (to - from);
+                final var first = Math.min(length, capacity - offset);
+
+                final var bytes = ring.duplicate();
+                bytes.limit(offset + first).position(offset);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                bytes.limit(length - first).position(0);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException exception) {
+                // Drops everything from now on, reported when closing
+                synchronized (this) {
+                    failure = exception;
+                    tail = head;
+                }
+                continue;
+            }
+
+            synchronized (this) {
+                tail = to;
+            }
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a file captured by {@link TrafficCapture} against a client, reproducing the time
+ * between requests, and reports the latencies of the replayed requests next to the captured
+ * ones.
+ * <p>
+ * Requests are submitted asynchronously at their captured times, scaled by the replay speed,
+ * so the concurrency of the captured traffic is reproduced as long as the cluster keeps up.
+ */
+public final class TrafficReplay {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * The capture file is read through read-only mappings of up to 1 GiB, remapped at the
+     * record that does not fit in the current one. Batches are submitted straight from the
+     * mapping, without copying.
+     *
+     * The latency of a replayed request is measured from the time it was scheduled rather than
+     * the time it was actually submitted, so that a replay falling behind the captured traffic
+     * shows in the latencies instead of silently spacing out the requests.
+     *
+     * A file whose last record is truncated, as left by a process that did not close its
+     * capture, ends at its last complete record.
+     *
+     */
+    // @formatter:on
+
+    /**
+     * The latencies of the captured and replayed requests.
+     * <p>
+     * All durations are measured in nanoseconds using {@link System#nanoTime()}.
+     */
+    public static final class Report {
+
+        private final int requests;
+        private final int errors;
+        private final long durationNanos;
+        private final long[] captured;
+        private final long[] replayed;
+
+        Report(final int requests, final int errors, final long durationNanos,
+                final long[] captured, final long[] replayed) {
+            this.requests = requests;
+            this.errors = errors;
+            this.durationNanos = durationNanos;
+            this.captured = captured;
+            this.replayed = replayed;
+        }
+
+        /**
+         * Gets the number of requests replayed.
+         */
+        public int getRequests() {
+            return requests;
+        }
+
+        /**
+         * Gets the number of replayed requests that failed.
+         */
+        public int getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets the time from the first request submitted to the last reply received.
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * Gets a percentile of the latencies captured, for the requests whose reply was captured.
+         *
+         * @param quantile the percentile, from {@code 0.0} to {@code 1.0}.
+         * @throws IllegalArgumentException if {@code quantile} is not within {@code [0.0, 1.0]}.
+         */
+        public long getCapturedNanos(final double quantile) {
+            return percentile(captured, quantile);
+        }
+
+        /**
+         * Gets a percentile of the latencies replayed.
+         *
+         * @param quantile the percentile, from {@code 0.0} to {@code 1.0}.
+         * @throws IllegalArgumentException if {@code quantile} is not within {@code [0.0, 1.0]}.
+         */
+        public long getReplayedNanos(final double quantile) {
+            return percentile(replayed, quantile);
+        }
+
+        private static long percentile(final long[] sorted, final double quantile) {
+            if (!(quantile >= 0.0 && quantile <= 1.0))
+                throw new IllegalArgumentException("Quantile must be within [0.0, 1.0]");
+            if (sorted.length == 0)
+                return 0;
+
+            final var rank = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "Report{requests=%d, errors=%d, duration=%dns, captured={p50=%dns, p99=%dns, p999=%dns, max=%dns}, replayed={p50=%dns, p99=%dns, p999=%dns, max=%dns}}",
+                    requests, errors, durationNanos, getCapturedNanos(0.5),
+                    getCapturedNanos(0.99), getCapturedNanos(0.999), getCapturedNanos(1.0),
+                    getReplayedNanos(0.5), getReplayedNanos(0.99), getReplayedNanos(0.999),
+                    getReplayedNanos(1.0));
+        }
+    }
+
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * Reads records from the capture file through a sliding mapping.
+     */
+    private static final class Reader implements AutoCloseable {
+
+        final FileChannel channel;
+        final long size;
+        MappedByteBuffer window;
+        long windowStart;
+
+        Reader(final Path file) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.size = channel.size();
+        }
+
+        /**
+         * Maps {@code length} bytes at {@code offset}, and returns the index of {@code offset}
+         * in {@link #window}, or -1 past the end of the file.
+         */
+        int map(final long offset, final int length) throws IOException {
+            if (offset + length > size)
+                return -1;
+
+            if (window == null || offset < windowStart
+                    || offset + length > windowStart + window.capacity()) {
+                final var windowSize = Math.min(Math.max(WINDOW_SIZE, length), size - offset);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowSize);
+                window.order(Batch.BYTE_ORDER);
+                windowStart = offset;
+            }
+            return (int) (offset - windowStart);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private final Path file;
+    private final int requests;
+    private final long[] captured;
+
+    /**
+     * Opens a capture file, and collects the latencies of the captured requests.
+     *
+     * @param file a file written by {@link TrafficCapture}.
+     *
+     * @throws IOException if the file cannot be read or is not a capture file.
+     * @throws NullPointerException if {@code file} is null.
+     */
+    public TrafficReplay(final Path file) throws IOException {
+        Objects.requireNonNull(file, "File cannot be null");
+        this.file = file;
+
+        var requests = 0;
+        final var timestamps = new HashMap<Long, Long>();
+        var captured = new long[16];
+        var count = 0;
+
+        try (var reader = open(file)) {
+            var offset = (long) TrafficCapture.Struct.SIZE;
+            int index;
+            while ((index = reader.map(offset, TrafficCapture.Record.SIZE)) >= 0) {
+                final var window = reader.window;
+                final var size = window.getInt(index + TrafficCapture.Record.Size);
+                final var kind = window.get(index + TrafficCapture.Record.Kind);
+                final var id = window.getLong(index + TrafficCapture.Record.Id);
+                final var timestamp = window.getLong(index + TrafficCapture.Record.Timestamp);
+                if (size < 0 || offset + TrafficCapture.Record.SIZE + size > reader.size)
+                    break;
+
+                if (kind == TrafficCapture.Record.KIND_REQUEST) {
+                    timestamps.put(id, timestamp);
+                    requests++;
+                } else if (kind == TrafficCapture.Record.KIND_REPLY) {
+                    final var submitted = timestamps.remove(id);
+                    if (submitted != null) {
+                        if (count == captured.length)
+                            captured = Arrays.copyOf(captured, count * 2);
+                        captured[count++] = timestamp - submitted;
+                    }
+                } else {
+                    throw new IOException("Invalid capture record at offset " + offset);
+                }
+
+                offset += TrafficCapture.Record.SIZE + size;
+            }
+        }
+
+        this.requests = requests;
+        this.captured = Arrays.copyOf(captured, count);
+        Arrays.sort(this.captured);
+    }
+
+    /**
+     * Gets the number of requests captured.
+     */
+    public int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Submits the captured requests to {@code client}, waits for all their replies, and reports
+     * their latencies.
+     *
+     * @param client the client to submit the requests to.
+     * @param speed the speed of the replay relative to the capture, {@code 1.0} reproducing
+     *        the captured time between requests, and {@code 2.0} halving it.
+     * @return the latencies of the captured and replayed requests.
+     *
+     * @throws IOException if the file cannot be read.
+     * @throws NullPointerException if {@code client} is null.
+     * @throws IllegalArgumentException if {@code speed} is not positive.
+     * @throws IllegalStateException if the client is closed.
+     */
+    public Report replay(final Client client, final double speed) throws IOException {
+        Objects.requireNonNull(client, "Client cannot be null");
+        if (!(speed > 0.0))
+            throw new IllegalArgumentException("Speed must be positive");
+
+        final var replayed = new long[requests];
+        final var errors = new AtomicInteger();
+        final var done = new CountDownLatch(requests);
+
+        final var begin = System.nanoTime();
+        var first = -1L;
+        var submitted = 0;
+
+        try (var reader = open(file)) {
+            var offset = (long) TrafficCapture.Struct.SIZE;
+            int index;
+            while (submitted < requests
+                    && (index = reader.map(offset, TrafficCapture.Record.SIZE)) >= 0) {
+                final var window = reader.window;
+                final var size = window.getInt(index + TrafficCapture.Record.Size);
+                final var kind = window.get(index + TrafficCapture.Record.Kind);
+                final var operation = window.get(index + TrafficCapture.Record.Value);
+                final var timestamp = window.getLong(index + TrafficCapture.Record.Timestamp);
+
+                if (kind == TrafficCapture.Record.KIND_REQUEST) {
+                    final var bodyIndex = reader.map(offset, TrafficCapture.Record.SIZE + size)
+                            + TrafficCapture.Record.SIZE;
+                    final var body = reader.window.duplicate();
+                    body.limit(bodyIndex + size).position(bodyIndex);
+
+                    if (first < 0)
+                        first = timestamp;
+                    final var scheduled = begin + (long) ((timestamp - first) / speed);
+                    long delay;
+                    while ((delay = scheduled - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+
+                    final var slot = submitted++;
+                    submit(client, operation, body.slice().order(Batch.BYTE_ORDER))
+                            .whenComplete((result, exception) -> {
+                                replayed[slot] = System.nanoTime() - scheduled;
+                                if (exception != null)
+                                    errors.incrementAndGet();
+                                done.countDown();
+                            });
+                }
+
+                offset += TrafficCapture.Record.SIZE + size;
+            }
+        }
+
+        try {
+            done.await();
+        } catch (InterruptedException interruptedException) {
+            throw new AssertionError(interruptedException,
+                    "Unexpected thread interruption on waiting for the replayed requests.");
+        }
+
+        final var duration = System.nanoTime() - begin;
+        Arrays.sort(replayed);
+        return new Report(requests, errors.get(), duration, captured, replayed);
+    }
+
+    private static CompletableFuture<? extends Batch> submit(final Client client,
+            final byte operation, final ByteBuffer body) {
+        switch (operation) {
+            case Request.Operations.CREATE_ACCOUNTS:
+                return client.createAccountsAsync(new AccountBatch(body));
+            case Request.Operations.CREATE_TRANSFERS:
+                return client.createTransfersAsync(new TransferBatch(body));
+            case Request.Operations.LOOKUP_ACCOUNTS:
+                return client.lookupAccountsAsync(new IdBatch(body));
+            case Request.Operations.LOOKUP_TRANSFERS:
+                return client.lookupTransfersAsync(new IdBatch(body));
+            default:
+                return CompletableFuture.failedFuture(
+                        new AssertionError("Unknown operation %d", operation));
+        }
+    }
+
+    private static Reader open(final Path file) throws IOException {
+        final var reader = new Reader(file);
+        try {
+            final var index = reader.map(0, TrafficCapture.Struct.SIZE);
+            if (index < 0 || reader.window.getLong(index + TrafficCapture.Struct.Magic)
+                    != TrafficCapture.MAGIC)
+                throw new IOException("Not a capture file: " + file);
+            if (reader.window.getInt(index + TrafficCapture.Struct.Version)
+                    != TrafficCapture.VERSION)
+                throw new IOException("Unsupported capture file version: " + file);
+            return reader;
+        } catch (IOException exception) {
+            reader.close();
+            throw exception;
+        }
+    }
+}
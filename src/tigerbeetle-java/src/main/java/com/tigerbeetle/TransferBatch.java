@@ -41,11 +41,11 @@ public final class TransferBatch extends Batch {
      * @throws IllegalArgumentException if capacity is negative.
      */
     public TransferBatch(final int capacity) {
-        super(capacity, Struct.SIZE);
+        super(capacity, Struct.SIZE, Struct.Flags);
     }
 
     TransferBatch(final ByteBuffer buffer) {
-        super(buffer, Struct.SIZE);
+        super(buffer, Struct.SIZE, Struct.Flags);
     }
 
     /**
@@ -62,6 +62,57 @@ public final class TransferBatch extends Batch {
         super.add();
     }
 
+    /**
+     * Opens a linked chain: each transfer added until {@link #endChain} is flagged
+     * {@link TransferFlags#LINKED} once the next one is added, so the chain is closed by its last
+     * transfer without clearing any flag by hand.
+     * <p>
+     * A chain cannot exceed the number of transfers of a single request.
+     *
+     * @throws IllegalStateException if this batch is read-only or a chain is already open.
+     */
+    @Override
+    public void beginChain() {
+        super.beginChain();
+    }
+
+    /**
+     * Closes the linked chain opened by {@link #beginChain}, clearing the
+     * {@link TransferFlags#LINKED} flag of its last transfer.
+     *
+     * @throws IllegalStateException if no chain is open or the chain is empty.
+     */
+    @Override
+    public void endChain() {
+        super.endChain();
+    }
+
+    /**
+     * Tells whether a linked chain opened by {@link #beginChain} is not yet closed.
+     */
+    @Override
+    public boolean isChainOpen() {
+        return super.isChainOpen();
+    }
+
+    /**
+     * Gets the closest position, at or before {@code position}, where this batch can be split
+     * without splitting a linked chain.
+     * <p>
+     * The chain boundaries are indexed as they are queried, in amortized constant time, so the
+     * flags of the transfers before the last one must not be changed afterwards.
+     *
+     * @param position a zero-based index, up to the batch's {@link #getLength length}.
+     * @return the first transfer of the chain containing {@code position}, or {@code position}
+     *         itself if no chain crosses it.
+     * @throws IndexOutOfBoundsException if {@code position} is negative or greater than the
+     *         batch's {@link #getLength length}.
+     */
+    @Override
+    public int getChainBoundary(final int position) {
+        return super.getChainBoundary(position);
+    }
+
     /**
      * Gets the <a href="https://docs.tigerbeetle.com/reference/transfers#id">id</a>.
      *
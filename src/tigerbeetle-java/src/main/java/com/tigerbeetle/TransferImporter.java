@@ -0,0 +1,720 @@
+package com.tigerbeetle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports transfers in bulk from a file, resuming from a checkpoint after a crash.
+ * <p>
+ * The file is memory-mapped and parsed by several worker threads straight into reusable direct
+ * buffers, submitted with up to {@code maxInFlight} requests in flight.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ * <li>{@link Format#BINARY}: 128-byte records with the same layout as a {@link TransferBatch},
+ * little-endian.</li>
+ * <li>{@link Format#CSV} and {@link Format#TSV}: one transfer per line with the columns
+ * {@code id, debit_account_id, credit_account_id, user_data, pending_id, timeout, ledger, code,
+ * flags, amount}, as unsigned decimal numbers, an empty column being zero. Empty lines and lines
+ * starting with {@code #} are ignored, and so is the first line if it does not start with a
+ * digit, e.g. a header.</li>
+ * </ul>
+ * <p>
+ * Rejected transfers are written to the rejects file, one line {@code offset,id,result} each,
+ * where {@code offset} is the position of the record in the input file, in the order of the
+ * input. Transfers that already {@link CreateTransferResult#Exists exist} are counted but not
+ * rejected, so that resuming an import is idempotent.
+ */
+public final class TransferImporter {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * The input is split in chunks of about one batch, claimed in order by the workers. A text
+     * chunk holds the lines starting within its bounds, its last line may end past them. Each
+     * chunk is parsed into one or more batches, a chunk is done once all of them complete.
+     *
+     * Chunks complete out of order, and are retired in order: their rejects are appended to the
+     * rejects file and the checkpoint moves past them. So the checkpoint is always a prefix of
+     * the input whose rejects are exactly the content of the rejects file up to a known length.
+     *
+     * A chunk with a failed request is never retired, so the retirement stops at the first
+     * failed chunk and the last checkpoint is before it, whatever completed after it.
+     *
+     * Resuming truncates the rejects file to that length and starts from the checkpoint's
+     * offset, the chunks submitted after it are submitted again: created transfers then return
+     * Exists and rejected ones are rejected again.
+     *
+     * The file is mapped in windows of about 1 GiB overlapping by the maximum line length, so a
+     * chunk is always within a single window.
+     *
+     */
+    // @formatter:on
+
+    /**
+     * The format of the input file.
+     */
+    public enum Format {
+
+        /**
+         * 128-byte records with the layout of a {@link TransferBatch}.
+         */
+        BINARY,
+
+        /**
+         * Comma-separated values.
+         */
+        CSV,
+
+        /**
+         * Tab-separated values.
+         */
+        TSV,
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Summary {
+
+        private final long startOffset;
+        private final long created;
+        private final long existing;
+        private final long rejected;
+
+        Summary(final long startOffset, final long created, final long existing,
+                final long rejected) {
+            this.startOffset = startOffset;
+            this.created = created;
+            this.existing = existing;
+            this.rejected = rejected;
+        }
+
+        /**
+         * Gets the offset in the input file the import started from, non-zero when resumed.
+         */
+        public long getStartOffset() {
+            return startOffset;
+        }
+
+        /**
+         * Gets the number of transfers created.
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * Gets the number of transfers that already existed.
+         */
+        public long getExisting() {
+            return existing;
+        }
+
+        /**
+         * Gets the number of transfers written to the rejects file.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{startOffset=" + startOffset + ", created=" + created + ", existing="
+                    + existing + ", rejected=" + rejected + "}";
+        }
+    }
+
+    static final int LINE_LENGTH_MAX = 64 * 1024;
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final int TEXT_BYTES_PER_RECORD = 100;
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final String CHECKPOINT_MAGIC = "tigerbeetle-import-1";
+    private static final int COLUMNS = 10;
+
+    private final Client client;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int workers;
+
+    /**
+     * Initializes an importer submitting to {@code client}.
+     *
+     * @param client the client creating the transfers.
+     * @param batchSize the maximum number of transfers per request.
+     * @param maxInFlight the maximum number of requests in flight.
+     * @param workers the number of threads parsing the input.
+     *
+     * @throws NullPointerException if {@code client} is null.
+     * @throws IllegalArgumentException if {@code batchSize} is not within {@code [1, 8191]}, or
+     *         if {@code maxInFlight} or {@code workers} is zero or negative.
+     */
+    public TransferImporter(final Client client, final int batchSize, final int maxInFlight,
+            final int workers) {
+        Objects.requireNonNull(client, "Client cannot be null");
+        if (batchSize <= 0 || batchSize > TransferProcessor.BATCH_SIZE_MAX)
+            throw new IllegalArgumentException("Invalid batchSize");
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("Invalid maxInFlight");
+        if (workers <= 0)
+            throw new IllegalArgumentException("Invalid workers");
+
+        this.client = client;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.workers = workers;
+    }
+
+    /**
+     * Imports all transfers of {@code input}, blocking until they are all submitted and
+     * completed.
+     * <p>
+     * If {@code checkpoint} exists, the import resumes from it, otherwise it starts from the
+     * beginning and truncates {@code rejects}. The checkpoint is updated about every second and
+     * left at the end of the input once done, so importing again is a no-op.
+     *
+     * @param input the file to import.
+     * @param format the format of {@code input}.
+     * @param rejects the file receiving the rejected transfers.
+     * @param checkpoint the file recording the progress.
+     * @return the counts of transfers created, existing and rejected by this import.
+     *
+     * @throws IOException if the files cannot be read or written, or if {@code input} is not
+     *         valid for {@code format}, or does not match {@code checkpoint}.
+     * @throws RequestException if a request failed, the progress up to it is checkpointed.
+     * @throws IllegalStateException if the client is closed.
+     */
+    public Summary importFile(final Path input, final Format format, final Path rejects,
+            final Path checkpoint) throws IOException, RequestException {
+        Objects.requireNonNull(format, "Format cannot be null");
+
+        try (var channel = FileChannel.open(input, StandardOpenOption.READ);
+                var rejectsChannel = FileChannel.open(rejects, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE)) {
+            final var size = channel.size();
+            if (format == Format.BINARY && size % TransferBatch.Struct.SIZE != 0)
+                throw new IOException("Input size is not a multiple of "
+                        + TransferBatch.Struct.SIZE + " bytes");
+
+            var startOffset = 0L;
+            var rejectsLength = 0L;
+            if (Files.exists(checkpoint)) {
+                final var fields = readCheckpoint(checkpoint);
+                if (fields[0] != size)
+                    throw new IOException("Checkpoint does not match the input size");
+
+                startOffset = fields[1];
+                rejectsLength = fields[2];
+            }
+            rejectsChannel.truncate(rejectsLength).position(rejectsLength);
+
+            final var run = new Run(channel, format, size, startOffset, rejectsChannel,
+                    checkpoint);
+            return run.execute();
+        }
+    }
+
+    private static long[] readCheckpoint(final Path checkpoint) throws IOException {
+        final var lines = Files.readAllLines(checkpoint, StandardCharsets.US_ASCII);
+        if (lines.size() != 2 || !lines.get(0).equals(CHECKPOINT_MAGIC))
+            throw new IOException("Invalid checkpoint " + checkpoint);
+
+        final var values = lines.get(1).split(" ");
+        if (values.length != 3)
+            throw new IOException("Invalid checkpoint " + checkpoint);
+
+        try {
+            return new long[] {Long.parseLong(values[0]), Long.parseLong(values[1]),
+                    Long.parseLong(values[2])};
+        } catch (NumberFormatException exception) {
+            throw new IOException("Invalid checkpoint " + checkpoint, exception);
+        }
+    }
+
+    /**
+     * A direct buffer being filled by a worker or in flight, with the input offset of each row.
+     */
+    private static final class Slot {
+        final ByteBuffer buffer;
+        final long[] offsets;
+        int rows;
+
+        Slot(final int batchSize) {
+            this.buffer = ByteBuffer.allocateDirect(batchSize * TransferBatch.Struct.SIZE)
+                    .order(Batch.BYTE_ORDER);
+            this.offsets = new long[batchSize];
+        }
+    }
+
+    private static final class Chunk {
+        final long index;
+
+        // One for the parsing, plus one per batch in flight
+        final AtomicInteger pending = new AtomicInteger(1);
+        final StringBuilder rejects = new StringBuilder();
+
+        // Set if a request failed, its results were then never collected
+        volatile boolean failed;
+        long created;
+        long existing;
+        long rejected;
+
+        Chunk(final long index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * The state of a single call to importFile.
+     */
+    private final class Run {
+
+        final FileChannel channel;
+        final Format format;
+        final byte delimiter;
+        final long size;
+        final long startOffset;
+        final long chunkSize;
+        final long chunkCount;
+        final long chunksPerWindow;
+        final MappedByteBuffer[] windows;
+        final FileChannel rejectsChannel;
+        final Path checkpoint;
+
+        final AtomicLong nextChunk = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Semaphore inFlight = new Semaphore(maxInFlight);
+        final ArrayBlockingQueue<Slot> slots;
+
+        // Guarded by this
+        final HashMap<Long, Chunk> completed = new HashMap<>();
+        long retired;
+        long created;
+        long existing;
+        long rejected;
+        long lastCheckpoint;
+
+        Run(final FileChannel channel, final Format format, final long size,
+                final long startOffset, final FileChannel rejectsChannel, final Path checkpoint)
+                throws IOException {
+            this.channel = channel;
+            this.format = format;
+            this.delimiter = (byte) (format == Format.TSV ? '\t' : ',');
+            this.size = size;
+            this.startOffset = startOffset;
+            this.rejectsChannel = rejectsChannel;
+            this.checkpoint = checkpoint;
+
+            final var recordSize =
+                    format == Format.BINARY ? TransferBatch.Struct.SIZE : TEXT_BYTES_PER_RECORD;
+            this.chunkSize = (long) batchSize * recordSize;
+            this.chunkCount = (size - startOffset + chunkSize - 1) / chunkSize;
+            this.chunksPerWindow = Math.max(1, WINDOW_SIZE / chunkSize);
+
+            final var windowSize = chunksPerWindow * chunkSize;
+            final var windowCount = (int) ((size - startOffset + windowSize - 1) / windowSize);
+            this.windows = new MappedByteBuffer[windowCount];
+            for (int i = 0; i < windowCount; i++) {
+                final var position = startOffset + i * windowSize;
+                final var length = Math.min(windowSize + LINE_LENGTH_MAX, size - position);
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                windows[i].order(Batch.BYTE_ORDER);
+            }
+
+            this.slots = new ArrayBlockingQueue<>(workers + maxInFlight);
+            for (int i = 0; i < workers + maxInFlight; i++) {
+                slots.add(new Slot(batchSize));
+            }
+        }
+
+        Summary execute() throws IOException, RequestException {
+            lastCheckpoint = System.nanoTime();
+
+            final var threads = new Thread[workers];
+            for (int i = 0; i < workers; i++) {
+                threads[i] = new Thread(this::work, "tigerbeetle-import-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+
+            try {
+                for (final var thread : threads) {
+                    thread.join();
+                }
+
+                // Waits for the last requests in flight
+                inFlight.acquire(maxInFlight);
+                inFlight.release(maxInFlight);
+            } catch (InterruptedException interruptedException) {
+                throw new AssertionError(interruptedException,
+                        "Unexpected thread interruption on importing transfers.");
+            }
+
+            synchronized (this) {
+                writeCheckpoint();
+            }
+
+            final var exception = failure.get();
+            if (exception instanceof IOException)
+                throw (IOException) exception;
+            if (exception instanceof RequestException)
+                throw (RequestException) exception;
+            if (exception instanceof RuntimeException)
+                throw (RuntimeException) exception;
+            if (exception instanceof Error)
+                throw (Error) exception;
+            if (exception != null)
+                throw new AssertionError(exception, "Unexpected exception on importing transfers.");
+
+            synchronized (this) {
+                return new Summary(startOffset, created, existing, rejected);
+            }
+        }
+
+        private void work() {
+            try {
+                while (failure.get() == null) {
+                    final var index = nextChunk.getAndIncrement();
+                    if (index >= chunkCount)
+                        break;
+
+                    final var chunk = new Chunk(index);
+                    if (format == Format.BINARY) {
+                        parseBinary(chunk);
+                    } else {
+                        parseText(chunk);
+                    }
+                    release(chunk);
+                }
+            } catch (Throwable exception) {
+                failure.compareAndSet(null, exception);
+            }
+        }
+
+        private ByteBuffer windowOf(final long index) {
+            return windows[(int) (index / chunksPerWindow)];
+        }
+
+        private long windowBaseOf(final long index) {
+            return startOffset + (index / chunksPerWindow) * chunksPerWindow * chunkSize;
+        }
+
+        private int windowOffsetOf(final long index) {
+            return (int) ((index % chunksPerWindow) * chunkSize);
+        }
+
+        private void parseBinary(final Chunk chunk) throws InterruptedException {
+            final var window = windowOf(chunk.index);
+            final var start = windowOffsetOf(chunk.index);
+            final var end = (int) Math.min(start + chunkSize, window.limit());
+
+            final var slot = slots.take();
+            final var source = window.duplicate();
+            source.limit(end).position(start);
+            slot.buffer.clear();
+            slot.buffer.put(source);
+            slot.rows = (end - start) / TransferBatch.Struct.SIZE;
+
+            final var base = windowBaseOf(chunk.index) + start;
+            for (int row = 0; row < slot.rows; row++) {
+                slot.offsets[row] = base + (long) row * TransferBatch.Struct.SIZE;
+            }
+            submit(chunk, slot);
+        }
+
+        private void parseText(final Chunk chunk) throws IOException, InterruptedException {
+            final var window = windowOf(chunk.index);
+            final var windowBase = windowBaseOf(chunk.index);
+            final var start = windowOffsetOf(chunk.index);
+            final var end = (int) Math.min(start + chunkSize, size - windowBase);
+            final var limit = window.limit();
+
+            // Lines starting before the chunk belong to the previous one
+            var line = start;
+            if (windowBase + start > 0 && !isLineStart(window, windowBase, start)) {
+                while (line < limit && window.get(line) != '\n') {
+                    line += 1;
+                }
+                line += 1;
+            }
+
+            Slot slot = null;
+            while (line < end) {
+                var lineEnd = line;
+                while (lineEnd < limit && window.get(lineEnd) != '\n') {
+                    lineEnd += 1;
+                }
+                if (lineEnd - line > LINE_LENGTH_MAX
+                        || (lineEnd == limit && windowBase + limit < size))
+                    throw new IOException("Line too long at offset " + (windowBase + line));
+
+                var contentEnd = lineEnd;
+                if (contentEnd > line && window.get(contentEnd - 1) == '\r')
+                    contentEnd -= 1;
+
+                final var skipped = contentEnd == line || window.get(line) == '#'
+                        || (windowBase + line == 0 && !isDigit(window.get(line)));
+                if (!skipped) {
+                    if (slot == null) {
+                        slot = slots.take();
+                        slot.buffer.clear();
+                        slot.rows = 0;
+                    }
+
+                    parseLine(window, line, contentEnd, windowBase + line, slot);
+                    slot.offsets[slot.rows] = windowBase + line;
+                    slot.rows += 1;
+
+                    if (slot.rows == batchSize) {
+                        submit(chunk, slot);
+                        slot = null;
+                    }
+                }
+                line = lineEnd + 1;
+            }
+
+            if (slot != null)
+                submit(chunk, slot);
+        }
+
+        private boolean isDigit(final byte value) {
+            return value >= '0' && value <= '9';
+        }
+
+        private boolean isLineStart(final ByteBuffer window, final long windowBase,
+                final int position) throws IOException {
+            if (position > 0)
+                return window.get(position - 1) == '\n';
+
+            // The first chunk of a window, the previous byte is in the previous window
+            final var previous = ByteBuffer.allocate(1);
+            channel.read(previous, windowBase - 1);
+            return previous.get(0) == '\n';
+        }
+
+        private void parseLine(final ByteBuffer window, final int start, final int end,
+                final long offset, final Slot slot) throws IOException {
+            final var buffer = slot.buffer;
+            final var row = slot.rows * TransferBatch.Struct.SIZE;
+            for (int i = 0; i < TransferBatch.Struct.SIZE; i += Long.BYTES) {
+                buffer.putLong(row + i, 0L);
+            }
+
+            var position = start;
+            for (int column = 0; column < COLUMNS; column++) {
+                if (position > end)
+                    throw new IOException("Missing columns at offset " + offset);
+
+                var low = 0L;
+                var high = 0L;
+                while (position < end && window.get(position) != delimiter) {
+                    final var digit = window.get(position) - '0';
+                    if (digit < 0 || digit > 9)
+                        throw new IOException("Invalid number at offset " + offset);
+
+                    // 128-bit unsigned (high, low) * 10 + digit
+                    if (Long.compareUnsigned(high, 0x1999999999999999L) > 0)
+                        throw new IOException("Number too large at offset " + offset);
+
+                    final var product = low * 10;
+                    final var sum = product + digit;
+                    final var carry = Math.multiplyHigh(low, 10) + ((low >> 63) & 10)
+                            + (Long.compareUnsigned(sum, product) < 0 ? 1 : 0);
+                    final var shifted = high * 10;
+                    high = shifted + carry;
+                    if (Long.compareUnsigned(high, shifted) < 0)
+                        throw new IOException("Number too large at offset " + offset);
+                    low = sum;
+                    position += 1;
+                }
+                position += 1;
+
+                if (!putColumn(buffer, row, column, low, high))
+                    throw new IOException("Number too large at offset " + offset);
+            }
+
+            if (position <= end)
+                throw new IOException("Too many columns at offset " + offset);
+        }
+
+        private boolean putColumn(final ByteBuffer buffer, final int row, final int column,
+                final long low, final long high) {
+            switch (column) {
+                case 0:
+                    putUInt128(buffer, row + TransferBatch.Struct.Id, low, high);
+                    return true;
+                case 1:
+                    putUInt128(buffer, row + TransferBatch.Struct.DebitAccountId, low, high);
+                    return true;
+                case 2:
+                    putUInt128(buffer, row + TransferBatch.Struct.CreditAccountId, low, high);
+                    return true;
+                case 3:
+                    putUInt128(buffer, row + TransferBatch.Struct.UserData, low, high);
+                    return true;
+                case 4:
+                    putUInt128(buffer, row + TransferBatch.Struct.PendingId, low, high);
+                    return true;
+                case 5:
+                    buffer.putLong(row + TransferBatch.Struct.Timeout, low);
+                    return high == 0;
+                case 6:
+                    buffer.putInt(row + TransferBatch.Struct.Ledger, (int) low);
+                    return high == 0 && (low >>> 32) == 0;
+                case 7:
+                    buffer.putShort(row + TransferBatch.Struct.Code, (short) low);
+                    return high == 0 && (low >>> 16) == 0;
+                case 8:
+                    buffer.putShort(row + TransferBatch.Struct.Flags, (short) low);
+                    return high == 0 && (low >>> 16) == 0;
+                case 9:
+                    buffer.putLong(row + TransferBatch.Struct.Amount, low);
+                    return high == 0;
+                default:
+                    throw new AssertionError("Unexpected column %d", column);
+            }
+        }
+
+        private void putUInt128(final ByteBuffer buffer, final int index, final long low,
+                final long high) {
+            buffer.putLong(index, low);
+            buffer.putLong(index + Long.BYTES, high);
+        }
+
+        private void submit(final Chunk chunk, final Slot slot) throws InterruptedException {
+            inFlight.acquire();
+            chunk.pending.incrementAndGet();
+
+            final var batch = slot.buffer.duplicate();
+            batch.limit(slot.rows * TransferBatch.Struct.SIZE).position(0);
+
+            try {
+                client.createTransfersAsync(new TransferBatch(batch.slice()))
+                        .whenComplete((results, exception) -> {
+                            try {
+                                if (exception != null) {
+                                    chunk.failed = true;
+                                    failure.compareAndSet(null, exception);
+                                } else {
+                                    collect(chunk, slot, results);
+                                }
+                            } finally {
+
+                                // Retires the chunk before the importer may stop waiting
+                                slots.add(slot);
+                                release(chunk);
+                                inFlight.release();
+                            }
+                        });
+            } catch (RuntimeException exception) {
+                slots.add(slot);
+                inFlight.release();
+                chunk.pending.decrementAndGet();
+                throw exception;
+            }
+        }
+
+        private void collect(final Chunk chunk, final Slot slot,
+                final CreateTransferResultBatch results) {
+            synchronized (chunk) {
+                var failed = 0;
+                while (results.next()) {
+                    final var index = results.getIndex();
+                    final var result = results.getResult();
+                    if (result == CreateTransferResult.Exists) {
+                        chunk.existing += 1;
+                    } else {
+                        final var row = index * TransferBatch.Struct.SIZE;
+                        final var id = UInt128.asBigInteger(
+                                slot.buffer.getLong(row + TransferBatch.Struct.Id),
+                                slot.buffer.getLong(row + TransferBatch.Struct.Id + Long.BYTES));
+                        chunk.rejects.append(slot.offsets[index]).append(',').append(id)
+                                .append(',').append(result).append('\n');
+                        chunk.rejected += 1;
+                    }
+                    failed += 1;
+                }
+                chunk.created += slot.rows - failed;
+            }
+        }
+
+        private void release(final Chunk chunk) {
+            if (chunk.pending.decrementAndGet() != 0)
+                return;
+
+            synchronized (this) {
+                completed.put(chunk.index, chunk);
+
+                try {
+                    while (completed.containsKey(retired)) {
+                        final var done = completed.get(retired);
+                        if (done.failed)
+                            break;
+
+                        completed.remove(retired);
+                        synchronized (done) {
+                            final var bytes = done.rejects.toString()
+                                    .getBytes(StandardCharsets.US_ASCII);
+                            final var buffer = ByteBuffer.wrap(bytes);
+                            while (buffer.hasRemaining()) {
+                                rejectsChannel.write(buffer);
+                            }
+                            created += done.created;
+                            existing += done.existing;
+                            rejected += done.rejected;
+                        }
+                        retired += 1;
+                    }
+
+                    final var now = System.nanoTime();
+                    if (now - lastCheckpoint >= CHECKPOINT_INTERVAL_NANOS) {
+                        writeCheckpoint();
+                        lastCheckpoint = now;
+                    }
+                } catch (IOException exception) {
+                    failure.compareAndSet(null, exception);
+                }
+            }
+        }
+
+        /**
+         * Records that all chunks before {@link #retired} are done, must hold the lock.
+         */
+        private void writeCheckpoint() throws IOException {
+            rejectsChannel.force(false);
+
+            final var offset = Math.min(size, startOffset + retired * chunkSize);
+            final var content = CHECKPOINT_MAGIC + "\n" + size + " " + offset + " "
+                    + rejectsChannel.position() + "\n";
+
+            final var temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            try (var file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final var buffer =
+                        ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII));
+                while (buffer.hasRemaining()) {
+                    file.write(buffer);
+                }
+                file.force(false);
+            }
+            Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Flow.Processor} creating the transfers received from upstream, and publishing the
+ * result of each received batch downstream, in the same order.
+ * <p>
+ * Transfers received from upstream are assembled into batches of up to {@code batchSize} rows,
+ * with up to {@code maxInFlight} batches in flight at once. Upstream demand is sized in rows,
+ * from the average number of rows per item received so far: only enough items to fill one batch
+ * per request that can be submitted right away, within {@code maxInFlight} and the client's free
+ * packets, and only while downstream has demand for the results. Until an item has arrived,
+ * one item is requested per free slot.
+ * <p>
+ * Each result published downstream is a {@link CreateTransferResultBatch} indexed by position in
+ * the corresponding upstream {@link TransferBatch}, empty if all its transfers were created.
+ * A received batch must not be modified afterwards, since its rows are copied later.
+ * <p>
+ * A {@link RequestException} cancels upstream and is published downstream with
+ * {@link Flow.Subscriber#onError}, once the results of the batches submitted before it are
+ * published, as downstream requests them. Only one downstream subscriber is supported.
+ */
+public final class TransferProcessor
+        implements Flow.Processor<TransferBatch, CreateTransferResultBatch> {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Signals from upstream, downstream and the client's completions only enqueue work and call
+     * drain(). All state is owned by whichever thread runs the drain loop, one at a time, which
+     * serializes the signals sent both upstream and downstream as required by the specification.
+     *
+     * A batch is submitted when it is full, when all requested items have arrived, when nothing
+     * is in flight, or when upstream is done, and always only if fewer than maxInFlight batches
+     * are in flight. Waiting for nothing in flight means items received from a slow publisher
+     * are never stranded in a partial batch, they ride along the next completion.
+     *
+     * A failed batch cancels upstream and stops the submissions, but the results of the batches
+     * collected before it stay in ready until downstream requests them, and only then is the
+     * failure published. The batches still in flight after it are abandoned.
+     *
+     * Batch buffers are recycled once their request completes, so a steady stream allocates no
+     * direct memory.
+     *
+     * Demand is requested in items but budgeted in rows: each free slot, the fewest of the
+     * batches allowed in flight and the client's free packets, is worth batchSize rows, minus
+     * the rows already assembled and those expected from the items requested but not received
+     * yet. Items are whole TransferBatches, so the rows per item are estimated from the items
+     * received so far, starting from a full batch per item. A single item is still requested
+     * when nothing is expected nor assembled, so items larger than the budget make progress.
+     * Other users of the client taking all its packets only delay the demand, a completion
+     * drains again, and an idle processor still requests one item.
+     *
+     */
+    // @formatter:on
+
+    static final int BATCH_SIZE_MAX =
+            MessageHeader.MESSAGE_BODY_SIZE_MAX / TransferBatch.Struct.SIZE;
+
+    private static final class InFlight {
+
+        // Number of rows of each upstream item, in order
+        final int[] itemRows;
+        final ByteBuffer buffer;
+        volatile CreateTransferResultBatch result;
+        volatile Throwable exception;
+
+        InFlight(final int[] itemRows, final ByteBuffer buffer) {
+            this.itemRows = itemRows;
+            this.buffer = buffer;
+        }
+
+        boolean isDone() {
+            return result != null || exception != null;
+        }
+    }
+
+    private final Client client;
+    private final int batchSize;
+    private final int maxInFlight;
+
+    // Written by any thread, consumed by the drain loop
+    private final AtomicInteger wip;
+    private final ConcurrentLinkedQueue<TransferBatch> inbox;
+    private final AtomicLong requested;
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super CreateTransferResultBatch> downstream;
+    private boolean subscribed;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+
+    // Owned by the drain loop
+    private final ArrayDeque<InFlight> inFlight;
+    private final ArrayDeque<CreateTransferResultBatch> ready;
+    private final ArrayDeque<ByteBuffer> spareBuffers;
+    private ByteBuffer current;
+    private int[] currentItemRows;
+    private int currentItems;
+    private long upstreamPending;
+    private long receivedItems;
+    private long receivedRows;
+    private long outstanding;
+    private long emitted;
+    private Throwable failure;
+    private boolean terminated;
+
+    /**
+     * Initializes a processor with up to the client's {@code maxConcurrency} batches in flight.
+     *
+     * @see #TransferProcessor(Client, int, int)
+     */
+    public TransferProcessor(final Client client, final int batchSize) {
+        this(client, batchSize, Objects.requireNonNull(client, "Client cannot be null")
+                .getMaxConcurrency());
+    }
+
+    /**
+     * Initializes a processor submitting to {@code client}.
+     * <p>
+     * Other requests submitted to the same client share its packets, and may delay the
+     * submission of a batch while they are in flight.
+     *
+     * @param client the client creating the transfers.
+     * @param batchSize the maximum number of transfers per request.
+     * @param maxInFlight the maximum number of requests in flight.
+     *
+     * @throws NullPointerException if {@code client} is null.
+     * @throws IllegalArgumentException if {@code batchSize} is not within {@code [1, 8191]}, or
+     *         if {@code maxInFlight} is zero or negative.
+     */
+    public TransferProcessor(final Client client, final int batchSize, final int maxInFlight) {
+        Objects.requireNonNull(client, "Client cannot be null");
+        if (batchSize <= 0 || batchSize > BATCH_SIZE_MAX)
+            throw new IllegalArgumentException("Invalid batchSize");
+        if (maxInFlight <= 0)
+            throw new IllegalArgumentException("Invalid maxInFlight");
+
+        this.client = client;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+
+        this.wip = new AtomicInteger();
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.requested = new AtomicLong();
+        this.inFlight = new ArrayDeque<>(maxInFlight);
+        this.ready = new ArrayDeque<>();
+        this.spareBuffers = new ArrayDeque<>();
+        this.currentItemRows = new int[batchSize];
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super CreateTransferResultBatch> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+
+        synchronized (this) {
+            if (subscribed) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(final long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(
+                        new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+            subscribed = true;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                if (n <= 0) {
+                    invalidRequest = new IllegalArgumentException(
+                            "Non-positive subscription request");
+                    cancelled = true;
+                } else {
+                    requested.getAndUpdate(value -> {
+                        final var sum = value + n;
+                        return sum < 0 ? Long.MAX_VALUE : sum;
+                    });
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+
+        // Only published once subscribed, so that no signal precedes onSubscribe
+        downstream = subscriber;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "Subscription cannot be null");
+
+        synchronized (this) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(final TransferBatch item) {
+        Objects.requireNonNull(item, "Item cannot be null");
+        inbox.offer(item);
+        drain();
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        Objects.requireNonNull(throwable, "Throwable cannot be null");
+        upstreamError = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        var missed = 1;
+        do {
+            drainLoop();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainLoop() {
+        if (terminated)
+            return;
+
+        final var subscriber = downstream;
+        final var subscription = upstream;
+        if (subscriber == null || subscription == null)
+            return;
+
+        if (cancelled) {
+            final var exception = invalidRequest;
+            terminate(subscription, exception != null ? subscriber : null, exception);
+            return;
+        }
+
+        // Collects the results in order, freeing their slots
+        while (failure == null && !inFlight.isEmpty() && inFlight.peek().isDone()) {
+            final var done = inFlight.poll();
+            if (done.exception != null) {
+                failure = done.exception;
+                subscription.cancel();
+                break;
+            }
+
+            split(done);
+            if (done.buffer.capacity() == batchSize * TransferBatch.Struct.SIZE)
+                spareBuffers.push(done.buffer.clear());
+        }
+
+        // Items still arriving after a failure are dropped
+        if (failure != null)
+            inbox.clear();
+
+        // Assembles and submits batches
+        while (failure == null) {
+            final var item = inbox.peek();
+            if (item != null) {
+                final var rows = item.getLength();
+                if (currentItems > 0 && currentRows() + rows > batchSize) {
+                    if (!submit())
+                        break;
+                    continue;
+                }
+
+                inbox.poll();
+                upstreamPending -= 1;
+                receivedItems += 1;
+                receivedRows += rows;
+                append(item, rows);
+            }
+
+            final var full = currentItems > 0 && currentRows() >= batchSize;
+            final var idle = upstreamPending == 0 || inFlight.isEmpty() || upstreamDone;
+            if (full || (currentItems > 0 && inbox.isEmpty() && idle)) {
+                if (!submit())
+                    break;
+            }
+
+            if (inbox.isEmpty())
+                break;
+        }
+
+        while (!ready.isEmpty() && emitted < requested.get()) {
+            subscriber.onNext(ready.poll());
+            emitted += 1;
+            outstanding -= 1;
+            if (cancelled)
+                return;
+        }
+
+        // The results collected before the failure are published first
+        if (failure != null) {
+            if (ready.isEmpty()) {
+                terminated = true;
+                subscriber.onError(failure);
+            }
+            return;
+        }
+
+        if (upstreamDone) {
+            if (inbox.isEmpty() && currentItems == 0 && inFlight.isEmpty() && ready.isEmpty()) {
+                terminated = true;
+                final var exception = upstreamError;
+                if (exception != null) {
+                    subscriber.onError(exception);
+                } else {
+                    subscriber.onComplete();
+                }
+            }
+            return;
+        }
+
+        // Requests more only as far as batches can be submitted right away
+        var slots = Math.min(maxInFlight - inFlight.size(), client.getAvailablePackets());
+        if (slots <= 0 && inFlight.isEmpty())
+            slots = 1;
+
+        if (slots > 0) {
+            final var rowsPerItem = receivedItems == 0 ? batchSize
+                    : Math.max(1, (receivedRows + receivedItems - 1) / receivedItems);
+            final var assembled = currentItems == 0 ? 0 : currentRows();
+            final var budget = (long) slots * batchSize - assembled - upstreamPending * rowsPerItem;
+
+            var n = budget / rowsPerItem;
+            if (n <= 0 && upstreamPending == 0 && currentItems == 0)
+                n = 1;
+
+            n = Math.min(n, requested.get() - emitted - outstanding);
+            if (n > 0) {
+                upstreamPending += n;
+                outstanding += n;
+                subscription.request(n);
+            }
+        }
+    }
+
+    private int currentRows() {
+        return current.position() / TransferBatch.Struct.SIZE;
+    }
+
+    private void append(final TransferBatch item, final int rows) {
+        if (current == null) {
+            current = rows > batchSize
+                    ? ByteBuffer.allocateDirect(rows * TransferBatch.Struct.SIZE)
+                    : spareBuffers.isEmpty()
+                            ? ByteBuffer.allocateDirect(batchSize * TransferBatch.Struct.SIZE)
+                            : spareBuffers.pop();
+            current.order(Batch.BYTE_ORDER);
+        }
+
+        if (currentItems == currentItemRows.length) {
+            final var grown = new int[currentItemRows.length * 2];
+            System.arraycopy(currentItemRows, 0, grown, 0, currentItems);
+            currentItemRows = grown;
+        }
+
+        final var source = item.getBuffer().duplicate();
+        source.limit(rows * TransferBatch.Struct.SIZE).position(0);
+        current.put(source);
+        currentItemRows[currentItems] = rows;
+        currentItems += 1;
+    }
+
+    /**
+     * Submits the current batch, if a request can be in flight.
+     *
+     * @return false if too many requests are in flight.
+     */
+    private boolean submit() {
+        if (inFlight.size() >= maxInFlight)
+            return false;
+
+        final var itemRows = new int[currentItems];
+        System.arraycopy(currentItemRows, 0, itemRows, 0, currentItems);
+        final var record = new InFlight(itemRows, current);
+        inFlight.add(record);
+
+        final var rows = currentRows();
+        final var buffer = current.duplicate().flip();
+        current = null;
+        currentItems = 0;
+
+        if (rows == 0) {
+            record.result = CreateTransferResultBatch.EMPTY;
+            return true;
+        }
+
+        try {
+            client.createTransfersAsync(new TransferBatch(buffer.slice()))
+                    .whenComplete((result, exception) -> {
+                        if (exception != null) {
+                            record.exception = exception;
+                        } else {
+                            record.result = result;
+                        }
+                        drain();
+                    });
+        } catch (RuntimeException exception) {
+            record.exception = exception;
+            drain();
+        }
+        return true;
+    }
+
+    /**
+     * Splits the results of a batch by upstream item.
+     */
+    private void split(final InFlight done) {
+        final var results = done.result;
+        final var length = results.getLength();
+        final var buffer = length == 0 ? null : results.getBuffer();
+
+        var next = 0;
+        var start = 0;
+        for (final var rows : done.itemRows) {
+            final var first = next;
+            while (next < length && buffer.getInt(next * CreateTransferResultBatch.Struct.SIZE
+                    + CreateTransferResultBatch.Struct.Index) < start + rows) {
+                next += 1;
+            }
+
+            if (next == first) {
+                ready.add(CreateTransferResultBatch.EMPTY);
+            } else {
+                final var itemResults =
+                        ByteBuffer.allocate((next - first) * CreateTransferResultBatch.Struct.SIZE)
+                                .order(Batch.BYTE_ORDER);
+                for (int i = first; i < next; i++) {
+                    final var offset = i * CreateTransferResultBatch.Struct.SIZE;
+                    itemResults.putInt(
+                            buffer.getInt(offset + CreateTransferResultBatch.Struct.Index) - start);
+                    itemResults.putInt(
+                            buffer.getInt(offset + CreateTransferResultBatch.Struct.Result));
+                }
+                ready.add(new CreateTransferResultBatch(
+                        itemResults.position(0).asReadOnlyBuffer()));
+            }
+            start += rows;
+        }
+    }
+
+    private void terminate(final Flow.Subscription subscription,
+            final Flow.Subscriber<? super CreateTransferResultBatch> subscriber,
+            final Throwable exception) {
+        terminated = true;
+        subscription.cancel();
+        inbox.clear();
+        ready.clear();
+        if (subscriber != null)
+            subscriber.onError(exception);
+    }
+}
@@ -0,0 +1,71 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The backend a {@link Client} submits its requests to.
+ */
+abstract class Transport {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * The Client limits how many requests can be in flight, and a Transport delivers them.
+     * Each request is submitted together with a packet, and the transport must call
+     * Request.endRequest exactly once with the same packet when the request completes,
+     * from any thread.
+     *
+     * Packets are leased from the client's PacketPool, which owns their memory and grows or
+     * shrinks between the client's bounds, so there are never more packets in use than the
+     * pool's current size. A Submission leases the packets of all its requests at once and
+     * hands them to the transport in a single call.
+     *
+     * Implementations:
+     *
+     * - NativeTransport: the tb_client library through JNI, completing requests either from
+     *   JNI upcalls or from a CompletionRing drained by a Java thread.
+     * - FfmTransport: the tb_client library through the Foreign Function & Memory API,
+     *   only in the multi-release jar on JDK 22 or later.
+     * - NioTransport: the cluster's wire protocol implemented in Java.
+     * - InMemoryTransport: an in-process ledger, used for tests and for benchmarking
+     *   application code without a TigerBeetle cluster.
+     *
+     */
+    // @formatter:on
+
+    // Synthetic addresses, above any value a test might use as a packet
+    private long nextAddress = 1L << 32;
+
+    /**
+     * The address of a direct buffer allocated by the {@link PacketPool}, packets are at fixed
+     * offsets from it.
+     * <p>
+     * By default it returns a synthetic address that never overlaps a previous one, for
+     * transports where packets are opaque and never dereferenced by native code. Called while
+     * holding the pool's lock.
+     */
+    long addressOf(final ByteBuffer packets) {
+        final var address = nextAddress;
+        nextAddress += packets.capacity();
+        return address;
+    }
+
+    abstract void submit(Request<?> request, long packet);
+
+    /**
+     * Submits the first {@code count} requests at once, each with the packet at the same index.
+     * By default they are submitted one by one, transports that can hand many requests to the
+     * backend in a single call override it.
+     */
+    void submit(final Request<?>[] requests, final long[] packets, final int count) {
+        for (int i = 0; i < count; i++) {
+            submit(requests[i], packets[i]);
+        }
+    }
+
+    /**
+     * Called by the client once all packets have been returned.
+     */
+    abstract void close();
+}
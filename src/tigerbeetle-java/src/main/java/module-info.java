@@ -1,3 +1,6 @@
 module com.tigerbeetle {
+    // Optional, the request events are only recorded when jdk.jfr is present
+    requires static jdk.jfr;
+
     exports com.tigerbeetle;
-}
\ No newline at end of file
+}
@@ -0,0 +1,28 @@
+package com.tigerbeetle;
+
+/**
+ * Binding to the native tb_client library through the Foreign Function &amp; Memory API.
+ * <p>
+ * This version is loaded from the multi-release jar on JDK 22 or later.
+ */
+final class FfmBinding {
+
+    private FfmBinding() {}
+
+    /**
+     * Initializes the native client.
+     *
+     * @throws InitializationException if an error occurred initializing the native client.
+     * @throws IllegalArgumentException if {@code addresses} is presented in incorrect format.
+     */
+    static Transport open(final int clusterID, final String addresses, final int maxConcurrency) {
+        final var transport = new FfmTransport();
+        final var status = transport.init(clusterID, addresses, maxConcurrency);
+        if (status != InitializationException.Status.SUCCESS) {
+            transport.close();
+            NativeTransport.checkInitStatus(status);
+        }
+
+        return transport;
+    }
+}
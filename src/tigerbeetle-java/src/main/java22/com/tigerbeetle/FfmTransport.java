@@ -0,0 +1,245 @@
+package com.tigerbeetle;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import static com.tigerbeetle.AssertionError.assertTrue;
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Submits requests to a TigerBeetle cluster through the native tb_client library, using the
+ * Foreign Function &amp; Memory API instead of JNI.
+ */
+final class FfmTransport extends Transport {
+
+    // @formatter:off
+    /*
+     * Overview:
+     *
+     * Calls the tb_client C API exported by the same library used by the JNI binding,
+     * see tb_ffm_client_* in client.zig, but without any JNI glue:
+     *
+     * - Packets are allocated by the client's PacketPool, and each one maps to the Request it
+     *   was submitted with.
+     * - Submitting writes the request's buffer address and length straight into the packet,
+     *   no field reflection nor global references are needed, the Request is kept reachable
+     *   by the requests map until it completes.
+     * - Completions are delivered by an upcall stub bound to this instance, called from the
+     *   tb_client thread, with no thread attaching nor method lookup per call.
+     *
+     * The packets returned by tb_client_init are not used, tb_client accepts any packet
+     * submitted to it and returns it on completion. Pointers are stored as 64-bit integers,
+     * since all supported platforms are 64-bit.
+     *
+     * Like the JNI side, the upcall must not throw, any exception there is fatal.
+     *
+     */
+    // @formatter:on
+
+    // tb_packet_t, the layout is asserted at compile time by client.zig
+    interface Packet {
+        long Next = 0;
+        long UserData = 8;
+        long Operation = 16;
+        long Status = 17;
+        long DataSize = 20;
+        long Data = 24;
+
+        long SIZE = 32;
+    }
+
+    // tb_packet_list_t
+    interface PacketList {
+        long Head = 0;
+        long Tail = 8;
+
+        long SIZE = 16;
+    }
+
+    private static final MethodHandle CLIENT_INIT;
+    private static final MethodHandle CLIENT_SUBMIT;
+    private static final MethodHandle CLIENT_DEINIT;
+    private static final MethodHandle ON_COMPLETION;
+    private static final FunctionDescriptor ON_COMPLETION_DESCRIPTOR =
+            FunctionDescriptor.ofVoid(JAVA_LONG, ADDRESS, ADDRESS, ADDRESS, JAVA_INT);
+
+    static {
+        JNILoader.loadFromJar();
+
+        final var linker = Linker.nativeLinker();
+        final var symbols = SymbolLookup.loaderLookup();
+
+        CLIENT_INIT = linker.downcallHandle(symbols.find("tb_ffm_client_init").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, JAVA_INT, ADDRESS, JAVA_INT,
+                        JAVA_INT, JAVA_LONG, ADDRESS));
+        CLIENT_SUBMIT = linker.downcallHandle(symbols.find("tb_ffm_client_submit").orElseThrow(),
+                FunctionDescriptor.ofVoid(ADDRESS, ADDRESS));
+        CLIENT_DEINIT = linker.downcallHandle(symbols.find("tb_ffm_client_deinit").orElseThrow(),
+                FunctionDescriptor.ofVoid(ADDRESS));
+
+        try {
+            ON_COMPLETION = MethodHandles.lookup().findVirtual(FfmTransport.class, "onCompletion",
+                    MethodType.methodType(void.class, long.class, MemorySegment.class,
+                            MemorySegment.class, MemorySegment.class, int.class));
+        } catch (ReflectiveOperationException exception) {
+            throw new AssertionError(exception, "Completion callback not found.");
+        }
+    }
+
+    private final Arena arena;
+    private final MemorySegment completion;
+    private final ConcurrentHashMap<Long, Request<?>> requests;
+
+    // The list passed to tb_client_submit, only read during the call
+    private final ThreadLocal<MemorySegment> packetLists;
+
+    private final ReentrantLock closeLock;
+    private volatile MemorySegment clientHandle;
+
+    FfmTransport() {
+        this.arena = Arena.ofShared();
+        this.completion = Linker.nativeLinker().upcallStub(ON_COMPLETION.bindTo(this),
+                ON_COMPLETION_DESCRIPTOR, arena);
+        this.requests = new ConcurrentHashMap<>();
+        this.packetLists = ThreadLocal
+                .withInitial(() -> Arena.ofAuto().allocate(PacketList.SIZE, Long.BYTES));
+
+        this.closeLock = new ReentrantLock(false);
+        this.clientHandle = MemorySegment.NULL;
+    }
+
+    /**
+     * Initializes the native client.
+     *
+     * @return zero, or an {@link InitializationException.Status} describing the error.
+     */
+    int init(final int clusterID, final String addresses, final int maxConcurrency) {
+        try (final var confined = Arena.ofConfined()) {
+            final var outClient = confined.allocate(ADDRESS);
+            final var outPackets = confined.allocate(PacketList.SIZE, Long.BYTES);
+            final var addressesLen = addresses.getBytes(StandardCharsets.UTF_8).length;
+            final var addressesSegment = confined.allocateFrom(addresses);
+
+            final var status = (int) CLIENT_INIT.invokeExact(outClient, outPackets, clusterID,
+                    addressesSegment, addressesLen, maxConcurrency, 0L, completion);
+            if (status == InitializationException.Status.SUCCESS) {
+                clientHandle = outClient.get(ADDRESS, 0);
+            }
+
+            return status;
+        } catch (Throwable throwable) {
+            throw new AssertionError(throwable, "Unexpected error calling tb_client_init.");
+        }
+    }
+
+    @Override
+    long addressOf(final ByteBuffer packets) {
+        return MemorySegment.ofBuffer(packets).address();
+    }
+
+    @Override
+    void submit(final Request<?> request, final long packet) {
+        prepare(request, packet);
+        submitList(packet, packet);
+    }
+
+    @Override
+    void submit(final Request<?>[] requests, final long[] packets, final int count) {
+        // Links the packets through their "next" field, submitted as a single list
+        for (int i = 0; i < count; i++) {
+            prepare(requests[i], packets[i]);
+            if (i > 0) {
+                packetAt(packets[i - 1]).set(JAVA_LONG, Packet.Next, packets[i]);
+            }
+        }
+
+        submitList(packets[0], packets[count - 1]);
+    }
+
+    private void prepare(final Request<?> request, final long packet) {
+        final var buffer = request.getBuffer();
+        assertTrue(buffer != null, "Request buffer cannot be null.");
+
+        // Published before the packet is handed to the tb_client thread
+        final var previous = requests.put(packet, request);
+        assertTrue(previous == null, "Packet already in use: packet=%d", packet);
+
+        final var segment = packetAt(packet);
+        segment.set(JAVA_LONG, Packet.Next, 0L);
+        segment.set(JAVA_LONG, Packet.UserData, 0L);
+        segment.set(JAVA_BYTE, Packet.Operation, request.getOperation());
+        segment.set(JAVA_BYTE, Packet.Status, RequestException.Status.OK);
+        segment.set(JAVA_INT, Packet.DataSize, (int) request.getBufferLen());
+        segment.set(JAVA_LONG, Packet.Data, MemorySegment.ofBuffer(buffer).address());
+    }
+
+    private void submitList(final long head, final long tail) {
+        final var packetList = packetLists.get();
+        packetList.set(JAVA_LONG, PacketList.Head, head);
+        packetList.set(JAVA_LONG, PacketList.Tail, tail);
+
+        try {
+            CLIENT_SUBMIT.invokeExact(clientHandle, packetList);
+        } catch (Throwable throwable) {
+            throw new AssertionError(throwable, "Unexpected error calling tb_client_submit.");
+        }
+    }
+
+    @Override
+    void close() {
+        closeLock.lock();
+        try {
+            if (clientHandle.address() != 0) {
+                CLIENT_DEINIT.invokeExact(clientHandle);
+                clientHandle = MemorySegment.NULL;
+            }
+
+            // tb_client_deinit joins the tb_client thread, no more upcalls can happen
+            if (arena.scope().isAlive()) {
+                arena.close();
+            }
+        } catch (Throwable throwable) {
+            throw new AssertionError(throwable, "Unexpected error calling tb_client_deinit.");
+        } finally {
+            closeLock.unlock();
+        }
+    }
+
+    /**
+     * Completion callback, called from the tb_client thread.
+     */
+    private void onCompletion(final long context, final MemorySegment client,
+            final MemorySegment packet, final MemorySegment result, final int resultLen) {
+        final var request = requests.remove(packet.address());
+        assertTrue(request != null, "Unexpected packet completed: packet=%d", packet.address());
+
+        final var segment = packet.reinterpret(Packet.SIZE);
+        final var operation = segment.get(JAVA_BYTE, Packet.Operation);
+        final var status = segment.get(JAVA_BYTE, Packet.Status);
+
+        final ByteBuffer buffer;
+        if (status == RequestException.Status.OK && result.address() != 0) {
+            buffer = result.reinterpret(resultLen).asByteBuffer();
+        } else {
+            buffer = null;
+        }
+
+        request.endRequest(operation, buffer, packet.address(), status);
+    }
+
+    private static MemorySegment packetAt(final long packet) {
+        return MemorySegment.ofAddress(packet).reinterpret(Packet.SIZE);
+    }
+}
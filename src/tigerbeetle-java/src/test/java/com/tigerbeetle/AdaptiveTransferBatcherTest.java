@@ -0,0 +1,146 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link AdaptiveTransferBatcher} through {@link Client#inMemory}, no TigerBeetle
+ * instance required.
+ */
+public class AdaptiveTransferBatcherTest {
+
+    private static final long SLO = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_LINGER = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = Client.inMemory(0);
+
+        TestLedger.createAccounts(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+    }
+
+    private static void setTransfer(final TransferBatch transfers, final long id) {
+        transfers.setId(id, 0);
+        transfers.setDebitAccountId(1, 0);
+        transfers.setCreditAccountId(2, 0);
+        transfers.setLedger(TestLedger.LEDGER);
+        transfers.setCode(1);
+        transfers.setAmount(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidObjective() {
+        new AdaptiveTransferBatcher(client, 0, MAX_LINGER);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullClient() {
+        new AdaptiveTransferBatcher(null, SLO, MAX_LINGER);
+    }
+
+    @Test
+    public void testResults() throws Throwable {
+        var transfers = new TransferBatch(1);
+        transfers.add();
+
+        var futures = new ArrayList<CompletableFuture<CreateTransferResult>>();
+        try (var batcher = new AdaptiveTransferBatcher(client, SLO, MAX_LINGER)) {
+            for (long id = 1; id <= 10; id++) {
+                setTransfer(transfers, id);
+                futures.add(batcher.submit(transfers));
+            }
+
+            // The same id again
+            setTransfer(transfers, 3);
+            futures.add(batcher.submit(transfers));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(CreateTransferResult.Ok, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(CreateTransferResult.Exists, futures.get(10).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAdaptsToTraffic() throws Throwable {
+        var transfers = new TransferBatch(1);
+        transfers.add();
+
+        final AdaptiveTransferBatcher.Stats stats;
+        CompletableFuture<CreateTransferResult> last = null;
+        try (var batcher = new AdaptiveTransferBatcher(client, SLO, MAX_LINGER)) {
+            assertEquals(1, batcher.getStats().getTargetBatchSize());
+
+            long id = 1;
+            final var end = System.nanoTime() + 4 * AdaptiveTransferBatcher.ADJUST_NANOS;
+            while (System.nanoTime() < end) {
+                setTransfer(transfers, id++);
+                last = batcher.submit(transfers);
+            }
+            stats = batcher.getStats();
+        }
+
+        assertEquals(CreateTransferResult.Ok, last.get(5, TimeUnit.SECONDS));
+        assertTrue(stats.toString(), stats.getArrivalRate() > 0);
+        assertTrue(stats.toString(), stats.getTargetBatchSize() > 1);
+        assertTrue(stats.toString(), stats.getLingerNanos() <= MAX_LINGER);
+        assertTrue(stats.toString(), stats.getBatches() < stats.getTransfers());
+    }
+
+    @Test
+    public void testBatchesBeyondObjective() throws Throwable {
+        var transfers = new TransferBatch(1);
+        transfers.add();
+
+        final AdaptiveTransferBatcher.Stats stats;
+        CompletableFuture<CreateTransferResult> last = null;
+
+        // Any round trip exceeds the objective, batching must still kick in
+        try (var batcher = new AdaptiveTransferBatcher(client, 1, MAX_LINGER)) {
+            long id = 1;
+            final var end = System.nanoTime() + 4 * AdaptiveTransferBatcher.ADJUST_NANOS;
+            while (System.nanoTime() < end) {
+                setTransfer(transfers, id++);
+                last = batcher.submit(transfers);
+            }
+            stats = batcher.getStats();
+        }
+
+        assertEquals(CreateTransferResult.Ok, last.get(5, TimeUnit.SECONDS));
+        assertTrue(stats.toString(), stats.getRoundTripP99Nanos() > 1);
+        assertTrue(stats.toString(), stats.getTargetBatchSize() > 1);
+        assertTrue(stats.toString(), stats.getLingerNanos() > 0);
+        assertTrue(stats.toString(), stats.getLingerNanos() <= MAX_LINGER);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvalidPosition() {
+        try (var batcher = new AdaptiveTransferBatcher(client, SLO, MAX_LINGER)) {
+            batcher.submit(new TransferBatch(1));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        var transfers = new TransferBatch(1);
+        transfers.add();
+        setTransfer(transfers, 1);
+
+        var batcher = new AdaptiveTransferBatcher(client, SLO, MAX_LINGER);
+        batcher.close();
+        batcher.submit(transfers);
+    }
+}
@@ -0,0 +1,177 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchFileTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tigerbeetle-batch");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static TransferBatch transfers(final int count) {
+        var transfers = new TransferBatch(count + 10);
+        for (int i = 0; i < count; i++) {
+            transfers.add();
+            transfers.setId(i + 1, 100);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(2, 0);
+            transfers.setLedger(720);
+            transfers.setCode(i);
+            transfers.setFlags(TransferFlags.LINKED);
+            transfers.setAmount(i * 10);
+        }
+        return transfers;
+    }
+
+    @Test
+    public void testTransfers() throws Throwable {
+        final var file = directory.resolve("transfers.tb");
+        final var transfers = transfers(100);
+        transfers.setPosition(3);
+        BatchFile.write(file, transfers);
+
+        // The cursor is left untouched
+        assertEquals(3, transfers.getPosition());
+        assertEquals(BatchFile.Struct.SIZE + 100 * TransferBatch.Struct.SIZE, Files.size(file));
+
+        var read = BatchFile.openTransfers(file);
+        assertEquals(100, read.getLength());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(read.next());
+            assertEquals(i + 1, read.getId(UInt128.LeastSignificant));
+            assertEquals(100, read.getId(UInt128.MostSignificant));
+            assertEquals(720, read.getLedger());
+            assertEquals(i, read.getCode());
+            assertEquals(TransferFlags.LINKED, read.getFlags());
+            assertEquals(i * 10, read.getAmount());
+        }
+        assertFalse(read.next());
+    }
+
+    @Test
+    public void testAccounts() throws Throwable {
+        final var file = directory.resolve("accounts.tb");
+        var accounts = new AccountBatch(2);
+        accounts.add();
+        accounts.setId(1, 0);
+        accounts.setLedger(720);
+        accounts.setCode(1);
+        accounts.add();
+        accounts.setId(2, 0);
+        accounts.setLedger(721);
+        accounts.setCode(2);
+        accounts.setFlags(AccountFlags.DEBITS_MUST_NOT_EXCEED_CREDITS);
+        BatchFile.write(file, accounts);
+
+        var read = BatchFile.openAccounts(file);
+        assertEquals(2, read.getLength());
+        assertTrue(read.next());
+        assertEquals(1, read.getId(UInt128.LeastSignificant));
+        assertEquals(720, read.getLedger());
+        assertTrue(read.next());
+        assertEquals(2, read.getId(UInt128.LeastSignificant));
+        assertEquals(721, read.getLedger());
+        assertEquals(AccountFlags.DEBITS_MUST_NOT_EXCEED_CREDITS, read.getFlags());
+        assertFalse(read.next());
+    }
+
+    @Test
+    public void testEmpty() throws Throwable {
+        final var file = directory.resolve("ids.tb");
+        BatchFile.write(file, new IdBatch(4));
+        assertEquals(BatchFile.Struct.SIZE, Files.size(file));
+        assertEquals(0, BatchFile.openIds(file).getLength());
+    }
+
+    @Test
+    public void testChannel() throws Throwable {
+        final var file = directory.resolve("transfers.tb");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            final var written = BatchFile.write(channel, transfers(5));
+            assertEquals(BatchFile.Struct.SIZE + 5 * TransferBatch.Struct.SIZE, written);
+        }
+        assertEquals(5, BatchFile.openTransfers(file).getLength());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadOnly() throws Throwable {
+        final var file = directory.resolve("transfers.tb");
+        BatchFile.write(file, transfers(1));
+
+        var read = BatchFile.openTransfers(file);
+        assertTrue(read.isReadOnly());
+        read.add();
+    }
+
+    @Test
+    public void testWrongType() throws Throwable {
+        final var file = directory.resolve("transfers.tb");
+        BatchFile.write(file, transfers(1));
+
+        try {
+            BatchFile.openAccounts(file);
+            fail();
+        } catch (IOException exception) {
+            assertEquals("Unexpected batch file type 2: " + file, exception.getMessage());
+        }
+    }
+
+    @Test
+    public void testCorrupted() throws Throwable {
+        final var file = directory.resolve("transfers.tb");
+        BatchFile.write(file, transfers(10));
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1}),
+                    BatchFile.Struct.SIZE + TransferBatch.Struct.Amount);
+        }
+
+        try {
+            BatchFile.openTransfers(file);
+            fail();
+        } catch (IOException exception) {
+            assertEquals("Invalid batch file checksum: " + file, exception.getMessage());
+        }
+    }
+
+    @Test
+    public void testTruncated() throws Throwable {
+        final var file = directory.resolve("transfers.tb");
+        BatchFile.write(file, transfers(10));
+
+        try (var channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 1);
+        }
+
+        try {
+            BatchFile.openTransfers(file);
+            fail();
+        } catch (IOException exception) {
+            assertEquals("Invalid batch file size: " + file, exception.getMessage());
+        }
+    }
+}
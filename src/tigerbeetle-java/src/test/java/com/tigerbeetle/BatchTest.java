@@ -660,6 +660,155 @@ public class BatchTest {
         assert false;
     }
 
+    @Test
+    public void testLinkedChain() {
+
+        var batch = new TransferBatch(5);
+        batch.add();
+        batch.beginChain();
+        assertTrue(batch.isChainOpen());
+        batch.add();
+        batch.add();
+        batch.setFlags(TransferFlags.PENDING);
+        batch.add();
+        batch.endChain();
+        assertFalse(batch.isChainOpen());
+        batch.add();
+
+        assertEquals(TransferFlags.NONE, getFlags(batch, 0));
+        assertEquals(TransferFlags.LINKED, getFlags(batch, 1));
+        assertEquals(TransferFlags.LINKED | TransferFlags.PENDING, getFlags(batch, 2));
+        assertEquals(TransferFlags.NONE, getFlags(batch, 3));
+        assertEquals(TransferFlags.NONE, getFlags(batch, 4));
+    }
+
+    @Test
+    public void testEndChainClearsLinked() {
+
+        var batch = new AccountBatch(2);
+        batch.beginChain();
+        batch.add();
+        batch.add();
+        batch.setFlags(AccountFlags.LINKED);
+        batch.endChain();
+
+        batch.setPosition(0);
+        assertEquals(AccountFlags.LINKED, batch.getFlags());
+        batch.setPosition(1);
+        assertEquals(AccountFlags.NONE, batch.getFlags());
+    }
+
+    @Test
+    public void testChainBoundary() {
+
+        var batch = new TransferBatch(6);
+        batch.add();
+        batch.beginChain();
+        batch.add();
+        batch.add();
+        batch.add();
+        assertEquals(1, batch.getChainBoundary(4));
+        batch.endChain();
+        batch.add();
+        batch.setFlags(TransferFlags.LINKED);
+        batch.add();
+
+        assertEquals(0, batch.getChainBoundary(0));
+        assertEquals(1, batch.getChainBoundary(1));
+        assertEquals(1, batch.getChainBoundary(2));
+        assertEquals(1, batch.getChainBoundary(3));
+        assertEquals(4, batch.getChainBoundary(4));
+        assertEquals(4, batch.getChainBoundary(5));
+        assertEquals(6, batch.getChainBoundary(6));
+    }
+
+    @Test
+    public void testChainBoundaryOpenChain() {
+
+        var batch = new AccountBatch(3);
+        batch.add();
+        batch.add();
+        batch.setFlags(AccountFlags.LINKED);
+        assertEquals(1, batch.getChainBoundary(2));
+
+        batch.setFlags(AccountFlags.NONE);
+        batch.beginChain();
+        assertEquals(2, batch.getChainBoundary(2));
+        batch.add();
+        assertEquals(2, batch.getChainBoundary(3));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testChainBoundaryOutOfBounds() {
+
+        var batch = new TransferBatch(2);
+        batch.add();
+        batch.getChainBoundary(2);
+        assert false;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNestedChain() {
+
+        var batch = new TransferBatch(2);
+        batch.beginChain();
+        batch.beginChain();
+        assert false;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndChainWithoutChain() {
+
+        var batch = new TransferBatch(2);
+        batch.add();
+        batch.endChain();
+        assert false;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndEmptyChain() {
+
+        var batch = new AccountBatch(2);
+        batch.beginChain();
+        batch.endChain();
+        assert false;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testChainReadOnly() {
+
+        var batch = new TransferBatch(dummyTransfersStream.asReadOnlyBuffer());
+        batch.beginChain();
+        assert false;
+    }
+
+    @Test
+    public void testChainExceedingMessage() {
+
+        final var max = MessageHeader.MESSAGE_BODY_SIZE_MAX / TransferBatch.Struct.SIZE;
+        var batch = new TransferBatch(max + 1);
+        batch.beginChain();
+        for (int i = 0; i < max; i++) {
+            batch.add();
+        }
+
+        try {
+            batch.add();
+            assert false;
+        } catch (IllegalStateException exception) {
+            assertEquals(max, batch.getLength());
+        }
+
+        batch.endChain();
+        batch.add();
+        assertEquals(max + 1, batch.getLength());
+    }
+
+    private static int getFlags(TransferBatch batch, int position) {
+        batch.setPosition(position);
+        return batch.getFlags();
+    }
+
     private static void setAccount(AccountBatch batch, DummyAccountDto account) {
         batch.setId(account.idLeastSignificant, account.idMostSignificant);
         batch.setUserData(account.userDataLeastSignificant, account.userDataMostSignificant);
@@ -0,0 +1,96 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class Blake3Test {
+
+    // First 16 bytes of the official BLAKE3 test vectors, input bytes are (i % 251)
+    private static final int[] LENGTHS = {0, 1, 63, 64, 65, 1023, 1024, 1025, 2048, 2049, 3072,
+            3073, 4096, 4097, 8193, 102400};
+    private static final String[] HASHES = {"af1349b9f5f9a1a6a0404dea36dcc949",
+            "2d3adedff11b61f14c886e35afa03673", "e9bc37a594daad83be9470df7f7b3798",
+            "4eed7141ea4a5cd4b788606bd23f46e2", "de1e5fa0be70df6d2be8fffd0e99ceaa",
+            "10108970eeda3eb932baac1428c7a216", "42214739f095a406f3fc83deb889744a",
+            "d00278ae47eb27b34faecf67b4fe263f", "e776b6028c7cd22a4d0ba182a8bf6220",
+            "5f4d72f40d7a5f82b15ca2b2e44b1de3", "b98cb0ff3623be03326b373de6b90952",
+            "7124b49501012f81cc7f11ca069ec922", "015094013f57a5277b59d8475c050104",
+            "9b4052b38f1c5fc8b1f9ff7ac7b27cd2", "bab6c09cb8ce8cf459261398d2e7aef3",
+            "bc3e3d41a1146b069abffad3c0d44860"};
+
+    @Test
+    public void testVectors() {
+        var blake3 = new Blake3();
+        var output = new long[2];
+
+        for (int i = 0; i < LENGTHS.length; i++) {
+            var input = ByteBuffer.allocate(LENGTHS[i]);
+            for (int j = 0; j < LENGTHS[i]; j++) {
+                input.put(j, (byte) (j % 251));
+            }
+
+            blake3.hash128(input, 0, LENGTHS[i], output);
+            assertEquals("length " + LENGTHS[i], HASHES[i], hex(output));
+        }
+    }
+
+    @Test
+    public void testOffsetAndByteOrder() {
+        var blake3 = new Blake3();
+        var output = new long[2];
+
+        var abc = "abc".getBytes(StandardCharsets.US_ASCII);
+        var input = ByteBuffer.allocateDirect(16).order(ByteOrder.BIG_ENDIAN);
+        input.position(5);
+        input.put(abc);
+
+        blake3.hash128(input, 5, abc.length, output);
+        assertEquals("6437b3ac38465133ffb63b75273a8db5", hex(output));
+        assertEquals(ByteOrder.BIG_ENDIAN, input.order());
+        assertEquals(8, input.position());
+    }
+
+    @Test
+    public void testMessageHeaderChecksums() {
+        var blake3 = new Blake3();
+        var scratch = new long[2];
+
+        var body = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        body.putLong(0, 42L);
+
+        var message = ByteBuffer.allocate(MessageHeader.Struct.SIZE + body.capacity())
+                .order(ByteOrder.LITTLE_ENDIAN);
+        message.putInt(MessageHeader.Struct.Size, message.capacity());
+        message.put(MessageHeader.Struct.Command, MessageHeader.Command.REQUEST);
+        message.position(MessageHeader.Struct.SIZE);
+        message.put(body);
+        message.clear();
+
+        body.clear();
+        MessageHeader.setChecksums(blake3, message, body, scratch);
+        assertTrue(MessageHeader.isValidChecksum(blake3, message, 0, scratch));
+        assertTrue(MessageHeader.isValidChecksumBody(blake3, message, 0, scratch));
+
+        message.put(MessageHeader.Struct.SIZE + 1, (byte) 1);
+        assertTrue(MessageHeader.isValidChecksum(blake3, message, 0, scratch));
+        assertFalse(MessageHeader.isValidChecksumBody(blake3, message, 0, scratch));
+
+        message.put(MessageHeader.Struct.Operation, (byte) 1);
+        assertFalse(MessageHeader.isValidChecksum(blake3, message, 0, scratch));
+    }
+
+    private static String hex(final long[] output) {
+        var builder = new StringBuilder();
+        for (var value : output) {
+            for (int i = 0; i < Long.BYTES; i++) {
+                builder.append(String.format("%02x", (value >>> (i * 8)) & 0xFF));
+            }
+        }
+        return builder.toString();
+    }
+}
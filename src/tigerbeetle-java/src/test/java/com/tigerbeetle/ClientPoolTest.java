@@ -0,0 +1,128 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+/**
+ * Tests the routing of a {@link ClientPool}, with in-memory clients and NIO clients sharing an
+ * {@link InMemoryServer}, no TigerBeetle instance required.
+ */
+public class ClientPoolTest {
+
+    private static Client[] inMemoryClients(final int size) {
+        final var clients = new Client[size];
+        for (int i = 0; i < size; i++) {
+            clients[i] = Client.inMemory(0);
+        }
+        return clients;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyPool() throws Throwable {
+        try (var pool = new ClientPool(new Client[0], ClientPool.Routing.ROUND_ROBIN)) {
+            assert false;
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullRouting() throws Throwable {
+        try (var pool = new ClientPool(inMemoryClients(1), null)) {
+            assert false;
+        }
+    }
+
+    @Test
+    public void testRoundRobin() throws Throwable {
+        try (var pool = new ClientPool(inMemoryClients(3), ClientPool.Routing.ROUND_ROBIN)) {
+            assertEquals(3, pool.getSize());
+            assertEquals(0, pool.select());
+            assertEquals(1, pool.select());
+            assertEquals(2, pool.select());
+            assertEquals(0, pool.select());
+            assertArrayEquals(new int[] {2, 1, 1}, pool.getInFlight());
+        }
+    }
+
+    @Test
+    public void testLeastInFlight() throws Throwable {
+        try (var pool = new ClientPool(inMemoryClients(3), ClientPool.Routing.LEAST_IN_FLIGHT)) {
+
+            // Ties are spread over the idle clients
+            final var first = pool.select();
+            final var second = pool.select();
+            final var third = pool.select();
+            assertArrayEquals(new int[] {1, 1, 1}, pool.getInFlight());
+            assertTrue(first != second && second != third && first != third);
+
+            // Then always one of the least busy ones
+            final var busy = pool.select();
+            assertEquals(2, pool.getInFlight()[busy]);
+            assertTrue(pool.select() != busy);
+            pool.select();
+            assertArrayEquals(new int[] {2, 2, 2}, pool.getInFlight());
+        }
+    }
+
+    @Test
+    public void testThreadAffinity() throws Throwable {
+        try (var pool = new ClientPool(inMemoryClients(4), ClientPool.Routing.THREAD_AFFINITY)) {
+            final var index = pool.select();
+            for (int i = 0; i < 10; i++) {
+                assertEquals(index, pool.select());
+            }
+            assertEquals(11, pool.getInFlight()[index]);
+        }
+    }
+
+    @Test
+    public void testRequestsAreCounted() throws Throwable {
+        try (var pool = new ClientPool(inMemoryClients(2), ClientPool.Routing.ROUND_ROBIN)) {
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+
+            pool.lookupAccounts(ids);
+            pool.lookupTransfersAsync(ids).get();
+            assertArrayEquals(new int[] {0, 0}, pool.getInFlight());
+
+            // Summed over both clients of 32 packets
+            var stats = pool.getPacketPoolStats();
+            assertEquals(64, stats.getMaxSize());
+            assertEquals(stats.getCached(), stats.getInUse());
+        }
+    }
+
+    @Test
+    public void testSharedCluster() throws Throwable {
+        try (var server = new InMemoryServer(0)) {
+            final var addresses = new String[] {server.getAddress()};
+            final var clients = new Client[] {Client.nio(0, addresses), Client.nio(0, addresses)};
+
+            try (var pool = new ClientPool(clients, ClientPool.Routing.LEAST_IN_FLIGHT)) {
+                assertEquals(0, pool.createAccounts(TestLedger.accounts()).getLength());
+
+                var futures = new ArrayList<CompletableFuture<CreateTransferResultBatch>>();
+                for (long id = 1; id <= 10; id++) {
+                    futures.add(pool.createTransfersAsync(TestLedger.transfers(id, 1)));
+                }
+                for (var future : futures) {
+                    assertEquals(0, future.get().getLength());
+                }
+
+                // Both clients see the same ledger
+                var ids = new IdBatch(1);
+                ids.add(2, 0);
+                for (int i = 0; i < 2; i++) {
+                    var lookup = clients[i].lookupAccounts(ids);
+                    assertTrue(lookup.next());
+                    assertEquals(10, lookup.getCreditsPosted());
+                    assertFalse(lookup.next());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Tests closing a client through {@link Client#inMemory}, no TigerBeetle instance required.
+ */
+public class CloseTest {
+
+    private static IdBatch ids() {
+        var ids = new IdBatch(1);
+        ids.add(1, 0);
+        return ids;
+    }
+
+    @Test
+    public void testDrains() throws Throwable {
+        var client = Client.inMemory(0, 4);
+        var futures = new ArrayList<CompletableFuture<AccountBatch>>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(client.lookupAccountsAsync(ids()));
+        }
+
+        var result = client.closeAsync(Duration.ofSeconds(5)).get(5, TimeUnit.SECONDS);
+        assertEquals(0, result.getAborted());
+        assertTrue(result.toString(), result.getDrained() <= 16);
+        for (var future : futures) {
+            assertEquals(0, future.get().getLength());
+        }
+    }
+
+    @Test
+    public void testAbortsAfterTimeout() throws Throwable {
+        var client = Client.inMemory(0, 1);
+
+        // Holds the only packet, the next request waits for it forever
+        client.acquirePacket(RequestPriority.NORMAL);
+
+        var future = new AtomicReference<CompletableFuture<AccountBatch>>();
+        var thread = new Thread(() -> future.set(client.lookupAccountsAsync(ids())));
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        var result = client.closeAsync(Duration.ofMillis(20)).get(5, TimeUnit.SECONDS);
+        assertEquals(0, result.getDrained());
+        assertEquals(1, result.getAborted());
+
+        thread.join();
+        try {
+            future.get().get();
+            assert false;
+        } catch (ExecutionException executionException) {
+            var requestException = (RequestException) executionException.getCause();
+            assertEquals(RequestException.Status.CLIENT_CLOSED, requestException.getStatus());
+        }
+    }
+
+    @Test
+    public void testRejectsNewRequests() throws Throwable {
+        var client = Client.inMemory(0);
+        var closing = client.closeAsync(Duration.ofSeconds(5));
+        assertSame(closing, client.closeAsync(Duration.ZERO));
+
+        try {
+            client.lookupAccounts(ids());
+            assert false;
+        } catch (IllegalStateException illegalStateException) {
+            // Expected
+        }
+
+        client.close();
+        assertTrue(closing.isDone());
+        assertEquals(0, closing.get().getAborted());
+    }
+
+    @Test
+    public void testRacesWithSubmit() throws Throwable {
+        for (int round = 0; round < 20; round++) {
+            var client = Client.inMemory(0, 2);
+            var futures = new ConcurrentLinkedQueue<CompletableFuture<AccountBatch>>();
+            var failure = new AtomicReference<Throwable>();
+
+            var threads = new ArrayList<Thread>();
+            for (int i = 0; i < 4; i++) {
+                var thread = new Thread(() -> {
+                    try {
+                        while (true) {
+                            futures.add(client.lookupAccountsAsync(ids()));
+                        }
+                    } catch (IllegalStateException closed) {
+                        // Expected once closing
+                    } catch (Throwable any) {
+                        failure.set(any);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            while (futures.size() < 100) {
+                Thread.sleep(1);
+            }
+
+            // Aborts the requests between their packet and their submission
+            client.closeAsync(Duration.ZERO).get(5, TimeUnit.SECONDS);
+            for (var thread : threads) {
+                thread.join();
+            }
+            assertEquals(null, failure.get());
+
+            for (var future : futures) {
+                try {
+                    assertEquals(0, future.get(5, TimeUnit.SECONDS).getLength());
+                } catch (ExecutionException executionException) {
+                    var requestException = (RequestException) executionException.getCause();
+                    assertEquals(RequestException.Status.CLIENT_CLOSED,
+                            requestException.getStatus());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDiscardsReplyAfterAbort() throws Throwable {
+        var client = new Client(0, 1);
+        var request = BlockingRequest.lookupAccounts(client, ids());
+        client.closeAsync(Duration.ZERO).get(5, TimeUnit.SECONDS);
+        request.abort();
+
+        // The late reply completes nothing
+        request.endRequest(Request.Operations.LOOKUP_ACCOUNTS,
+                ByteBuffer.allocateDirect(AccountBatch.Struct.SIZE), 1,
+                RequestException.Status.OK);
+        try {
+            request.waitForResult();
+            assert false;
+        } catch (RequestException requestException) {
+            assertEquals(RequestException.Status.CLIENT_CLOSED, requestException.getStatus());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeout() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            client.closeAsync(Duration.ofSeconds(-1));
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests the Java side of the completion ring, with the test playing the native producer.
+ */
+public class CompletionRingTest {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    @Test
+    public void testCompleteWithResult() throws Throwable {
+        var client = new Client(0, 1);
+        var ring = new TestRing(CompletionRing.CAPACITY);
+        ring.start();
+
+        var ids = new IdBatch(1);
+        ids.add(1, 0);
+        var request = AsyncRequest.lookupAccounts(client, ids);
+        ring.register(1, request);
+
+        var account = new byte[AccountBatch.Struct.SIZE];
+        account[0] = 1;
+        publish(ring, 1, Request.Operations.LOOKUP_ACCOUNTS, RequestException.Status.OK, account);
+
+        var result = request.getFuture().get(10, TimeUnit.SECONDS);
+        assertEquals(1, result.getLength());
+        assertTrue(result.next());
+        assertEquals(1L, result.getId(UInt128.LeastSignificant));
+
+        ring.close();
+    }
+
+    @Test
+    public void testCompleteWithEmptyResult() throws Throwable {
+        var client = new Client(0, 1);
+        var ring = new TestRing(CompletionRing.CAPACITY);
+        ring.start();
+
+        var transfers = new TransferBatch(1);
+        transfers.add();
+        var request = AsyncRequest.createTransfers(client, transfers);
+        ring.register(1, request);
+
+        publish(ring, 1, Request.Operations.CREATE_TRANSFERS, RequestException.Status.OK,
+                new byte[0]);
+        assertEquals(0, request.getFuture().get(10, TimeUnit.SECONDS).getLength());
+
+        ring.close();
+    }
+
+    @Test
+    public void testCompleteWithError() throws Throwable {
+        var client = new Client(0, 1);
+        var ring = new TestRing(CompletionRing.CAPACITY);
+        ring.start();
+
+        var transfers = new TransferBatch(1);
+        transfers.add();
+        var request = AsyncRequest.createTransfers(client, transfers);
+        ring.register(1, request);
+
+        publish(ring, 1, Request.Operations.CREATE_TRANSFERS,
+                RequestException.Status.TOO_MUCH_DATA, null);
+
+        try {
+            request.getFuture().get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof RequestException);
+            assertEquals(RequestException.Status.TOO_MUCH_DATA,
+                    ((RequestException) exception.getCause()).getStatus());
+        }
+
+        ring.close();
+    }
+
+    @Test
+    public void testWrapAround() throws Throwable {
+        // Small enough to wrap around many times, and to make the producer wait for space
+        final int capacity = 1024;
+        final int count = 1_000;
+
+        var client = new Client(0, count);
+        var ring = new TestRing(capacity);
+        ring.start();
+
+        var futures = new ArrayList<CompletableFuture<CreateTransferResultBatch>>();
+        for (int i = 0; i < count; i++) {
+            var transfers = new TransferBatch(8);
+            for (int j = 0; j < 8; j++) {
+                transfers.add();
+            }
+            var request = AsyncRequest.createTransfers(client, transfers);
+            ring.register(i + 1, request);
+            futures.add(request.getFuture());
+        }
+
+        var producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                // From 0 to 7 results of 8 bytes
+                var results = new byte[(i % 8) * CreateTransferResultBatch.Struct.SIZE];
+                publish(ring, i + 1, Request.Operations.CREATE_TRANSFERS,
+                        RequestException.Status.OK, results);
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 8, futures.get(i).get(10, TimeUnit.SECONDS).getLength());
+        }
+
+        producer.join();
+        ring.close();
+    }
+
+    private static final class TestRing extends CompletionRing {
+
+        private final Object signal = new Object();
+
+        TestRing(final int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        void await(final long timeoutNanos) {
+            synchronized (signal) {
+                try {
+                    signal.wait(1);
+                } catch (InterruptedException exception) {
+                    throw new RuntimeException(exception);
+                }
+            }
+        }
+
+        @Override
+        void wake() {
+            synchronized (signal) {
+                signal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Mirrors CompletionRing.push in client.zig.
+     */
+    private static void publish(final CompletionRing ring, final long packet, final byte operation,
+            final byte status, final byte[] result) {
+        var buffer = ring.getBuffer();
+        var capacity = buffer.getLong(CompletionRing.Struct.Capacity);
+
+        var length = result == null ? 0 : result.length;
+        var size = align(CompletionRing.Record.HEADER_SIZE + length);
+
+        var head = buffer.getLong(CompletionRing.Struct.Head);
+        var offset = head & (capacity - 1);
+        var padding = offset + size > capacity ? capacity - offset : 0;
+
+        while (head + padding + size
+                - (long) LONGS.getAcquire(buffer, CompletionRing.Struct.Tail) > capacity) {
+            Thread.onSpinWait();
+        }
+
+        if (padding > 0) {
+            var record = CompletionRing.Struct.Data + (int) offset;
+            buffer.putInt(record + CompletionRing.Record.Length,
+                    (int) padding - CompletionRing.Record.HEADER_SIZE);
+            buffer.put(record + CompletionRing.Record.Flags, CompletionRing.Record.FLAG_PADDING);
+            head += padding;
+            offset = 0;
+        }
+
+        var record = CompletionRing.Struct.Data + (int) offset;
+        buffer.putInt(record + CompletionRing.Record.Length, length);
+        buffer.put(record + CompletionRing.Record.Flags,
+                result == null ? 0 : CompletionRing.Record.FLAG_RESULT);
+        buffer.put(record + CompletionRing.Record.Operation, operation);
+        buffer.put(record + CompletionRing.Record.Status, status);
+        buffer.putLong(record + CompletionRing.Record.Packet, packet);
+        for (int i = 0; i < length; i++) {
+            buffer.put(record + CompletionRing.Record.HEADER_SIZE + i, result[i]);
+        }
+
+        LONGS.setRelease(buffer, CompletionRing.Struct.Head, head + size);
+        ring.wake();
+    }
+
+    private static long align(final long size) {
+        return (size + CompletionRing.Record.ALIGNMENT - 1) & -CompletionRing.Record.ALIGNMENT;
+    }
+}
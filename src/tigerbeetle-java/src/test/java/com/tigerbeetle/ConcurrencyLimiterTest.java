@@ -0,0 +1,197 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests the adaptive limit with synthetic round trips, no native library required.
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final class FakeTransport extends Transport {
+        @Override
+        void submit(final Request<?> request, final long packet) {}
+
+        @Override
+        void close() {}
+    }
+
+    private static final long BASELINE = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final byte OPERATION = Request.Operations.CREATE_TRANSFERS;
+
+    // A synthetic System.nanoTime(), advanced by the round trips
+    private long now;
+
+    private void sample(final ConcurrencyLimiter limiter, final int inFlight,
+            final long roundTrip, final int count) {
+        sample(limiter, 1, inFlight, roundTrip, count);
+    }
+
+    private void sample(final ConcurrencyLimiter limiter, final int events, final int inFlight,
+            final long roundTrip, final int count) {
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < inFlight; j++) {
+                limiter.onSubmit();
+            }
+            limiter.onReply(OPERATION, events, now, now + roundTrip, RequestException.Status.OK);
+            for (int j = 1; j < inFlight; j++) {
+                limiter.onReply(OPERATION, events, now, now, RequestException.Status.OK);
+            }
+            now += roundTrip;
+        }
+    }
+
+    @Test
+    public void testShrinksWhenQueuing() {
+        var pool = new PacketPool(new FakeTransport(), 32, 32, false);
+        var limiter = new ConcurrencyLimiter(pool, 1, 32);
+        assertEquals(32, limiter.getLimit());
+
+        sample(limiter, 32, BASELINE, 1);
+        assertEquals(BASELINE, limiter.getBaselineNanos(OPERATION, 1));
+
+        // Twice the baseline, half of the requests are queued
+        sample(limiter, 32, 2 * BASELINE, 10);
+        assertEquals(22, limiter.getLimit());
+        assertEquals(22, pool.getStats().getLimit());
+    }
+
+    @Test
+    public void testGrowsBack() {
+        var pool = new PacketPool(new FakeTransport(), 32, 32, false);
+        var limiter = new ConcurrencyLimiter(pool, 1, 32);
+        sample(limiter, 32, BASELINE, 1);
+        sample(limiter, 32, 4 * BASELINE, 20);
+        final var lowered = limiter.getLimit();
+        assertTrue(lowered < 32);
+
+        // Not raised while mostly idle
+        sample(limiter, 1, BASELINE, 10);
+        assertEquals(lowered, limiter.getLimit());
+
+        sample(limiter, 32, BASELINE, 32);
+        assertEquals(32, limiter.getLimit());
+        assertEquals(32, pool.getStats().getLimit());
+    }
+
+    @Test
+    public void testNeverBelowMin() {
+        var pool = new PacketPool(new FakeTransport(), 8, 8, false);
+        var limiter = new ConcurrencyLimiter(pool, 2, 8);
+        sample(limiter, 8, BASELINE, 1);
+        sample(limiter, 8, 100 * BASELINE, 8);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testBaselinePerSize() {
+        var pool = new PacketPool(new FakeTransport(), 32, 32, false);
+        var limiter = new ConcurrencyLimiter(pool, 1, 32);
+
+        // Larger batches take longer without queuing anywhere
+        for (int i = 0; i < 20; i++) {
+            sample(limiter, 1, 32, BASELINE, 1);
+            sample(limiter, 8000, 32, 10 * BASELINE, 1);
+        }
+        assertEquals(32, limiter.getLimit());
+        assertEquals(BASELINE, limiter.getBaselineNanos(OPERATION, 1));
+        assertEquals(10 * BASELINE, limiter.getBaselineNanos(OPERATION, 8000));
+        assertEquals(10 * BASELINE, limiter.getBaselineNanos(OPERATION, 4096));
+        assertEquals(0, limiter.getBaselineNanos(Request.Operations.LOOKUP_ACCOUNTS, 1));
+
+        // Queuing is still detected within each size class
+        sample(limiter, 8000, 32, 20 * BASELINE, 10);
+        assertTrue(limiter.getLimit() < 32);
+    }
+
+    @Test
+    public void testForgetsBaseline() {
+        var pool = new PacketPool(new FakeTransport(), 32, 32, false);
+        var limiter = new ConcurrencyLimiter(pool, 1, 32);
+        sample(limiter, 32, BASELINE, 1);
+
+        // Permanently slower, not queuing
+        sample(limiter, 32, 4 * BASELINE, 10);
+        assertTrue(limiter.getLimit() < 32);
+        assertEquals(BASELINE, limiter.getBaselineNanos(OPERATION, 1));
+
+        now += ConcurrencyLimiter.PROBE_NANOS;
+        sample(limiter, 32, 4 * BASELINE, 1);
+        assertEquals(4 * BASELINE, limiter.getBaselineNanos(OPERATION, 1));
+
+        // Also forgotten after enough samples, well within PROBE_NANOS
+        sample(limiter, 32, 2 * BASELINE, 1);
+        sample(limiter, 32, 3 * BASELINE, ConcurrencyLimiter.PROBE_SAMPLES);
+        assertTrue(ConcurrencyLimiter.PROBE_SAMPLES * 3 * BASELINE
+                < ConcurrencyLimiter.PROBE_NANOS);
+        assertEquals(3 * BASELINE, limiter.getBaselineNanos(OPERATION, 1));
+    }
+
+    @Test
+    public void testIgnoresFailures() {
+        var pool = new PacketPool(new FakeTransport(), 8, 8, false);
+        var limiter = new ConcurrencyLimiter(pool, 1, 8);
+        sample(limiter, 8, BASELINE, 1);
+        for (int i = 0; i < 10; i++) {
+            limiter.onSubmit();
+            limiter.onReply(OPERATION, 1, now, now + 100 * BASELINE,
+                    RequestException.Status.TOO_MUCH_DATA);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void testPoolWaitsForLimit() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 4, 4, false);
+        pool.setLimit(2);
+        final var first = pool.acquire();
+        pool.acquire();
+
+        var acquired = new CountDownLatch(1);
+        var thread = new Thread(() -> {
+            pool.acquire();
+            acquired.countDown();
+        });
+        thread.start();
+
+        assertFalse(acquired.await(20, TimeUnit.MILLISECONDS));
+        assertEquals(2, pool.getStats().getInUse());
+        assertEquals(2, pool.getStats().getLimit());
+
+        pool.release(first);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(4, pool.getStats().getSize());
+    }
+
+    @Test
+    public void testClientProperty() throws Throwable {
+        System.setProperty(Client.LIMITER_PROPERTY, Client.LIMITER_VEGAS);
+        try (var client = Client.inMemory(0, 8)) {
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+            for (int i = 0; i < 10; i++) {
+                client.lookupAccounts(ids);
+            }
+
+            var stats = client.getPacketPoolStats();
+            assertTrue(stats.getLimit() >= 1 && stats.getLimit() <= 8);
+        } finally {
+            System.clearProperty(Client.LIMITER_PROPERTY);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownLimiter() throws Throwable {
+        System.setProperty(Client.LIMITER_PROPERTY, "aimd");
+        try {
+            Client.inMemory(0, 8);
+        } finally {
+            System.clearProperty(Client.LIMITER_PROPERTY);
+        }
+    }
+}
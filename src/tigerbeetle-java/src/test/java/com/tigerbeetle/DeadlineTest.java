@@ -0,0 +1,126 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests per-call timeouts, no TigerBeetle instance required.
+ */
+public class DeadlineTest {
+
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static IdBatch ids() {
+        var ids = new IdBatch(1);
+        ids.add(1, 0);
+        return ids;
+    }
+
+    private static AccountBatch accounts() {
+        var accounts = new AccountBatch(1);
+        accounts.add();
+        accounts.setId(1, 0);
+        accounts.setLedger(720);
+        accounts.setCode(1);
+        return accounts;
+    }
+
+    @Test
+    public void testCompletesWithinTimeout() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            var results = client.createAccounts(accounts(), Duration.ofSeconds(5));
+            assertEquals(0, results.getLength());
+
+            var lookup = client.lookupAccountsAsync(ids(), Duration.ofSeconds(5)).get();
+            assertTrue(lookup.next());
+            assertFalse(lookup.next());
+        }
+    }
+
+    @Test
+    public void testExpiredBeforeSubmit() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            try {
+                client.lookupAccounts(ids(), Duration.ZERO);
+                assert false;
+            } catch (RequestException requestException) {
+                assertEquals(RequestException.Status.DEADLINE_EXCEEDED,
+                        requestException.getStatus());
+            }
+
+            try {
+                client.lookupTransfersAsync(ids(), Duration.ZERO).get();
+                assert false;
+            } catch (ExecutionException executionException) {
+                var requestException = (RequestException) executionException.getCause();
+                assertEquals(RequestException.Status.DEADLINE_EXCEEDED,
+                        requestException.getStatus());
+            }
+
+            // Nothing was leased
+            assertEquals(0, client.getPacketPoolStats().getInUse());
+        }
+    }
+
+    @Test
+    public void testBlockingReplyDiscarded() throws Throwable {
+        var client = new Client(0, 1);
+        var request = BlockingRequest.lookupAccounts(client, ids());
+        var deadline = System.nanoTime() + WAIT_NANOS;
+        request.setDeadline(deadline);
+
+        try {
+            request.waitForResult(deadline);
+            assert false;
+        } catch (RequestException requestException) {
+            assertEquals(RequestException.Status.DEADLINE_EXCEEDED, requestException.getStatus());
+        }
+        assertTrue(System.nanoTime() - deadline >= 0);
+
+        // The late reply completes nothing
+        request.endRequest(Request.Operations.LOOKUP_ACCOUNTS,
+                ByteBuffer.allocateDirect(AccountBatch.Struct.SIZE), 1,
+                RequestException.Status.OK);
+    }
+
+    @Test
+    public void testAsyncExpires() throws Throwable {
+        var client = new Client(0, 1);
+        var request = AsyncRequest.lookupAccounts(client, ids());
+        request.setDeadline(System.nanoTime() + WAIT_NANOS);
+
+        try {
+            request.getFuture().get(5, TimeUnit.SECONDS);
+            assert false;
+        } catch (ExecutionException executionException) {
+            var requestException = (RequestException) executionException.getCause();
+            assertEquals(RequestException.Status.DEADLINE_EXCEEDED,
+                    requestException.getStatus());
+        }
+
+        request.endRequest(Request.Operations.LOOKUP_ACCOUNTS,
+                ByteBuffer.allocateDirect(AccountBatch.Struct.SIZE), 1,
+                RequestException.Status.OK);
+        assertTrue(request.getFuture().isCompletedExceptionally());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTimeout() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            client.createAccountsAsync(accounts(), Duration.ofMillis(-1));
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullTimeout() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            client.createTransfers(new TransferBatch(1), null);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.tigerbeetle;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes requests against an in-memory ledger, except for the requests numbered
+ * {@code failAt}, counting from one, which fail with {@code status} without being executed.
+ */
+final class FailingTransport extends Transport {
+
+    private final InMemoryTransport ledger = new InMemoryTransport();
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final byte status;
+    private final int[] failAt;
+
+    FailingTransport(final byte status, final int... failAt) {
+        this.status = status;
+        this.failAt = failAt.clone();
+        Arrays.sort(this.failAt);
+    }
+
+    @Override
+    void submit(final Request<?> request, final long packet) {
+        if (Arrays.binarySearch(failAt, submitted.incrementAndGet()) >= 0) {
+            request.endRequest(request.getOperation(), null, packet, status);
+        } else {
+            ledger.submit(request, packet);
+        }
+    }
+
+    @Override
+    void close() {
+        ledger.close();
+    }
+}
@@ -0,0 +1,488 @@
+package com.tigerbeetle;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the in-memory ledger through {@link Client#inMemory}, no TigerBeetle instance required.
+ */
+public class InMemoryLedgerTest {
+
+    private static final int LEDGER = 720;
+
+    @Test
+    public void testCreateAndLookupAccounts() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            var accounts = accounts(0, 1, 2);
+            accounts.setPosition(0);
+            accounts.setUserData(100, 200);
+
+            assertEquals(0, client.createAccounts(accounts).getLength());
+
+            var lookup = client.lookupAccounts(ids(3, 1, 2));
+            assertEquals(2, lookup.getLength());
+
+            assertTrue(lookup.next());
+            assertEquals(1L, lookup.getId(UInt128.LeastSignificant));
+            assertEquals(100L, lookup.getUserData(UInt128.LeastSignificant));
+            assertEquals(200L, lookup.getUserData(UInt128.MostSignificant));
+            assertEquals(LEDGER, lookup.getLedger());
+            assertEquals(1, lookup.getCode());
+            assertNotEquals(0L, lookup.getTimestamp());
+            final var timestamp = lookup.getTimestamp();
+
+            assertTrue(lookup.next());
+            assertEquals(2L, lookup.getId(UInt128.LeastSignificant));
+            assertTrue(lookup.getTimestamp() > timestamp);
+        }
+    }
+
+    @Test
+    public void testCreateExistingAccounts() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1)).getLength());
+
+            var accounts = accounts(0, 1, 1);
+            accounts.setPosition(1);
+            accounts.setCode(2);
+
+            var errors = client.createAccounts(accounts);
+            assertEquals(2, errors.getLength());
+
+            assertTrue(errors.next());
+            assertEquals(0, errors.getIndex());
+            assertEquals(CreateAccountResult.Exists, errors.getResult());
+
+            assertTrue(errors.next());
+            assertEquals(1, errors.getIndex());
+            assertEquals(CreateAccountResult.ExistsWithDifferentCode, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testCreateInvalidAccounts() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            var accounts = new AccountBatch(4);
+            accounts.add();
+
+            accounts.add();
+            accounts.setId(-1L, -1L);
+
+            accounts.add();
+            accounts.setId(1, 0);
+            accounts.setFlags(AccountFlags.DEBITS_MUST_NOT_EXCEED_CREDITS
+                    | AccountFlags.CREDITS_MUST_NOT_EXCEED_DEBITS);
+
+            accounts.add();
+            accounts.setId(2, 0);
+            accounts.setFlags(1 << 15);
+
+            var errors = client.createAccounts(accounts);
+            assertEquals(4, errors.getLength());
+            assertTrue(errors.next());
+            assertEquals(CreateAccountResult.IdMustNotBeZero, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateAccountResult.IdMustNotBeIntMax, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateAccountResult.MutuallyExclusiveFlags, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateAccountResult.ReservedFlag, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testCreateTransfers() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            var transfers = transfers(1);
+            setTransfer(transfers, 10, 1, 2, 100);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            // Resubmitting the same transfer
+            var errors = client.createTransfers(transfers);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.Exists, errors.getResult());
+
+            transfers.setAmount(101);
+            errors = client.createTransfers(transfers);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.ExistsWithDifferentAmount, errors.getResult());
+
+            assertBalances(client, 1, 0, 100, 0, 0);
+            assertBalances(client, 2, 0, 0, 0, 100);
+
+            var lookup = client.lookupTransfers(ids(10));
+            assertEquals(1, lookup.getLength());
+            assertTrue(lookup.next());
+            assertEquals(1L, lookup.getDebitAccountId(UInt128.LeastSignificant));
+            assertEquals(2L, lookup.getCreditAccountId(UInt128.LeastSignificant));
+            assertEquals(100L, lookup.getAmount());
+            assertNotEquals(0L, lookup.getTimestamp());
+        }
+    }
+
+    @Test
+    public void testCreateInvalidTransfers() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            var otherLedger = accounts(0, 3);
+            otherLedger.setLedger(LEDGER + 1);
+            assertEquals(0, client.createAccounts(otherLedger).getLength());
+
+            var transfers = transfers(6);
+            transfers.setPosition(0);
+            setTransfer(transfers, 10, 1, 1, 100);
+            transfers.setPosition(1);
+            setTransfer(transfers, 11, 1, 4, 100);
+            transfers.setPosition(2);
+            setTransfer(transfers, 12, 1, 3, 100);
+            transfers.setPosition(3);
+            setTransfer(transfers, 13, 1, 2, 0);
+            transfers.setPosition(4);
+            setTransfer(transfers, 14, 1, 2, 100);
+            transfers.setTimeout(1000);
+            transfers.setPosition(5);
+            setTransfer(transfers, 15, 1, 2, 100);
+            transfers.setFlags(TransferFlags.PENDING);
+
+            var errors = client.createTransfers(transfers);
+            assertEquals(6, errors.getLength());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.AccountsMustBeDifferent, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.CreditAccountNotFound, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.AccountsMustHaveTheSameLedger, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.AmountMustNotBeZero, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.TimeoutReservedForPendingTransfer,
+                    errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.PendingTransferMustTimeout, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testLinkedAccountsRollback() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            var accounts = accounts(0, 1, 2, 3);
+            accounts.setPosition(0);
+            accounts.setFlags(AccountFlags.LINKED);
+            accounts.setPosition(1);
+            accounts.setFlags(AccountFlags.LINKED);
+            accounts.setPosition(2);
+            accounts.setCode(0);
+
+            var errors = client.createAccounts(accounts);
+            assertEquals(3, errors.getLength());
+            assertTrue(errors.next());
+            assertEquals(0, errors.getIndex());
+            assertEquals(CreateAccountResult.LinkedEventFailed, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(1, errors.getIndex());
+            assertEquals(CreateAccountResult.LinkedEventFailed, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(2, errors.getIndex());
+            assertEquals(CreateAccountResult.CodeMustNotBeZero, errors.getResult());
+
+            assertEquals(0, client.lookupAccounts(ids(1, 2, 3)).getLength());
+
+            // The rolled back ids can be created again
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2, 3)).getLength());
+            assertEquals(3, client.lookupAccounts(ids(1, 2, 3)).getLength());
+        }
+    }
+
+    @Test
+    public void testLinkedChainOpen() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            var accounts = accounts(0, 1, 2);
+            accounts.setPosition(0);
+            accounts.setFlags(AccountFlags.LINKED);
+            accounts.setPosition(1);
+            accounts.setFlags(AccountFlags.LINKED);
+
+            var errors = client.createAccounts(accounts);
+            assertEquals(2, errors.getLength());
+            assertTrue(errors.next());
+            assertEquals(CreateAccountResult.LinkedEventFailed, errors.getResult());
+            assertTrue(errors.next());
+            assertEquals(CreateAccountResult.LinkedEventChainOpen, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testLinkedTransfersRollback() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            var transfers = transfers(3);
+            transfers.setPosition(0);
+            setTransfer(transfers, 10, 1, 2, 100);
+            transfers.setFlags(TransferFlags.LINKED);
+            transfers.setPosition(1);
+            setTransfer(transfers, 11, 2, 1, 30);
+            transfers.setFlags(TransferFlags.LINKED);
+            transfers.setPosition(2);
+            setTransfer(transfers, 10, 1, 2, 100);
+
+            var errors = client.createTransfers(transfers);
+            assertEquals(3, errors.getLength());
+            errors.setPosition(2);
+            assertEquals(CreateTransferResult.ExistsWithDifferentFlags, errors.getResult());
+
+            assertEquals(0, client.lookupTransfers(ids(10, 11)).getLength());
+            assertBalances(client, 1, 0, 0, 0, 0);
+            assertBalances(client, 2, 0, 0, 0, 0);
+        }
+    }
+
+    @Test
+    public void testBalanceLimits() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            var accounts = accounts(0, 1, 2);
+            accounts.setPosition(0);
+            accounts.setFlags(AccountFlags.DEBITS_MUST_NOT_EXCEED_CREDITS);
+            accounts.setPosition(1);
+            accounts.setFlags(AccountFlags.CREDITS_MUST_NOT_EXCEED_DEBITS);
+            assertEquals(0, client.createAccounts(accounts).getLength());
+
+            var transfers = transfers(1);
+            setTransfer(transfers, 10, 1, 2, 1);
+            var errors = client.createTransfers(transfers);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.ExceedsCredits, errors.getResult());
+
+            assertEquals(0, client.createAccounts(accounts(0, 3)).getLength());
+
+            setTransfer(transfers, 10, 3, 1, 50);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            // The account 1 now has 50 credits and can be debited up to that
+            setTransfer(transfers, 11, 1, 3, 51);
+            errors = client.createTransfers(transfers);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.ExceedsCredits, errors.getResult());
+
+            setTransfer(transfers, 11, 1, 3, 50);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            // The account 2 cannot be credited before being debited
+            setTransfer(transfers, 12, 3, 2, 1);
+            errors = client.createTransfers(transfers);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.ExceedsDebits, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testPostPendingTransfer() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            var transfers = transfers(1);
+            setTransfer(transfers, 10, 1, 2, 100);
+            transfers.setFlags(TransferFlags.PENDING);
+            transfers.setTimeout(Long.MAX_VALUE);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            assertBalances(client, 1, 100, 0, 0, 0);
+            assertBalances(client, 2, 0, 0, 100, 0);
+
+            // Posting a partial amount, the remaining is released
+            var post = transfers(1);
+            post.setId(11, 0);
+            post.setPendingId(10, 0);
+            post.setAmount(60);
+            post.setFlags(TransferFlags.POST_PENDING_TRANSFER);
+            assertEquals(0, client.createTransfers(post).getLength());
+
+            assertBalances(client, 1, 0, 60, 0, 0);
+            assertBalances(client, 2, 0, 0, 0, 60);
+
+            var lookup = client.lookupTransfers(ids(11));
+            assertTrue(lookup.next());
+            assertEquals(1L, lookup.getDebitAccountId(UInt128.LeastSignificant));
+            assertEquals(2L, lookup.getCreditAccountId(UInt128.LeastSignificant));
+            assertEquals(LEDGER, lookup.getLedger());
+            assertEquals(60L, lookup.getAmount());
+            assertEquals(0L, lookup.getTimeout());
+
+            var errors = client.createTransfers(post);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.Exists, errors.getResult());
+
+            post.setId(12, 0);
+            errors = client.createTransfers(post);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.PendingTransferAlreadyPosted, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testVoidPendingTransfer() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            var transfers = transfers(1);
+            setTransfer(transfers, 10, 1, 2, 100);
+            transfers.setFlags(TransferFlags.PENDING);
+            transfers.setTimeout(Long.MAX_VALUE);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            var voids = transfers(1);
+            voids.setId(11, 0);
+            voids.setPendingId(10, 0);
+            voids.setAmount(60);
+            voids.setFlags(TransferFlags.VOID_PENDING_TRANSFER);
+
+            var errors = client.createTransfers(voids);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.PendingTransferHasDifferentAmount,
+                    errors.getResult());
+
+            voids.setAmount(0);
+            assertEquals(0, client.createTransfers(voids).getLength());
+
+            assertBalances(client, 1, 0, 0, 0, 0);
+            assertBalances(client, 2, 0, 0, 0, 0);
+
+            voids.setId(12, 0);
+            voids.setFlags(TransferFlags.POST_PENDING_TRANSFER);
+            errors = client.createTransfers(voids);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.PendingTransferAlreadyVoided, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testExpiredPendingTransfer() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            var transfers = transfers(1);
+            setTransfer(transfers, 10, 1, 2, 100);
+            transfers.setFlags(TransferFlags.PENDING);
+            transfers.setTimeout(1);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            var post = transfers(1);
+            post.setId(11, 0);
+            post.setPendingId(10, 0);
+            post.setFlags(TransferFlags.POST_PENDING_TRANSFER);
+
+            var errors = client.createTransfers(post);
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.PendingTransferExpired, errors.getResult());
+        }
+    }
+
+    @Test
+    public void testConcurrentTransfers() throws Throwable {
+        try (var client = Client.inMemory(0, 4)) {
+
+            assertEquals(0, client.createAccounts(accounts(0, 1, 2)).getLength());
+
+            final int requests = 100;
+            final int batchSize = 100;
+            final var futures = new ArrayList<CompletableFuture<CreateTransferResultBatch>>();
+            for (int i = 0; i < requests; i++) {
+                var transfers = transfers(batchSize);
+                for (int j = 0; j < batchSize; j++) {
+                    transfers.setPosition(j);
+                    setTransfer(transfers, 10 + i * batchSize + j, 1, 2, 1);
+                }
+                futures.add(client.createTransfersAsync(transfers));
+            }
+
+            for (var future : futures) {
+                assertEquals(0, future.get().getLength());
+            }
+
+            assertBalances(client, 1, 0, requests * batchSize, 0, 0);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedClient() throws Throwable {
+        var client = Client.inMemory(0);
+        client.close();
+        client.createAccounts(accounts(0, 1));
+    }
+
+    @Test
+    public void testInvalidOperation() throws Throwable {
+        final var ledger = new InMemoryLedger();
+        final var buffer = ByteBuffer.allocate(128);
+        assertEquals(-1, ledger.execute((byte) 99, buffer, 128, buffer));
+    }
+
+    private static AccountBatch accounts(final int flags, final long... ids) {
+        var accounts = new AccountBatch(ids.length);
+        for (var id : ids) {
+            accounts.add();
+            accounts.setId(id, 0);
+            accounts.setLedger(LEDGER);
+            accounts.setCode(1);
+            accounts.setFlags(flags);
+        }
+        return accounts;
+    }
+
+    private static TransferBatch transfers(final int length) {
+        var transfers = new TransferBatch(length);
+        for (int i = 0; i < length; i++) {
+            transfers.add();
+        }
+        return transfers;
+    }
+
+    private static void setTransfer(final TransferBatch transfers, final long id,
+            final long debitAccountId, final long creditAccountId, final long amount) {
+        transfers.setId(id, 0);
+        transfers.setDebitAccountId(debitAccountId, 0);
+        transfers.setCreditAccountId(creditAccountId, 0);
+        transfers.setLedger(LEDGER);
+        transfers.setCode(1);
+        transfers.setAmount(amount);
+    }
+
+    private static IdBatch ids(final long... ids) {
+        var batch = new IdBatch(ids.length);
+        for (var id : ids) {
+            batch.add(id, 0);
+        }
+        return batch;
+    }
+
+    private static void assertBalances(final Client client, final long id,
+            final long debitsPending, final long debitsPosted, final long creditsPending,
+            final long creditsPosted) throws RequestException {
+        var lookup = client.lookupAccounts(ids(id));
+        assertTrue(lookup.next());
+        assertEquals(debitsPending, lookup.getDebitsPending());
+        assertEquals(debitsPosted, lookup.getDebitsPosted());
+        assertEquals(creditsPending, lookup.getCreditsPending());
+        assertEquals(creditsPosted, lookup.getCreditsPosted());
+    }
+}
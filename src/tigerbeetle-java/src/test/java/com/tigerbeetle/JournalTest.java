@@ -0,0 +1,275 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link Journal} through {@link Client#inMemory}, no TigerBeetle instance required.
+ */
+public class JournalTest {
+
+    private Path directory;
+    private Client client;
+
+    private static final class Replayed implements Journal.ReplayListener {
+
+        final List<Long> firstIds = new ArrayList<>();
+        final List<CreateTransferResult> results = new ArrayList<>();
+        int accounts;
+
+        @Override
+        public void onAccounts(final AccountBatch batch, final CreateAccountResultBatch results) {
+            accounts += batch.getLength();
+        }
+
+        @Override
+        public void onTransfers(final TransferBatch batch,
+                final CreateTransferResultBatch results) {
+            assertTrue(batch.next());
+            firstIds.add(batch.getId(UInt128.LeastSignificant));
+            while (results.next()) {
+                this.results.add(results.getResult());
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tigerbeetle-journal");
+        client = Client.inMemory(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private long segments() throws Exception {
+        try (var files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * Journals the batches as if the process crashed before their results were received.
+     */
+    private void crash(final TransferBatch... batches) throws Exception {
+        var closed = Client.inMemory(0);
+        closed.close();
+
+        var journal = new Journal(closed, directory, Journal.Sync.NONE);
+        for (var batch : batches) {
+            try {
+                journal.createTransfers(batch);
+                fail();
+            } catch (IllegalStateException exception) {
+                assertEquals("Client is closed", exception.getMessage());
+            }
+        }
+        assertEquals(batches.length, journal.getPendingCount());
+    }
+
+    @Test
+    public void testCompleted() throws Throwable {
+        try (var journal = new Journal(client, directory, Journal.Sync.ALWAYS)) {
+            journal.createAccounts(TestLedger.accounts());
+            assertEquals(0, journal.createTransfers(TestLedger.transfers(1, 10)).getLength());
+            assertEquals(0, journal.getPendingCount());
+        }
+
+        try (var journal = new Journal(client, directory, Journal.Sync.ALWAYS)) {
+            assertEquals(0, journal.getPendingCount());
+            assertEquals(0, journal.replay(new Replayed()));
+
+            // Only the new segment is left
+            assertEquals(1, segments());
+        }
+    }
+
+    @Test
+    public void testReplay() throws Throwable {
+        client.createAccounts(TestLedger.accounts());
+
+        final var applied = TestLedger.transfers(1, 10);
+        crash(applied, TestLedger.transfers(11, 5));
+
+        // The first batch had reached the cluster before the crash
+        client.createTransfers(applied);
+
+        try (var journal = new Journal(client, directory, Journal.Sync.NONE)) {
+            assertEquals(2, journal.getPendingCount());
+
+            var replayed = new Replayed();
+            assertEquals(2, journal.replay(replayed));
+            assertEquals(List.of(1L, 11L), replayed.firstIds);
+            assertEquals(10, replayed.results.size());
+            for (var result : replayed.results) {
+                assertEquals(CreateTransferResult.Exists, result);
+            }
+            assertEquals(0, journal.getPendingCount());
+        }
+
+        var ids = new IdBatch(1);
+        ids.add(2, 0);
+        var account = client.lookupAccounts(ids);
+        assertTrue(account.next());
+        assertEquals(15, account.getCreditsPosted());
+
+        try (var journal = new Journal(client, directory, Journal.Sync.NONE)) {
+            assertEquals(0, journal.replay(new Replayed()));
+            assertEquals(1, segments());
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws Throwable {
+        client.createAccounts(TestLedger.accounts());
+        crash(TestLedger.transfers(1, 1), TestLedger.transfers(2, 1));
+
+        // Tears the last record of the first segment
+        final Path segment = directory.resolve(Journal.segmentName(0));
+        final var second = Journal.Struct.SIZE + TransferBatch.Struct.SIZE;
+        try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {2}),
+                    second + Journal.Struct.SIZE + TransferBatch.Struct.Amount);
+        }
+
+        try (var journal = new Journal(client, directory, Journal.Sync.NONE)) {
+            var replayed = new Replayed();
+            assertEquals(1, journal.replay(replayed));
+            assertEquals(List.of(1L), replayed.firstIds);
+        }
+    }
+
+    @Test
+    public void testSegments() throws Throwable {
+        final var batchSize = 8190;
+        try (var journal = new Journal(client, directory, Journal.Sync.ALWAYS,
+                Journal.SEGMENT_SIZE_MIN)) {
+            journal.createAccounts(TestLedger.accounts());
+
+            final var futures = new ArrayList<CompletableFuture<CreateTransferResultBatch>>();
+            for (int i = 0; i < 8; i++) {
+                final var transfers = TestLedger.transfers(1 + i * batchSize, batchSize);
+                futures.add(journal.createTransfersAsync(transfers));
+            }
+            for (var future : futures) {
+                assertEquals(0, future.get().getLength());
+            }
+
+            // One record of 8190 transfers per segment, older segments are deleted once
+            // completed
+            assertEquals(0, journal.getPendingCount());
+            assertEquals(1, segments());
+        }
+    }
+
+    @Test
+    public void testRejected() throws Throwable {
+        try (var journal = new Journal(client, directory, Journal.Sync.NONE)) {
+            journal.createTransfers(TestLedger.transfers(1, TransferProcessor.BATCH_SIZE_MAX + 1));
+            fail();
+        } catch (RequestException exception) {
+            assertEquals(RequestException.Status.TOO_MUCH_DATA, exception.getStatus());
+        }
+
+        // Not applied, so not replayed
+        try (var journal = new Journal(client, directory, Journal.Sync.NONE)) {
+            assertEquals(0, journal.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testTransportFailed() throws Throwable {
+        try (var failing = new Client(0, 4)) {
+            failing.attach(new FailingTransport(RequestException.Status.TRANSPORT_FAILED, 2, 3));
+            TestLedger.createAccounts(failing);
+
+            try (var journal = new Journal(failing, directory, Journal.Sync.NONE)) {
+                journal.createTransfers(TestLedger.transfers(1, 10));
+                fail();
+            } catch (RequestException exception) {
+                assertEquals(RequestException.Status.TRANSPORT_FAILED, exception.getStatus());
+            }
+
+            // Might have been applied, so replayed, also after failing again
+            try (var journal = new Journal(failing, directory, Journal.Sync.NONE)) {
+                assertEquals(1, journal.getPendingCount());
+                try {
+                    journal.replay(new Replayed());
+                    fail();
+                } catch (RequestException exception) {
+                    assertEquals(RequestException.Status.TRANSPORT_FAILED,
+                            exception.getStatus());
+                }
+                assertEquals(1, journal.getPendingCount());
+
+                assertEquals(1, journal.replay(new Replayed()));
+                assertEquals(0, journal.getPendingCount());
+            }
+            assertEquals(10, TestLedger.creditsPosted(failing));
+        }
+    }
+
+    @Test
+    public void testClientClosed() throws Throwable {
+        var closing = Client.inMemory(0, 1);
+        TestLedger.createAccounts(closing);
+
+        // Holds the only packet, the journaled batch waits for it until aborted
+        closing.acquirePacket(RequestPriority.NORMAL);
+
+        var journal = new Journal(closing, directory, Journal.Sync.NONE);
+        var future = new AtomicReference<CompletableFuture<CreateTransferResultBatch>>();
+        var thread = new Thread(
+                () -> future.set(journal.createTransfersAsync(TestLedger.transfers(1, 10))));
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        var result = closing.closeAsync(Duration.ofMillis(20)).get(5, TimeUnit.SECONDS);
+        assertEquals(1, result.getAborted());
+        thread.join();
+        try {
+            future.get().get();
+            fail();
+        } catch (ExecutionException exception) {
+            var requestException = (RequestException) exception.getCause();
+            assertEquals(RequestException.Status.CLIENT_CLOSED, requestException.getStatus());
+        }
+        journal.close();
+
+        // The cluster may still apply an aborted batch, so it is replayed
+        try (var reopened = new Journal(client, directory, Journal.Sync.NONE)) {
+            assertEquals(1, reopened.getPendingCount());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws Throwable {
+        var journal = new Journal(client, directory, Journal.Sync.NONE);
+        journal.close();
+        journal.createAccounts(TestLedger.accounts());
+    }
+}
@@ -0,0 +1,227 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LedgerRouter} with one {@link Client#inMemory in-memory client} per cluster, no
+ * TigerBeetle instance required.
+ */
+public class LedgerRouterTest {
+
+    private static AccountBatch accounts(final int... ledgers) {
+        var accounts = new AccountBatch(ledgers.length);
+        for (int i = 0; i < ledgers.length; i++) {
+            accounts.add();
+            accounts.setId(ledgers[i] * 100 + i, 0);
+            accounts.setLedger(ledgers[i]);
+            accounts.setCode(1);
+        }
+        return accounts;
+    }
+
+    private static void addTransfer(final TransferBatch transfers, final long id,
+            final long debitAccountId, final long creditAccountId, final int ledger) {
+        transfers.add();
+        transfers.setId(id, 0);
+        transfers.setDebitAccountId(debitAccountId, 0);
+        transfers.setCreditAccountId(creditAccountId, 0);
+        transfers.setLedger(ledger);
+        transfers.setCode(1);
+        transfers.setAmount(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyClients() {
+        new LedgerRouter(Map.of());
+    }
+
+    @Test
+    public void testCreateAccounts() throws Throwable {
+        try (var first = Client.inMemory(0); var second = Client.inMemory(0)) {
+            var router = new LedgerRouter(Map.of(1, first, 2, second, 3, second));
+
+            // Accounts 100, 201, 102, 303, 204
+            var results = router.createAccounts(accounts(1, 2, 1, 3, 2));
+            assertEquals(0, results.getLength());
+
+            var ids = new IdBatch(5);
+            ids.add(100, 0);
+            ids.add(201, 0);
+            ids.add(102, 0);
+            ids.add(303, 0);
+            ids.add(204, 0);
+            assertEquals(2, first.lookupAccounts(ids).getLength());
+            assertEquals(3, second.lookupAccounts(ids).getLength());
+
+            // Accounts 200, 101 and 102, which already exists and fails at its position
+            results = router.createAccounts(accounts(2, 1, 1));
+            assertTrue(results.next());
+            assertEquals(2, results.getIndex());
+            assertEquals(CreateAccountResult.Exists, results.getResult());
+            assertFalse(results.next());
+        }
+    }
+
+    @Test
+    public void testCreateTransfers() throws Throwable {
+        try (var first = Client.inMemory(0); var second = Client.inMemory(0)) {
+            var router = new LedgerRouter(Map.of(1, first, 2, second));
+            router.createAccounts(accounts(1, 1, 2, 2));
+
+            var transfers = new TransferBatch(6);
+            addTransfer(transfers, 1, 100, 101, 1);
+            addTransfer(transfers, 2, 202, 203, 2);
+            addTransfer(transfers, 3, 100, 999, 1);
+            addTransfer(transfers, 4, 999, 203, 2);
+            addTransfer(transfers, 5, 202, 999, 2);
+            addTransfer(transfers, 6, 101, 100, 1);
+
+            var results = router.createTransfersAsync(transfers).get();
+            assertTrue(results.isReadOnly());
+            assertTrue(results.next());
+            assertEquals(2, results.getIndex());
+            assertEquals(CreateTransferResult.CreditAccountNotFound, results.getResult());
+            assertTrue(results.next());
+            assertEquals(3, results.getIndex());
+            assertEquals(CreateTransferResult.DebitAccountNotFound, results.getResult());
+            assertTrue(results.next());
+            assertEquals(4, results.getIndex());
+            assertEquals(CreateTransferResult.CreditAccountNotFound, results.getResult());
+            assertFalse(results.next());
+
+            // The caller's cursor is left untouched
+            assertEquals(5, transfers.getPosition());
+        }
+    }
+
+    @Test
+    public void testSingleCluster() throws Throwable {
+        try (var first = Client.inMemory(0); var second = Client.inMemory(0)) {
+            var router = new LedgerRouter(Map.of(1, first, 2, second));
+            router.createAccounts(accounts(2, 2));
+
+            var transfers = new TransferBatch(1);
+            addTransfer(transfers, 1, 200, 201, 2);
+            assertSame(CreateTransferResultBatch.EMPTY, router.createTransfers(transfers));
+        }
+    }
+
+    @Test
+    public void testLinkedChainSpanningClusters() throws Throwable {
+        try (var first = Client.inMemory(0); var second = Client.inMemory(0)) {
+            var router = new LedgerRouter(Map.of(1, first, 2, second));
+
+            var accounts = accounts(1, 1, 2);
+            accounts.setPosition(1);
+            accounts.setFlags(AccountFlags.LINKED);
+
+            try {
+                router.createAccounts(accounts);
+                fail();
+            } catch (IllegalArgumentException exception) {
+                assertTrue(exception.getMessage().contains("index 1"));
+            }
+
+            // Nothing was submitted
+            var ids = new IdBatch(1);
+            ids.add(100, 0);
+            assertEquals(0, first.lookupAccounts(ids).getLength());
+
+            // Chains within a cluster are accepted
+            accounts = accounts(1, 1, 2);
+            accounts.setPosition(0);
+            accounts.setFlags(AccountFlags.LINKED);
+            assertEquals(0, router.createAccounts(accounts).getLength());
+        }
+    }
+
+    @Test
+    public void testPartialFailure() throws Throwable {
+        try (var first = Client.inMemory(0); var second = new Client(0, 4)) {
+            second.attach(new FailingTransport(RequestException.Status.TOO_MUCH_DATA, 1));
+            var router = new LedgerRouter(Map.of(1, first, 2, second));
+
+            // Account 100 already exists and fails at its position
+            first.createAccounts(accounts(1));
+
+            // Accounts 100, 201 and 102, the second cluster fails
+            try {
+                router.createAccounts(accounts(1, 2, 1));
+                fail();
+            } catch (RoutedException exception) {
+                var cause = (RequestException) exception.getCause();
+                assertEquals(RequestException.Status.TOO_MUCH_DATA, cause.getStatus());
+                assertArrayEquals(new int[] {1}, exception.getFailedIndexes());
+
+                var results = (CreateAccountResultBatch) exception.getResults();
+                assertTrue(results.next());
+                assertEquals(0, results.getIndex());
+                assertEquals(CreateAccountResult.Exists, results.getResult());
+                assertFalse(results.next());
+            }
+
+            // The first cluster created its rows
+            var ids = new IdBatch(1);
+            ids.add(102, 0);
+            assertEquals(1, first.lookupAccounts(ids).getLength());
+        }
+    }
+
+    @Test
+    public void testClosedClient() throws Throwable {
+        try (var first = Client.inMemory(0); var second = Client.inMemory(0)) {
+            var clients = new TreeMap<Integer, Client>();
+            clients.put(1, first);
+            clients.put(2, second);
+            var router = new LedgerRouter(clients);
+
+            // Closed after the first cluster was submitted to, which is still awaited
+            second.close();
+            var future = router.createAccountsAsync(accounts(2, 1));
+            try {
+                future.get();
+                fail();
+            } catch (ExecutionException executionException) {
+                var exception = (RoutedException) executionException.getCause();
+                assertTrue(exception.getCause() instanceof IllegalStateException);
+                assertArrayEquals(new int[] {0}, exception.getFailedIndexes());
+                assertEquals(0, exception.getResults().getLength());
+            }
+
+            var ids = new IdBatch(1);
+            ids.add(101, 0);
+            assertEquals(1, first.lookupAccounts(ids).getLength());
+
+            // Closed before anything was submitted, fails right away
+            first.close();
+            try {
+                router.createAccountsAsync(accounts(1, 2));
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownLedger() throws Throwable {
+        try (var first = Client.inMemory(0)) {
+            var router = new LedgerRouter(Map.of(1, first));
+
+            try {
+                router.createAccounts(accounts(1, 7));
+                fail();
+            } catch (IllegalArgumentException exception) {
+                assertTrue(exception.getMessage().contains("ledger 7"));
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests the NIO transport against an {@link InMemoryServer}, no TigerBeetle instance required.
+ */
+public class NioTransportTest {
+
+    @Test
+    public void testParseAddresses() {
+        var addresses = NioTransport.parseAddresses("3001,10.0.0.1:3002, localhost:3003");
+        assertEquals(3, addresses.length);
+        assertEquals("127.0.0.1", addresses[0].getHostString());
+        assertEquals(3001, addresses[0].getPort());
+        assertEquals("10.0.0.1", addresses[1].getHostString());
+        assertEquals(3002, addresses[1].getPort());
+        assertEquals("localhost", addresses[2].getHostString());
+        assertEquals(3003, addresses[2].getPort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAddress() throws Throwable {
+        try (var client = Client.nio(0, new String[] {"127.0.0.1:"})) {
+            assert false;
+        }
+    }
+
+    @Test
+    public void testCreateAndLookup() throws Throwable {
+        try (var server = new InMemoryServer(0);
+                var client = Client.nio(0, new String[] {server.getAddress()})) {
+
+            TestLedger.createAccounts(client);
+
+            var transfers = new TransferBatch(1);
+            transfers.add();
+            transfers.setId(1, 0);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(2, 0);
+            transfers.setLedger(TestLedger.LEDGER);
+            transfers.setCode(1);
+            transfers.setAmount(100);
+            assertEquals(0, client.createTransfers(transfers).getLength());
+
+            // Resubmitting is a new request, not a duplicate one
+            var errors = client.createTransfers(transfers);
+            assertEquals(1, errors.getLength());
+            assertTrue(errors.next());
+            assertEquals(CreateTransferResult.Exists, errors.getResult());
+
+            var ids = new IdBatch(2);
+            ids.add(1, 0);
+            ids.add(2, 0);
+            var lookup = client.lookupAccounts(ids);
+            assertEquals(2, lookup.getLength());
+            assertTrue(lookup.next());
+            assertEquals(100, lookup.getDebitsPosted());
+            assertTrue(lookup.next());
+            assertEquals(100, lookup.getCreditsPosted());
+            assertFalse(lookup.next());
+        }
+    }
+
+    @Test
+    public void testConcurrentRequests() throws Throwable {
+        try (var server = new InMemoryServer(0);
+                var client = Client.nio(0, new String[] {server.getAddress()}, 8)) {
+
+            var futures = new ArrayList<CompletableFuture<CreateAccountResultBatch>>();
+            for (long id = 1; id <= 100; id++) {
+                var accounts = new AccountBatch(1);
+                accounts.add();
+                accounts.setId(id, 0);
+                accounts.setLedger(TestLedger.LEDGER);
+                accounts.setCode(1);
+                futures.add(client.createAccountsAsync(accounts));
+            }
+
+            for (var future : futures) {
+                assertEquals(0, future.get().getLength());
+            }
+
+            var ids = new IdBatch(100);
+            for (long id = 1; id <= 100; id++) {
+                ids.add(id, 0);
+            }
+            assertEquals(100, client.lookupAccounts(ids).getLength());
+        }
+    }
+
+    @Test
+    public void testTwoClients() throws Throwable {
+        try (var server = new InMemoryServer(0);
+                var client1 = Client.nio(0, new String[] {server.getAddress()});
+                var client2 = Client.nio(0, new String[] {server.getAddress()})) {
+
+            var accounts = new AccountBatch(1);
+            accounts.add();
+            accounts.setId(1, 0);
+            accounts.setLedger(TestLedger.LEDGER);
+            accounts.setCode(1);
+            assertEquals(0, client1.createAccounts(accounts).getLength());
+
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+            assertEquals(1, client2.lookupAccounts(ids).getLength());
+        }
+    }
+
+    @Test
+    public void testUnreachableReplica() throws Throwable {
+        final int unreachablePort;
+        try (var socket = new ServerSocket(0)) {
+            unreachablePort = socket.getLocalPort();
+        }
+
+        // The request times out on the first replica and is resent to the next one
+        try (var server = new InMemoryServer(0); var client = Client.nio(0,
+                new String[] {Integer.toString(unreachablePort), server.getAddress()})) {
+
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+            assertEquals(0, client.lookupAccounts(ids).getLength());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosedClient() throws Throwable {
+        try (var server = new InMemoryServer(0)) {
+            var client = Client.nio(0, new String[] {server.getAddress()});
+            client.close();
+
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+            client.lookupAccounts(ids);
+            assert false;
+        }
+    }
+
+    @Test
+    public void testUnexpectedReply() throws Throwable {
+        try (var server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var address = "127.0.0.1:" + server.getLocalPort();
+            try (var client = Client.nio(0, new String[] {address})) {
+                var ids = new IdBatch(1);
+                ids.add(1, 0);
+
+                // Queued behind the registration
+                var queued = client.lookupAccountsAsync(ids);
+
+                // Replies to the registration with the wrong operation
+                try (var socket = server.accept()) {
+                    reply(socket, MessageHeader.Command.REPLY);
+
+                    assertTransportFailed(queued);
+
+                    // Failed right away instead of being queued
+                    assertTransportFailed(client.lookupAccountsAsync(ids));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEviction() throws Throwable {
+        try (var server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            var address = "127.0.0.1:" + server.getLocalPort();
+            try (var client = Client.nio(0, new String[] {address})) {
+                var ids = new IdBatch(1);
+                ids.add(1, 0);
+
+                var queued = client.lookupAccountsAsync(ids);
+
+                // Evicts the client while registering
+                try (var socket = server.accept()) {
+                    reply(socket, MessageHeader.Command.EVICTION);
+
+                    assertTransportFailed(queued);
+                    assertTransportFailed(client.lookupAccountsAsync(ids));
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the request header and answers it with a {@code LOOKUP_ACCOUNTS} header of the given
+     * command addressed to the same client.
+     */
+    private static void reply(final Socket socket, final byte command) throws IOException {
+        var request = ByteBuffer.wrap(socket.getInputStream()
+                .readNBytes(MessageHeader.Struct.SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+
+        var reply = ByteBuffer.allocate(MessageHeader.Struct.SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        reply.putLong(MessageHeader.Struct.Client, request.getLong(MessageHeader.Struct.Client));
+        reply.putLong(MessageHeader.Struct.Client + 8,
+                request.getLong(MessageHeader.Struct.Client + 8));
+        reply.putInt(MessageHeader.Struct.Request, request.getInt(MessageHeader.Struct.Request));
+        reply.putInt(MessageHeader.Struct.Size, MessageHeader.Struct.SIZE);
+        reply.put(MessageHeader.Struct.Command, command);
+        reply.put(MessageHeader.Struct.Operation, Request.Operations.LOOKUP_ACCOUNTS);
+        reply.put(MessageHeader.Struct.Version, MessageHeader.VERSION);
+        MessageHeader.setChecksums(new Blake3(), reply, ByteBuffer.allocate(0), new long[2]);
+        socket.getOutputStream().write(reply.array());
+    }
+
+    private static void assertTransportFailed(final CompletableFuture<?> future)
+            throws Throwable {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            assert false;
+        } catch (ExecutionException executionException) {
+            var requestException = (RequestException) executionException.getCause();
+            assertEquals(RequestException.Status.TRANSPORT_FAILED, requestException.getStatus());
+        }
+    }
+}
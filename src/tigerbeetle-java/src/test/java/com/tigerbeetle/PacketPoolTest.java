@@ -0,0 +1,330 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests the packet pool with synthetic addresses, no native library required.
+ */
+public class PacketPoolTest {
+
+    private static final class FakeTransport extends Transport {
+        @Override
+        void submit(final Request<?> request, final long packet) {}
+
+        @Override
+        void close() {}
+    }
+
+    @Test
+    public void testFixedSize() {
+        var pool = new PacketPool(new FakeTransport(), 4, 4, false);
+
+        var packets = new HashSet<Long>();
+        for (int i = 0; i < 4; i++) {
+            var packet = pool.acquire();
+            assertNotEquals(0L, packet);
+            assertEquals(0L, packet % PacketPool.PACKET_SIZE);
+            assertTrue(packets.add(packet));
+        }
+
+        var stats = pool.getStats();
+        assertEquals(4, stats.getSize());
+        assertEquals(4, stats.getInUse());
+        assertEquals(0, stats.getGrowCount());
+
+        for (var packet : packets) {
+            pool.release(packet);
+        }
+        assertEquals(0, pool.getStats().getInUse());
+    }
+
+    @Test
+    public void testGrowsWhenWaiting() {
+        var pool = new PacketPool(new FakeTransport(), 2, 8, false);
+        pool.acquire();
+        pool.acquire();
+
+        // No packet is released, so this one waits until the pool grows
+        var packet = pool.acquire();
+        assertNotEquals(0L, packet);
+
+        var stats = pool.getStats();
+        assertEquals(4, stats.getSize());
+        assertEquals(3, stats.getInUse());
+        assertEquals(1, stats.getGrowCount());
+        assertEquals(1, stats.getAcquireWaitCount());
+        assertTrue(stats.getAcquireWaitNanos() >= PacketPool.GROW_WAIT_NANOS);
+    }
+
+    @Test
+    public void testNeverGrowsAboveMax() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 1, 3, false);
+        var packets = new long[3];
+        pool.acquire(packets, 3);
+        assertEquals(3, pool.getStats().getSize());
+
+        var acquired = new CountDownLatch(1);
+        var thread = new Thread(() -> {
+            pool.acquire();
+            acquired.countDown();
+        });
+        thread.start();
+
+        assertTrue(!acquired.await(10, TimeUnit.MILLISECONDS));
+        assertEquals(3, pool.getStats().getSize());
+
+        pool.release(packets[0]);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        thread.join();
+    }
+
+    @Test
+    public void testReservedPackets() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 4, 4, false);
+        pool.setReserved(RequestPriority.INTERACTIVE, 1);
+        pool.setReserved(RequestPriority.NORMAL, 1);
+
+        // Bulk leaves two packets free, normal one, and interactive none
+        var bulk = pool.acquire(RequestPriority.BULK);
+        pool.acquire(RequestPriority.BULK);
+        var acquired = new CountDownLatch(1);
+        var thread = new Thread(() -> {
+            pool.acquire(RequestPriority.BULK);
+            acquired.countDown();
+        });
+        thread.start();
+        assertTrue(!acquired.await(10, TimeUnit.MILLISECONDS));
+
+        pool.acquire(RequestPriority.NORMAL);
+        pool.acquire(RequestPriority.INTERACTIVE);
+        assertEquals(4, pool.getStats().getInUse());
+
+        // Cancelling the reservations lets the bulk request proceed once a packet is released
+        pool.setReserved(RequestPriority.INTERACTIVE, 0);
+        pool.setReserved(RequestPriority.NORMAL, 0);
+        pool.release(bulk);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        thread.join();
+    }
+
+    @Test
+    public void testPriorityHandOff() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 1, 1, false);
+        var packet = pool.acquire(RequestPriority.BULK);
+
+        var order = new ConcurrentLinkedQueue<RequestPriority>();
+        var threads = new ArrayList<Thread>();
+        for (var priority : new RequestPriority[] {RequestPriority.BULK,
+                RequestPriority.NORMAL, RequestPriority.INTERACTIVE}) {
+            var thread = new Thread(() -> {
+                var leased = pool.acquire(priority);
+                order.add(priority);
+                pool.release(leased);
+            });
+            thread.start();
+            threads.add(thread);
+
+            // Waiting in the order of the loop
+            while (thread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(1);
+            }
+        }
+
+        pool.release(packet);
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(RequestPriority.INTERACTIVE, RequestPriority.NORMAL,
+                RequestPriority.BULK), new ArrayList<>(order));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClientReservesTooMany() throws Throwable {
+        try (var client = Client.inMemory(0, 4)) {
+            client.setReservedPackets(RequestPriority.INTERACTIVE, 2);
+            assertEquals(2, client.getReservedPackets(RequestPriority.INTERACTIVE));
+            client.setReservedPackets(RequestPriority.NORMAL, 2);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testClientReservesBulk() throws Throwable {
+        try (var client = Client.inMemory(0, 4)) {
+            client.setReservedPackets(RequestPriority.BULK, 1);
+        }
+    }
+
+    @Test
+    public void testShrinksWhenIdle() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 2, 8, false);
+        var packets = new long[8];
+        pool.acquire(packets, 8);
+        assertEquals(8, pool.getStats().getSize());
+
+        for (var packet : packets) {
+            pool.release(packet);
+        }
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PacketPool.SHRINK_IDLE_NANOS) + 10);
+
+        // Shrinks are checked on release, one slab at a time
+        while (pool.getStats().getSize() > 2) {
+            pool.release(pool.acquire());
+            Thread.sleep(TimeUnit.NANOSECONDS.toMillis(PacketPool.SHRINK_IDLE_NANOS) + 10);
+        }
+
+        var stats = pool.getStats();
+        assertEquals(2, stats.getSize());
+        assertEquals(0, stats.getInUse());
+        assertTrue(stats.getShrinkCount() > 0);
+    }
+
+    @Test
+    public void testShrinksUnderSteadyLoad() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 2, 8, false);
+        var packets = new long[8];
+        pool.acquire(packets, 8);
+
+        // The first packets leased come from the newest slab, they are released last
+        for (int i = packets.length - 1; i >= 0; i--) {
+            pool.release(packets[i]);
+        }
+
+        // Always one packet in use, the packets released last must not keep the newest slab busy
+        var held = pool.acquire();
+        final var end = System.nanoTime() + 3 * PacketPool.SHRINK_IDLE_NANOS;
+        while (pool.getStats().getSize() == 8 && System.nanoTime() < end) {
+            final var next = pool.acquire();
+            pool.release(held);
+            held = next;
+            Thread.sleep(1);
+        }
+
+        assertEquals(2, pool.getStats().getSize());
+        assertEquals(1, pool.getStats().getShrinkCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        var pool = new PacketPool(new FakeTransport(), 1, 1, false);
+        pool.close();
+        pool.acquire();
+    }
+
+    @Test
+    public void testCloseWaitsForRelease() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 1, 1, false);
+        var packet = pool.acquire();
+
+        var thread = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignored) {
+            }
+            pool.release(packet);
+        });
+        thread.start();
+
+        pool.close();
+        assertEquals(0, pool.getStats().getInUse());
+        thread.join();
+    }
+
+    @Test
+    public void testMagazines() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 64, 64, true);
+
+        // Refilled from the shared free list, then leased and returned within the thread
+        var first = pool.acquire();
+        pool.release(first);
+        assertEquals(first, pool.acquire());
+        pool.release(first);
+
+        var stats = pool.getStats();
+        assertTrue(stats.getCached() > 0);
+        assertEquals(stats.getCached(), stats.getInUse());
+
+        // A full magazine returns half of its packets
+        var packets = new long[64];
+        for (int i = 0; i < 64; i++) {
+            packets[i] = pool.acquire();
+        }
+        for (var packet : packets) {
+            pool.release(packet);
+        }
+        assertTrue(pool.getStats().getCached() <= PacketPool.MAGAZINE_SIZE);
+
+        pool.close();
+        assertEquals(0, pool.getStats().getInUse());
+    }
+
+    @Test
+    public void testMagazinesAreReclaimed() throws Throwable {
+        var pool = new PacketPool(new FakeTransport(), 4, 4, true);
+
+        // Leaves packets in the magazine of a terminated thread
+        var thread = new Thread(() -> pool.release(pool.acquire()));
+        thread.start();
+        thread.join();
+        assertTrue(pool.getStats().getCached() > 0);
+
+        // All packets are still available to other threads, within the limit
+        var packets = new long[4];
+        for (int i = 0; i < 4; i++) {
+            packets[i] = pool.acquire();
+        }
+
+        var stats = pool.getStats();
+        assertEquals(4, stats.getSize());
+        assertEquals(4, stats.getInUse());
+        assertEquals(0, stats.getGrowCount());
+
+        for (var packet : packets) {
+            pool.release(packet);
+        }
+        pool.close();
+    }
+
+    @Test
+    public void testClientStats() throws Throwable {
+        try (var client = Client.inMemory(0, 4)) {
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+            client.lookupAccounts(ids);
+
+            var stats = client.getPacketPoolStats();
+            assertEquals(4, stats.getSize());
+            assertEquals(4, stats.getMinSize());
+            assertEquals(4, stats.getMaxSize());
+
+            // Only packets cached by threads, if enabled, are still in use
+            assertEquals(stats.getCached(), stats.getInUse());
+        }
+    }
+
+    @Test
+    public void testAcquireDeadline() {
+        var pool = new PacketPool(new FakeTransport(), 1, 1, false);
+        final var packet = pool.acquire();
+
+        final var start = System.nanoTime();
+        final var deadline = start + TimeUnit.MILLISECONDS.toNanos(20);
+        assertEquals(0L, pool.acquire(RequestPriority.NORMAL, true, deadline));
+        assertTrue(System.nanoTime() - deadline >= 0);
+
+        // Already passed, even with a free packet
+        pool.release(packet);
+        assertEquals(0L, pool.acquire(RequestPriority.NORMAL, true, start));
+        assertNotEquals(0L, pool.acquire(RequestPriority.NORMAL, true,
+                System.nanoTime() + TimeUnit.SECONDS.toNanos(5)));
+    }
+}
@@ -0,0 +1,195 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link PendingTransferScheduler} through {@link Client#inMemory}, no TigerBeetle
+ * instance required.
+ */
+public class PendingTransferSchedulerTest {
+
+    private static final long TIMEOUT = TimeUnit.MINUTES.toNanos(1);
+
+    private static final class Recorder implements PendingTransferScheduler.Listener {
+
+        final List<long[]> results = new ArrayList<>();
+        final List<CreateTransferResult> values = new ArrayList<>();
+        final CountDownLatch latch;
+
+        Recorder(final int expected) {
+            this.latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public synchronized void onResult(final long pendingIdLsb, final long pendingIdMsb,
+                final int flags, final CreateTransferResult result) {
+            results.add(new long[] {pendingIdLsb, flags});
+            values.add(result);
+            latch.countDown();
+        }
+
+        @Override
+        public void onFailure(final long pendingIdLsb, final long pendingIdMsb, final int flags,
+                final Throwable exception) {
+            throw new AssertionError(exception, "Unexpected failure");
+        }
+
+        synchronized CreateTransferResult resultOf(final long pendingIdLsb) {
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i)[0] == pendingIdLsb)
+                    return values.get(i);
+            }
+            return null;
+        }
+    }
+
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = Client.inMemory(0);
+
+        TestLedger.createAccounts(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+    }
+
+    private void createPending(final long firstId, final int count, final long timeout)
+            throws RequestException {
+        var transfers = new TransferBatch(count);
+        for (int i = 0; i < count; i++) {
+            transfers.add();
+            transfers.setId(firstId + i, 0);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(2, 0);
+            transfers.setLedger(TestLedger.LEDGER);
+            transfers.setCode(1);
+            transfers.setFlags(TransferFlags.PENDING);
+            transfers.setTimeout(timeout);
+            transfers.setAmount(10);
+        }
+        assertEquals(0, client.createTransfers(transfers).getLength());
+    }
+
+    private long[] balances() throws RequestException {
+        var ids = new IdBatch(1);
+        ids.add(2, 0);
+        var account = client.lookupAccounts(ids);
+        assertTrue(account.next());
+        return new long[] {account.getCreditsPending(), account.getCreditsPosted()};
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFlags() throws Throwable {
+        try (var scheduler = new PendingTransferScheduler(client, new Recorder(0), 16, 0)) {
+            scheduler.track(1, 0, TIMEOUT, TransferFlags.PENDING);
+        }
+    }
+
+    @Test
+    public void testDecisions() throws Throwable {
+        final var count = 100;
+        createPending(1, count, TIMEOUT);
+
+        var recorder = new Recorder(count);
+        var requests = new AtomicInteger();
+        client.setRequestTimingListener(timing -> {
+            if (timing.getOperation() == RequestTiming.Operation.CREATE_TRANSFERS)
+                requests.incrementAndGet();
+        }, 1.0);
+
+        try (var scheduler = new PendingTransferScheduler(client, recorder, count, 16, 0,
+                TimeUnit.MILLISECONDS.toNanos(50))) {
+            for (long id = 1; id <= count; id++) {
+                assertTrue(scheduler.track(id, 0, TIMEOUT, TransferFlags.VOID_PENDING_TRANSFER));
+            }
+            assertFalse(scheduler.track(1, 0, TIMEOUT, TransferFlags.VOID_PENDING_TRANSFER));
+            assertEquals(count, scheduler.getTracked());
+
+            for (long id = 1; id <= count; id++) {
+                assertTrue(id % 2 == 0 ? scheduler.post(id, 0) : scheduler.voidPending(id, 0));
+            }
+
+            // Already decided
+            assertFalse(scheduler.post(1, 0));
+            assertEquals(0, scheduler.getTracked());
+        }
+
+        assertEquals(count, recorder.results.size());
+        for (var result : recorder.values) {
+            assertEquals(CreateTransferResult.Ok, result);
+        }
+        assertEquals(0, balances()[0]);
+        assertEquals(10 * count / 2, balances()[1]);
+
+        // Full batches, and what was left at the end of a tick
+        assertTrue(requests.get() <= 8);
+    }
+
+    @Test
+    public void testDeadline() throws Throwable {
+        createPending(1, 2, TimeUnit.MILLISECONDS.toNanos(300));
+
+        var recorder = new Recorder(1);
+        try (var scheduler = new PendingTransferScheduler(client, recorder, 16,
+                TimeUnit.MILLISECONDS.toNanos(250))) {
+            scheduler.track(1, 0, TimeUnit.MILLISECONDS.toNanos(300),
+                    TransferFlags.POST_PENDING_TRANSFER);
+            scheduler.track(2, 0, TIMEOUT, TransferFlags.POST_PENDING_TRANSFER);
+
+            assertTrue(recorder.latch.await(5, TimeUnit.SECONDS));
+            assertEquals(1, scheduler.getTracked());
+        }
+
+        assertEquals(CreateTransferResult.Ok, recorder.resultOf(1));
+        assertEquals(TransferFlags.POST_PENDING_TRANSFER, recorder.results.get(0)[1]);
+        assertEquals(10, balances()[1]);
+    }
+
+    @Test
+    public void testFinalResults() throws Throwable {
+        createPending(1, 1, TIMEOUT);
+        createPending(2, 1, 1);
+
+        // Posted behind the scheduler's back
+        var transfers = new TransferBatch(1);
+        transfers.add();
+        transfers.setId(100, 0);
+        transfers.setPendingId(1, 0);
+        transfers.setFlags(TransferFlags.POST_PENDING_TRANSFER);
+        assertEquals(0, client.createTransfers(transfers).getLength());
+
+        var recorder = new Recorder(2);
+        try (var scheduler = new PendingTransferScheduler(client, recorder, 16, 0)) {
+            scheduler.track(1, 0, TIMEOUT, TransferFlags.VOID_PENDING_TRANSFER);
+            scheduler.track(2, 0, TIMEOUT, TransferFlags.VOID_PENDING_TRANSFER);
+            scheduler.voidPending(1, 0);
+            scheduler.post(2, 0);
+        }
+
+        // Reported once, never retried
+        assertEquals(2, recorder.results.size());
+        assertEquals(CreateTransferResult.PendingTransferAlreadyPosted, recorder.resultOf(1));
+        assertEquals(CreateTransferResult.PendingTransferExpired, recorder.resultOf(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws Throwable {
+        var scheduler = new PendingTransferScheduler(client, new Recorder(0), 16, 0);
+        scheduler.close();
+        scheduler.track(1, 0, TIMEOUT, TransferFlags.POST_PENDING_TRANSFER);
+    }
+}
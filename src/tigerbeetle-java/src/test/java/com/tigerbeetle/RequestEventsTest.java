@@ -0,0 +1,161 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class RequestEventsTest {
+
+    @Test
+    public void testBlockingRequestEvents() throws Throwable {
+
+        var client = new Client(0, 1);
+        var batch = new TransferBatch(2);
+        batch.add();
+        batch.add();
+
+        var request = BlockingRequest.createTransfers(client, batch);
+
+        try (var recording = startRecording()) {
+
+            request.beginReply();
+            request.endRequest(Request.Operations.CREATE_TRANSFERS,
+                    ByteBuffer.allocateDirect(CreateTransferResultBatch.Struct.SIZE), 1,
+                    RequestException.Status.OK);
+            var result = request.waitForResult();
+            assertEquals(1, result.getLength());
+
+            var events = stopRecording(recording);
+
+            assertEvent(events, "com.tigerbeetle.Reply", Request.Operations.CREATE_TRANSFERS, 2);
+            assertEvent(events, "com.tigerbeetle.Memcpy", Request.Operations.CREATE_TRANSFERS, 2);
+            assertEvent(events, "com.tigerbeetle.Dispatch", Request.Operations.CREATE_TRANSFERS,
+                    2);
+
+            var memcpy = filter(events, "com.tigerbeetle.Memcpy").get(0);
+            assertEquals(CreateTransferResultBatch.Struct.SIZE, memcpy.getInt("size"));
+        }
+    }
+
+    @Test
+    public void testAsyncRequestEvents() throws Throwable {
+
+        var client = new Client(0, 1);
+        var batch = new IdBatch(1);
+        batch.add();
+
+        var request = AsyncRequest.lookupAccounts(client, batch);
+
+        try (var recording = startRecording()) {
+
+            request.beginReply();
+            request.endRequest(Request.Operations.LOOKUP_ACCOUNTS, ByteBuffer.allocateDirect(0),
+                    1, RequestException.Status.OK);
+            var result = request.getFuture().get();
+            assertEquals(0, result.getLength());
+
+            var events = stopRecording(recording);
+
+            assertEvent(events, "com.tigerbeetle.Reply", Request.Operations.LOOKUP_ACCOUNTS, 1);
+            assertEvent(events, "com.tigerbeetle.Dispatch", Request.Operations.LOOKUP_ACCOUNTS, 1);
+        }
+    }
+
+    @Test
+    public void testFailedRequestEvents() throws Throwable {
+
+        var client = new Client(0, 1);
+        var batch = new AccountBatch(1);
+        batch.add();
+
+        var request = BlockingRequest.createAccounts(client, batch);
+
+        try (var recording = startRecording()) {
+
+            request.beginReply();
+            request.endRequest(Request.Operations.CREATE_ACCOUNTS, null, 1,
+                    RequestException.Status.TOO_MUCH_DATA);
+
+            try {
+                request.waitForResult();
+                assert false;
+            } catch (RequestException requestException) {
+                assertEquals(RequestException.Status.TOO_MUCH_DATA, requestException.getStatus());
+            }
+
+            var events = stopRecording(recording);
+
+            var replies = filter(events, "com.tigerbeetle.Reply");
+            assertEquals(1, replies.size());
+            assertEquals(RequestException.Status.TOO_MUCH_DATA, replies.get(0).getByte("status"));
+
+            // No memcpy happens for failed requests
+            assertTrue(filter(events, "com.tigerbeetle.Memcpy").isEmpty());
+        }
+    }
+
+    @Test
+    public void testDisabledEvents() throws Throwable {
+
+        var client = new Client(0, 1);
+        var batch = new IdBatch(1);
+        batch.add();
+
+        var request = BlockingRequest.lookupTransfers(client, batch);
+
+        request.beginReply();
+        request.endRequest(Request.Operations.LOOKUP_TRANSFERS, ByteBuffer.allocateDirect(0), 1,
+                RequestException.Status.OK);
+
+        var result = request.waitForResult();
+        assertEquals(0, result.getLength());
+    }
+
+    private static Recording startRecording() {
+        var recording = new Recording();
+        recording.enable("com.tigerbeetle.PacketAcquire").withoutThreshold();
+        recording.enable("com.tigerbeetle.Submit").withoutThreshold();
+        recording.enable("com.tigerbeetle.Reply").withoutThreshold();
+        recording.enable("com.tigerbeetle.Memcpy").withoutThreshold();
+        recording.enable("com.tigerbeetle.Dispatch").withoutThreshold();
+        recording.start();
+        return recording;
+    }
+
+    private static List<RecordedEvent> stopRecording(final Recording recording)
+            throws IOException {
+        recording.stop();
+
+        var file = Files.createTempFile("tigerbeetle", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> filter(final List<RecordedEvent> events,
+            final String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    private static void assertEvent(final List<RecordedEvent> events, final String name,
+            final byte operation, final int eventCount) {
+        var filtered = filter(events, name);
+        assertEquals(1, filtered.size());
+
+        var event = filtered.get(0);
+        assertEquals(operation, event.getByte("operation"));
+        assertEquals(eventCount, event.getInt("eventCount"));
+    }
+}
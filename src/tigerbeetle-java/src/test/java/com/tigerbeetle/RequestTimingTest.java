@@ -0,0 +1,213 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.Test;
+
+public class RequestTimingTest {
+
+    @Test
+    public void testBlockingRequestTiming() throws Throwable {
+
+        var timings = new ConcurrentLinkedQueue<RequestTiming>();
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timings::add, 1.0);
+
+        var batch = new TransferBatch(2);
+        batch.add();
+        batch.add();
+
+        var request = BlockingRequest.createTransfers(client, batch);
+        simulateSubmit(client, request);
+
+        request.endRequest(Request.Operations.CREATE_TRANSFERS,
+                ByteBuffer.allocateDirect(CreateTransferResultBatch.Struct.SIZE), 1,
+                RequestException.Status.OK);
+        request.waitForResult();
+
+        assertEquals(1, timings.size());
+
+        var timing = timings.poll();
+        assertEquals(RequestTiming.Operation.CREATE_TRANSFERS, timing.getOperation());
+        assertEquals(2, timing.getLength());
+        assertEquals(RequestException.Status.OK, timing.getStatus());
+        assertDurations(timing);
+    }
+
+    @Test
+    public void testAsyncRequestTiming() throws Throwable {
+
+        var timings = new ConcurrentLinkedQueue<RequestTiming>();
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timings::add, 1.0);
+
+        var batch = new IdBatch(1);
+        batch.add();
+
+        var request = AsyncRequest.lookupAccounts(client, batch);
+
+        // Completing before the submitting thread returns from the native call
+        var timing = new RequestTiming(client, Request.Operations.LOOKUP_ACCOUNTS, 1,
+                System.nanoTime());
+        request.setTiming(timing);
+        timing.packetAcquired();
+
+        request.endRequest(Request.Operations.LOOKUP_ACCOUNTS, ByteBuffer.allocateDirect(0), 1,
+                RequestException.Status.OK);
+        request.getFuture().get();
+
+        // The listener is only notified once both sides are done
+        assertTrue(timings.isEmpty());
+        timing.submitted();
+        assertEquals(1, timings.size());
+
+        assertEquals(RequestTiming.Operation.LOOKUP_ACCOUNTS, timings.peek().getOperation());
+        assertTrue(timings.peek().getTotalNanos() >= 0);
+    }
+
+    @Test
+    public void testFailedRequestTiming() throws Throwable {
+
+        var timings = new ConcurrentLinkedQueue<RequestTiming>();
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timings::add, 0.5);
+
+        var batch = new AccountBatch(1);
+        batch.add();
+
+        var request = BlockingRequest.createAccounts(client, batch);
+        simulateSubmit(client, request);
+
+        request.endRequest(Request.Operations.CREATE_ACCOUNTS, null, 1,
+                RequestException.Status.TOO_MUCH_DATA);
+
+        try {
+            request.waitForResult();
+            assert false;
+        } catch (RequestException requestException) {
+            assertEquals(RequestException.Status.TOO_MUCH_DATA, requestException.getStatus());
+        }
+
+        var timing = timings.poll();
+        assertNotNull(timing);
+        assertEquals(RequestException.Status.TOO_MUCH_DATA, timing.getStatus());
+        assertDurations(timing);
+        assertTrue(timing.toString().contains("CREATE_ACCOUNTS"));
+    }
+
+    @Test
+    public void testExpiredRequestTiming() throws Throwable {
+
+        var timings = new ConcurrentLinkedQueue<RequestTiming>();
+        try (var client = Client.inMemory(0)) {
+            client.setRequestTimingListener(timings::add, 1.0);
+
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+            try {
+                client.lookupAccounts(ids, Duration.ZERO);
+                assert false;
+            } catch (RequestException requestException) {
+                assertEquals(RequestException.Status.DEADLINE_EXCEEDED,
+                        requestException.getStatus());
+            }
+
+            // Never submitted
+            var timing = timings.poll();
+            assertNotNull(timing);
+            assertEquals(RequestException.Status.DEADLINE_EXCEEDED, timing.getStatus());
+            assertDurations(timing);
+            assertEquals(0, timing.getSubmitNanos());
+            assertEquals(0, timing.getReplyNanos());
+            assertEquals(0, timing.getMemcpyNanos());
+        }
+    }
+
+    @Test
+    public void testRejectedRequestTiming() throws Throwable {
+
+        var timings = new ConcurrentLinkedQueue<RequestTiming>();
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timings::add, 1.0);
+
+        // Without a transport, as if closed after acquiring a packet
+        var ids = new IdBatch(1);
+        ids.add(1, 0);
+        try {
+            client.lookupAccountsAsync(ids);
+            assert false;
+        } catch (IllegalStateException exception) {
+            assertEquals(1, timings.size());
+        }
+
+        var timing = timings.poll();
+        assertEquals(RequestTiming.Operation.LOOKUP_ACCOUNTS, timing.getOperation());
+        assertEquals(RequestException.Status.CLIENT_CLOSED, timing.getStatus());
+        assertDurations(timing);
+        assertEquals(0, timing.getReplyNanos());
+    }
+
+    @Test
+    public void testListenerRemoved() throws Throwable {
+
+        var timings = new ConcurrentLinkedQueue<RequestTiming>();
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timings::add, 1.0);
+        client.setRequestTimingListener(null, 1.0);
+
+        var timing = new RequestTiming(client, Request.Operations.LOOKUP_TRANSFERS, 1,
+                System.nanoTime());
+        timing.submitted();
+        timing.delivered();
+
+        assertTrue(timings.isEmpty());
+    }
+
+    @Test
+    public void testOperations() {
+        assertEquals(RequestTiming.Operation.CREATE_ACCOUNTS,
+                RequestTiming.Operation.fromValue(Request.Operations.CREATE_ACCOUNTS));
+        assertEquals(RequestTiming.Operation.CREATE_TRANSFERS,
+                RequestTiming.Operation.fromValue(Request.Operations.CREATE_TRANSFERS));
+        assertEquals(RequestTiming.Operation.LOOKUP_ACCOUNTS,
+                RequestTiming.Operation.fromValue(Request.Operations.LOOKUP_ACCOUNTS));
+        assertEquals(RequestTiming.Operation.LOOKUP_TRANSFERS,
+                RequestTiming.Operation.fromValue(Request.Operations.LOOKUP_TRANSFERS));
+        assertEquals(RequestTiming.Operation.UNKNOWN, RequestTiming.Operation.fromValue((byte) 99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroSamplingRate() {
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timing -> {
+        }, 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSamplingRate() {
+        var client = new Client(0, 1);
+        client.setRequestTimingListener(timing -> {
+        }, 1.5);
+    }
+
+    private static void simulateSubmit(final Client client, final Request<?> request) {
+        var timing = new RequestTiming(client, request.getOperation(), request.getRequestLen(),
+                System.nanoTime());
+        request.setTiming(timing);
+        timing.packetAcquired();
+        timing.submitted();
+    }
+
+    private static void assertDurations(final RequestTiming timing) {
+        assertTrue(timing.getPacketWaitNanos() >= 0);
+        assertTrue(timing.getSubmitNanos() >= 0);
+        assertTrue(timing.getReplyNanos() >= 0);
+        assertTrue(timing.getMemcpyNanos() >= 0);
+        assertTrue(timing.getDispatchNanos() >= 0);
+        assertTrue(timing.getTotalNanos() >= timing.getReplyNanos());
+    }
+}
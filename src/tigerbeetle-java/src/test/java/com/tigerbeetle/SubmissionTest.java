@@ -0,0 +1,122 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+
+/**
+ * Tests vectored submissions through {@link Client#inMemory}, no TigerBeetle instance required.
+ */
+public class SubmissionTest {
+
+    @Test
+    public void testMixedOperations() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            var accounts = TestLedger.accounts();
+            var transfers = new TransferBatch(1);
+            transfers.add();
+            transfers.setId(1, 0);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(2, 0);
+            transfers.setLedger(TestLedger.LEDGER);
+            transfers.setCode(1);
+            transfers.setAmount(100);
+
+            var ids = new IdBatch(1);
+            ids.add(1, 0);
+
+            var submission = client.newSubmission();
+            var createAccounts = submission.createAccounts(accounts);
+            var createTransfers = submission.createTransfers(transfers);
+            var lookupTransfers = submission.lookupTransfers(ids);
+            assertEquals(3, submission.size());
+
+            submission.submit();
+            assertEquals(0, submission.size());
+
+            assertEquals(0, createAccounts.get().getLength());
+            assertEquals(0, createTransfers.get().getLength());
+
+            var lookup = lookupTransfers.get();
+            assertTrue(lookup.next());
+            assertEquals(100, lookup.getAmount());
+            assertFalse(lookup.next());
+
+            // Reused after being submitted
+            var lookupAccounts = submission.lookupAccounts(ids);
+            submission.submit();
+            var account = lookupAccounts.get();
+            assertTrue(account.next());
+            assertEquals(100, account.getDebitsPosted());
+        }
+    }
+
+    @Test
+    public void testLargerThanMaxConcurrency() throws Throwable {
+        final var maxConcurrency = 4;
+        final var count = 3 * maxConcurrency + 1;
+
+        try (var client = Client.inMemory(0, maxConcurrency)) {
+            var submission = client.newSubmission();
+            var futures = new ArrayList<CompletableFuture<CreateAccountResultBatch>>();
+            for (long id = 1; id <= count; id++) {
+                var accounts = new AccountBatch(1);
+                accounts.add();
+                accounts.setId(id, 0);
+                accounts.setLedger(TestLedger.LEDGER);
+                accounts.setCode(1);
+                futures.add(submission.createAccounts(accounts));
+            }
+
+            submission.submit();
+
+            for (var future : futures) {
+                assertEquals(0, future.get().getLength());
+            }
+
+            var ids = new IdBatch(count);
+            for (long id = 1; id <= count; id++) {
+                ids.add(id, 0);
+            }
+            assertEquals(count, client.lookupAccounts(ids).getLength());
+        }
+    }
+
+    @Test
+    public void testEmpty() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            var submission = client.newSubmission();
+            submission.submit();
+            assertEquals(0, submission.size());
+        }
+    }
+
+    @Test
+    public void testClosedClient() throws Throwable {
+        var client = Client.inMemory(0);
+        var submission = client.newSubmission();
+        var ids = new IdBatch(1);
+        ids.add(1, 0);
+        var future = submission.lookupAccounts(ids);
+
+        client.close();
+
+        try {
+            submission.submit();
+            assert false;
+        } catch (IllegalStateException exception) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+
+        try {
+            future.get();
+            assert false;
+        } catch (ExecutionException exception) {
+            assertTrue(exception.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The accounts and transfers shared by the tests running against a ledger, either
+ * {@link Client#inMemory} or an {@link InMemoryServer}.
+ */
+final class TestLedger {
+
+    static final int LEDGER = 720;
+
+    private TestLedger() {}
+
+    /**
+     * The accounts 1 and 2, both on {@link #LEDGER}.
+     */
+    static AccountBatch accounts() {
+        var accounts = new AccountBatch(2);
+        for (long id = 1; id <= 2; id++) {
+            accounts.add();
+            accounts.setId(id, 0);
+            accounts.setLedger(LEDGER);
+            accounts.setCode(1);
+        }
+        return accounts;
+    }
+
+    static void createAccounts(final Client client) throws RequestException {
+        assertEquals(0, client.createAccounts(accounts()).getLength());
+    }
+
+    /**
+     * {@code count} transfers of 1 from account 1 to account 2, with ids from {@code firstId}.
+     */
+    static TransferBatch transfers(final long firstId, final int count) {
+        var transfers = new TransferBatch(count);
+        for (int i = 0; i < count; i++) {
+            transfers.add();
+            transfers.setId(firstId + i, 0);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(2, 0);
+            transfers.setLedger(LEDGER);
+            transfers.setCode(1);
+            transfers.setAmount(1);
+        }
+        return transfers;
+    }
+
+    /**
+     * Gets the credits posted to account 2.
+     */
+    static long creditsPosted(final Client client) throws RequestException {
+        var ids = new IdBatch(1);
+        ids.add(2, 0);
+        var account = client.lookupAccounts(ids);
+        assertTrue(account.next());
+        return account.getCreditsPosted();
+    }
+}
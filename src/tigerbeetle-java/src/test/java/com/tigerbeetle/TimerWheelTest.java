@@ -0,0 +1,140 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class TimerWheelTest {
+
+    private static final class Recorder implements TimerWheel.Expired {
+
+        final List<long[]> expired = new ArrayList<>();
+        TimerWheel wheel;
+
+        @Override
+        public void onExpired(final long idLsb, final long idMsb, final short flags) {
+            expired.add(new long[] {idLsb, idMsb, flags, wheel.getNow()});
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new TimerWheel(0, 0);
+    }
+
+    @Test
+    public void testExpiry() {
+        var wheel = new TimerWheel(16, 0);
+        var recorder = new Recorder();
+        recorder.wheel = wheel;
+
+        assertTrue(wheel.add(1, 0, 10, (short) 4));
+        assertTrue(wheel.add(2, 0, 5, (short) 8));
+        assertTrue(wheel.add(3, 7, 300, (short) 4));
+        assertFalse(wheel.add(1, 0, 20, (short) 4));
+        assertEquals(3, wheel.size());
+
+        wheel.advance(9, recorder);
+        assertEquals(1, recorder.expired.size());
+        assertEquals(2, recorder.expired.get(0)[0]);
+        assertEquals(8, recorder.expired.get(0)[2]);
+        assertEquals(5, recorder.expired.get(0)[3]);
+
+        wheel.advance(299, recorder);
+        assertEquals(2, recorder.expired.size());
+        assertEquals(10, recorder.expired.get(1)[3]);
+
+        wheel.advance(300, recorder);
+        assertEquals(3, recorder.expired.size());
+        assertEquals(3, recorder.expired.get(2)[0]);
+        assertEquals(7, recorder.expired.get(2)[1]);
+        assertEquals(300, recorder.expired.get(2)[3]);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testDueOnNextTick() {
+        var wheel = new TimerWheel(4, 1_000);
+        var recorder = new Recorder();
+        recorder.wheel = wheel;
+
+        wheel.add(1, 0, 10, (short) 4);
+        wheel.advance(1_001, recorder);
+        assertEquals(1, recorder.expired.size());
+        assertEquals(1_001, recorder.expired.get(0)[3]);
+    }
+
+    @Test
+    public void testRemove() {
+        var wheel = new TimerWheel(4, 0);
+        var recorder = new Recorder();
+        recorder.wheel = wheel;
+
+        wheel.add(1, 0, 10, (short) 4);
+        wheel.add(2, 0, 10, (short) 8);
+        wheel.add(3, 0, 10, (short) 4);
+        assertEquals(8, wheel.remove(2, 0));
+        assertEquals(-1, wheel.remove(2, 0));
+        assertEquals(4, wheel.remove(1, 0));
+
+        // The slots are reused
+        wheel.add(4, 0, 10, (short) 4);
+        wheel.add(5, 0, 10, (short) 4);
+        wheel.add(6, 0, 10, (short) 4);
+        assertEquals(4, wheel.size());
+
+        wheel.advance(10, recorder);
+        assertEquals(4, recorder.expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() {
+        var wheel = new TimerWheel(2, 0);
+        wheel.add(1, 0, 10, (short) 4);
+        wheel.add(2, 0, 10, (short) 4);
+        wheel.add(3, 0, 10, (short) 4);
+    }
+
+    @Test
+    public void testRandom() {
+        final var count = 2_000;
+        final var random = new Random(42);
+        final var start = (1L << 32) - 100_000;
+        var wheel = new TimerWheel(count, start);
+        var recorder = new Recorder();
+        recorder.wheel = wheel;
+
+        // Deadlines across all levels and beyond the wheel, some removed
+        final var deadlines = new long[count];
+        for (int i = 0; i < count; i++) {
+            final var level = random.nextInt(5);
+            deadlines[i] = start + 1 + (long) (random.nextDouble() * (1L << (8 * level + 8)));
+            assertTrue(wheel.add(i, -i, deadlines[i], (short) 4));
+        }
+
+        var removed = 0;
+        for (int i = 0; i < count; i += 7) {
+            assertEquals(4, wheel.remove(i, -i));
+            deadlines[i] = -1;
+            removed++;
+        }
+
+        var tick = start;
+        while (wheel.size() > 0) {
+            tick += 1 + (random.nextLong() & ((1L << 28) - 1));
+            wheel.advance(tick, recorder);
+        }
+
+        assertEquals(count - removed, recorder.expired.size());
+        for (var expired : recorder.expired) {
+            final var i = (int) expired[0];
+            assertEquals(-i, expired[1]);
+            assertEquals(deadlines[i], expired[3]);
+        }
+    }
+}
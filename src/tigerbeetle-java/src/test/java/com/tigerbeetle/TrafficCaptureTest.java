@@ -0,0 +1,132 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TrafficCapture} and the {@link TrafficReplay} through {@link Client#inMemory},
+ * no TigerBeetle instance required.
+ */
+public class TrafficCaptureTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tigerbeetle-capture");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testCaptureAndReplay() throws Throwable {
+        final var file = directory.resolve("traffic.capture");
+
+        try (var client = Client.inMemory(0); var capture = new TrafficCapture(file)) {
+            client.setTrafficCapture(capture);
+            client.createAccounts(TestLedger.accounts());
+
+            var futures = new ArrayList<CompletableFuture<?>>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(client.createTransfersAsync(TestLedger.transfers(1 + i * 10, 10)));
+            }
+            for (var future : futures) {
+                future.get();
+            }
+
+            var submission = client.newSubmission();
+            var submitted = submission.createTransfers(TestLedger.transfers(1_000, 5));
+            submission.submit();
+            submitted.get();
+            assertEquals(205, TestLedger.creditsPosted(client));
+
+            // Not captured anymore
+            client.setTrafficCapture(null);
+            client.createTransfers(TestLedger.transfers(2_000, 5));
+            assertEquals(0, capture.getDropped());
+        }
+
+        var replay = new TrafficReplay(file);
+        assertEquals(1 + 20 + 1 + 1, replay.getRequests());
+
+        try (var client = Client.inMemory(0)) {
+            var report = replay.replay(client, 100.0);
+            assertEquals(23, report.getRequests());
+            assertEquals(0, report.getErrors());
+            assertTrue(report.getReplayedNanos(0.5) > 0);
+            assertTrue(report.getCapturedNanos(0.5) > 0);
+            assertTrue(report.getReplayedNanos(1.0) >= report.getReplayedNanos(0.99));
+            assertEquals(205, TestLedger.creditsPosted(client));
+        }
+    }
+
+    @Test
+    public void testDropped() throws Throwable {
+        final var file = directory.resolve("traffic.capture");
+
+        try (var client = Client.inMemory(0);
+                var capture = new TrafficCapture(file, 1024)) {
+            client.setTrafficCapture(capture);
+            client.createAccounts(TestLedger.accounts());
+
+            // Larger than the ring, dropped with its reply
+            client.createTransfers(TestLedger.transfers(1, 10));
+            assertEquals(1, capture.getDropped());
+        }
+
+        var replay = new TrafficReplay(file);
+        assertEquals(1, replay.getRequests());
+    }
+
+    @Test
+    public void testTruncated() throws Throwable {
+        final var file = directory.resolve("traffic.capture");
+
+        try (var client = Client.inMemory(0); var capture = new TrafficCapture(file)) {
+            client.setTrafficCapture(capture);
+            client.createAccounts(TestLedger.accounts());
+            client.createTransfers(TestLedger.transfers(1, 10));
+        }
+
+        // As if the process died while writing the last reply
+        final var bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+
+        var replay = new TrafficReplay(file);
+        assertEquals(2, replay.getRequests());
+        try (var client = Client.inMemory(0)) {
+            var report = replay.replay(client, 1_000.0);
+            assertEquals(0, report.getErrors());
+            assertEquals(10, TestLedger.creditsPosted(client));
+        }
+    }
+
+    @Test
+    public void testInvalidFile() throws Throwable {
+        final var file = directory.resolve("traffic.capture");
+        Files.write(file, new byte[64]);
+
+        try {
+            new TrafficReplay(file);
+            fail();
+        } catch (IOException exception) {
+            assertEquals("Not a capture file: " + file, exception.getMessage());
+        }
+    }
+}
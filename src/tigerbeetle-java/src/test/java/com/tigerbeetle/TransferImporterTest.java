@@ -0,0 +1,206 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TransferImporter} through {@link Client#inMemory}, no TigerBeetle instance
+ * required.
+ */
+public class TransferImporterTest {
+
+    private Path directory;
+    private Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("tigerbeetle-import");
+        client = Client.inMemory(0);
+
+        TestLedger.createAccounts(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Writes {@code count} transfers, every seventh crediting a missing account.
+     */
+    private Path writeBinary(final int count) throws IOException {
+        final var buffer = ByteBuffer.allocate(count * TransferBatch.Struct.SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            final var row = i * TransferBatch.Struct.SIZE;
+            buffer.putLong(row + TransferBatch.Struct.Id, i + 1);
+            buffer.putLong(row + TransferBatch.Struct.DebitAccountId, 1);
+            buffer.putLong(row + TransferBatch.Struct.CreditAccountId, i % 7 == 0 ? 999 : 2);
+            buffer.putInt(row + TransferBatch.Struct.Ledger, TestLedger.LEDGER);
+            buffer.putShort(row + TransferBatch.Struct.Code, (short) 1);
+            buffer.putLong(row + TransferBatch.Struct.Amount, 1);
+        }
+
+        final var input = directory.resolve("transfers.bin");
+        Files.write(input, buffer.array());
+        return input;
+    }
+
+    @Test
+    public void testBinary() throws Throwable {
+        final var count = 1_000;
+        final var input = writeBinary(count);
+        final var rejects = directory.resolve("rejects.csv");
+        final var checkpoint = directory.resolve("checkpoint");
+
+        var importer = new TransferImporter(client, 64, 4, 3);
+        var summary = importer.importFile(input, TransferImporter.Format.BINARY, rejects,
+                checkpoint);
+
+        final var rejected = (count + 6) / 7;
+        assertEquals(0, summary.getStartOffset());
+        assertEquals(count - rejected, summary.getCreated());
+        assertEquals(rejected, summary.getRejected());
+        assertEquals(count - rejected, TestLedger.creditsPosted(client));
+
+        // In input order
+        final var lines = Files.readAllLines(rejects);
+        assertEquals(rejected, lines.size());
+        for (int i = 0; i < rejected; i++) {
+            final var index = i * 7;
+            assertEquals((index * TransferBatch.Struct.SIZE) + "," + (index + 1)
+                    + ",CreditAccountNotFound", lines.get(i));
+        }
+
+        // Importing again is a no-op
+        summary = importer.importFile(input, TransferImporter.Format.BINARY, rejects, checkpoint);
+        assertEquals(0, summary.getCreated() + summary.getExisting() + summary.getRejected());
+        assertEquals(rejected, Files.readAllLines(rejects).size());
+    }
+
+    @Test
+    public void testResume() throws Throwable {
+        final var count = 1_000;
+        final var input = writeBinary(count);
+        final var rejects = directory.resolve("rejects.csv");
+        final var checkpoint = directory.resolve("checkpoint");
+
+        var importer = new TransferImporter(client, 64, 4, 2);
+        importer.importFile(input, TransferImporter.Format.BINARY, rejects, checkpoint);
+        final var expected = Files.readAllLines(rejects);
+
+        // As if crashed after the first 5 chunks, with some rejects written past them
+        final var records = 5 * 64;
+        final var offset = records * TransferBatch.Struct.SIZE;
+        final var prefix = (records + 6) / 7;
+        var rejectsLength = 0L;
+        for (var line : expected.subList(0, prefix)) {
+            rejectsLength += line.length() + 1;
+        }
+        Files.write(checkpoint, List.of("tigerbeetle-import-1",
+                Files.size(input) + " " + offset + " " + rejectsLength));
+
+        var summary = importer.importFile(input, TransferImporter.Format.BINARY, rejects,
+                checkpoint);
+        assertEquals(offset, summary.getStartOffset());
+        assertEquals(0, summary.getCreated());
+        assertEquals(expected.size() - prefix, summary.getRejected());
+        assertEquals(count - records - summary.getRejected(), summary.getExisting());
+        assertEquals(expected, Files.readAllLines(rejects));
+    }
+
+    @Test
+    public void testResumeAfterFailure() throws Throwable {
+        final var count = 1_000;
+        final var input = writeBinary(count);
+        final var rejects = directory.resolve("rejects.csv");
+        final var checkpoint = directory.resolve("checkpoint");
+
+        try (var failing = new Client(0, 4)) {
+            failing.attach(new FailingTransport(RequestException.Status.INVALID_OPERATION, 6));
+            TestLedger.createAccounts(failing);
+
+            // The fifth batch fails, the others complete
+            var importer = new TransferImporter(failing, 64, 4, 2);
+            try {
+                importer.importFile(input, TransferImporter.Format.BINARY, rejects, checkpoint);
+                fail();
+            } catch (RequestException exception) {
+                assertEquals(RequestException.Status.INVALID_OPERATION, exception.getStatus());
+            }
+            final var offset = Long.parseLong(Files.readAllLines(checkpoint).get(1).split(" ")[1]);
+            assertTrue(offset < count * TransferBatch.Struct.SIZE);
+
+            // Resuming creates the transfers of the failed batch
+            var summary = importer.importFile(input, TransferImporter.Format.BINARY, rejects,
+                    checkpoint);
+            assertEquals(offset, summary.getStartOffset());
+
+            final var rejected = (count + 6) / 7;
+            assertEquals(count - rejected, TestLedger.creditsPosted(failing));
+            assertEquals(rejected, Files.readAllLines(rejects).size());
+        }
+    }
+
+    @Test
+    public void testCsv() throws Throwable {
+        final var largeId = BigInteger.ONE.shiftLeft(64).add(BigInteger.valueOf(5));
+        final var input = directory.resolve("transfers.csv");
+        Files.write(input, ("id,debit,credit,user_data,pending,timeout,ledger,code,flags,amount\n"
+                + "1,1,2,,,,720,1,0,10\r\n"
+                + "\n"
+                + "# a comment\n"
+                + largeId + ",1,2,42,0,0,720,1,0,20\n"
+                + "3,1,999,,,,720,1,0,30").getBytes(StandardCharsets.US_ASCII));
+
+        final var rejects = directory.resolve("rejects.csv");
+        var importer = new TransferImporter(client, 2, 1, 2);
+        var summary = importer.importFile(input, TransferImporter.Format.CSV, rejects,
+                directory.resolve("checkpoint"));
+        assertEquals(2, summary.getCreated());
+        assertEquals(1, summary.getRejected());
+        assertEquals(30, TestLedger.creditsPosted(client));
+
+        var ids = new IdBatch(1);
+        ids.add(UInt128.asBytes(largeId));
+        var transfer = client.lookupTransfers(ids);
+        assertTrue(transfer.next());
+        assertEquals(42, transfer.getUserData(UInt128.LeastSignificant));
+        assertEquals(20, transfer.getAmount());
+
+        final var content = new String(Files.readAllBytes(input), StandardCharsets.US_ASCII);
+        assertEquals(List.of(content.indexOf("3,1,999") + ",3,CreditAccountNotFound"),
+                Files.readAllLines(rejects));
+    }
+
+    @Test
+    public void testInvalidCsv() throws Throwable {
+        final var input = directory.resolve("transfers.tsv");
+        Files.write(input, "1\t1\t2\t\t\t\t720\t1\t0\n".getBytes(StandardCharsets.US_ASCII));
+
+        var importer = new TransferImporter(client, 8, 1, 1);
+        try {
+            importer.importFile(input, TransferImporter.Format.TSV,
+                    directory.resolve("rejects.csv"), directory.resolve("checkpoint"));
+            fail();
+        } catch (IOException exception) {
+            assertEquals("Missing columns at offset 0", exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.tigerbeetle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TransferProcessor} through {@link Client#inMemory}, no TigerBeetle instance
+ * required.
+ */
+public class TransferProcessorTest {
+
+    private static final class Collector implements Flow.Subscriber<CreateTransferResultBatch> {
+
+        final List<CreateTransferResultBatch> results = new ArrayList<>();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final long initialDemand;
+        Flow.Subscription subscription;
+
+        Collector(final long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(final Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0)
+                subscription.request(initialDemand);
+        }
+
+        @Override
+        public synchronized void onNext(final CreateTransferResultBatch item) {
+            results.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Counts the demand requested by the processor, without ever publishing.
+     */
+    private static final class IdlePublisher implements Flow.Subscription {
+
+        final AtomicLong requested = new AtomicLong();
+        final AtomicLong largestRequest = new AtomicLong();
+        final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public void request(final long n) {
+            requested.addAndGet(n);
+            largestRequest.accumulateAndGet(n, Math::max);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+    }
+
+    /**
+     * Holds the submitted requests until the test completes them, in any order.
+     */
+    private static final class HeldTransport extends Transport {
+
+        final Queue<Request<?>> held = new ConcurrentLinkedQueue<>();
+
+        @Override
+        void submit(final Request<?> request, final long packet) {
+            held.add(request);
+        }
+
+        @Override
+        void close() {}
+    }
+
+    private static TransferBatch transfers(final long firstId, final long... creditAccountIds) {
+        var transfers = new TransferBatch(creditAccountIds.length);
+        for (int i = 0; i < creditAccountIds.length; i++) {
+            transfers.add();
+            transfers.setId(firstId + i, 0);
+            transfers.setDebitAccountId(1, 0);
+            transfers.setCreditAccountId(creditAccountIds[i], 0);
+            transfers.setLedger(TestLedger.LEDGER);
+            transfers.setCode(1);
+            transfers.setAmount(1);
+        }
+        return transfers;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            new TransferProcessor(client, TransferProcessor.BATCH_SIZE_MAX + 1);
+        }
+    }
+
+    @Test
+    public void testResultsInOrder() throws Throwable {
+        final var count = 1_000;
+
+        try (var client = Client.inMemory(0, 4)) {
+            TestLedger.createAccounts(client);
+
+            var processor = new TransferProcessor(client, 16, 2);
+            var collector = new Collector(Long.MAX_VALUE);
+            processor.subscribe(collector);
+
+            try (var publisher = new SubmissionPublisher<TransferBatch>()) {
+                publisher.subscribe(processor);
+                for (long id = 1; id <= count; id++) {
+                    // Every tenth transfer credits a missing account
+                    publisher.submit(transfers(id, id % 10 == 0 ? 999 : 2));
+                }
+            }
+
+            collector.done.get(10, TimeUnit.SECONDS);
+            assertEquals(count, collector.results.size());
+            for (int i = 0; i < count; i++) {
+                var results = collector.results.get(i);
+                if ((i + 1) % 10 == 0) {
+                    assertTrue(results.next());
+                    assertEquals(0, results.getIndex());
+                    assertEquals(CreateTransferResult.CreditAccountNotFound, results.getResult());
+                }
+                assertFalse(results.next());
+            }
+
+            var ids = new IdBatch(1);
+            ids.add(2, 0);
+            var account = client.lookupAccounts(ids);
+            assertTrue(account.next());
+            assertEquals(count - count / 10, account.getCreditsPosted());
+        }
+    }
+
+    @Test
+    public void testMultiRowItems() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            TestLedger.createAccounts(client);
+
+            var processor = new TransferProcessor(client, 4);
+            var collector = new Collector(Long.MAX_VALUE);
+            processor.subscribe(collector);
+
+            try (var publisher = new SubmissionPublisher<TransferBatch>()) {
+                publisher.subscribe(processor);
+                publisher.submit(transfers(1, 2, 999, 2));
+                publisher.submit(transfers(4, 999, 2, 999));
+                publisher.submit(transfers(7, 2, 2, 2, 2, 2, 2));
+            }
+
+            collector.done.get(10, TimeUnit.SECONDS);
+            assertEquals(3, collector.results.size());
+
+            var first = collector.results.get(0);
+            assertTrue(first.next());
+            assertEquals(1, first.getIndex());
+            assertFalse(first.next());
+
+            var second = collector.results.get(1);
+            assertTrue(second.next());
+            assertEquals(0, second.getIndex());
+            assertTrue(second.next());
+            assertEquals(2, second.getIndex());
+            assertFalse(second.next());
+
+            // Larger than the batch size, submitted on its own
+            assertEquals(0, collector.results.get(2).getLength());
+        }
+    }
+
+    @Test
+    public void testFailureAfterSuccess() throws Throwable {
+        var transport = new HeldTransport();
+        try (var client = new Client(0, 4)) {
+            client.attach(transport);
+
+            var processor = new TransferProcessor(client, 1, 2);
+            var upstream = new IdlePublisher();
+            processor.onSubscribe(upstream);
+            var collector = new Collector(2);
+            processor.subscribe(collector);
+            assertEquals(2, upstream.requested.get());
+
+            // One batch per item
+            processor.onNext(transfers(1, 2));
+            processor.onNext(transfers(2, 2));
+            var first = transport.held.poll();
+            var second = transport.held.poll();
+            assertNotNull(second);
+
+            // The second batch fails before the first one succeeds
+            second.endRequest(second.getOperation(), null, second.getPacket(),
+                    RequestException.Status.TRANSPORT_FAILED);
+            assertFalse(collector.done.isDone());
+            first.endRequest(first.getOperation(), ByteBuffer.allocate(0), first.getPacket(),
+                    RequestException.Status.OK);
+
+            try {
+                collector.done.get(5, TimeUnit.SECONDS);
+                assert false;
+            } catch (ExecutionException executionException) {
+                var requestException = (RequestException) executionException.getCause();
+                assertEquals(RequestException.Status.TRANSPORT_FAILED,
+                        requestException.getStatus());
+            }
+
+            // The result of the first batch is published before the failure
+            assertEquals(1, collector.results.size());
+            assertEquals(0, collector.results.get(0).getLength());
+            assertTrue(upstream.cancelled.get());
+        }
+    }
+
+    @Test
+    public void testBoundedDemand() throws Throwable {
+        try (var client = Client.inMemory(0)) {
+            var processor = new TransferProcessor(client, 8, 2);
+            var upstream = new IdlePublisher();
+            processor.onSubscribe(upstream);
+
+            // Nothing is requested without downstream demand
+            var collector = new Collector(0);
+            processor.subscribe(collector);
+            assertEquals(0, upstream.requested.get());
+
+            // One item per batch that can be in flight, while no item has arrived
+            collector.subscription.request(5);
+            assertEquals(2, upstream.requested.get());
+
+            collector.subscription.request(Long.MAX_VALUE);
+            assertEquals(2, upstream.requested.get());
+
+            // Single-row items, enough to fill the batches
+            processor.onNext(transfers(1, 2));
+            processor.onNext(transfers(2, 2));
+            assertTrue(upstream.requested.get() > 2);
+            assertTrue(upstream.requested.get() <= 2 + 2 * 8);
+
+            collector.subscription.cancel();
+            assertTrue(upstream.cancelled.get());
+        }
+    }
+
+    @Test
+    public void testDemandWithinFreePackets() throws Throwable {
+        try (var client = Client.inMemory(0, 1)) {
+            var processor = new TransferProcessor(client, 8, 4);
+            var upstream = new IdlePublisher();
+            processor.onSubscribe(upstream);
+            processor.subscribe(new Collector(Long.MAX_VALUE));
+
+            // A single packet, so a single batch
+            assertEquals(1, upstream.requested.get());
+        }
+    }
+
+    @Test
+    public void testClosedClient() throws Throwable {
+        var client = Client.inMemory(0);
+        client.close();
+
+        var processor = new TransferProcessor(client, 8);
+        var upstream = new IdlePublisher();
+        var collector = new Collector(Long.MAX_VALUE);
+        processor.subscribe(collector);
+        processor.onSubscribe(upstream);
+        processor.onNext(transfers(1, 2));
+
+        assertTrue(collector.done.isCompletedExceptionally());
+        assertTrue(upstream.cancelled.get());
+        assertNull(collector.done.handle((ignored, exception) -> exception instanceof
+                IllegalStateException ? null : exception).get());
+    }
+}
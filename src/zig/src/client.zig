@@ -11,37 +11,27 @@ const log = std.log.scoped(.tb_client_jni);
 const assert = std.debug.assert;
 const jni_version = jui.JNIVersion{ .major = 10, .minor = 0 };
 
-/// Reflection helper and cache for the com.tigerbeetle.Client class
-const ClientReflection = struct {
+/// Reflection helper and cache for the com.tigerbeetle.NativeTransport class
+const TransportReflection = struct {
     var client_handle_field_id: jui.jfieldID = null;
-    var packets_head_field_id: jui.jfieldID = null;
-    var packets_tail_field_id: jui.jfieldID = null;
 
     pub fn load(env: *jui.JNIEnv) !void {
 
         // Asserting we are not initialized yet
         assert(client_handle_field_id == null);
-        assert(packets_head_field_id == null);
-        assert(packets_tail_field_id == null);
 
-        var class_obj = try env.findClass("com/tigerbeetle/Client");
+        var class_obj = try env.findClass("com/tigerbeetle/NativeTransport");
         assert(class_obj != null);
         defer env.deleteReference(.local, class_obj);
 
         client_handle_field_id = try env.getFieldId(class_obj, "clientHandle", "J");
-        packets_head_field_id = try env.getFieldId(class_obj, "packetsHead", "J");
-        packets_tail_field_id = try env.getFieldId(class_obj, "packetsTail", "J");
 
         // Asserting we are full initialized
         assert(client_handle_field_id != null);
-        assert(packets_head_field_id != null);
-        assert(packets_tail_field_id != null);
     }
 
     pub fn unload() void {
         client_handle_field_id = null;
-        packets_head_field_id = null;
-        packets_tail_field_id = null;
     }
 
     pub inline fn set_tb_client(env: *jui.JNIEnv, this_obj: jui.jobject, tb_client: tb.tb_client_t) void {
@@ -50,15 +40,6 @@ const ClientReflection = struct {
 
         env.setField(.long, this_obj, client_handle_field_id, @bitCast(jui.jlong, @ptrToInt(tb_client)));
     }
-
-    pub inline fn set_packet_list(env: *jui.JNIEnv, this_obj: jui.jobject, packet_list: *const tb.tb_packet_list_t) void {
-        assert(this_obj != null);
-        assert(packets_head_field_id != null);
-        assert(packets_tail_field_id != null);
-
-        env.setField(.long, this_obj, packets_head_field_id, @bitCast(jui.jlong, @ptrToInt(packet_list.head)));
-        env.setField(.long, this_obj, packets_tail_field_id, @bitCast(jui.jlong, @ptrToInt(packet_list.tail)));
-    }
 };
 
 /// Reflection helper and cache for the com.tigerbeetle.Request class
@@ -161,6 +142,118 @@ const RequestReflection = struct {
     }
 };
 
+/// Completion ring shared with com.tigerbeetle.CompletionRing, see the layout there.
+/// The tb_client thread is the only producer and the Java poller thread the only consumer,
+/// so replies are completed without any JNI call.
+const CompletionRing = struct {
+    const head_offset = 0;
+    const tail_offset = 64;
+    const waiting_offset = 128;
+    const signal_offset = 132;
+    const capacity_offset = 136;
+    const data_offset = 192;
+
+    const record_header_size = 16;
+    const record_alignment = 16;
+
+    const flag_result: u8 = 1 << 0;
+    const flag_padding: u8 = 1 << 1;
+
+    base: [*]u8,
+
+    pub fn from(address: usize) CompletionRing {
+        return .{ .base = @intToPtr([*]u8, address) };
+    }
+
+    inline fn field(self: CompletionRing, comptime T: type, offset: usize) *T {
+        return @ptrCast(*T, @alignCast(@alignOf(T), self.base + offset));
+    }
+
+    /// Copies the completion into the ring, the result is only valid during the callback.
+    pub fn push(self: CompletionRing, packet: *tb.tb_packet_t, result: ?[]const u8) void {
+        const capacity = self.field(u64, capacity_offset).*;
+        const head_ptr = self.field(u64, head_offset);
+
+        const result_len: u64 = if (result) |value| value.len else 0;
+        const size = std.mem.alignForward(record_header_size + result_len, record_alignment);
+        assert(size <= capacity / 2);
+
+        // Only this thread writes the head
+        var head = head_ptr.*;
+        var offset = head & (capacity - 1);
+
+        // Records are contiguous, the end of the data area is skipped with a padding record
+        const padding = if (offset + size > capacity) capacity - offset else 0;
+        self.wait_for_space(head + padding + size, capacity);
+
+        if (padding > 0) {
+            self.write_header(offset, padding - record_header_size, flag_padding, 0, 0, 0);
+            head += padding;
+            offset = 0;
+        }
+
+        const flags: u8 = if (result != null) flag_result else 0;
+        self.write_header(offset, result_len, flags, packet.operation, @enumToInt(packet.status), @ptrToInt(packet));
+        if (result) |value| {
+            const data = self.base + data_offset + offset + record_header_size;
+            std.mem.copy(u8, data[0..value.len], value);
+        }
+
+        @atomicStore(u64, head_ptr, head + size, .SeqCst);
+
+        // Pairs with the store to "waiting" in wait()
+        if (@atomicLoad(u32, self.field(u32, waiting_offset), .SeqCst) != 0) self.wake();
+    }
+
+    /// Called by the poller thread when the ring is empty.
+    pub fn wait(self: CompletionRing, timeout_ns: u64) void {
+        const signal_ptr = self.field(u32, signal_offset);
+        const waiting_ptr = self.field(u32, waiting_offset);
+
+        const signal = @atomicLoad(u32, signal_ptr, .SeqCst);
+        @atomicStore(u32, waiting_ptr, 1, .SeqCst);
+        defer @atomicStore(u32, waiting_ptr, 0, .SeqCst);
+
+        // Checks again after announcing, so a completion published in between is not missed
+        const head = @atomicLoad(u64, self.field(u64, head_offset), .SeqCst);
+        const tail = @atomicLoad(u64, self.field(u64, tail_offset), .SeqCst);
+        if (head != tail) return;
+
+        std.Thread.Futex.wait(@ptrCast(*const std.atomic.Atomic(u32), signal_ptr), signal, timeout_ns) catch {};
+    }
+
+    pub fn wake(self: CompletionRing) void {
+        const signal_ptr = self.field(u32, signal_offset);
+        _ = @atomicRmw(u32, signal_ptr, .Add, 1, .SeqCst);
+        std.Thread.Futex.wake(@ptrCast(*const std.atomic.Atomic(u32), signal_ptr), 1);
+    }
+
+    fn wait_for_space(self: CompletionRing, head: u64, capacity: u64) void {
+        // The poller only sleeps when the ring is empty, so it is draining while we spin
+        while (head - @atomicLoad(u64, self.field(u64, tail_offset), .Acquire) > capacity) {
+            std.atomic.spinLoopHint();
+        }
+    }
+
+    fn write_header(
+        self: CompletionRing,
+        offset: u64,
+        len: u64,
+        flags: u8,
+        operation: u8,
+        status: u8,
+        packet: usize,
+    ) void {
+        const record = self.base + data_offset + offset;
+        std.mem.writeIntNative(u32, record[0..4], @intCast(u32, len));
+        record[4] = flags;
+        record[5] = operation;
+        record[6] = status;
+        record[7] = 0;
+        std.mem.writeIntNative(u64, record[8..16], @intCast(u64, packet));
+    }
+};
+
 /// Native implementation
 const JNIClient = struct {
 
@@ -168,7 +261,7 @@ const JNIClient = struct {
     fn on_load(vm: *jui.JavaVM) !jui.jint {
         var env = try vm.getEnv(jni_version);
 
-        try ClientReflection.load(env);
+        try TransportReflection.load(env);
         try RequestReflection.load(env);
 
         return @bitCast(jui.jint, jni_version);
@@ -177,22 +270,25 @@ const JNIClient = struct {
     /// On JVM unloads this library
     fn on_unload(vm: *jui.JavaVM) !void {
         _ = vm;
-        ClientReflection.unload();
+        TransportReflection.unload();
         RequestReflection.unload();
     }
 
-    /// JNI Client.clientInit native implementation
+    /// JNI NativeTransport.clientInit native implementation
     fn client_init(
         env: *jui.JNIEnv,
         this_obj: jui.jobject,
         cluster_id: u32,
         addresses_obj: jui.jstring,
         max_concurrency: u32,
+        ring_obj: jui.jobject,
     ) !tb.tb_status_t {
         assert(this_obj != null);
         assert(addresses_obj != null);
 
         var out_client: tb.tb_client_t = undefined;
+
+        // Packets are allocated by the Java side, the ones returned here are never used
         var out_packets: tb.tb_packet_list_t = undefined;
 
         var jvm = try env.getJavaVM();
@@ -202,7 +298,8 @@ const JNIClient = struct {
         var addresses_chars = std.meta.assumeSentinel(addresses_return.chars[0..addresses_len], 0);
         defer env.releaseStringUTFChars(addresses_obj, addresses_chars);
 
-        var status = tb.tb_client_init(
+        // Completions are either delivered through upcalls, or written to the completion ring
+        var status = if (ring_obj == null) tb.tb_client_init(
             &out_client,
             &out_packets,
             cluster_id,
@@ -211,38 +308,84 @@ const JNIClient = struct {
             max_concurrency,
             @ptrToInt(jvm),
             on_completion,
+        ) else tb.tb_client_init(
+            &out_client,
+            &out_packets,
+            cluster_id,
+            addresses_chars,
+            @intCast(u32, addresses_len),
+            max_concurrency,
+            @ptrToInt(env.getDirectBufferAddress(ring_obj)),
+            on_completion_ring,
         );
 
         if (status == .success) {
-            ClientReflection.set_tb_client(env, this_obj, out_client);
-            ClientReflection.set_packet_list(env, this_obj, &out_packets);
+            TransportReflection.set_tb_client(env, this_obj, out_client);
         }
 
         return status;
     }
 
-    /// JNI Client.clientDeinit native implementation
+    /// JNI NativeTransport.clientDeinit native implementation
     fn client_deinit(client: tb.tb_client_t) void {
         tb.tb_client_deinit(client);
     }
 
-    /// JNI Client.submit native implementation
+    /// JNI NativeTransport.submit native implementation
     fn submit(
         env: *jui.JNIEnv,
         request_obj: jui.jobject,
         client: tb.tb_client_t,
         packet: *tb.tb_packet_t,
     ) void {
-        assert(request_obj != null);
+        prepare_packet(env, request_obj, packet, true);
 
-        // Holds a global reference to prevent GC during the callback
-        var global_ref = env.newReference(.global, request_obj) catch {
-            // NewGlobalRef fails only when the JVM runs out of memory
-            @panic("JNI: Error creating a global reference");
-        };
+        var packet_list = tb.tb_packet_list_t.from(packet);
+        tb.tb_client_submit(client, &packet_list);
+    }
+
+    /// JNI NativeTransport.submitBatch native implementation
+    /// Links all packets into a single list, so tb_client is signaled once for the whole batch.
+    /// The packet addresses are read from a direct buffer, in native byte order.
+    fn submit_batch(
+        env: *jui.JNIEnv,
+        client: tb.tb_client_t,
+        requests_obj: jui.jobjectArray,
+        packets: [*]align(1) const u64,
+        count: u32,
+        hold_reference: bool,
+    ) void {
+        assert(requests_obj != null);
+        assert(count > 0);
 
-        assert(global_ref != null);
-        errdefer env.deleteReference(.global, global_ref);
+        var packet_list = tb.tb_packet_list_t{ .head = null, .tail = null };
+
+        var index: u32 = 0;
+        while (index < count) : (index += 1) {
+            var request_obj = env.getObjectArrayElement(requests_obj, @intCast(jui.jsize, index)) catch {
+                // The java side must pass at least "count" requests
+                @panic("JNI: Error reading the request array");
+            };
+            defer env.deleteReference(.local, request_obj);
+
+            var packet = @intToPtr(*tb.tb_packet_t, @intCast(usize, packets[index]));
+            prepare_packet(env, request_obj, packet, hold_reference);
+            packet_list.push(tb.tb_packet_list_t.from(packet));
+        }
+
+        tb.tb_client_submit(client, &packet_list);
+    }
+
+    /// Fills the packet from the request's fields.
+    /// When completions are delivered through upcalls, the packet holds a global reference to the
+    /// request, preventing GC until the callback. Otherwise the Java side keeps it reachable.
+    fn prepare_packet(
+        env: *jui.JNIEnv,
+        request_obj: jui.jobject,
+        packet: *tb.tb_packet_t,
+        hold_reference: bool,
+    ) void {
+        assert(request_obj != null);
 
         var buffer = RequestReflection.buffer(env, request_obj) orelse {
             // It is unexpected to the buffer be null here
@@ -250,17 +393,65 @@ const JNIClient = struct {
             @panic("JNI: Request buffer cannot be null");
         };
 
+        var global_ref: jui.jobject = null;
+        if (hold_reference) {
+            global_ref = env.newReference(.global, request_obj) catch {
+                // NewGlobalRef fails only when the JVM runs out of memory
+                @panic("JNI: Error creating a global reference");
+            };
+            assert(global_ref != null);
+        }
+
         packet.operation = RequestReflection.operation(env, request_obj);
         packet.user_data = global_ref;
         packet.data = buffer.ptr;
         packet.data_size = @intCast(u32, buffer.len);
         packet.next = null;
         packet.status = .ok;
+    }
+
+    /// JNI NativeTransport.submitRing native implementation
+    /// The request is kept reachable by the Java side until its completion is polled from the ring,
+    /// so no global reference nor field reflection is needed.
+    fn submit_ring(
+        env: *jui.JNIEnv,
+        client: tb.tb_client_t,
+        packet: *tb.tb_packet_t,
+        operation: u8,
+        buffer_obj: jui.jobject,
+        buffer_len: u32,
+    ) void {
+        assert(buffer_obj != null);
+
+        packet.operation = operation;
+        packet.user_data = null;
+        packet.data = env.getDirectBufferAddress(buffer_obj);
+        packet.data_size = buffer_len;
+        packet.next = null;
+        packet.status = .ok;
 
         var packet_list = tb.tb_packet_list_t.from(packet);
         tb.tb_client_submit(client, &packet_list);
     }
 
+    /// Completion callback writing to the completion ring, with no JNI call
+    fn on_completion_ring(
+        context: usize,
+        client: tb.tb_client_t,
+        packet: *tb.tb_packet_t,
+        result_ptr: ?[*]const u8,
+        result_len: u32,
+    ) callconv(.C) void {
+        _ = client;
+
+        var result: ?[]const u8 = switch (packet.status) {
+            .ok => if (result_ptr) |ptr| ptr[0..@intCast(usize, result_len)] else null,
+            else => null,
+        };
+
+        CompletionRing.from(context).push(packet, result);
+    }
+
     /// Completion callback
     fn on_completion(
         context: usize,
@@ -289,35 +480,6 @@ const JNIClient = struct {
 
         RequestReflection.end_request(env, request_obj, result, packet);
     }
-
-    /// JNI Client.popPacket native implementation
-    fn pop_packet(
-        env: *jui.JNIEnv,
-        client_obj: jui.jobject,
-        packet_list: *tb.tb_packet_list_t,
-    ) *tb.tb_packet_t {
-        assert(client_obj != null);
-
-        var packet = packet_list.pop() orelse {
-            // It is unexpeted to packet_list be empty.
-            // The java side must syncronize how many threads call this function.
-            @panic("JNI fatal error: Packet list cannot be empty");
-        };
-
-        ClientReflection.set_packet_list(env, client_obj, packet_list);
-        return packet;
-    }
-
-    /// JNI Client.pushPacket native implementation
-    fn push_packet(
-        env: *jui.JNIEnv,
-        client_obj: jui.jobject,
-        packet_list: *tb.tb_packet_list_t,
-        packet: *tb.tb_packet_t,
-    ) void {
-        packet_list.push(tb.tb_packet_list_t.from(packet));
-        ClientReflection.set_packet_list(env, client_obj, packet_list);
-    }
 };
 
 /// Export function using the JNI calling convention
@@ -336,6 +498,7 @@ const Exports = struct {
         cluster_id: jui.jint,
         addresses: jui.jstring,
         max_concurrency: jui.jint,
+        ring: jui.jobject,
     ) callconv(.C) jui.jint {
         var status = jui.wrapErrors(
             JNIClient.client_init,
@@ -345,6 +508,7 @@ const Exports = struct {
                 @bitCast(u32, cluster_id),
                 addresses,
                 @bitCast(u32, max_concurrency),
+                ring,
             },
         );
 
@@ -370,46 +534,144 @@ const Exports = struct {
         );
     }
 
-    pub fn pop_packet_export(env: *jui.JNIEnv, this_obj: jui.jobject, packets_head: jui.jlong, packets_tail: jui.jlong) callconv(.C) jui.jlong {
-        var packet_list = tb.tb_packet_list_t{
-            .head = @intToPtr(?*tb.tb_packet_t, @bitCast(usize, packets_head)),
-            .tail = @intToPtr(?*tb.tb_packet_t, @bitCast(usize, packets_tail)),
-        };
+    pub fn submit_batch_export(
+        env: *jui.JNIEnv,
+        this_obj: jui.jobject,
+        client_handle: jui.jlong,
+        requests: jui.jobjectArray,
+        packets: jui.jobject,
+        count: jui.jint,
+        hold_reference: jui.jboolean,
+    ) callconv(.C) void {
+        _ = this_obj;
+        assert(client_handle != 0);
+        assert(packets != null);
+        assert(count > 0);
 
-        var packet = JNIClient.pop_packet(
+        JNIClient.submit_batch(
             env,
-            this_obj,
-            &packet_list,
+            @intToPtr(tb.tb_client_t, @bitCast(usize, client_handle)),
+            requests,
+            @ptrCast([*]align(1) const u64, env.getDirectBufferAddress(packets)),
+            @bitCast(u32, count),
+            hold_reference != 0,
         );
-        return @bitCast(jui.jlong, @ptrToInt(packet));
     }
 
-    pub fn push_packet_export(env: *jui.JNIEnv, this_obj: jui.jobject, packets_head: jui.jlong, packets_tail: jui.jlong, packet: jui.jlong) callconv(.C) void {
+    pub fn submit_ring_export(
+        env: *jui.JNIEnv,
+        this_obj: jui.jobject,
+        client_handle: jui.jlong,
+        packet: jui.jlong,
+        operation: jui.jbyte,
+        buffer: jui.jobject,
+        buffer_len: jui.jint,
+    ) callconv(.C) void {
+        _ = this_obj;
+        assert(client_handle != 0);
         assert(packet != 0);
 
-        var packet_list = tb.tb_packet_list_t{
-            .head = @intToPtr(?*tb.tb_packet_t, @bitCast(usize, packets_head)),
-            .tail = @intToPtr(?*tb.tb_packet_t, @bitCast(usize, packets_tail)),
-        };
-
-        JNIClient.push_packet(
+        JNIClient.submit_ring(
             env,
-            this_obj,
-            &packet_list,
+            @intToPtr(tb.tb_client_t, @bitCast(usize, client_handle)),
             @intToPtr(*tb.tb_packet_t, @bitCast(usize, packet)),
+            @bitCast(u8, operation),
+            buffer,
+            @bitCast(u32, buffer_len),
         );
     }
+
+    pub fn ring_wait_export(env: *jui.JNIEnv, this_obj: jui.jobject, ring: jui.jobject, timeout_nanos: jui.jlong) callconv(.C) void {
+        _ = this_obj;
+        assert(ring != null);
+        assert(timeout_nanos > 0);
+
+        CompletionRing.from(@ptrToInt(env.getDirectBufferAddress(ring))).wait(@bitCast(u64, timeout_nanos));
+    }
+
+    pub fn ring_wake_export(env: *jui.JNIEnv, this_obj: jui.jobject, ring: jui.jobject) callconv(.C) void {
+        _ = this_obj;
+        assert(ring != null);
+
+        CompletionRing.from(@ptrToInt(env.getDirectBufferAddress(ring))).wake();
+    }
+
+    pub fn buffer_address_export(env: *jui.JNIEnv, this_obj: jui.jobject, buffer: jui.jobject) callconv(.C) jui.jlong {
+        _ = this_obj;
+        assert(buffer != null);
+
+        return @bitCast(jui.jlong, @ptrToInt(env.getDirectBufferAddress(buffer)));
+    }
+};
+
+/// C ABI entry points for the Java Foreign Function & Memory binding (FfmTransport, JDK 22+).
+/// They forward to tb_client as is, packets, buffers and completions are handled on the Java side.
+const FFMExports = struct {
+    pub fn client_init(
+        out_client: *tb.tb_client_t,
+        out_packets: *tb.tb_packet_list_t,
+        cluster_id: u32,
+        addresses_ptr: [*:0]const u8,
+        addresses_len: u32,
+        num_packets: u32,
+        on_completion_ctx: usize,
+        on_completion_fn: fn (usize, tb.tb_client_t, *tb.tb_packet_t, ?[*]const u8, u32) callconv(.C) void,
+    ) callconv(.C) tb.tb_status_t {
+        return tb.tb_client_init(
+            out_client,
+            out_packets,
+            cluster_id,
+            addresses_ptr,
+            addresses_len,
+            num_packets,
+            on_completion_ctx,
+            on_completion_fn,
+        );
+    }
+
+    pub fn client_submit(client: tb.tb_client_t, packet_list: *tb.tb_packet_list_t) callconv(.C) void {
+        tb.tb_client_submit(client, packet_list);
+    }
+
+    pub fn client_deinit(client: tb.tb_client_t) callconv(.C) void {
+        tb.tb_client_deinit(client);
+    }
 };
 
+/// The Java side lays out packets and packet lists itself, with the size in
+/// PacketPool.PACKET_SIZE and the offsets in FfmTransport.Packet and FfmTransport.PacketList.
+comptime {
+    assert(@sizeOf(tb.tb_packet_t) == 32);
+    assert(@offsetOf(tb.tb_packet_t, "next") == 0);
+    assert(@offsetOf(tb.tb_packet_t, "user_data") == 8);
+    assert(@offsetOf(tb.tb_packet_t, "operation") == 16);
+    assert(@offsetOf(tb.tb_packet_t, "status") == 17);
+    assert(@offsetOf(tb.tb_packet_t, "data_size") == 20);
+    assert(@offsetOf(tb.tb_packet_t, "data") == 24);
+
+    assert(@sizeOf(tb.tb_packet_list_t) == 16);
+    assert(@offsetOf(tb.tb_packet_list_t, "head") == 0);
+    assert(@offsetOf(tb.tb_packet_list_t, "tail") == 8);
+}
+
+comptime {
+    @export(FFMExports.client_init, .{ .name = "tb_ffm_client_init", .linkage = .Strong });
+    @export(FFMExports.client_submit, .{ .name = "tb_ffm_client_submit", .linkage = .Strong });
+    @export(FFMExports.client_deinit, .{ .name = "tb_ffm_client_deinit", .linkage = .Strong });
+}
+
 comptime {
-    jui.exportUnder("com.tigerbeetle.Client", .{
+    jui.exportUnder("com.tigerbeetle.NativeTransport", .{
         .onLoad = Exports.on_load_export,
         .onUnload = Exports.on_unload_export,
         .clientInit = Exports.client_init_export,
         .clientDeinit = Exports.client_deinit_export,
-        .popPacket = Exports.pop_packet_export,
-        .pushPacket = Exports.push_packet_export,
+        .bufferAddress = Exports.buffer_address_export,
         .submit = Exports.submit_export,
+        .submitBatch = Exports.submit_batch_export,
+        .submitRing = Exports.submit_ring_export,
+        .ringWait = Exports.ring_wait_export,
+        .ringWake = Exports.ring_wake_export,
     });
 }
 